@@ -0,0 +1,454 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.Block;
+import lombok.ast.Cast;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.NullLiteral;
+import lombok.ast.Return;
+import lombok.ast.Select;
+import lombok.ast.This;
+import lombok.ast.VariableDefinition;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+/**
+ * Alias analysis of the variables of a file, used to pair a registration with its unregistration: variables that are
+ * copies of each other (assignments, variable initializers, getters that return a field) end up in the same set, so
+ * that e.g. a receiver registered through a local variable and unregistered through the field it was copied to are
+ * recognized as the same object. A variable joins the variable it is copied from only if that is the only value it is
+ * ever assigned, and a parameter of a method of the same file joins the set of its arguments only if all the calls
+ * pass the same set: a variable assigned different objects (x = r1 and then x = r2) would otherwise make them all the
+ * same object, so it is unknown instead (see isUnknown()). Sets are still "may" aliases (a copy may be taken before
+ * the original is assigned again), so checks that need the same object for sure (e.g. unregistering twice) must use
+ * getVariableName(). Sets are kept with a union-find structure, so building them is nearly linear in the size of the
+ * file
+ */
+public class AliasSets
+{
+    // Prefix of the names of the sets that may refer to different objects (variables assigned different objects,
+    // parameters of helpers called with them)
+    public static final String UNKNOWN_PREFIX = "?";
+
+    private final Node compilationUnit;
+
+    // Union-find structure over the keys of the variables
+    private final Map<String, Integer> ids = new HashMap<>();
+    private final List<String> keys = new ArrayList<>();
+    private int[] parents = new int[16];
+    private int[] ranks = new int[16];
+
+    // Local variables and parameters declared in each method or constructor
+    private Map<Node, Set<String>> locals;
+
+    // Keys of the variables and parameters that receive different objects
+    private final List<String> unknownKeys = new ArrayList<>();
+
+    /**
+     * Constructor (the file is scanned lazily, only if we need to compare variables)
+     * @param compilationUnit the compilation unit of the file
+     */
+    public AliasSets(Node compilationUnit)
+    {
+        this.compilationUnit = compilationUnit;
+    }
+
+    /**
+     * Gets the name that identifies the set of variables an expression belongs to
+     * @param expression the expression (e.g. an argument of a method invocation)
+     * @return the same name for all the expressions that may refer to the same object, the text of the expression if
+     *         it is not a variable
+     */
+    public String getCanonicalName(Expression expression)
+    {
+        if(expression==null) return "";
+        if(locals==null) scan();
+
+        String key = getKey(expression);
+        if(key==null) return expression.toString();
+        Integer id = ids.get(key);
+        if(id==null) return key;
+
+        int root = find(id);
+        for(String unknownKey: unknownKeys)
+        {
+            if(find(ids.get(unknownKey))==root)
+            {
+                return UNKNOWN_PREFIX+keys.get(root);
+            }
+        }
+        return keys.get(root);
+    }
+
+    /**
+     * Gets the name of the variable of an expression, without aliases: two expressions with the same name always refer
+     * to the same variable
+     * @param expression the expression (e.g. an argument of a method invocation)
+     * @return the name of the variable (locals and parameters qualified with their method), the text of the expression
+     *         if it is not a variable
+     */
+    public String getVariableName(Expression expression)
+    {
+        if(expression==null) return "";
+        if(locals==null) scan();
+
+        String key = getKey(expression);
+        return key!=null ? key : expression.toString();
+    }
+
+    /**
+     * Checks if a name returned by getCanonicalName() may refer to different objects, so it cannot be paired with
+     * the other names
+     * @param canonicalName the name
+     * @return true if the name is unknown
+     */
+    public static boolean isUnknown(String canonicalName)
+    {
+        return canonicalName.startsWith(UNKNOWN_PREFIX);
+    }
+
+    /**
+     * Helper to get the key of an expression: locals and parameters are qualified with their method, so that the
+     * same name in two methods is not the same variable
+     * @param expression the expression
+     * @return the key, null if the expression is not a variable (e.g. a new instance or null), since two equal
+     *         expressions of that kind are not the same object
+     */
+    private String getKey(Expression expression)
+    {
+        while(expression instanceof Cast)
+        {
+            expression = ((Cast) expression).astOperand();
+        }
+
+        if(expression instanceof VariableReference)
+        {
+            String name = ((VariableReference) expression).astIdentifier().astValue();
+            for(Node method = ControlFlowUtils.getEnclosingMethod(expression); method!=null; method = ControlFlowUtils.getEnclosingMethod(method))
+            {
+                Set<String> names = locals.get(method);
+                if(names!=null && names.contains(name))
+                {
+                    return getMethodKey(method)+"#"+name;
+                }
+            }
+            return name;
+        }
+        if(expression instanceof Select && ((Select) expression).astOperand() instanceof This)
+        {
+            return ((Select) expression).astIdentifier().astValue();
+        }
+        if(expression instanceof MethodInvocation && ((MethodInvocation) expression).astOperand()==null && ((MethodInvocation) expression).astArguments().isEmpty())
+        {
+            return ((MethodInvocation) expression).astName().astValue()+"()";
+        }
+        return null;
+    }
+
+    /**
+     * Helper to identify a method or constructor in the file
+     * @param method the method or constructor
+     * @return its name and position
+     */
+    private static String getMethodKey(Node method)
+    {
+        String name = method instanceof MethodDeclaration ? ((MethodDeclaration) method).astMethodName().astValue() : "<init>";
+        return name+"@"+(method.getPosition()==null ? 0 : method.getPosition().getStart());
+    }
+
+    /**
+     * Helper that collects the declarations of the file and then joins the sets of the variables that are assigned
+     * to each other
+     */
+    private void scan()
+    {
+        locals = new HashMap<>();
+        if(compilationUnit==null) return;
+
+        final List<Expression[]> assignments = new ArrayList<>();
+        final List<String> initializedKeys = new ArrayList<>();
+        final List<Expression> initializers = new ArrayList<>();
+        final Map<String, List<MethodDeclaration>> methods = new HashMap<>();
+        final List<MethodInvocation> invocations = new ArrayList<>();
+        compilationUnit.accept(new ForwardingAstVisitor()
+        {
+            @Override
+            public boolean visitVariableDefinition(VariableDefinition node)
+            {
+                Node method = ControlFlowUtils.getEnclosingMethod(node);
+                for(VariableDefinitionEntry entry: node.astVariables())
+                {
+                    String name = entry.astName().astValue();
+                    if(method!=null)
+                    {
+                        Set<String> names = locals.get(method);
+                        if(names==null)
+                        {
+                            names = new HashSet<>();
+                            locals.put(method, names);
+                        }
+                        names.add(name);
+                    }
+                    if(entry.astInitializer()!=null)
+                    {
+                        initializedKeys.add(method==null ? name : getMethodKey(method)+"#"+name);
+                        initializers.add(entry.astInitializer());
+                    }
+                }
+                return super.visitVariableDefinition(node);
+            }
+
+            @Override
+            public boolean visitBinaryExpression(BinaryExpression node)
+            {
+                if(node.astOperator()==BinaryOperator.ASSIGN)
+                {
+                    assignments.add(new Expression[]{node.astLeft(), node.astRight()});
+                }
+                return super.visitBinaryExpression(node);
+            }
+
+            @Override
+            public boolean visitMethodDeclaration(MethodDeclaration node)
+            {
+                String name = node.astMethodName().astValue();
+                List<MethodDeclaration> list = methods.get(name);
+                if(list==null)
+                {
+                    list = new ArrayList<>();
+                    methods.put(name, list);
+                }
+                list.add(node);
+                return super.visitMethodDeclaration(node);
+            }
+
+            @Override
+            public boolean visitMethodInvocation(MethodInvocation node)
+            {
+                if(node.astOperand()==null || node.astOperand() instanceof This)
+                {
+                    invocations.add(node);
+                }
+                return super.visitMethodInvocation(node);
+            }
+        });
+
+        // Assignments and initializers: a variable joins the variable it is copied from only if it is never assigned
+        // anything else (null does not count, it is not an object)
+        Map<String, Set<String>> sources = new LinkedHashMap<>();
+        for(Expression[] assignment: assignments)
+        {
+            addSource(sources, getKey(assignment[0]), assignment[1]);
+        }
+        for(int i=0; i<initializers.size(); i++)
+        {
+            addSource(sources, initializedKeys.get(i), initializers.get(i));
+        }
+        for(Map.Entry<String, Set<String>> entry: sources.entrySet())
+        {
+            Set<String> variableSources = entry.getValue();
+            if(variableSources.size()==1 && !variableSources.contains(null))
+            {
+                union(entry.getKey(), variableSources.iterator().next());
+            }
+            else if(variableSources.size()>1)
+            {
+                unknownKeys.add(entry.getKey());
+                getId(entry.getKey());
+            }
+        }
+
+        // Getters
+        final Map<String, List<Expression>> arguments = new HashMap<>();
+        for(MethodInvocation invocation: invocations)
+        {
+            List<MethodDeclaration> candidates = methods.get(invocation.astName().astValue());
+            if(candidates==null) continue;
+
+            for(MethodDeclaration method: candidates)
+            {
+                if(method.astParameters().size()!=invocation.astArguments().size()) continue;
+
+                Expression returned = getReturnedExpression(method);
+                if(returned!=null && invocation.astArguments().isEmpty())
+                {
+                    union(getKey(invocation), getKey(returned));
+                }
+
+                // Arguments of each parameter (matched by method name and number of parameters)
+                Iterator<VariableDefinition> parameters = method.astParameters().iterator();
+                for(Expression argument: invocation.astArguments())
+                {
+                    String parameterKey = getMethodKey(method)+"#"+parameters.next().astVariables().first().astName().astValue();
+                    List<Expression> list = arguments.get(parameterKey);
+                    if(list==null)
+                    {
+                        list = new ArrayList<>();
+                        arguments.put(parameterKey, list);
+                    }
+                    list.add(argument);
+                }
+            }
+        }
+
+        // Parameters whose arguments are all in the same set join it; joining a parameter may put the arguments of
+        // another one (e.g. a helper that passes its parameter to another helper) in the same set, so repeat until
+        // nothing changes
+        boolean changed = true;
+        while(changed)
+        {
+            changed = false;
+            for(Map.Entry<String, List<Expression>> entry: arguments.entrySet())
+            {
+                Integer argumentSet = getArgumentSet(entry.getValue());
+                if(argumentSet!=null && find(getId(entry.getKey()))!=argumentSet)
+                {
+                    union(entry.getKey(), keys.get(argumentSet));
+                    changed = true;
+                }
+            }
+        }
+        for(Map.Entry<String, List<Expression>> entry: arguments.entrySet())
+        {
+            if(getArgumentSet(entry.getValue())==null)
+            {
+                unknownKeys.add(entry.getKey());
+                getId(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Helper to record a value assigned to a variable
+     * @param sources the keys of the values assigned to each variable (null for the values that are not variables,
+     *                e.g. new instances)
+     * @param key the key of the variable (nothing is recorded if null)
+     * @param value the assigned value
+     */
+    private void addSource(Map<String, Set<String>> sources, String key, Expression value)
+    {
+        if(key==null || value instanceof NullLiteral) return;
+
+        Set<String> keySources = sources.get(key);
+        if(keySources==null)
+        {
+            keySources = new HashSet<>();
+            sources.put(key, keySources);
+        }
+        keySources.add(getKey(value));
+    }
+
+    /**
+     * Helper to get the set that all the arguments of a parameter belong to
+     * @param arguments the arguments passed to the parameter
+     * @return the ID of the representative of the set, null if the arguments are in different sets or are not
+     *         variables (two new instances are different objects)
+     */
+    private Integer getArgumentSet(List<Expression> arguments)
+    {
+        Integer result = null;
+        for(Expression argument: arguments)
+        {
+            String key = getKey(argument);
+            if(key==null) return null;
+
+            int set = find(getId(key));
+            if(result!=null && result!=set) return null;
+            result = set;
+        }
+        return result;
+    }
+
+    /**
+     * Helper to get the expression returned by a method whose body is just a return statement (e.g. a getter)
+     * @param method the method
+     * @return the returned expression, null if the method is not that simple
+     */
+    private static Expression getReturnedExpression(MethodDeclaration method)
+    {
+        Block body = method.astBody();
+        if(body==null || body.astContents().size()!=1 || !(body.astContents().first() instanceof Return)) return null;
+        return ((Return) body.astContents().first()).astValue();
+    }
+
+    /**
+     * Helper to join the sets of two keys (union by rank)
+     * @param first the first key (nothing is joined if null)
+     * @param second the second key (nothing is joined if null)
+     */
+    private void union(String first, String second)
+    {
+        if(first==null || second==null) return;
+
+        int a = find(getId(first));
+        int b = find(getId(second));
+        if(a==b) return;
+
+        if(ranks[a]<ranks[b])
+        {
+            parents[a] = b;
+        }
+        else if(ranks[a]>ranks[b])
+        {
+            parents[b] = a;
+        }
+        else
+        {
+            parents[b] = a;
+            ranks[a]++;
+        }
+    }
+
+    /**
+     * Helper to find the representative of the set of a key (with path halving)
+     * @param id the ID of the key
+     * @return the ID of the representative
+     */
+    private int find(int id)
+    {
+        while(parents[id]!=id)
+        {
+            parents[id] = parents[parents[id]];
+            id = parents[id];
+        }
+        return id;
+    }
+
+    /**
+     * Helper to get the ID of a key, adding it as a new set if needed
+     * @param key the key
+     * @return the ID
+     */
+    private int getId(String key)
+    {
+        Integer id = ids.get(key);
+        if(id==null)
+        {
+            id = keys.size();
+            if(id==parents.length)
+            {
+                parents = Arrays.copyOf(parents, id*2);
+                ranks = Arrays.copyOf(ranks, id*2);
+            }
+            parents[id] = id;
+            ids.put(key, id);
+            keys.add(key);
+        }
+        return id;
+    }
+}
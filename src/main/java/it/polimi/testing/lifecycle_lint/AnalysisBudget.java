@@ -0,0 +1,140 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.client.api.LintDriver;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.detectors.BroadcastReceiverDetector;
+
+/**
+ * Time budget for the analysis of a single file. When a file (e.g. a huge generated class) exceeds it, the detectors
+ * stop the expensive checks for the rest of the file and report it as partially analyzed instead of stalling the run
+ * (once per file and run, even if more detectors stop).
+ * The budget is set in milliseconds with -Dlifecycle.lint.fileBudgetMs (0 disables it)
+ */
+public class AnalysisBudget
+{
+    // Issue (reported by the first lifecycle detector that stops on a file; the implementation just needs to name one of
+    // them, that lint runs when this is the only enabled issue)
+    public static final Issue ISSUE = Issue.create
+    (
+        "LifecycleAnalysisBudget",
+        "File only partially analyzed by the lifecycle checks",
+        "The lifecycle checks spent more than the configured time budget on this file, so the remaining method "+
+        "calls were not analyzed and some lifecycle issues may be missing. The budget can be changed with the "+
+        "`lifecycle.lint.fileBudgetMs` system property.",
+        Category.LINT,
+        1,
+        Severity.INFORMATIONAL,
+        new Implementation(BroadcastReceiverDetector.class, Scope.JAVA_FILE_SCOPE)
+    );
+
+    // Configuration
+    public static final String BUDGET_PROPERTY = "lifecycle.lint.fileBudgetMs";
+    private static final long DEFAULT_BUDGET_MS = 2000;
+
+    // Reported message
+    private static final MessageTemplate MESSAGE_PARTIAL = new MessageTemplate("The lifecycle checks stopped after %2$s ms (first `%1$s`): this file was only partially analyzed");
+
+    // Metric names
+    public static final String METRIC_OVERRUNS = "budgetOverruns";
+    public static final String METRIC_OVERRUN_MS = "budgetOverrunMs";
+
+    // Files already reported in each lint run
+    private static final Map<LintDriver, Set<File>> REPORTED_FILES = new WeakHashMap<>();
+
+    private final long budgetNanos;
+    private long start;
+    private boolean exceeded;
+
+    /**
+     * Constructor, reads the configured budget
+     */
+    public AnalysisBudget()
+    {
+        this.budgetNanos = TimeUnit.MILLISECONDS.toNanos(Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_MS));
+    }
+
+    /**
+     * Starts the budget for a new file
+     */
+    public void start()
+    {
+        start = System.nanoTime();
+        exceeded = false;
+    }
+
+    /**
+     * Checks if the current file has exceeded the budget (once it does, it stays exceeded until the next start())
+     * @return true if the expensive checks should be skipped
+     */
+    public boolean isExceeded()
+    {
+        if(!exceeded && budgetNanos>0 && System.nanoTime()-start>budgetNanos)
+        {
+            exceeded = true;
+        }
+        return exceeded;
+    }
+
+    /**
+     * Checks if the budget was exceeded while analyzing the current file, without checking the time again
+     * @return true if some checks were skipped in the current file
+     */
+    public boolean wasExceeded()
+    {
+        return exceeded;
+    }
+
+    /**
+     * Ends the budget for the current file: if it was exceeded, reports the file as partially analyzed (unless another
+     * detector already did in this run) and records the overrun
+     * @param context the context of the lint request
+     * @param metrics the metrics of the detector
+     * @param detectorName the name of the detector that did not complete the analysis
+     */
+    public void finish(Context context, LintMetrics metrics, String detectorName)
+    {
+        if(exceeded)
+        {
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+            metrics.increment(METRIC_OVERRUNS);
+            metrics.add(METRIC_OVERRUN_MS, elapsedMs-TimeUnit.NANOSECONDS.toMillis(budgetNanos));
+            if(markReported(context))
+            {
+                context.report(ISSUE, Location.create(context.file), MESSAGE_PARTIAL.format(detectorName, elapsedMs));
+            }
+        }
+    }
+
+    /**
+     * Helper to record that the current file is reported as partially analyzed
+     * @param context the context of the lint request
+     * @return true if the file was not reported yet in this run
+     */
+    private static boolean markReported(Context context)
+    {
+        synchronized(REPORTED_FILES)
+        {
+            Set<File> files = REPORTED_FILES.get(context.getDriver());
+            if(files==null)
+            {
+                files = new HashSet<>();
+                REPORTED_FILES.put(context.getDriver(), files);
+            }
+            return files.add(context.file);
+        }
+    }
+}
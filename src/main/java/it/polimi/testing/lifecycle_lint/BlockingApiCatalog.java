@@ -0,0 +1,175 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.ClassContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Catalog of the APIs that may block the calling thread (disk, database, network, thread joins and waits, blocking
+ * Play Services calls).
+ * Each entry is a class and a method name, written as class#method; more entries can be added with
+ * -Dlifecycle.lint.blockingApis=com.example.Store#load,com.example.Api#fetch
+ */
+public class BlockingApiCatalog
+{
+    // Configuration
+    public static final String CATALOG_PROPERTY = "lifecycle.lint.blockingApis";
+    private static final String ENTRY_SEPARATOR = ",";
+    private static final String METHOD_SEPARATOR = "#";
+
+    // Default entries
+    private static final List<String> DEFAULT_ENTRIES = Arrays.asList(
+        // Shared preferences written synchronously
+        "android.content.SharedPreferences.Editor#commit",
+
+        // Database
+        "android.database.sqlite.SQLiteOpenHelper#getWritableDatabase",
+        "android.database.sqlite.SQLiteOpenHelper#getReadableDatabase",
+        "android.database.sqlite.SQLiteDatabase#query",
+        "android.database.sqlite.SQLiteDatabase#queryWithFactory",
+        "android.database.sqlite.SQLiteDatabase#rawQuery",
+        "android.database.sqlite.SQLiteDatabase#rawQueryWithFactory",
+        "android.database.sqlite.SQLiteDatabase#execSQL",
+        "android.database.sqlite.SQLiteDatabase#insert",
+        "android.database.sqlite.SQLiteDatabase#insertOrThrow",
+        "android.database.sqlite.SQLiteDatabase#replace",
+        "android.database.sqlite.SQLiteDatabase#update",
+        "android.database.sqlite.SQLiteDatabase#delete",
+        "android.content.ContentResolver#query",
+
+        // Network
+        "java.net.URL#openStream",
+        "java.net.URLConnection#connect",
+        "java.net.URLConnection#getInputStream",
+        "java.net.URLConnection#getOutputStream",
+        "java.net.HttpURLConnection#connect",
+        "java.net.HttpURLConnection#getInputStream",
+        "java.net.HttpURLConnection#getOutputStream",
+        "java.net.HttpURLConnection#getResponseCode",
+
+        // Threads
+        "java.lang.Thread#join",
+        "java.lang.Thread#sleep",
+        "java.util.concurrent.CountDownLatch#await",
+        "java.util.concurrent.Future#get",
+        "java.util.concurrent.FutureTask#get",
+
+        // Play Services
+        "com.google.android.gms.common.api.GoogleApiClient#blockingConnect",
+        "com.google.android.gms.common.api.PendingResult#await"
+    );
+
+    private static final BlockingApiCatalog DEFAULT = new BlockingApiCatalog(getConfiguredEntries());
+
+    // Classes of the entries, for each method name
+    private final Map<String, List<String>> classesByMethod = new HashMap<>();
+
+    /**
+     * Constructor
+     * @param entries the entries, as class#method
+     */
+    public BlockingApiCatalog(List<String> entries)
+    {
+        for(String entry: entries)
+        {
+            int separator = entry.lastIndexOf(METHOD_SEPARATOR);
+            if(separator<=0 || separator==entry.length()-1) continue;
+
+            String methodName = entry.substring(separator+1).trim();
+            List<String> classes = classesByMethod.get(methodName);
+            if(classes==null)
+            {
+                classes = new ArrayList<>();
+                classesByMethod.put(methodName, classes);
+            }
+            classes.add(entry.substring(0, separator).trim());
+        }
+    }
+
+    /**
+     * Getter
+     * @return the catalog with the default entries and the ones of the system property
+     */
+    public static BlockingApiCatalog getDefault()
+    {
+        return DEFAULT;
+    }
+
+    /**
+     * Getter
+     * @return the names of all the methods in the catalog (to filter the invocations before resolving them)
+     */
+    public Set<String> getMethodNames()
+    {
+        return classesByMethod.keySet();
+    }
+
+    /**
+     * Gets the catalog class a resolved method belongs to
+     * @param method the method
+     * @return the fully qualified name of the class in the catalog, null if the method is not a blocking API
+     */
+    public String getBlockingClass(JavaParser.ResolvedMethod method)
+    {
+        List<String> classes = classesByMethod.get(method.getName());
+        if(classes==null) return null;
+
+        JavaParser.ResolvedClass containingClass = method.getContainingClass();
+        for(String className: classes)
+        {
+            if(containingClass.getName().equals(className) || containingClass.isSubclassOf(className, false))
+            {
+                return className;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the catalog class a call in the bytecode belongs to
+     * @param context the context of the lint request
+     * @param owner the VM name of the owner of the call
+     * @param methodName the name of the called method
+     * @return the fully qualified name of the class in the catalog, null if the call is not a blocking API
+     */
+    public String getBlockingClass(ClassContext context, String owner, String methodName)
+    {
+        List<String> classes = classesByMethod.get(methodName);
+        if(classes==null) return null;
+
+        // Nested classes are written with a dot in the catalog and with a dollar sign in the bytecode
+        for(String name = owner; name!=null; name = context.getDriver().getSuperClass(name))
+        {
+            String className = ClassContext.getFqcn(name);
+            if(classes.contains(className))
+            {
+                return className;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper to read the entries from the defaults and the system property
+     * @return all the entries
+     */
+    private static List<String> getConfiguredEntries()
+    {
+        List<String> entries = new ArrayList<>(DEFAULT_ENTRIES);
+        String property = System.getProperty(CATALOG_PROPERTY);
+        if(property!=null)
+        {
+            for(String entry: property.split(ENTRY_SEPARATOR))
+            {
+                if(!entry.trim().isEmpty()) entries.add(entry.trim());
+            }
+        }
+        return entries;
+    }
+}
@@ -0,0 +1,506 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.detector.api.ClassContext;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.InsnList;
+import org.objectweb.asm.tree.InvokeDynamicInsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LocalVariableNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TryCatchBlockNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Analyzer;
+import org.objectweb.asm.tree.analysis.AnalyzerException;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceInterpreter;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Some utilities for the lint detectors that work on compiled classes
+ */
+public class BytecodeUtils
+{
+    // Prefix of the field that references the enclosing instance of an inner class
+    private static final String OUTER_INSTANCE_FIELD = "this$";
+
+    // Caught types that include all the unchecked exceptions (Error aside)
+    private static final List<String> UNCHECKED_CATCH_ALL_TYPES = Arrays.asList("java/lang/Throwable", "java/lang/Exception", "java/lang/RuntimeException");
+
+    /**
+     * Checks if a class (given by its VM name, e.g. android/app/Activity) is the given class or one of its subclasses
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class to check
+     * @param className the expected class name (e.g. android.content.ContextWrapper)
+     * @return true if the class is a subclass of the expected class
+     */
+    public static boolean isSubclassOf(ClassContext context, String internalName, String className)
+    {
+        String expected = ClassContext.getInternalName(className);
+        Integer expectedKinds = FrameworkTypeIndex.getRootKinds(className);
+        String name = internalName;
+        while(name!=null)
+        {
+            if(expected.equals(name))
+            {
+                return true;
+            }
+
+            // Lint does not load android.jar, so the walk would stop at the first framework class: use the index when
+            // the expected class is the root of its kinds (a known class has all those kinds only if it extends it)
+            if(expectedKinds!=null)
+            {
+                Integer kinds = FrameworkTypeIndex.getKnownKinds(ClassContext.getFqcn(name));
+                if(kinds!=null)
+                {
+                    return (kinds & expectedKinds)==expectedKinds;
+                }
+            }
+            name = context.getDriver().getSuperClass(name);
+        }
+        return false;
+    }
+
+    /**
+     * Gets the kind bits of a class (given by its VM name), walking its superclasses up to the first class in the
+     * index (see FrameworkTypeIndex)
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class
+     * @return the kind bits (NONE if no superclass is in the index)
+     */
+    public static int getKinds(ClassContext context, String internalName)
+    {
+        for(String name = internalName; name!=null; name = context.getDriver().getSuperClass(name))
+        {
+            Integer kinds = FrameworkTypeIndex.getKnownKinds(ClassContext.getFqcn(name));
+            if(kinds!=null)
+            {
+                return kinds;
+            }
+        }
+        return FrameworkTypeIndex.NONE;
+    }
+
+    /**
+     * Checks if the given class is an activity or a fragment
+     * @param context the context of the lint request
+     * @param classNode the class to check
+     * @return true if the class is an activity or a fragment
+     */
+    public static boolean isActivityOrFragment(ClassContext context, ClassNode classNode)
+    {
+        return isActivityOrFragment(context, classNode.name);
+    }
+
+    /**
+     * Checks if the given class (given by its VM name) is an activity or a fragment
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class to check
+     * @return true if the class is an activity or a fragment
+     */
+    public static boolean isActivityOrFragment(ClassContext context, String internalName)
+    {
+        return isSubclassOf(context, internalName, Utils.CONTEXT_WRAPPER) ||
+                isSubclassOf(context, internalName, Utils.FRAGMENT_APP) ||
+                isSubclassOf(context, internalName, Utils.FRAGMENT_SUPPORT);
+    }
+
+    /**
+     * Gets the class whose instance is kept by an inner class, i.e. the type of the synthetic this$0 field the
+     * compiler adds to non-static inner, local and anonymous classes
+     * @param classNode the class to check
+     * @return the VM name of the enclosing class, null if the class does not keep a reference to it
+     */
+    public static String getCapturedOuterClass(ClassNode classNode)
+    {
+        if(classNode.fields==null) return null;
+
+        for(Object object: classNode.fields)
+        {
+            FieldNode field = (FieldNode) object;
+            if((field.access & Opcodes.ACC_SYNTHETIC)!=0 && field.name.startsWith(OUTER_INSTANCE_FIELD) && field.desc.startsWith("L"))
+            {
+                return Type.getType(field.desc).getInternalName();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the name of the field or local variable passed as the i-th argument of a call
+     * @param method the method that contains the call
+     * @param frames the frames of the method, see analyze()
+     * @param call the call instruction
+     * @param i the argument index
+     * @return the field/variable name, or an empty string if it cannot be determined statically
+     */
+    public static String getCallArgumentName(MethodNode method, Frame[] frames, MethodInsnNode call, int i)
+    {
+        int argumentCount = Type.getArgumentTypes(call.desc).length;
+        if(i>=argumentCount) return "";
+        return getCallStackValueName(method, frames, call, argumentCount-i);
+    }
+
+    /**
+     * Gets the name of the field or local variable a call is invoked on (e.g. client for client.connect())
+     * @param method the method that contains the call
+     * @param frames the frames of the method, see analyze()
+     * @param call the call instruction
+     * @return the field/variable name, or an empty string if it cannot be determined statically (or the call is static)
+     */
+    public static String getCallReceiverName(MethodNode method, Frame[] frames, MethodInsnNode call)
+    {
+        if(call.getOpcode()==Opcodes.INVOKESTATIC) return "";
+        return getCallStackValueName(method, frames, call, Type.getArgumentTypes(call.desc).length+1);
+    }
+
+    /**
+     * Helper to get the name of the field or local variable that produced a value of the stack when a call is executed
+     * @param method the method that contains the call
+     * @param frames the frames of the method, see analyze()
+     * @param call the call instruction
+     * @param depth the position of the value from the top of the stack (1 is the last argument)
+     * @return the field/variable name, or an empty string if it cannot be determined statically
+     */
+    private static String getCallStackValueName(MethodNode method, Frame[] frames, MethodInsnNode call, int depth)
+    {
+        if(frames==null) return "";
+
+        int index = method.instructions.indexOf(call);
+        Frame frame = frames[index];
+        if(frame==null) return "";
+
+        // Arguments (preceded by the receiver) are the topmost values of the stack when the call is executed
+        int stackIndex = frame.getStackSize()-depth;
+        if(stackIndex<0) return "";
+
+        SourceValue value = (SourceValue) frame.getStack(stackIndex);
+        if(value==null || value.insns.size()!=1) return "";
+
+        AbstractInsnNode source = (AbstractInsnNode) value.insns.iterator().next();
+        if(source instanceof FieldInsnNode)
+        {
+            return ((FieldInsnNode) source).name;
+        }
+        else if(source instanceof VarInsnNode && source.getOpcode()==Opcodes.ALOAD)
+        {
+            int var = ((VarInsnNode) source).var;
+
+            // A local variable that is only a copy of a field is the field itself
+            String field = getCopiedFieldName(method, frames, (SourceValue) frame.getLocal(var));
+            if(field!=null) return field;
+
+            if(method.localVariables!=null)
+            {
+                for(Object object: method.localVariables)
+                {
+                    LocalVariableNode localVariable = (LocalVariableNode) object;
+                    if(localVariable.index==var &&
+                            method.instructions.indexOf(localVariable.start)<=index &&
+                            index<method.instructions.indexOf(localVariable.end))
+                    {
+                        return localVariable.name;
+                    }
+                }
+            }
+            return "local"+var;
+        }
+        return "";
+    }
+
+    /**
+     * Helper to get the field a local variable was copied from, if all its assignments store the same field
+     * @param method the method that contains the variable
+     * @param frames the frames of the method, see analyze()
+     * @param local the value of the local variable (i.e. the instructions that stored it)
+     * @return the field name, null if the variable is not a copy of a field
+     */
+    private static String getCopiedFieldName(MethodNode method, Frame[] frames, SourceValue local)
+    {
+        if(local==null || local.insns.isEmpty()) return null;
+
+        String field = null;
+        for(Object object: local.insns)
+        {
+            AbstractInsnNode store = (AbstractInsnNode) object;
+            Frame frame = store.getOpcode()==Opcodes.ASTORE ? frames[method.instructions.indexOf(store)] : null;
+            if(frame==null || frame.getStackSize()==0) return null;
+
+            // The stored value is the top of the stack
+            SourceValue value = (SourceValue) frame.getStack(frame.getStackSize()-1);
+            if(value==null || value.insns.size()!=1) return null;
+            AbstractInsnNode source = (AbstractInsnNode) value.insns.iterator().next();
+            if(!(source instanceof FieldInsnNode)) return null;
+
+            String name = ((FieldInsnNode) source).name;
+            if(field!=null && !field.equals(name)) return null;
+            field = name;
+        }
+        return field;
+    }
+
+    /**
+     * Checks if a call is protected by a try/catch block that catches one of the given exceptions
+     * @param method the method that contains the call
+     * @param call the call instruction
+     * @param exceptions the fully qualified names of the exceptions
+     * @return true if the call is inside a matching try/catch block
+     */
+    public static boolean isInTryCatch(MethodNode method, AbstractInsnNode call, String... exceptions)
+    {
+        if(method.tryCatchBlocks==null) return false;
+
+        int index = method.instructions.indexOf(call);
+        for(Object object: method.tryCatchBlocks)
+        {
+            TryCatchBlockNode tryCatchBlock = (TryCatchBlockNode) object;
+            if(tryCatchBlock.type==null) continue;
+
+            if(method.instructions.indexOf(tryCatchBlock.start)<=index && index<method.instructions.indexOf(tryCatchBlock.end))
+            {
+                for(String exception: exceptions)
+                {
+                    if(ClassContext.getInternalName(exception).equals(tryCatchBlock.type))
+                    {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a call is in a finally block that protects all the code after another call. The compiler turns a
+     * finally block into a handler that catches everything thrown in the try body (possibly split in several ranges)
+     * and rethrows it, plus a copy of the block after the try body: the protected ranges must start right after the
+     * previous call (or just before it, if the try body starts with it) and cover the code after it, the handler must contain the same call (so that e.g. the monitor exit handler of a synchronized
+     * block does not count) and the call must be in the handler or in a copy: after the try body, or between two
+     * ranges (before a return in the try body)
+     * @param method the method that contains the calls
+     * @param previous the previous call (e.g. the acquisition of a lock)
+     * @param call the call to check (e.g. the release of the lock)
+     * @return true if the call is executed even if the code between the two calls throws
+     */
+    public static boolean isInFinally(MethodNode method, AbstractInsnNode previous, AbstractInsnNode call)
+    {
+        if(method.tryCatchBlocks==null) return false;
+
+        InsnList instructions = method.instructions;
+        int previousIndex = instructions.indexOf(previous);
+        int index = instructions.indexOf(call);
+        for(Object object: method.tryCatchBlocks)
+        {
+            TryCatchBlockNode tryCatchBlock = (TryCatchBlockNode) object;
+            if(tryCatchBlock.type!=null) continue;
+
+            // All the ranges of the handler
+            int start = Integer.MAX_VALUE;
+            int end = -1;
+            boolean isCallProtected = false;
+            for(Object other: method.tryCatchBlocks)
+            {
+                if(((TryCatchBlockNode) other).handler==tryCatchBlock.handler)
+                {
+                    int otherStart = instructions.indexOf(((TryCatchBlockNode) other).start);
+                    int otherEnd = instructions.indexOf(((TryCatchBlockNode) other).end);
+                    start = Math.min(start, otherStart);
+                    end = Math.max(end, otherEnd);
+                    isCallProtected |= otherStart<=index && index<otherEnd;
+                }
+            }
+            if(!isRangeRightAfter(instructions, previousIndex, start, end)) continue;
+
+            // The handler, up to the rethrow, must contain the same call
+            int handler = instructions.indexOf(tryCatchBlock.handler);
+            int handlerEnd = getNextExit(instructions, handler);
+            if(!containsSameCall(instructions, handler, handlerEnd, (MethodInsnNode) call)) continue;
+
+            // The call is in the handler, in a copy between two ranges or in the copy right after the try body
+            if((handler<=index && index<handlerEnd) || (start<index && index<end && !isCallProtected) ||
+                    (end<=index && index<=getNextExit(instructions, end)))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a call is executed even if the code after another call throws: it is in a finally block (see
+     * isInFinally()), in the handler of a catch whose range starts right after the other call (that runs only because
+     * the code threw), or on the normal path right after that range when the handler catches all the unchecked
+     * exceptions, makes the same call and rethrows (the source equivalent is ControlFlowUtils.isExecutedOnException())
+     * @param method the method that contains the calls
+     * @param previous the previous call (e.g. the acquisition of a lock)
+     * @param call the call to check (e.g. the release of the lock)
+     * @return true if the call, or an equivalent one, runs whether or not the code between the two calls throws
+     */
+    public static boolean isExecutedOnException(MethodNode method, AbstractInsnNode previous, AbstractInsnNode call)
+    {
+        if(isInFinally(method, previous, call)) return true;
+        if(method.tryCatchBlocks==null) return false;
+
+        InsnList instructions = method.instructions;
+        int previousIndex = instructions.indexOf(previous);
+        int index = instructions.indexOf(call);
+        for(Object object: method.tryCatchBlocks)
+        {
+            TryCatchBlockNode tryCatchBlock = (TryCatchBlockNode) object;
+            if(tryCatchBlock.type==null) continue;
+
+            int start = instructions.indexOf(tryCatchBlock.start);
+            int end = instructions.indexOf(tryCatchBlock.end);
+            if(!isRangeRightAfter(instructions, previousIndex, start, end)) continue;
+
+            // A call in the handler runs only on the exceptional path
+            int handler = instructions.indexOf(tryCatchBlock.handler);
+            int handlerEnd = getNextExit(instructions, handler);
+            if(handler<=index && index<handlerEnd) return true;
+
+            // A call on the normal path needs a handler of all the unchecked exceptions that makes the same call and rethrows
+            if(!UNCHECKED_CATCH_ALL_TYPES.contains(tryCatchBlock.type) || handlerEnd>=instructions.size() ||
+                    instructions.get(handlerEnd).getOpcode()!=Opcodes.ATHROW || !containsSameCall(instructions, handler, handlerEnd, (MethodInsnNode) call))
+            {
+                continue;
+            }
+
+            // The call is right after the range, or where the range jumps to when it completes (after the handlers)
+            int exit = getNextExit(instructions, end);
+            if(end<=index && index<=exit) return true;
+            if(exit<instructions.size() && instructions.get(exit).getOpcode()==Opcodes.GOTO)
+            {
+                int target = instructions.indexOf(((JumpInsnNode) instructions.get(exit)).label);
+                if(target<=index && index<=getNextExit(instructions, target)) return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to check if a protected range covers all the code after a call: it starts right after the call, or
+     * before it if nothing can throw in between (e.g. a try body that starts with the call)
+     * @param instructions the instructions of the method
+     * @param previousIndex the index of the call
+     * @param start the index of the first instruction of the range
+     * @param end the index after the last instruction of the range
+     * @return true if the range covers the code after the call
+     */
+    private static boolean isRangeRightAfter(InsnList instructions, int previousIndex, int start, int end)
+    {
+        if(start>previousIndex)
+        {
+            return isOnlyPseudoInstructions(instructions, previousIndex+1, start);
+        }
+        return end>previousIndex && !containsCall(instructions, start, previousIndex);
+    }
+
+    /**
+     * Helper to check if there are only labels, line numbers and frames in a range of instructions
+     * @param instructions the instructions of the method
+     * @param from the index of the first instruction
+     * @param to the index after the last instruction
+     * @return true if no instruction of the range is executed
+     */
+    private static boolean isOnlyPseudoInstructions(InsnList instructions, int from, int to)
+    {
+        for(int i=from; i<to; i++)
+        {
+            if(instructions.get(i).getOpcode()>=0)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper to check if a range of instructions contains a call or enters a monitor (e.g. the code before a call
+     * in the same try body, that may throw before it)
+     * @param instructions the instructions of the method
+     * @param from the index of the first instruction
+     * @param to the index after the last instruction
+     * @return true if a method is called or a monitor is entered in the range
+     */
+    private static boolean containsCall(InsnList instructions, int from, int to)
+    {
+        for(int i=from; i<to; i++)
+        {
+            AbstractInsnNode instruction = instructions.get(i);
+            if(instruction instanceof MethodInsnNode || instruction instanceof InvokeDynamicInsnNode || instruction.getOpcode()==Opcodes.MONITORENTER)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to find the first instruction, from a given one, after which the execution does not continue with the
+     * next instruction (a jump, a return or a throw)
+     * @param instructions the instructions of the method
+     * @param from the index of the first instruction
+     * @return the index of that instruction (the size of the method if there is none)
+     */
+    private static int getNextExit(InsnList instructions, int from)
+    {
+        for(int i=from; i<instructions.size(); i++)
+        {
+            int opcode = instructions.get(i).getOpcode();
+            if(opcode==Opcodes.GOTO || opcode==Opcodes.ATHROW || (opcode>=Opcodes.IRETURN && opcode<=Opcodes.RETURN))
+            {
+                return i;
+            }
+        }
+        return instructions.size();
+    }
+
+    /**
+     * Helper to check if a range of instructions contains a call to the same method as a given call
+     * @param instructions the instructions of the method
+     * @param from the index of the first instruction
+     * @param to the index after the last instruction
+     * @param call the call
+     * @return true if a call with the same owner, name and descriptor is found
+     */
+    private static boolean containsSameCall(InsnList instructions, int from, int to, MethodInsnNode call)
+    {
+        for(int i=from; i<to; i++)
+        {
+            AbstractInsnNode instruction = instructions.get(i);
+            if(instruction instanceof MethodInsnNode && ((MethodInsnNode) instruction).owner.equals(call.owner) &&
+                    ((MethodInsnNode) instruction).name.equals(call.name) && ((MethodInsnNode) instruction).desc.equals(call.desc))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Runs the data flow analysis of a method, that tells which instructions produced each stack value
+     * @param classNode the class that contains the method
+     * @param method the method to analyze
+     * @return the frames of the method, or null if the analysis failed
+     */
+    public static Frame[] analyze(ClassNode classNode, MethodNode method)
+    {
+        try
+        {
+            return new Analyzer(new SourceInterpreter()).analyze(classNode.name, method);
+        }
+        catch(AnalyzerException e)
+        {
+            return null;
+        }
+    }
+}
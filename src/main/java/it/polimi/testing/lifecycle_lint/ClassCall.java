@@ -0,0 +1,42 @@
+package it.polimi.testing.lifecycle_lint;
+
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+/**
+ * A call found in the bytecode, with the method that contains it
+ */
+public class ClassCall
+{
+    private final MethodNode method;
+    private final MethodInsnNode call;
+
+    /**
+     * Constructor
+     * @param method the method that contains the call
+     * @param call the call instruction
+     */
+    public ClassCall(MethodNode method, MethodInsnNode call)
+    {
+        this.method = method;
+        this.call = call;
+    }
+
+    /**
+     * Getter
+     * @return the method that contains the call
+     */
+    public MethodNode getMethod()
+    {
+        return method;
+    }
+
+    /**
+     * Getter
+     * @return the call instruction
+     */
+    public MethodInsnNode getCall()
+    {
+        return call;
+    }
+}
@@ -0,0 +1,388 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.ast.Block;
+import lombok.ast.Catch;
+import lombok.ast.ConstructorDeclaration;
+import lombok.ast.DoWhile;
+import lombok.ast.ExpressionStatement;
+import lombok.ast.For;
+import lombok.ast.ForEach;
+import lombok.ast.If;
+import lombok.ast.InlineIfExpression;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.Node;
+import lombok.ast.Return;
+import lombok.ast.Statement;
+import lombok.ast.Throw;
+import lombok.ast.Try;
+import lombok.ast.While;
+
+/**
+ * Lightweight intra-procedural control flow utilities. Instead of building a full graph, the questions the detectors
+ * ask (can these two calls both run in the same execution of the method? does this call run more than once?) are
+ * answered walking the ancestors of the nodes, so each query is linear in the nesting depth of the method
+ */
+public class ControlFlowUtils
+{
+    // Caught types that include all the unchecked exceptions (Error aside)
+    private static final List<String> UNCHECKED_CATCH_ALL_TYPES = Arrays.asList("Throwable", "Exception", "RuntimeException");
+
+    /**
+     * Gets the method or constructor that contains a node
+     * @param node the node
+     * @return the innermost enclosing method or constructor, null if there is none
+     */
+    public static Node getEnclosingMethod(Node node)
+    {
+        for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+        {
+            if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+            {
+                return parent;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Checks if two nodes can never be executed in the same execution of their method, i.e. they are on different
+     * branches of an if/else (or of a conditional expression) or the first one is in a branch that always returns
+     * before reaching the second one
+     * @param first the first node
+     * @param second the second node
+     * @return true if the nodes are mutually exclusive, false if they may both be executed (or we cannot tell)
+     */
+    public static boolean areMutuallyExclusive(Node first, Node second)
+    {
+        Node method = getEnclosingMethod(first);
+        if(method==null || method!=getEnclosingMethod(second)) return false;
+
+        // Ancestors of the first node, each mapped to the child on the path to the node
+        Map<Node, Node> firstPath = new IdentityHashMap<>();
+        for(Node child = first; child!=method; child = child.getParent())
+        {
+            firstPath.put(child.getParent(), child);
+        }
+
+        // Lowest common ancestor
+        Node secondChild = second;
+        Node ancestor = second.getParent();
+        while(ancestor!=null && !firstPath.containsKey(ancestor))
+        {
+            secondChild = ancestor;
+            ancestor = ancestor.getParent();
+        }
+        if(ancestor==null) return false;
+        Node firstChild = firstPath.get(ancestor);
+
+        // Then and else branches
+        if(ancestor instanceof If)
+        {
+            If ifStatement = (If) ancestor;
+            return isPair(firstChild, secondChild, ifStatement.astStatement(), ifStatement.astElseStatement());
+        }
+        if(ancestor instanceof InlineIfExpression)
+        {
+            InlineIfExpression inlineIf = (InlineIfExpression) ancestor;
+            return isPair(firstChild, secondChild, inlineIf.astIfTrue(), inlineIf.astIfFalse());
+        }
+
+        // Statements of the same block: the one that comes first must leave the method before the other
+        if(ancestor instanceof Block)
+        {
+            return isBefore(firstChild, secondChild) ? leavesBefore(first, firstChild) : leavesBefore(second, secondChild);
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a node may be executed more than once in the same execution of its method
+     * @param node the node
+     * @return true if the node is inside a loop
+     */
+    public static boolean isInLoop(Node node)
+    {
+        for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+        {
+            if(parent instanceof For || parent instanceof ForEach || parent instanceof While || parent instanceof DoWhile)
+            {
+                return true;
+            }
+            if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a node is inside a finally block, i.e. it is executed even if an exception is thrown in the try body
+     * @param node the node
+     * @return true if one of the enclosing blocks of the method is a finally block
+     */
+    public static boolean isInFinally(Node node)
+    {
+        for(Node child = node, parent = node.getParent(); parent!=null; child = parent, parent = parent.getParent())
+        {
+            if(parent instanceof Try && ((Try) parent).astFinally()==child)
+            {
+                return true;
+            }
+            if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a node is inside a finally block whose try starts right after another node, i.e. it is executed even
+     * if anything after the other node throws
+     * @param previous the other node (e.g. the acquisition of a lock)
+     * @param node the node (e.g. the release of the lock)
+     * @return true if one of the enclosing finally blocks of the method belongs to a try that is the statement right
+     *         after the other node, or whose body starts with it
+     */
+    public static boolean isInFinallyAfter(Node previous, Node node)
+    {
+        for(Node child = node, parent = node.getParent(); parent!=null; child = parent, parent = parent.getParent())
+        {
+            if(parent instanceof Try && ((Try) parent).astFinally()==child && startsAfter((Try) parent, previous))
+            {
+                return true;
+            }
+            if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+            {
+                return false;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if a node is executed even if the code after another node throws: it is in a finally block that protects
+     * the code after the other node (see isInFinallyAfter()), in a catch of the try that starts right after it (that
+     * runs only because the code threw), or right after that try (or at the end of its body) when one of its catches
+     * of all the unchecked exceptions makes the same call and rethrows, e.g.
+     * lock.acquire(); try { work(); } catch(RuntimeException e) { lock.release(); throw e; } lock.release();
+     * @param previous the other node (e.g. the acquisition of a lock)
+     * @param node the node to check (e.g. the release of the lock)
+     * @param sameCalls the nodes that are equivalent to the node (e.g. all the releases of the same lock)
+     * @return true if the node, or an equivalent one, runs whether or not the code after the other node throws
+     */
+    public static boolean isExecutedOnException(Node previous, Node node, Iterable<? extends Node> sameCalls)
+    {
+        if(isInFinallyAfter(previous, node)) return true;
+
+        Try tryNode = getTryStartingAfter(previous);
+        if(tryNode==null || getEnclosingMethod(tryNode)!=getEnclosingMethod(node)) return false;
+
+        // A call in a catch runs only on the exceptional path
+        for(Catch catchNode: tryNode.astCatches())
+        {
+            if(isDescendantOf(node, catchNode.astBody())) return true;
+        }
+
+        // A call on the normal path needs a rethrowing catch that makes the same call
+        Statement last = tryNode.astBody()!=null && !tryNode.astBody().astContents().isEmpty() ? tryNode.astBody().astContents().last() : null;
+        if(!isStatementOf(getNextStatement(tryNode), node) && !isStatementOf(last, node)) return false;
+        for(Catch catchNode: tryNode.astCatches())
+        {
+            if(isRethrowingCatchAll(catchNode))
+            {
+                for(Node other: sameCalls)
+                {
+                    if(isDescendantOf(other, catchNode.astBody())) return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to get the try that starts right after an expression: the try whose body starts with it, or the
+     * statement after it
+     * @param expression the expression
+     * @return the try, null if there is none
+     */
+    private static Try getTryStartingAfter(Node expression)
+    {
+        Node statement = expression.getParent();
+        if(!(statement instanceof ExpressionStatement) || !(statement.getParent() instanceof Block)) return null;
+
+        Block block = (Block) statement.getParent();
+        if(block.getParent() instanceof Try && ((Try) block.getParent()).astBody()==block && block.astContents().first()==statement)
+        {
+            return (Try) block.getParent();
+        }
+        Statement next = getNextStatement((Statement) statement);
+        return next instanceof Try ? (Try) next : null;
+    }
+
+    /**
+     * Helper to get the statement that follows another one in the same block
+     * @param statement the statement
+     * @return the next statement, null if it is the last one or it is not in a block
+     */
+    private static Statement getNextStatement(Statement statement)
+    {
+        if(!(statement.getParent() instanceof Block)) return null;
+
+        boolean found = false;
+        for(Statement other: ((Block) statement.getParent()).astContents())
+        {
+            if(found) return other;
+            found = other==statement;
+        }
+        return null;
+    }
+
+    /**
+     * Helper to check if a catch handles all the unchecked exceptions and ends rethrowing
+     * @param catchNode the catch
+     * @return true if it catches Throwable, Exception or RuntimeException and its last statement is a throw
+     */
+    private static boolean isRethrowingCatchAll(Catch catchNode)
+    {
+        Block body = catchNode.astBody();
+        if(body==null || body.astContents().isEmpty() || !(body.astContents().last() instanceof Throw)) return false;
+
+        String type = catchNode.astExceptionDeclaration().astTypeReference().getTypeName();
+        return UNCHECKED_CATCH_ALL_TYPES.contains(type.startsWith("java.lang.") ? type.substring("java.lang.".length()) : type);
+    }
+
+    /**
+     * Helper to check if a node is inside another one
+     * @param node the node
+     * @param ancestor the other node (may be null)
+     * @return true if the other node is an ancestor of the node
+     */
+    private static boolean isDescendantOf(Node node, Node ancestor)
+    {
+        if(ancestor==null) return false;
+        for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+        {
+            if(parent==ancestor) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Helper to check if a try starts right after an expression: the expression is the statement before the try or
+     * the first statement of its body
+     * @param tryNode the try
+     * @param expression the expression
+     * @return true if nothing can run between the expression and the try
+     */
+    private static boolean startsAfter(Try tryNode, Node expression)
+    {
+        Block body = tryNode.astBody();
+        if(body!=null && !body.astContents().isEmpty() && isStatementOf(body.astContents().first(), expression))
+        {
+            return true;
+        }
+        if(!(tryNode.getParent() instanceof Block))
+        {
+            return false;
+        }
+
+        Statement before = null;
+        for(Statement statement: ((Block) tryNode.getParent()).astContents())
+        {
+            if(statement==tryNode)
+            {
+                return before!=null && isStatementOf(before, expression);
+            }
+            before = statement;
+        }
+        return false;
+    }
+
+    /**
+     * Helper to check if a statement is just an expression
+     * @param statement the statement
+     * @param expression the expression
+     * @return true if the statement evaluates only the expression
+     */
+    private static boolean isStatementOf(Statement statement, Node expression)
+    {
+        return statement instanceof ExpressionStatement && ((ExpressionStatement) statement).astExpression()==expression;
+    }
+
+    /**
+     * Checks if a node comes before another one in the source
+     * @param first the first node
+     * @param second the second node
+     * @return true if the first node starts before the second one
+     */
+    public static boolean isBefore(Node first, Node second)
+    {
+        return first.getPosition()!=null && second.getPosition()!=null && first.getPosition().getStart()<second.getPosition().getStart();
+    }
+
+    /**
+     * Helper to check if two nodes are the two given branches, in any order
+     * @param first the first node
+     * @param second the second node
+     * @param branch1 the first branch
+     * @param branch2 the second branch
+     * @return true if the nodes are the two branches
+     */
+    private static boolean isPair(Node first, Node second, Node branch1, Node branch2)
+    {
+        return branch1!=null && branch2!=null && ((first==branch1 && second==branch2) || (first==branch2 && second==branch1));
+    }
+
+    /**
+     * Helper to check if, after executing a node, the method always returns (or throws) before executing the
+     * statement that follows the given ancestor
+     * @param node the node
+     * @param statement an ancestor of the node, that is a statement of a block
+     * @return true if one of the statements between the node and the ancestor always terminates the method
+     */
+    private static boolean leavesBefore(Node node, Node statement)
+    {
+        for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+        {
+            // The body of a try may not complete, and the catch blocks may go on
+            boolean isTryBody = parent.getParent() instanceof Try && ((Try) parent.getParent()).astBody()==parent;
+            if(parent instanceof Statement && !isTryBody && alwaysTerminates((Statement) parent))
+            {
+                return true;
+            }
+            if(parent==statement) break;
+        }
+        return false;
+    }
+
+    /**
+     * Helper to check if a statement always ends with a return or a throw
+     * @param statement the statement
+     * @return true if no execution of the statement completes normally
+     */
+    private static boolean alwaysTerminates(Statement statement)
+    {
+        if(statement instanceof Return || statement instanceof Throw)
+        {
+            return true;
+        }
+        if(statement instanceof Block)
+        {
+            Block block = (Block) statement;
+            return !block.astContents().isEmpty() && alwaysTerminates(block.astContents().last());
+        }
+        if(statement instanceof If)
+        {
+            If ifStatement = (If) statement;
+            return ifStatement.astElseStatement()!=null && alwaysTerminates(ifStatement.astStatement()) && alwaysTerminates(ifStatement.astElseStatement());
+        }
+        return false;
+    }
+}
@@ -0,0 +1,298 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.client.api.JavaParser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Precomputed hierarchy of the framework, support and Play Services classes the detectors are interested in. Each
+ * class name is mapped to "kind" bits that already include the kinds of all its superclasses, so that classifying a
+ * class only needs to walk the application classes, up to the first framework class found in the table.
+ * Library classes that are not in the table are learned the first time a walk goes through them: their hierarchy is
+ * the same for every project, so the learned table is shared by all the projects checked in the same JVM (e.g. batch
+ * runs), while application classes are never cached
+ */
+public class FrameworkTypeIndex
+{
+    // Kind bits
+    public static final int NONE = 0;
+    public static final int CONTEXT_WRAPPER = 1;
+    public static final int FRAGMENT_APP = 1<<1;
+    public static final int FRAGMENT_SUPPORT = 1<<2;
+    public static final int LOCAL_BROADCAST_MANAGER = 1<<3;
+    public static final int GOOGLE_API_CLIENT = 1<<4;
+    public static final int HANDLER = 1<<5;
+    public static final int BROADCAST_RECEIVER = 1<<6;
+    public static final int ACTIVITY = 1<<7;
+    public static final int SERVICE = 1<<8;
+    public static final int APPLICATION = 1<<9;
+    public static final int VIEW = 1<<10;
+
+    // Packages of the libraries shared by all projects (their classes never extend application classes)
+    private static final List<String> SHARED_PACKAGES = Arrays.asList("java.", "javax.", "android.", "com.google.android.gms.");
+
+    // Kind bits for each known class
+    private static final Map<String, Integer> INDEX = new HashMap<>();
+
+    // Classes that are the root of their kind bits (all the classes with those bits are their subclasses)
+    private static final Set<String> ROOTS = new HashSet<>();
+
+    // Kind bits of the library classes found while walking the hierarchies
+    private static final Map<String, Integer> LEARNED = new ConcurrentHashMap<>();
+    static
+    {
+        // Roots
+        add(NONE, "java.lang.Object", "android.content.Context");
+        addRoot(VIEW, "android.view.View");
+        addRoot(CONTEXT_WRAPPER, Utils.CONTEXT_WRAPPER);
+        addRoot(FRAGMENT_APP, Utils.FRAGMENT_APP);
+        addRoot(FRAGMENT_SUPPORT, Utils.FRAGMENT_SUPPORT);
+        addRoot(LOCAL_BROADCAST_MANAGER, "android.support.v4.content.LocalBroadcastManager");
+        addRoot(GOOGLE_API_CLIENT, "com.google.android.gms.common.api.GoogleApiClient");
+        addRoot(HANDLER, "android.os.Handler");
+        addRoot(BROADCAST_RECEIVER, "android.content.BroadcastReceiver");
+        addRoot(CONTEXT_WRAPPER | ACTIVITY, "android.app.Activity");
+        addRoot(CONTEXT_WRAPPER | SERVICE, "android.app.Service");
+        addRoot(CONTEXT_WRAPPER | APPLICATION, "android.app.Application");
+
+        // Framework views and layouts
+        add(VIEW,
+            "android.view.ViewGroup",
+            "android.view.SurfaceView",
+            "android.view.TextureView",
+            "android.widget.TextView",
+            "android.widget.EditText",
+            "android.widget.AutoCompleteTextView",
+            "android.widget.Button",
+            "android.widget.CompoundButton",
+            "android.widget.CheckBox",
+            "android.widget.RadioButton",
+            "android.widget.Switch",
+            "android.widget.ToggleButton",
+            "android.widget.ImageView",
+            "android.widget.ImageButton",
+            "android.widget.ProgressBar",
+            "android.widget.AbsSeekBar",
+            "android.widget.SeekBar",
+            "android.widget.RatingBar",
+            "android.widget.VideoView",
+            "android.widget.LinearLayout",
+            "android.widget.FrameLayout",
+            "android.widget.RelativeLayout",
+            "android.widget.AbsoluteLayout",
+            "android.widget.GridLayout",
+            "android.widget.TableLayout",
+            "android.widget.TableRow",
+            "android.widget.RadioGroup",
+            "android.widget.ScrollView",
+            "android.widget.HorizontalScrollView",
+            "android.widget.AdapterView",
+            "android.widget.AbsListView",
+            "android.widget.ListView",
+            "android.widget.GridView",
+            "android.widget.AbsSpinner",
+            "android.widget.Spinner",
+            "android.widget.ViewAnimator",
+            "android.widget.ViewFlipper",
+            "android.widget.Toolbar",
+            "android.webkit.WebView"
+        );
+
+        // Support library views and layouts
+        add(VIEW,
+            "android.support.v4.view.ViewPager",
+            "android.support.v4.widget.DrawerLayout",
+            "android.support.v4.widget.NestedScrollView",
+            "android.support.v4.widget.SwipeRefreshLayout",
+            "android.support.v7.widget.RecyclerView",
+            "android.support.v7.widget.CardView",
+            "android.support.v7.widget.Toolbar",
+            "android.support.v7.widget.AppCompatTextView",
+            "android.support.v7.widget.AppCompatEditText",
+            "android.support.v7.widget.AppCompatButton",
+            "android.support.v7.widget.AppCompatImageView",
+            "android.support.design.widget.CoordinatorLayout"
+        );
+
+        // Framework context wrappers
+        add(CONTEXT_WRAPPER,
+            "android.content.MutableContextWrapper",
+            "android.view.ContextThemeWrapper",
+            "android.app.backup.BackupAgent",
+            "android.app.backup.BackupAgentHelper"
+        );
+
+        // Framework activities
+        add(CONTEXT_WRAPPER | ACTIVITY,
+            "android.app.ActivityGroup",
+            "android.app.AliasActivity",
+            "android.app.ExpandableListActivity",
+            "android.app.LauncherActivity",
+            "android.app.ListActivity",
+            "android.app.NativeActivity",
+            "android.app.TabActivity",
+            "android.preference.PreferenceActivity",
+            "android.accounts.AccountAuthenticatorActivity"
+        );
+
+        // Framework services
+        add(CONTEXT_WRAPPER | SERVICE,
+            "android.app.IntentService",
+            "android.app.job.JobService",
+            "android.accessibilityservice.AccessibilityService",
+            "android.inputmethodservice.AbstractInputMethodService",
+            "android.inputmethodservice.InputMethodService",
+            "android.service.dreams.DreamService",
+            "android.service.wallpaper.WallpaperService",
+            "android.widget.RemoteViewsService"
+        );
+
+        // Support library context wrappers and activities
+        add(CONTEXT_WRAPPER,
+            "android.support.v7.view.ContextThemeWrapper",
+            "android.support.v7.widget.TintContextWrapper"
+        );
+        add(CONTEXT_WRAPPER | ACTIVITY,
+            "android.support.v4.app.FragmentActivity",
+            "android.support.v7.app.AppCompatActivity",
+            "android.support.v7.app.ActionBarActivity"
+        );
+
+        // Framework fragments
+        add(FRAGMENT_APP,
+            "android.app.DialogFragment",
+            "android.app.ListFragment",
+            "android.preference.PreferenceFragment",
+            "android.webkit.WebViewFragment"
+        );
+
+        // Support library fragments
+        add(FRAGMENT_SUPPORT,
+            "android.support.v4.app.DialogFragment",
+            "android.support.v4.app.ListFragment",
+            "android.support.v7.app.AppCompatDialogFragment",
+            "android.support.v7.preference.PreferenceFragmentCompat"
+        );
+    }
+
+    /**
+     * Helper to fill the index
+     * @param kinds the kind bits
+     * @param classNames the fully qualified names of the classes
+     */
+    private static void add(int kinds, String... classNames)
+    {
+        for(String className: classNames)
+        {
+            INDEX.put(className, kinds);
+        }
+    }
+
+    /**
+     * Helper to fill the index with the root of some kind bits
+     * @param kinds the kind bits
+     * @param className the fully qualified name of the class
+     */
+    private static void addRoot(int kinds, String className)
+    {
+        add(kinds, className);
+        ROOTS.add(className);
+    }
+
+    /**
+     * Gets the kind bits of a class that is the root of its kinds, so that a class is one of its subclasses if and
+     * only if it has all those kind bits (e.g. android.app.Activity, but not android.widget.TextView, whose bits are
+     * shared by all views)
+     * @param className the fully qualified name of the class
+     * @return the kind bits, or null if the class is not the root of its kinds
+     */
+    public static Integer getRootKinds(String className)
+    {
+        return ROOTS.contains(className) ? INDEX.get(className) : null;
+    }
+
+    /**
+     * Gets the kind bits of a known class
+     * @param className the fully qualified name of the class
+     * @return the kind bits, or null if the class is not in the index
+     */
+    public static Integer getKnownKinds(String className)
+    {
+        Integer kinds = INDEX.get(className);
+        return kinds!=null ? kinds : LEARNED.get(className);
+    }
+
+    /**
+     * Getter
+     * @return the number of library classes learned so far
+     */
+    public static int getLearnedCount()
+    {
+        return LEARNED.size();
+    }
+
+    /**
+     * Gets the kind bits of a class, walking its superclasses up to the first class in the index
+     * @param resolvedClass the class
+     * @return the kind bits (NONE if no superclass is in the index)
+     */
+    public static int getKinds(JavaParser.ResolvedClass resolvedClass)
+    {
+        List<String> libraryClasses = null;
+        Integer result = null;
+        for(JavaParser.ResolvedClass current = resolvedClass; current!=null; current = current.getSuperClass())
+        {
+            String name = current.getName();
+            result = getKnownKinds(name);
+            if(result!=null)
+            {
+                break;
+            }
+
+            // Remember the library classes we walk through, they get the kinds of the first known superclass
+            if(isSharedLibraryClass(name))
+            {
+                if(libraryClasses==null) libraryClasses = new ArrayList<>();
+                libraryClasses.add(name);
+            }
+        }
+
+        // If the walk stopped before a known class (incomplete classpath) nothing is learned
+        if(result==null)
+        {
+            return NONE;
+        }
+        if(libraryClasses!=null)
+        {
+            for(String name: libraryClasses)
+            {
+                LEARNED.put(name, result);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper to check if a class belongs to the libraries shared by all projects
+     * @param className the fully qualified name of the class
+     * @return true if the class is in one of the shared packages
+     */
+    private static boolean isSharedLibraryClass(String className)
+    {
+        for(String sharedPackage: SHARED_PACKAGES)
+        {
+            if(className.startsWith(sharedPackage))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
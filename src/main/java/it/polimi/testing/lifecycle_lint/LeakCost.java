@@ -0,0 +1,156 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.detector.api.Issue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Estimated cost of a lifecycle finding, to sort a large number of findings by their expected memory and battery
+ * impact. The cost multiplies three weights:
+ * - what the leak retains: a component (an Activity, a Fragment or a View, with its whole view hierarchy) or a smaller
+ *   object, based on the profile of the issue and on the kind bits of the reporting class (see FrameworkTypeIndex);
+ * - how often the callback that contains the finding runs (onResume() many times per onCreate());
+ * - whether the resource keeps hardware awake (a wake lock, the camera, the microphone).
+ * Each detector registers the profile of its issue with register(); issues without a profile cost NO_COST. The
+ * detectors append the cost to the reported messages (see appendTo()), so that it is part of the standard reports
+ */
+public class LeakCost
+{
+    // Profile bits
+    public static final int RETAINS_OBJECT = 0;
+    public static final int RETAINS_COMPONENT = 1;
+    public static final int KEEPS_HARDWARE_AWAKE = 1<<1;
+
+    // Cost of the findings of issues without a profile
+    public static final int NO_COST = 0;
+
+    // Weights of what is retained
+    private static final int COMPONENT_WEIGHT = 10;
+    private static final int OBJECT_WEIGHT = 2;
+
+    // Weight of the resources that keep hardware awake
+    private static final int HARDWARE_WEIGHT = 4;
+
+    // Weights of the callbacks by how often they run (other methods run once, as far as we know)
+    private static final int DEFAULT_FREQUENCY = 1;
+    private static final Map<String, Integer> CALLBACK_FREQUENCIES = new HashMap<>();
+    static
+    {
+        CALLBACK_FREQUENCIES.put(Utils.ON_RESTART_METHOD, 2);
+        CALLBACK_FREQUENCIES.put(Utils.ON_START_METHOD, 2);
+        CALLBACK_FREQUENCIES.put(Utils.ON_STOP_METHOD, 2);
+        CALLBACK_FREQUENCIES.put(Utils.ON_RESUME_METHOD, 4);
+        CALLBACK_FREQUENCIES.put(Utils.ON_PAUSE_METHOD, 4);
+    }
+
+    // Kinds of the classes that are components with a view hierarchy
+    private static final int COMPONENT_KINDS = FrameworkTypeIndex.ACTIVITY | FrameworkTypeIndex.FRAGMENT_APP |
+                                               FrameworkTypeIndex.FRAGMENT_SUPPORT | FrameworkTypeIndex.VIEW;
+
+    // Suffix of the reported messages with the cost, e.g. " (estimated cost: 40)"
+    private static final String REPORTED_COST_START = " (estimated cost: ";
+    private static final String REPORTED_COST_END = ")";
+
+    // Profiles by issue ID
+    private static final Map<String, Integer> PROFILES = new HashMap<>();
+
+    /**
+     * Registers the profile of an issue
+     * @param issue the issue
+     * @param profile the profile bits (RETAINS_COMPONENT, KEEPS_HARDWARE_AWAKE)
+     */
+    public static synchronized void register(Issue issue, int profile)
+    {
+        PROFILES.put(issue.getId(), profile);
+    }
+
+    /**
+     * Estimates the cost of a finding
+     * @param issueId the issue ID
+     * @param ownerKinds the kind bits of the class that contains the finding (see FrameworkTypeIndex)
+     * @param methodName the name of the method that contains the finding ("" if not known)
+     * @return the estimated cost, NO_COST if the issue has no profile
+     */
+    public static int estimate(String issueId, int ownerKinds, String methodName)
+    {
+        Integer profile;
+        synchronized(LeakCost.class)
+        {
+            profile = PROFILES.get(issueId);
+        }
+        if(profile==null) return NO_COST;
+
+        int cost = (profile & RETAINS_COMPONENT)!=0 && (ownerKinds & COMPONENT_KINDS)!=0 ? COMPONENT_WEIGHT : OBJECT_WEIGHT;
+        Integer frequency = CALLBACK_FREQUENCIES.get(methodName);
+        cost *= frequency!=null ? frequency : DEFAULT_FREQUENCY;
+        if((profile & KEEPS_HARDWARE_AWAKE)!=0)
+        {
+            cost *= HARDWARE_WEIGHT;
+        }
+        return cost;
+    }
+
+    /**
+     * Appends the cost of a finding to its message
+     * @param message the message of the finding
+     * @param cost the estimated cost
+     * @return the message to report, unchanged if the cost is NO_COST
+     */
+    public static String appendTo(String message, int cost)
+    {
+        return cost==NO_COST ? message : message+REPORTED_COST_START+cost+REPORTED_COST_END;
+    }
+
+    /**
+     * Gets the cost appended to a reported message
+     * @param message the reported message
+     * @return the cost, NO_COST if the message has none
+     */
+    public static int getReportedCost(String message)
+    {
+        int start = getReportedCostStart(message);
+        if(start<0)
+        {
+            return NO_COST;
+        }
+        return Integer.parseInt(message.substring(start+REPORTED_COST_START.length(), message.length()-REPORTED_COST_END.length()));
+    }
+
+    /**
+     * Removes the cost appended to a reported message
+     * @param message the reported message
+     * @return the message of the finding, as built by the detector
+     */
+    public static String removeReportedCost(String message)
+    {
+        int start = getReportedCostStart(message);
+        return start<0 ? message : message.substring(0, start);
+    }
+
+    /**
+     * Helper to find the cost appended to a reported message
+     * @param message the reported message
+     * @return the start of the suffix, -1 if the message has none
+     */
+    private static int getReportedCostStart(String message)
+    {
+        if(!message.endsWith(REPORTED_COST_END))
+        {
+            return -1;
+        }
+        int start = message.lastIndexOf(REPORTED_COST_START);
+        if(start<0)
+        {
+            return -1;
+        }
+        for(int i=start+REPORTED_COST_START.length(); i<message.length()-REPORTED_COST_END.length(); i++)
+        {
+            if(!Character.isDigit(message.charAt(i)))
+            {
+                return -1;
+            }
+        }
+        return start+REPORTED_COST_START.length()<message.length()-REPORTED_COST_END.length() ? start : -1;
+    }
+}
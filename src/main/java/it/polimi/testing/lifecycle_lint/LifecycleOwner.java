@@ -0,0 +1,303 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.ClassContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A class with a lifecycle that resources can be tied to (activities, fragments, services, views, the application):
+ * its acquire callbacks (e.g. onStart()) are paired, by position, with the release callbacks (e.g. onStop()), both in
+ * the order in which they are called while the owner goes away.
+ * Owners are looked up by the kind bits of the class (see FrameworkTypeIndex), so adding owners does not add
+ * hierarchy walks; new owners can be registered with register()
+ */
+public class LifecycleOwner
+{
+    // Owners known by the detectors, more specific ones first
+    public static final LifecycleOwner ACTIVITY = new LifecycleOwner(
+        "Activity",
+        FrameworkTypeIndex.ACTIVITY,
+        Arrays.asList(Utils.ON_RESUME_METHOD, Utils.ON_START_METHOD, Utils.ON_CREATE_METHOD),
+        Arrays.asList(Utils.ON_PAUSE_METHOD, Utils.ON_STOP_METHOD, Utils.ON_DESTROY_METHOD),
+        true
+    ).addCalledBetween(Utils.ON_STOP_METHOD, Utils.ON_RESTART_METHOD);
+    public static final LifecycleOwner FRAGMENT = new LifecycleOwner(
+        "Fragment",
+        FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT,
+        Arrays.asList(Utils.ON_RESUME_METHOD, Utils.ON_START_METHOD, Utils.ON_CREATE_METHOD),
+        Arrays.asList(Utils.ON_PAUSE_METHOD, Utils.ON_STOP_METHOD, Utils.ON_DESTROY_METHOD),
+        true
+    );
+    public static final LifecycleOwner SERVICE = new LifecycleOwner(
+        "Service",
+        FrameworkTypeIndex.SERVICE,
+        Collections.singletonList(Utils.ON_CREATE_METHOD),
+        Collections.singletonList(Utils.ON_DESTROY_METHOD),
+        true
+    );
+    public static final LifecycleOwner VIEW = new LifecycleOwner(
+        "View",
+        FrameworkTypeIndex.VIEW,
+        Collections.singletonList("onAttachedToWindow"),
+        Collections.singletonList("onDetachedFromWindow"),
+        false
+    );
+    public static final LifecycleOwner APPLICATION = new LifecycleOwner(
+        "Application",
+        FrameworkTypeIndex.APPLICATION,
+        Collections.singletonList(Utils.ON_CREATE_METHOD),
+        Collections.<String>emptyList(),
+        true
+    );
+
+    // Registered owners, their position (plus one) is their id
+    private static final List<LifecycleOwner> OWNERS = new ArrayList<>();
+    static
+    {
+        register(ACTIVITY);
+        register(FRAGMENT);
+        register(SERVICE);
+        register(VIEW);
+        register(APPLICATION);
+    }
+
+    // Id of no owner (see getId())
+    public static final int NO_OWNER = 0;
+
+    private final String name;
+    private final int kinds;
+    private final List<String> acquireCallbacks;
+    private final List<String> releaseCallbacks;
+    private final boolean isDestroyedOnce;
+    private final List<List<String>> calledBetween = new ArrayList<>();
+    private int id = NO_OWNER;
+
+    /**
+     * Constructor
+     * @param name the name of the owner, for the messages
+     * @param kinds the kind bits of the owner classes (see FrameworkTypeIndex)
+     * @param acquireCallbacks the callbacks in which resources are acquired, each paired with the release callback in
+     *                         the same position
+     * @param releaseCallbacks the callbacks in which resources are released, in the order in which they are called
+     *                         (empty if the owner lives as long as the process)
+     * @param isDestroyedOnce true if the last release callback is called only once
+     */
+    public LifecycleOwner(String name, int kinds, List<String> acquireCallbacks, List<String> releaseCallbacks, boolean isDestroyedOnce)
+    {
+        this.name = name;
+        this.kinds = kinds;
+        this.acquireCallbacks = acquireCallbacks;
+        this.releaseCallbacks = releaseCallbacks;
+        this.isDestroyedOnce = isDestroyedOnce;
+
+        // Between two calls of a release callback, the acquire callbacks paired with it and with the earlier ones
+        // are always called (e.g. onResume() and onStart() between two onStop())
+        for(int i=0; i<releaseCallbacks.size(); i++)
+        {
+            calledBetween.add(new ArrayList<>(acquireCallbacks.subList(0, Math.min(i+1, acquireCallbacks.size()))));
+        }
+    }
+
+    /**
+     * Adds other callbacks that are always called between two calls of a release callback
+     * @param releaseCallback the release callback
+     * @param methodNames the other callbacks
+     * @return this owner
+     */
+    public LifecycleOwner addCalledBetween(String releaseCallback, String... methodNames)
+    {
+        int index = releaseCallbacks.indexOf(releaseCallback);
+        if(index>=0)
+        {
+            calledBetween.get(index).addAll(Arrays.asList(methodNames));
+        }
+        return this;
+    }
+
+    /**
+     * Registers an owner, so that the detectors recognize its classes
+     * @param owner the owner
+     */
+    public static synchronized void register(LifecycleOwner owner)
+    {
+        if(!OWNERS.contains(owner))
+        {
+            OWNERS.add(owner);
+            owner.id = OWNERS.size();
+        }
+    }
+
+    /**
+     * Gets the owner of the given kinds
+     * @param kinds the kind bits of a class
+     * @return the first registered owner that matches the kinds, null if the class is not a lifecycle owner
+     */
+    public static LifecycleOwner getOwner(int kinds)
+    {
+        for(LifecycleOwner owner: OWNERS)
+        {
+            if((owner.kinds & kinds)!=0)
+            {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the owner of a class
+     * @param resolvedClass the class
+     * @return the owner, null if the class is not a lifecycle owner
+     */
+    public static LifecycleOwner getOwner(JavaParser.ResolvedClass resolvedClass)
+    {
+        return getOwner(FrameworkTypeIndex.getKinds(resolvedClass));
+    }
+
+    /**
+     * Gets the owner of a compiled class
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class
+     * @return the owner, null if the class is not a lifecycle owner
+     */
+    public static LifecycleOwner getOwner(ClassContext context, String internalName)
+    {
+        return getOwner(BytecodeUtils.getKinds(context, internalName));
+    }
+
+    /**
+     * Gets an owner by id
+     * @param id the id (see getId())
+     * @return the owner, null for NO_OWNER or an unknown id
+     */
+    public static LifecycleOwner getOwnerById(int id)
+    {
+        return id>NO_OWNER && id<=OWNERS.size() ? OWNERS.get(id-1) : null;
+    }
+
+    /**
+     * Gets the id of an owner, to store it in the summary flags
+     * @param owner the owner, may be null
+     * @return the id, NO_OWNER if the owner is null or not registered
+     */
+    public static int getId(LifecycleOwner owner)
+    {
+        return owner!=null ? owner.id : NO_OWNER;
+    }
+
+    /**
+     * Getter
+     * @return the name of the owner
+     */
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Getter
+     * @return true if the owner lives as long as the process, so its resources never need to be released
+     */
+    public boolean isLongLived()
+    {
+        return releaseCallbacks.isEmpty();
+    }
+
+    /**
+     * Gets the position of a release callback
+     * @param methodName the method name
+     * @return the position, -1 if the method is not a release callback
+     */
+    public int getReleaseOrder(String methodName)
+    {
+        return releaseCallbacks.indexOf(methodName);
+    }
+
+    /**
+     * Getter
+     * @return the last release callback (e.g. onDestroy()), null if the owner lives as long as the process
+     */
+    public String getLastReleaseCallback()
+    {
+        return releaseCallbacks.isEmpty() ? null : releaseCallbacks.get(releaseCallbacks.size()-1);
+    }
+
+    /**
+     * Gets the release callback paired with an acquire callback
+     * @param methodName the acquire callback
+     * @return the paired release callback, null if the method is not an acquire callback
+     */
+    public String getPairedReleaseCallback(String methodName)
+    {
+        int index = acquireCallbacks.indexOf(methodName);
+        return index<0 || index>=releaseCallbacks.size() ? null : releaseCallbacks.get(index);
+    }
+
+    /**
+     * Checks if a resource acquired in an acquire callback is released only in release callbacks that come after the
+     * paired one (e.g. acquired in onResume() and released in onDestroy())
+     * @param acquireMethod the name of the method that acquires the resource
+     * @param releaseMethods the names of the methods that release it
+     * @return true if all the releases are late, false if one of them is in time or in a method that is not a
+     *         release callback (e.g. a helper, that we cannot place in the lifecycle)
+     */
+    public boolean isReleasedLate(String acquireMethod, Collection<String> releaseMethods)
+    {
+        String pairedMethod = getPairedReleaseCallback(acquireMethod);
+        return pairedMethod!=null && isReleasedAfter(pairedMethod, releaseMethods);
+    }
+
+    /**
+     * Checks if a resource is released only in release callbacks that come after a given one (e.g. released in
+     * onDestroy() when it should be released by onStop())
+     * @param releaseCallback the last release callback in which the resource should be released
+     * @param releaseMethods the names of the methods that release it
+     * @return true if all the releases are late, false if one of them is in time or in a method that is not a
+     *         release callback
+     */
+    public boolean isReleasedAfter(String releaseCallback, Collection<String> releaseMethods)
+    {
+        int releaseOrder = getReleaseOrder(releaseCallback);
+        if(releaseOrder<0 || releaseMethods.isEmpty()) return false;
+
+        for(String releaseMethod: releaseMethods)
+        {
+            int order = getReleaseOrder(releaseMethod);
+            if(order<0 || order<=releaseOrder)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Checks if, between two calls of a release callback, at least one of the given methods is always called (e.g.
+     * onResume() between two onPause())
+     * @param releaseMethodName the release callback
+     * @param methodNames the other methods
+     * @return true if one of the methods is always called before the release callback is called again (always true
+     *         for a last callback called only once, like onDestroy()), false if it is not or the method is not a
+     *         release callback
+     */
+    public boolean isAlwaysCalledBeforeRepeating(String releaseMethodName, Collection<String> methodNames)
+    {
+        int index = releaseCallbacks.indexOf(releaseMethodName);
+        if(index<0) return false;
+        if(isDestroyedOnce && index==releaseCallbacks.size()-1) return true;
+
+        for(String methodName: methodNames)
+        {
+            if(calledBetween.get(index).contains(methodName))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+}
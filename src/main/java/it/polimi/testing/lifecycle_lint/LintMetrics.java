@@ -0,0 +1,75 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Severity;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Counters collected by a detector instance during a lint run. They are printed at the end of each project
+ * only if lint is started with -Dlifecycle.lint.metrics=true
+ */
+public class LintMetrics
+{
+    public static final String METRICS_PROPERTY = "lifecycle.lint.metrics";
+
+    // Format of the logged counters: owner, project name and the map of the counters
+    public static final String LOG_FORMAT = "%1$s metrics for %2$s: %3$s";
+
+    private final String owner;
+    private final Map<String, Long> counters = new TreeMap<>();
+
+    /**
+     * Constructor
+     * @param owner the name printed before the counters (e.g. the issue ID)
+     */
+    public LintMetrics(String owner)
+    {
+        this.owner = owner;
+    }
+
+    /**
+     * Increments a counter by one
+     * @param name the counter name
+     */
+    public void increment(String name)
+    {
+        add(name, 1);
+    }
+
+    /**
+     * Adds a value to a counter
+     * @param name the counter name
+     * @param value the value to add
+     */
+    public void add(String name, long value)
+    {
+        Long current = counters.get(name);
+        counters.put(name, current==null ? value : current+value);
+    }
+
+    /**
+     * Getter
+     * @param name the counter name
+     * @return the current value of the counter
+     */
+    public long get(String name)
+    {
+        Long current = counters.get(name);
+        return current==null ? 0 : current;
+    }
+
+    /**
+     * Prints the counters (if enabled) and resets them
+     * @param context the context of the lint request
+     */
+    public void log(Context context)
+    {
+        if(Boolean.getBoolean(METRICS_PROPERTY) && !counters.isEmpty())
+        {
+            context.getClient().log(Severity.INFORMATIONAL, null, LOG_FORMAT, owner, context.getProject().getName(), counters);
+        }
+        counters.clear();
+    }
+}
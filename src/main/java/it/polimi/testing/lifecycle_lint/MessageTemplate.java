@@ -0,0 +1,156 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Template of a message reported by the detectors, with numbered arguments ("%1$s", "%2$s"...). Each template gets
+ * an ID when it is created. While a thread records its messages (see startRecording()), the template and the
+ * arguments of each formatted message are kept, so that a lint client can store and aggregate the findings it
+ * receives without keeping the full message strings
+ */
+public class MessageTemplate
+{
+    // All templates, the index is the template ID
+    private static final List<MessageTemplate> TEMPLATES = new ArrayList<>();
+
+    // Messages formatted by each recording thread since the last one it took, by message
+    private static final ThreadLocal<Map<String, Formatted>> RECORDED = new ThreadLocal<>();
+
+    private final int id;
+    private final String format;
+
+    /**
+     * Constructor
+     * @param format the message with the argument placeholders
+     */
+    public MessageTemplate(String format)
+    {
+        this.format = format;
+        synchronized(TEMPLATES)
+        {
+            this.id = TEMPLATES.size();
+            TEMPLATES.add(this);
+        }
+    }
+
+    /**
+     * Builds the message, recording its template and arguments if the current thread records its messages
+     * @param arguments the values of the placeholders
+     * @return the message to report
+     */
+    public String format(Object... arguments)
+    {
+        String message = arguments.length==0 ? format : String.format(format, arguments);
+
+        Map<String, Formatted> recorded = RECORDED.get();
+        if(recorded!=null)
+        {
+            List<String> values = new ArrayList<>(arguments.length);
+            for(Object argument: arguments)
+            {
+                values.add(String.valueOf(argument));
+            }
+            recorded.put(message, new Formatted(this, values));
+        }
+        return message;
+    }
+
+    /**
+     * Getter
+     * @return the template ID
+     */
+    public int getId()
+    {
+        return id;
+    }
+
+    /**
+     * Gets a template by ID
+     * @param id the template ID
+     * @return the template
+     */
+    public static MessageTemplate get(int id)
+    {
+        synchronized(TEMPLATES)
+        {
+            return TEMPLATES.get(id);
+        }
+    }
+
+    /**
+     * Starts recording the messages formatted by the current thread (e.g. while a lint client runs the detectors)
+     */
+    public static void startRecording()
+    {
+        RECORDED.set(new HashMap<String, Formatted>());
+    }
+
+    /**
+     * Stops recording the messages formatted by the current thread, discarding the ones not taken
+     */
+    public static void stopRecording()
+    {
+        RECORDED.remove();
+    }
+
+    /**
+     * Takes the template and the arguments of a message reported by a detector of the current thread. Lint reports
+     * synchronously, so the other messages formatted before it were not reported (e.g. suppressed) and are discarded
+     * @param message the reported message
+     * @return the template and the arguments, or null if the message was not formatted from a template while the
+     *         thread was recording
+     */
+    public static Formatted take(String message)
+    {
+        Map<String, Formatted> recorded = RECORDED.get();
+        if(recorded==null)
+        {
+            return null;
+        }
+        Formatted result = recorded.get(message);
+        recorded.clear();
+        return result;
+    }
+
+    /**
+     * A message formatted from a template
+     */
+    public static class Formatted
+    {
+        private final MessageTemplate template;
+        private final List<String> arguments;
+
+        /**
+         * Constructor
+         * @param template the template
+         * @param arguments the values of the placeholders
+         */
+        private Formatted(MessageTemplate template, List<String> arguments)
+        {
+            this.template = template;
+            this.arguments = Collections.unmodifiableList(arguments);
+        }
+
+        /**
+         * Getter
+         * @return the template
+         */
+        public MessageTemplate getTemplate()
+        {
+            return template;
+        }
+
+        /**
+         * Getter
+         * @return the values of the placeholders
+         */
+        public List<String> getArguments()
+        {
+            return arguments;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package it.polimi.testing.lifecycle_lint;
+
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.client.api.LintClient;
+import com.android.tools.lint.detector.api.JavaContext;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import lombok.ast.Block;
+import lombok.ast.ConstructorDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.Node;
+import lombok.ast.Position;
+import lombok.ast.TypeDeclaration;
+
+/**
+ * Cache of per-method summaries that survives between lint runs on the same file (e.g. the IDE re-running the checks
+ * at every edit). A summary stores the classification of the relevant invocations of a method (the result of the
+ * expensive resolve and hierarchy checks), keyed by their offset in the method: if the text of the method did not
+ * change, the invocations don't need to be resolved again and only the file-level pairing is redone.
+ * All summaries of a file are dropped if anything outside the method bodies (imports, fields, signatures...) changed,
+ * and the summaries of a method are not reused if the resolved superclasses of its classes changed (e.g. a base
+ * activity in another file that now extends a different class), since the flags include the kind of the owner.
+ * The cache is only used when lint runs repeatedly in the same process: not by the one-shot command line (or Gradle)
+ * runs, unless INCREMENTAL_PROPERTY is set to true (see LifecycleWatcher)
+ */
+public class MethodSummaryCache
+{
+    // Metric names
+    public static final String METRIC_HITS = "summaryHits";
+
+    // Configuration (true or false to force the cache on or off, by default it is off for command line clients)
+    public static final String INCREMENTAL_PROPERTY = "lifecycle.lint.incremental";
+    private static final String COMMAND_LINE_CLIENT = "com.android.tools.lint.LintCliClient";
+
+    // Number of files whose summaries are kept (least recently analyzed are dropped first)
+    private static final int MAX_FILES = 64;
+
+    private final Map<String, FileSummary> files = new LinkedHashMap<String, FileSummary>(16, 0.75f, true)
+    {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileSummary> eldest)
+        {
+            return size()>MAX_FILES;
+        }
+    };
+
+    /**
+     * Starts the analysis of a file, invalidating its summaries if its structure changed
+     * @param context the context of the lint request
+     * @return the session to read and write the summaries of the file
+     */
+    public Session startFile(JavaContext context)
+    {
+        String contents = context.getContents();
+        Node compilationUnit = context.getCompilationUnit();
+        if(contents==null || compilationUnit==null || !isIncremental(context.getClient()))
+        {
+            return new Session(context, null, null);
+        }
+
+        String skeleton = getSkeleton(compilationUnit, contents);
+        String path = context.file.getPath();
+        FileSummary fileSummary;
+        synchronized(files)
+        {
+            fileSummary = files.get(path);
+            if(fileSummary==null || !fileSummary.skeleton.equals(skeleton))
+            {
+                fileSummary = new FileSummary(skeleton);
+                files.put(path, fileSummary);
+            }
+        }
+        return new Session(context, contents, fileSummary);
+    }
+
+    /**
+     * Helper to check if lint runs repeatedly in this process, so the summaries may be reused: a command line client
+     * analyzes each file once, and the summaries would only cost memory and time
+     * @param client the lint client
+     * @return true if the cache must be used
+     */
+    private static boolean isIncremental(LintClient client)
+    {
+        String property = System.getProperty(INCREMENTAL_PROPERTY);
+        if(property!=null)
+        {
+            return Boolean.parseBoolean(property);
+        }
+
+        // By name, since the command line client is not available in every lint distribution
+        for(Class<?> current = client.getClass(); current!=null; current = current.getSuperclass())
+        {
+            if(COMMAND_LINE_CLIENT.equals(current.getName()))
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Helper to get the text of the file without the method and constructor bodies
+     * @param compilationUnit the compilation unit of the file
+     * @param contents the text of the file
+     * @return the "skeleton" of the file
+     */
+    private static String getSkeleton(Node compilationUnit, final String contents)
+    {
+        final StringBuilder builder = new StringBuilder(contents.length()/4);
+        final int[] last = {0};
+        compilationUnit.accept(new ForwardingAstVisitor()
+        {
+            @Override
+            public boolean visitBlock(Block node)
+            {
+                Position position = node.getPosition();
+                Node parent = node.getParent();
+                if(position!=null && (parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration))
+                {
+                    builder.append(contents, last[0], position.getStart());
+                    last[0] = position.getEnd();
+                    return true;
+                }
+                return super.visitBlock(node);
+            }
+        });
+        builder.append(contents, last[0], contents.length());
+        return builder.toString();
+    }
+
+    /**
+     * The summaries of a file, keyed by the text of each method (preceded by the names and the resolved superclasses of
+     * the classes that contain it)
+     */
+    private static class FileSummary
+    {
+        private final String skeleton;
+        private Map<String, Map<Integer, Integer>> methods = new HashMap<>();
+
+        /**
+         * Constructor
+         * @param skeleton the text of the file without method bodies
+         */
+        private FileSummary(String skeleton)
+        {
+            this.skeleton = skeleton;
+        }
+    }
+
+    /**
+     * Access to the summaries during the analysis of a single file
+     */
+    public static class Session
+    {
+        private final JavaContext context;
+        private final String contents;
+        private final FileSummary fileSummary;
+        private final Map<String, Map<Integer, Integer>> previous;
+        private final Map<String, Map<Integer, Integer>> current = new HashMap<>();
+        private final Map<Node, Map<Integer, Integer>> byNode = new IdentityHashMap<>();
+        private final Map<Node, String> classKeys = new IdentityHashMap<>();
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         * @param contents the text of the file (null disables the cache)
+         * @param fileSummary the cached summaries of the file
+         */
+        private Session(JavaContext context, String contents, FileSummary fileSummary)
+        {
+            this.context = context;
+            this.contents = contents;
+            this.fileSummary = fileSummary;
+            if(fileSummary==null)
+            {
+                this.previous = new HashMap<>();
+            }
+            else
+            {
+                synchronized(fileSummary)
+                {
+                    this.previous = fileSummary.methods;
+                }
+            }
+        }
+
+        /**
+         * Gets the cached classification of an invocation
+         * @param node the invocation
+         * @return the classification flags, or null if the invocation must be analyzed
+         */
+        public Integer get(Node node)
+        {
+            Node method = getEnclosingMethod(node);
+            if(method==null) return null;
+            return getMethodSummary(method).get(getRelativeOffset(node, method));
+        }
+
+        /**
+         * Saves the classification of an invocation
+         * @param node the invocation
+         * @param flags the classification flags
+         */
+        public void put(Node node, int flags)
+        {
+            Node method = getEnclosingMethod(node);
+            if(method==null) return;
+            getMethodSummary(method).put(getRelativeOffset(node, method), flags);
+        }
+
+        /**
+         * Ends the analysis of the file: only the summaries of the current version of its methods are kept
+         */
+        public void finish()
+        {
+            if(fileSummary==null) return;
+            synchronized(fileSummary)
+            {
+                fileSummary.methods = current;
+            }
+        }
+
+        /**
+         * Helper to get (or create) the summary of a method, reusing the one of the previous run if the method text
+         * did not change
+         * @param method the method node
+         * @return the summary of the method
+         */
+        private Map<Integer, Integer> getMethodSummary(Node method)
+        {
+            Map<Integer, Integer> summary = byNode.get(method);
+            if(summary==null)
+            {
+                Position position = method.getPosition();
+                String text = getOwnerKey(method)+contents.substring(position.getStart(), position.getEnd());
+                summary = current.get(text);
+                if(summary==null)
+                {
+                    summary = previous.get(text);
+                    if(summary==null) summary = new HashMap<>();
+                    current.put(text, summary);
+                }
+                byNode.put(method, summary);
+            }
+            return summary;
+        }
+
+        /**
+         * Helper to identify the class that contains a method, so that methods with the same text in different
+         * classes (e.g. two anonymous receivers) don't share the summary, and the summary is not reused if the
+         * hierarchy of the classes changed
+         * @param method the method node
+         * @return the keys of the enclosing classes (see getClassKey())
+         */
+        private String getOwnerKey(Node method)
+        {
+            StringBuilder builder = new StringBuilder();
+            for(Node parent = method.getParent(); parent!=null; parent = parent.getParent())
+            {
+                if(parent instanceof TypeDeclaration || parent instanceof ConstructorInvocation)
+                {
+                    builder.insert(0, getClassKey(parent)+"/");
+                }
+            }
+            return builder.append('\n').toString();
+        }
+
+        /**
+         * Helper to get the key of a class: its name (for anonymous classes the instantiated type) followed by its
+         * resolved superclasses, which decide its kind (see FrameworkTypeIndex)
+         * @param node the class declaration, or the instantiation of the anonymous class
+         * @return the key of the class
+         */
+        private String getClassKey(Node node)
+        {
+            String key = classKeys.get(node);
+            if(key!=null) return key;
+
+            StringBuilder builder = new StringBuilder();
+            JavaParser.ResolvedClass resolvedClass = null;
+            if(node instanceof TypeDeclaration)
+            {
+                builder.append(((TypeDeclaration) node).astName().astValue());
+                JavaParser.ResolvedNode resolved = context.resolve(node);
+                if(resolved instanceof JavaParser.ResolvedClass)
+                {
+                    resolvedClass = ((JavaParser.ResolvedClass) resolved).getSuperClass();
+                }
+            }
+            else
+            {
+                builder.append("new ").append(((ConstructorInvocation) node).astTypeReference().getTypeName());
+                JavaParser.ResolvedNode resolved = context.resolve(node);
+                if(resolved instanceof JavaParser.ResolvedMethod)
+                {
+                    resolvedClass = ((JavaParser.ResolvedMethod) resolved).getContainingClass();
+                }
+            }
+            for(JavaParser.ResolvedClass current = resolvedClass; current!=null; current = current.getSuperClass())
+            {
+                builder.append(':').append(current.getName());
+            }
+
+            key = builder.toString();
+            classKeys.put(node, key);
+            return key;
+        }
+
+        /**
+         * Helper to get the method or constructor that contains a node
+         * @param node the node
+         * @return the enclosing method, or null if there is none or the cache is disabled
+         */
+        private Node getEnclosingMethod(Node node)
+        {
+            if(contents==null || node.getPosition()==null) return null;
+            for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+            {
+                if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+                {
+                    return parent.getPosition()==null ? null : parent;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Helper to get the offset of a node from the start of its method
+         * @param node the node
+         * @param method the enclosing method
+         * @return the relative offset
+         */
+        private static int getRelativeOffset(Node node, Node method)
+        {
+            return node.getPosition().getStart()-method.getPosition().getStart();
+        }
+    }
+}
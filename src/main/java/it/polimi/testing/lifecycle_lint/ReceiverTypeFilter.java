@@ -0,0 +1,253 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import lombok.ast.ConstructorDeclaration;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.ImportDeclaration;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.NormalTypeBody;
+import lombok.ast.Select;
+import lombok.ast.This;
+import lombok.ast.TypeReference;
+import lombok.ast.TypeReferencePart;
+import lombok.ast.VariableDefinition;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+/**
+ * Syntactic pre-resolution filter for method invocations: using only the declarations and the imports of the file,
+ * it rules out invocations whose receiver is a variable with a declared type that obviously cannot be the class we
+ * are looking for (e.g. a java.net.Socket for GoogleApiClient.connect()). Everything else is ambiguous and must be
+ * resolved as usual
+ */
+public class ReceiverTypeFilter
+{
+    // Metric names
+    public static final String METRIC_RESOLVED = "resolveCalls";
+    public static final String METRIC_SKIPPED = "resolveSkipped";
+
+    // Marker for types that we cannot tell from the file alone
+    private static final String AMBIGUOUS = "";
+
+    // Classes of java.lang, that are used without import
+    private static final List<String> JAVA_LANG_CLASSES = Arrays.asList(
+        "Object", "String", "StringBuilder", "Thread", "Runnable", "Integer", "Long", "Boolean", "Class"
+    );
+
+    private final Node compilationUnit;
+    private Map<String, String> imports;
+    private Map<String, List<Declaration>> declarations;
+
+    /**
+     * Constructor (the file is scanned lazily, only if we get an invocation to filter)
+     * @param compilationUnit the compilation unit of the file
+     */
+    public ReceiverTypeFilter(Node compilationUnit)
+    {
+        this.compilationUnit = compilationUnit;
+    }
+
+    /**
+     * Checks if the receiver of the invocation is declared with a type that belongs to one of the given packages,
+     * i.e. if the invocation certainly cannot be a method of the class we are looking for
+     * @param methodInvocation the method invocation
+     * @param excludedPackages package prefixes (e.g. "java.") that cannot contain the class we are looking for
+     * @return true if the invocation can be discarded without resolving it
+     */
+    public boolean isExcluded(MethodInvocation methodInvocation, List<String> excludedPackages)
+    {
+        // Implicit receiver (this or outer class) or complex expression: must resolve
+        String name = getReceiverName(methodInvocation.astOperand());
+        if(name==null) return false;
+
+        if(declarations==null) scan();
+
+        String type = getVisibleType(name, methodInvocation);
+        if(type==null || AMBIGUOUS.equals(type)) return false;
+
+        for(String excludedPackage: excludedPackages)
+        {
+            if(type.startsWith(excludedPackage))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to get the name of the receiver variable
+     * @param operand the operand of the method invocation
+     * @return the variable name for "name" or "this.name", null otherwise
+     */
+    private static String getReceiverName(Expression operand)
+    {
+        if(operand instanceof VariableReference)
+        {
+            return ((VariableReference) operand).astIdentifier().astValue();
+        }
+        else if(operand instanceof Select && ((Select) operand).astOperand() instanceof This)
+        {
+            return ((Select) operand).astIdentifier().astValue();
+        }
+        return null;
+    }
+
+    /**
+     * Helper to get the declared type of a name at a given point of the file
+     * @param name the variable name
+     * @param node the node where the variable is used
+     * @return the type, if all the declarations of the name that are visible from the node agree on it (we don't
+     *         follow shadowing rules), null if no declaration is visible (e.g. inherited field)
+     */
+    private String getVisibleType(String name, Node node)
+    {
+        List<Declaration> candidates = declarations.get(name);
+        if(candidates==null) return null;
+
+        String type = null;
+        for(Declaration declaration: candidates)
+        {
+            if(isEnclosedBy(node, declaration.scope))
+            {
+                if(type==null) type = declaration.type;
+                else if(!type.equals(declaration.type)) return AMBIGUOUS;
+            }
+        }
+        return type;
+    }
+
+    /**
+     * Helper that collects imports and the declared types of all fields, locals and parameters in the file, with the
+     * method or class body where each of them is visible
+     */
+    private void scan()
+    {
+        imports = new HashMap<>();
+        declarations = new HashMap<>();
+        if(compilationUnit==null) return;
+
+        compilationUnit.accept(new ForwardingAstVisitor()
+        {
+            @Override
+            public boolean visitImportDeclaration(ImportDeclaration node)
+            {
+                if(!node.astStaticImport() && !node.astStarImport())
+                {
+                    String name = node.asFullyQualifiedName();
+                    imports.put(name.substring(name.lastIndexOf('.')+1), name);
+                }
+                return true;
+            }
+
+            @Override
+            public boolean visitVariableDefinition(VariableDefinition node)
+            {
+                for(VariableDefinitionEntry entry: node.astVariables())
+                {
+                    String name = entry.astName().astValue();
+                    List<Declaration> list = declarations.get(name);
+                    if(list==null)
+                    {
+                        list = new ArrayList<>();
+                        declarations.put(name, list);
+                    }
+                    list.add(new Declaration(getQualifiedTypeName(node.astTypeReference(), entry.astArrayDimensions()>0), getScope(node)));
+                }
+                return super.visitVariableDefinition(node);
+            }
+        });
+    }
+
+    /**
+     * Helper to get the qualified name of a declared type, as far as we can tell from the file alone
+     * @param typeReference the declared type
+     * @param isArray true if the variable has extra array dimensions (e.g. "Socket s[]")
+     * @return the qualified name, "java.lang.Object" for primitives and arrays (they have no lifecycle methods),
+     *         AMBIGUOUS if we cannot tell
+     */
+    private String getQualifiedTypeName(TypeReference typeReference, boolean isArray)
+    {
+        if(typeReference==null) return AMBIGUOUS;
+        if(isArray || typeReference.astArrayDimensions()>0 || typeReference.isPrimitive()) return "java.lang.Object";
+
+        StringBuilder builder = new StringBuilder();
+        for(TypeReferencePart part: typeReference.astParts())
+        {
+            if(builder.length()>0) builder.append('.');
+            builder.append(part.astIdentifier().astValue());
+        }
+        String name = builder.toString();
+
+        // Nested class of an imported class or already qualified name
+        int dot = name.indexOf('.');
+        if(dot>=0)
+        {
+            String outer = name.substring(0, dot);
+            return imports.containsKey(outer) ? imports.get(outer)+name.substring(dot) : name;
+        }
+
+        // Imported or java.lang class, anything else may be in the same package
+        if(imports.containsKey(name)) return imports.get(name);
+        if(JAVA_LANG_CLASSES.contains(name)) return "java.lang."+name;
+        return AMBIGUOUS;
+    }
+
+    /**
+     * Helper to get the node where a variable is visible
+     * @param variableDefinition the variable definition
+     * @return the enclosing method or constructor for locals and parameters, the class body for fields
+     */
+    private static Node getScope(VariableDefinition variableDefinition)
+    {
+        Node parent = variableDefinition.getParent();
+        while(parent!=null && !(parent instanceof MethodDeclaration) && !(parent instanceof ConstructorDeclaration) && !(parent instanceof NormalTypeBody))
+        {
+            parent = parent.getParent();
+        }
+        return parent;
+    }
+
+    /**
+     * Helper to check if a node is inside another one
+     * @param node the inner node
+     * @param scope the outer node
+     * @return true if scope is an ancestor of node
+     */
+    private static boolean isEnclosedBy(Node node, Node scope)
+    {
+        for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+        {
+            if(parent==scope) return true;
+        }
+        return false;
+    }
+
+    /**
+     * A declared variable type, with the node where it is visible
+     */
+    private static class Declaration
+    {
+        private final String type;
+        private final Node scope;
+
+        /**
+         * Constructor
+         * @param type the qualified type name
+         * @param scope the method or class body where the variable is visible
+         */
+        private Declaration(String type, Node scope)
+        {
+            this.type = type;
+            this.scope = scope;
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+
+/**
+ * Registrations and unregistrations of the callbacks passed to the framework (e.g. registerReceiver() and
+ * unregisterReceiver() of each BroadcastReceiver, bindService() and unbindService() of each ServiceConnection) found
+ * in a file. Callbacks are identified by name (see AliasSets) and kept in source order, so that reports are
+ * deterministic (a callback whose name is unknown, see AliasSets.isUnknown(), may be any of them). Unregistering
+ * twice throws, so unregistrations that may follow another one must be protected: since aliases may be different
+ * objects, that check compares the unregistered variables instead (see AliasSets.getVariableName()).
+ * The order of the calls is judged with the callbacks of the lifecycle owner of each call (activity callbacks when
+ * the owner is unknown)
+ */
+public class RegistrationTracker
+{
+    // Registrations and unregistrations of each callback
+    private final Map<String, MethodInvocation> registrations = new LinkedHashMap<>();
+    private final Map<String, List<MethodInvocation>> unregistrations = new LinkedHashMap<>();
+    private final Map<String, List<MethodInvocation>> unregistrationsByVariable = new LinkedHashMap<>();
+    private final Map<MethodInvocation, String> unregisteredCallbacks = new IdentityHashMap<>();
+    private final Set<MethodInvocation> protectedUnregistrations = Collections.newSetFromMap(new IdentityHashMap<MethodInvocation, Boolean>());
+    private final Map<String, Set<String>> registrationMethods = new HashMap<>();
+    private final Map<MethodInvocation, LifecycleOwner> owners = new IdentityHashMap<>();
+
+    /**
+     * Records a registration
+     * @param callback the name of the callback
+     * @param node the node of the call
+     * @param owner the lifecycle owner of the class that contains the call, null if unknown
+     */
+    public void register(String callback, MethodInvocation node, LifecycleOwner owner)
+    {
+        registrations.put(callback, node);
+        owners.put(node, owner);
+        Set<String> methods = registrationMethods.get(callback);
+        if(methods==null)
+        {
+            methods = new HashSet<>();
+            registrationMethods.put(callback, methods);
+        }
+        methods.add(Utils.getCallerMethodName(node));
+    }
+
+    /**
+     * Records an unregistration (protected ones are needed too, to know the order of the calls)
+     * @param callback the name of the callback
+     * @param node the node of the call
+     * @param isProtected true if the call is inside a try/catch that catches its exception
+     * @param owner the lifecycle owner of the class that contains the call, null if unknown
+     */
+    public void unregister(String callback, MethodInvocation node, boolean isProtected, LifecycleOwner owner)
+    {
+        unregister(callback, callback, node, isProtected, owner);
+    }
+
+    /**
+     * Records an unregistration (protected ones are needed too, to know the order of the calls)
+     * @param callback the name of the callback, to pair it with the registrations
+     * @param variable the name of the unregistered variable, to find the unregistrations of the same object
+     * @param node the node of the call
+     * @param isProtected true if the call is inside a try/catch that catches its exception
+     * @param owner the lifecycle owner of the class that contains the call, null if unknown
+     */
+    public void unregister(String callback, String variable, MethodInvocation node, boolean isProtected, LifecycleOwner owner)
+    {
+        owners.put(node, owner);
+        unregisteredCallbacks.put(node, callback);
+        add(unregistrations, callback, node);
+        add(unregistrationsByVariable, variable, node);
+        if(isProtected)
+        {
+            protectedUnregistrations.add(node);
+        }
+    }
+
+    /**
+     * Helper to add a call to the list of a name
+     * @param calls the calls by name
+     * @param name the name
+     * @param node the node of the call
+     */
+    private static void add(Map<String, List<MethodInvocation>> calls, String name, MethodInvocation node)
+    {
+        List<MethodInvocation> list = calls.get(name);
+        if(list==null)
+        {
+            list = new ArrayList<>();
+            calls.put(name, list);
+        }
+        list.add(node);
+    }
+
+    /**
+     * Getter
+     * @return the last registration of each callback that is never unregistered (except in owners that live as
+     *         long as the process, like the application)
+     */
+    public List<MethodInvocation> getUnmatchedRegistrations()
+    {
+        List<MethodInvocation> unmatched = new ArrayList<>();
+        for(String callback: unregistrations.keySet())
+        {
+            // An unregistration of an unknown callback may be paired with any registration
+            if(AliasSets.isUnknown(callback)) return unmatched;
+        }
+
+        for(Map.Entry<String, MethodInvocation> entry: registrations.entrySet())
+        {
+            // A registration of an unknown callback may be paired with any unregistration
+            boolean unregistered = AliasSets.isUnknown(entry.getKey()) ? !unregistrations.isEmpty() : unregistrations.containsKey(entry.getKey());
+            LifecycleOwner owner = owners.get(entry.getValue());
+            if(!unregistered && (owner==null || !owner.isLongLived()))
+            {
+                unmatched.add(entry.getValue());
+            }
+        }
+        return unmatched;
+    }
+
+    /**
+     * Gets the methods in which a callback is unregistered
+     * @param callback the name of the callback
+     * @return the names of the methods that unregister the callback, in source order
+     */
+    public List<String> getUnregistrationMethods(String callback)
+    {
+        List<String> methods = new ArrayList<>();
+        List<MethodInvocation> list = unregistrations.get(callback);
+        if(list!=null)
+        {
+            for(MethodInvocation methodInvocation: list)
+            {
+                methods.add(Utils.getCallerMethodName(methodInvocation));
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Getter
+     * @return the registered callbacks, with their last registration
+     */
+    public Map<String, MethodInvocation> getRegistrations()
+    {
+        return registrations;
+    }
+
+    /**
+     * Getter
+     * @return the unregistrations that are not protected and can actually run after another unregistration of the
+     *         same variable
+     */
+    public List<MethodInvocation> getUnsafeUnregistrations()
+    {
+        List<MethodInvocation> unsafe = new ArrayList<>();
+        for(Map.Entry<String, List<MethodInvocation>> entry: unregistrationsByVariable.entrySet())
+        {
+            // Only variables unregistered more than once
+            if(entry.getValue().size()>1)
+            {
+                for(MethodInvocation methodInvocation: entry.getValue())
+                {
+                    if(!protectedUnregistrations.contains(methodInvocation) && canFollowAnotherUnregistration(methodInvocation, unregisteredCallbacks.get(methodInvocation), entry.getValue()))
+                    {
+                        unsafe.add(methodInvocation);
+                    }
+                }
+            }
+        }
+        return unsafe;
+    }
+
+    /**
+     * Removes everything, for the next file
+     */
+    public void clear()
+    {
+        registrations.clear();
+        unregistrations.clear();
+        unregistrationsByVariable.clear();
+        unregisteredCallbacks.clear();
+        protectedUnregistrations.clear();
+        registrationMethods.clear();
+        owners.clear();
+    }
+
+    /**
+     * Checks if an unregistration may be executed after another unregistration of the same callback, without a
+     * registration in between (i.e. if it may crash)
+     * @param unregistration the unregistration
+     * @param callback the name of the callback
+     * @param allUnregistrations all the unregistrations of the same variable in the file
+     * @return false if all the other unregistrations are on mutually exclusive paths or always come later
+     */
+    private boolean canFollowAnotherUnregistration(MethodInvocation unregistration, String callback, List<MethodInvocation> allUnregistrations)
+    {
+        for(MethodInvocation other: allUnregistrations)
+        {
+            if(other!=unregistration && !ControlFlowUtils.areMutuallyExclusive(unregistration, other) && !isAlwaysBefore(unregistration, other, callback))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks if an unregistration always comes before another one: earlier in the same method or in an earlier
+     * teardown callback (onPause() always precedes onStop()), without being repeated before the callback is
+     * registered again
+     * @param unregistration the unregistration
+     * @param other the other unregistration of the same callback
+     * @param callback the name of the callback
+     * @return true if the unregistration is always executed first
+     */
+    private boolean isAlwaysBefore(MethodInvocation unregistration, MethodInvocation other, String callback)
+    {
+        // The method of the unregistration must not run again before a registration
+        LifecycleOwner owner = getOwner(unregistration);
+        String methodName = Utils.getCallerMethodName(unregistration);
+        Set<String> registeredIn = registrationMethods.containsKey(callback) ? registrationMethods.get(callback) : Collections.<String>emptySet();
+        if(ControlFlowUtils.isInLoop(unregistration) || !owner.isAlwaysCalledBeforeRepeating(methodName, registeredIn))
+        {
+            return false;
+        }
+
+        // Same method: source order, otherwise the order of the teardown callbacks
+        Node method = ControlFlowUtils.getEnclosingMethod(unregistration);
+        if(method!=null && method==ControlFlowUtils.getEnclosingMethod(other))
+        {
+            return ControlFlowUtils.isBefore(unregistration, other);
+        }
+        int order = owner.getReleaseOrder(methodName);
+        return order>=0 && owner==getOwner(other) && order<owner.getReleaseOrder(Utils.getCallerMethodName(other));
+    }
+
+    /**
+     * Gets the lifecycle owner of a registration or unregistration
+     * @param node the node of the call
+     * @return the owner, the activity if it is unknown
+     */
+    public LifecycleOwner getOwner(MethodInvocation node)
+    {
+        LifecycleOwner owner = owners.get(node);
+        return owner!=null ? owner : LifecycleOwner.ACTIVITY;
+    }
+}
@@ -0,0 +1,172 @@
+package it.polimi.testing.lifecycle_lint;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Per-instance table of the acquisitions and releases of a resource (e.g. connect() and disconnect() of each
+ * GoogleApiClient) found in a file, to pair them for each instance independently. Instances are identified by name
+ * (see AliasSets) and stored by index in parallel arrays, that are reused from file to file
+ * @param <T> the type of the nodes of the calls (AST nodes or bytecode calls)
+ */
+public class ResourceTable<T>
+{
+    // Name of the instances that cannot be determined statically
+    public static final String UNKNOWN_INSTANCE = "";
+
+    // Initial capacity of the table
+    private static final int INITIAL_CAPACITY = 8;
+
+    // Instances, in order of appearance, and their acquisitions and releases
+    private final Map<String, Integer> indexes = new HashMap<>();
+    private String[] instances = new String[INITIAL_CAPACITY];
+    private Object[] firstAcquisitions = new Object[INITIAL_CAPACITY];
+    private String[] types = new String[INITIAL_CAPACITY];
+    private int[] releaseCounts = new int[INITIAL_CAPACITY];
+    private int size = 0;
+    private boolean releasedUnknown = false;
+    private int totalReleases = 0;
+
+    /**
+     * Records the acquisition of a resource
+     * @param instance the name of the instance
+     * @param node the node of the call
+     */
+    public void acquire(String instance, T node)
+    {
+        acquire(instance, node, null);
+    }
+
+    /**
+     * Records the acquisition of a resource of a given type (e.g. WakeLock or WifiLock)
+     * @param instance the name of the instance
+     * @param node the node of the call
+     * @param type the type of the resource, kept with the first acquisition of the instance
+     */
+    public void acquire(String instance, T node, String type)
+    {
+        int index = getIndex(instance);
+        if(firstAcquisitions[index]==null)
+        {
+            firstAcquisitions[index] = node;
+            types[index] = type;
+        }
+    }
+
+    /**
+     * Gets the type of an instance
+     * @param instance the name of the instance
+     * @return the type recorded with its first acquisition, null if it was not recorded or the instance was never
+     *         acquired
+     */
+    public String getType(String instance)
+    {
+        Integer index = indexes.get(instance);
+        return index!=null ? types[index] : null;
+    }
+
+    /**
+     * Records the release of a resource
+     * @param instance the name of the instance (UNKNOWN_INSTANCE may be any instance)
+     */
+    public void release(String instance)
+    {
+        totalReleases++;
+        if(UNKNOWN_INSTANCE.equals(instance))
+        {
+            releasedUnknown = true;
+            return;
+        }
+        releaseCounts[getIndex(instance)]++;
+    }
+
+    /**
+     * Gets the instances that are acquired but never released
+     * @return the first acquisition of each of them, in order of appearance
+     */
+    @SuppressWarnings("unchecked")
+    public List<T> getUnreleased()
+    {
+        List<T> result = new ArrayList<>();
+        for(String instance: getUnreleasedInstances())
+        {
+            result.add((T) firstAcquisitions[indexes.get(instance)]);
+        }
+        return result;
+    }
+
+    /**
+     * Gets the instances that are acquired but never released
+     * @return their names, in order of appearance (see getFirstAcquisition())
+     */
+    public List<String> getUnreleasedInstances()
+    {
+        List<String> result = new ArrayList<>();
+        if(releasedUnknown) return result;
+
+        for(int i=0; i<size; i++)
+        {
+            // An acquisition of an unknown instance may be paired with any release
+            boolean released = UNKNOWN_INSTANCE.equals(instances[i]) ? totalReleases>0 : releaseCounts[i]>0;
+            if(firstAcquisitions[i]!=null && !released)
+            {
+                result.add(instances[i]);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Gets the first acquisition of an instance
+     * @param instance the name of the instance
+     * @return the node of the call, null if the instance was never acquired
+     */
+    @SuppressWarnings("unchecked")
+    public T getFirstAcquisition(String instance)
+    {
+        Integer index = indexes.get(instance);
+        return index!=null ? (T) firstAcquisitions[index] : null;
+    }
+
+    /**
+     * Empties the table for the next file
+     */
+    public void clear()
+    {
+        Arrays.fill(instances, 0, size, null);
+        Arrays.fill(firstAcquisitions, 0, size, null);
+        Arrays.fill(types, 0, size, null);
+        Arrays.fill(releaseCounts, 0, size, 0);
+        indexes.clear();
+        size = 0;
+        releasedUnknown = false;
+        totalReleases = 0;
+    }
+
+    /**
+     * Helper to get the index of an instance, adding it if needed
+     * @param instance the name of the instance
+     * @return the index in the arrays
+     */
+    private int getIndex(String instance)
+    {
+        Integer index = indexes.get(instance);
+        if(index==null)
+        {
+            if(size==firstAcquisitions.length)
+            {
+                instances = Arrays.copyOf(instances, size*2);
+                firstAcquisitions = Arrays.copyOf(firstAcquisitions, size*2);
+                types = Arrays.copyOf(types, size*2);
+                releaseCounts = Arrays.copyOf(releaseCounts, size*2);
+            }
+            index = size++;
+            instances[index] = instance;
+            indexes.put(instance, index);
+        }
+        return index;
+    }
+}
@@ -3,11 +3,20 @@ package it.polimi.testing.lifecycle_lint;
 import com.android.tools.lint.client.api.JavaParser;
 import com.android.tools.lint.detector.api.JavaContext;
 
+import java.util.Collection;
+
+import lombok.ast.Catch;
+import lombok.ast.ClassDeclaration;
 import lombok.ast.Expression;
 import lombok.ast.MethodDeclaration;
 import lombok.ast.MethodInvocation;
 import lombok.ast.Node;
+import lombok.ast.StaticInitializer;
 import lombok.ast.StrictListAccessor;
+import lombok.ast.Try;
+import lombok.ast.TypeDeclaration;
+import lombok.ast.TypeReference;
+import lombok.ast.VariableDeclaration;
 
 /**
  * Some utilities for the lint detectors
@@ -15,9 +24,15 @@ import lombok.ast.StrictListAccessor;
 public class Utils
 {
     public final static String ON_SAVE_INSTANCE_STATE_METHOD = "onSaveInstanceState";
+    public final static String ON_CREATE_METHOD = "onCreate";
+    public final static String ON_RESTART_METHOD = "onRestart";
     public final static String ON_START_METHOD = "onStart";
+    public final static String ON_RESUME_METHOD = "onResume";
+    public final static String ON_PAUSE_METHOD = "onPause";
     public final static String ON_STOP_METHOD = "onStop";
+    public final static String ON_DESTROY_METHOD = "onDestroy";
 
+    public static final String CONTEXT = "android.content.Context";
     public static final String CONTEXT_WRAPPER = "android.content.ContextWrapper";
     public static final String FRAGMENT_APP = "android.app.Fragment";
     public static final String FRAGMENT_SUPPORT = "android.support.v4.app.Fragment";
@@ -30,7 +45,106 @@ public class Utils
      */
     public static boolean isMethodContainedInSubclassOf(JavaParser.ResolvedMethod method, String className)
     {
-        return method.getContainingClass().isSubclassOf(className, false);
+        // Framework classes that are the root of their kinds are a table lookup, the others need the full hierarchy check
+        Integer kinds = FrameworkTypeIndex.getRootKinds(className);
+        if(kinds!=null)
+        {
+            return (FrameworkTypeIndex.getKinds(method.getContainingClass()) & kinds)==kinds;
+        }
+        return isSubclassOf(method.getContainingClass(), className);
+    }
+
+    /**
+     * Checks if a class is the given class or one of its subclasses
+     * @param resolvedClass the class to check
+     * @param className the expected class name
+     * @return true if the class is a subclass of the expected class
+     */
+    public static boolean isSubclassOf(JavaParser.ResolvedClass resolvedClass, String className)
+    {
+        if(resolvedClass.isSubclassOf(className, false))
+        {
+            return true;
+        }
+
+        // Parameterized classes (e.g. Observable<String>) are not matched by their raw name, compare the erasures
+        for(JavaParser.ResolvedClass superClass = resolvedClass; superClass!=null; superClass = superClass.getSuperClass())
+        {
+            if(getErasure(superClass.getName()).equals(className))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to remove the type arguments from the name of a class
+     * @param className the name of the class (e.g. io.reactivex.Observable&lt;java.lang.String&gt;)
+     * @return the name of the raw class (e.g. io.reactivex.Observable)
+     */
+    private static String getErasure(String className)
+    {
+        int index = className.indexOf('<');
+        return index<0 ? className : className.substring(0, index);
+    }
+
+    /**
+     * Checks if a method belongs to a class of one of the given kinds
+     * @param method the method to check
+     * @param kinds the expected kind bits (see FrameworkTypeIndex)
+     * @return true if the method is defined in a class of one of the kinds
+     */
+    public static boolean isMethodContainedInSubclassOf(JavaParser.ResolvedMethod method, int kinds)
+    {
+        return (FrameworkTypeIndex.getKinds(method.getContainingClass()) & kinds)!=0;
+    }
+
+    /**
+     * Gets the position of a teardown callback in the sequence onPause(), onStop(), onDestroy()
+     * @param methodName the method name
+     * @return the position, -1 if the method is not a teardown callback
+     */
+    public static int getTeardownOrder(String methodName)
+    {
+        return LifecycleOwner.ACTIVITY.getReleaseOrder(methodName);
+    }
+
+    /**
+     * Gets the teardown callback paired with a setup callback (onCreate() with onDestroy(), onStart() with onStop(),
+     * onResume() with onPause())
+     * @param methodName the setup callback
+     * @return the paired teardown callback, null if the method is not a setup callback
+     */
+    public static String getPairedTeardownCallback(String methodName)
+    {
+        return LifecycleOwner.ACTIVITY.getPairedReleaseCallback(methodName);
+    }
+
+    /**
+     * Checks if a resource acquired in a setup callback is released only in teardown callbacks that come after the
+     * paired one (e.g. acquired in onResume() and released in onDestroy())
+     * @param acquireMethod the name of the method that acquires the resource
+     * @param releaseMethods the names of the methods that release it
+     * @return true if all the releases are late, false if one of them is in time or in a method that is not a
+     *         teardown callback (e.g. a helper, that we cannot place in the lifecycle)
+     */
+    public static boolean isReleasedLate(String acquireMethod, Collection<String> releaseMethods)
+    {
+        return LifecycleOwner.ACTIVITY.isReleasedLate(acquireMethod, releaseMethods);
+    }
+
+    /**
+     * Checks if, between two calls of a teardown callback, at least one of the given methods is always called (e.g.
+     * onResume() between two onPause())
+     * @param teardownMethodName the teardown callback
+     * @param methodNames the other methods
+     * @return true if one of the methods is always called before the teardown callback is called again (always true
+     *         for onDestroy(), that is called only once), false if it is not or the method is not a teardown callback
+     */
+    public static boolean isAlwaysCalledBeforeRepeating(String teardownMethodName, Collection<String> methodNames)
+    {
+        return LifecycleOwner.ACTIVITY.isAlwaysCalledBeforeRepeating(teardownMethodName, methodNames);
     }
 
     /**
@@ -69,6 +183,27 @@ public class Utils
         return methodDeclaration;
     }
 
+    /**
+     * Gets the i-th expression passed as the method parameters
+     * @param methodInvocation the method invocation
+     * @param i the argument index
+     * @return i-th expression passed as the method parameters, null if there are fewer arguments
+     */
+    public static Expression getMethodInvocationArgument(MethodInvocation methodInvocation, int i)
+    {
+        StrictListAccessor<Expression, MethodInvocation> nodes = methodInvocation.astArguments();
+        if(nodes!=null)
+        {
+            int c = 0;
+            for(Expression node : nodes)
+            {
+                if(i==c) return node;
+                c++;
+            }
+        }
+        return null;
+    }
+
     /**
      * Gets the i-th variable/constant name passed as the method parameters
      * @param methodInvocation the method invocation
@@ -90,6 +225,69 @@ public class Utils
         return "";
     }
 
+    /**
+     * Checks if a node is inside a try/catch block that catches one of the given exceptions
+     * @param context the context of the lint request
+     * @param node the node we are interested in
+     * @param exceptions the fully qualified names of the exceptions
+     * @return true if the node is protected by a try/catch
+     */
+    public static boolean isInTryCatch(JavaContext context, Node node, String... exceptions)
+    {
+        Node parent = node;
+        while(true)
+        {
+            Try tryCatch = JavaContext.getParentOfType(parent, Try.class);
+            if(tryCatch==null)
+            {
+                return false;
+            }
+
+            for(Catch aCatch: tryCatch.astCatches())
+            {
+                TypeReference typeReference = aCatch.astExceptionDeclaration().astTypeReference();
+                JavaParser.TypeDescriptor typeDescriptor = context.getType(typeReference);
+                if(typeDescriptor!=null)
+                {
+                    for(String exception: exceptions)
+                    {
+                        if(typeDescriptor.matchesSignature(exception))
+                        {
+                            return true;
+                        }
+                    }
+                }
+            }
+            parent = tryCatch;
+        }
+    }
+
+    /**
+     * Gets the class whose instance is kept by an inner class, i.e. the enclosing class of a non-static member class
+     * or of a local or anonymous class declared in an instance method, constructor or field initializer
+     * @param declaration the class declaration or the body of the anonymous class
+     * @return the enclosing class, null if the class does not keep a reference to it (static or top level)
+     */
+    public static ClassDeclaration getCapturedOuterClass(Node declaration)
+    {
+        if(declaration instanceof ClassDeclaration && ((ClassDeclaration) declaration).astModifiers().isStatic())
+        {
+            return null;
+        }
+
+        for(Node parent = declaration.getParent(); parent!=null; parent = parent.getParent())
+        {
+            if(parent instanceof MethodDeclaration && ((MethodDeclaration) parent).astModifiers().isStatic()) return null;
+            if(parent instanceof VariableDeclaration && ((VariableDeclaration) parent).astDefinition().astModifiers().isStatic()) return null;
+            if(parent instanceof StaticInitializer) return null;
+            if(parent instanceof ClassDeclaration) return (ClassDeclaration) parent;
+
+            // Members of interfaces, enums and annotations are implicitly static
+            if(parent instanceof TypeDeclaration) return null;
+        }
+        return null;
+    }
+
     /**
      * Helper that calls getCallerMethod() and then resolves the returned value
      * @param context the context of the lint request
@@ -114,6 +312,19 @@ public class Utils
         }
     }
 
+    /**
+     * Gets the lifecycle owner of the class that contains the given invocation (one lookup in the type index, whatever
+     * the number of owners)
+     * @param context the context of the lint request
+     * @param methodInvocation the method invocation
+     * @return the owner, null if the invocation is not in a lifecycle owner
+     */
+    public static LifecycleOwner getLifecycleOwner(JavaContext context, MethodInvocation methodInvocation)
+    {
+        JavaParser.ResolvedMethod method = getCallerResolvedMethod(context, methodInvocation);
+        return method!=null ? LifecycleOwner.getOwner(method.getContainingClass()) : null;
+    }
+
     /**
      * Checks if the given method is called inside an activity
      * @param context the context of the lint request
@@ -149,8 +360,7 @@ public class Utils
         }
 
         // Check if it's a fragment
-        return Utils.isMethodContainedInSubclassOf(method, FRAGMENT_APP) ||
-                Utils.isMethodContainedInSubclassOf(method, FRAGMENT_SUPPORT);
+        return Utils.isMethodContainedInSubclassOf(method, FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT);
     }
 
     /**
@@ -168,9 +378,7 @@ public class Utils
             return false;
         }
 
-        // Check if it's a fragment or an activity
-        return Utils.isMethodContainedInSubclassOf(method, CONTEXT_WRAPPER) ||
-                Utils.isMethodContainedInSubclassOf(method, FRAGMENT_APP) ||
-                Utils.isMethodContainedInSubclassOf(method, FRAGMENT_SUPPORT);
+        // Check if it's a fragment or an activity (single hierarchy walk)
+        return Utils.isMethodContainedInSubclassOf(method, FrameworkTypeIndex.CONTEXT_WRAPPER | FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT);
     }
 }
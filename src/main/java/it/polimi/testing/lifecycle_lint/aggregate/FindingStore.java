@@ -0,0 +1,301 @@
+package it.polimi.testing.lifecycle_lint.aggregate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+
+/**
+ * Compact store for a large number of findings: instead of one object per finding with its full message, each
+ * attribute is a column of ints, strings (issue IDs, paths, packages, method names, message arguments) are interned
+ * and messages are stored as the ID of their template plus the arguments
+ */
+public class FindingStore
+{
+    // Initial capacity of the columns
+    private static final int INITIAL_CAPACITY = 1024;
+
+    // Template ID of the messages that were not built from a template (the whole message is the only argument)
+    private static final int NO_TEMPLATE = -1;
+
+    // Interned strings
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<String> strings = new ArrayList<>();
+
+    // Columns
+    private int size = 0;
+    private int[] issues = new int[INITIAL_CAPACITY];
+    private int[] files = new int[INITIAL_CAPACITY];
+    private int[] packages = new int[INITIAL_CAPACITY];
+    private int[] methods = new int[INITIAL_CAPACITY];
+    private int[] lines = new int[INITIAL_CAPACITY];
+    private int[] offsets = new int[INITIAL_CAPACITY];
+    private int[] costs = new int[INITIAL_CAPACITY];
+    private int[] templates = new int[INITIAL_CAPACITY];
+    private int[] argumentStarts = new int[INITIAL_CAPACITY+1];
+
+    // Message arguments of all the findings (the ones of finding i are between argumentStarts[i] and argumentStarts[i+1])
+    private int[] arguments = new int[INITIAL_CAPACITY];
+
+    /**
+     * Adds a finding
+     * @param issueId the issue ID
+     * @param file the path of the file
+     * @param packageName the package of the class
+     * @param method the name of the method that contains the finding ("" if not known)
+     * @param line the line (0-based, -1 if not known)
+     * @param offset the offset in the file (-1 if not known)
+     * @param message the reported message
+     * @param formatted the template and the arguments of the message, or null if it was not built from a template
+     * @param cost the estimated cost of the finding (see LeakCost)
+     */
+    public void add(String issueId, String file, String packageName, String method, int line, int offset, String message, MessageTemplate.Formatted formatted, int cost)
+    {
+        List<String> messageArguments = formatted!=null ? formatted.getArguments() : Collections.singletonList(message);
+
+        if(size==issues.length)
+        {
+            grow();
+        }
+        issues[size] = intern(issueId);
+        files[size] = intern(file);
+        packages[size] = intern(packageName);
+        methods[size] = intern(method);
+        lines[size] = line;
+        offsets[size] = offset;
+        costs[size] = cost;
+        templates[size] = formatted==null ? NO_TEMPLATE : formatted.getTemplate().getId();
+
+        int start = argumentStarts[size];
+        if(start+messageArguments.size()>arguments.length)
+        {
+            arguments = Arrays.copyOf(arguments, Math.max(arguments.length*2, start+messageArguments.size()));
+        }
+        for(String argument: messageArguments)
+        {
+            arguments[start++] = intern(argument);
+        }
+        argumentStarts[size+1] = start;
+        size++;
+    }
+
+    /**
+     * Getter
+     * @return the number of findings
+     */
+    public int size()
+    {
+        return size;
+    }
+
+    /**
+     * Getter
+     * @return the number of distinct strings stored
+     */
+    public int getInternedStrings()
+    {
+        return strings.size();
+    }
+
+    /**
+     * Gets the location of a finding
+     * @param index the index of the finding
+     * @return the file path, followed by the line (1-based) and the offset if known
+     */
+    public String getLocation(int index)
+    {
+        String location = strings.get(files[index]);
+        if(lines[index]>=0) location += ":"+(lines[index]+1);
+        if(offsets[index]>=0) location += " (offset "+offsets[index]+")";
+        return location;
+    }
+
+    /**
+     * Gets the issue of a finding
+     * @param index the index of the finding
+     * @return the issue ID
+     */
+    public String getIssueId(int index)
+    {
+        return strings.get(issues[index]);
+    }
+
+    /**
+     * Gets the estimated cost of a finding
+     * @param index the index of the finding
+     * @return the cost (see LeakCost)
+     */
+    public int getCost(int index)
+    {
+        return costs[index];
+    }
+
+    /**
+     * Gets the findings with the highest estimated cost
+     * @param limit the maximum number of findings
+     * @return their indexes, from the most costly (findings with the same cost in order of addition)
+     */
+    public int[] getMostCostly(int limit)
+    {
+        // Counting sort on the costs, that are small non-negative numbers
+        int maxCost = 0;
+        for(int i=0; i<size; i++)
+        {
+            maxCost = Math.max(maxCost, costs[i]);
+        }
+        int[] starts = new int[maxCost+2];
+        for(int i=0; i<size; i++)
+        {
+            starts[maxCost-costs[i]+1]++;
+        }
+        for(int i=1; i<starts.length; i++)
+        {
+            starts[i] += starts[i-1];
+        }
+        int[] sorted = new int[size];
+        for(int i=0; i<size; i++)
+        {
+            sorted[starts[maxCost-costs[i]]++] = i;
+        }
+        return Arrays.copyOf(sorted, Math.min(limit, size));
+    }
+
+    /**
+     * Sums the estimated costs of the findings of each issue
+     * @return the total cost by issue ID
+     */
+    public Map<String, Integer> sumCostByIssue()
+    {
+        int[] sums = new int[strings.size()];
+        for(int i=0; i<size; i++)
+        {
+            sums[issues[i]] += costs[i];
+        }
+        Map<String, Integer> result = new TreeMap<>();
+        for(int i=0; i<size; i++)
+        {
+            result.put(strings.get(issues[i]), sums[issues[i]]);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuilds the message of a finding
+     * @param index the index of the finding
+     * @return the reported message
+     */
+    public String getMessage(int index)
+    {
+        Object[] values = new Object[argumentStarts[index+1]-argumentStarts[index]];
+        for(int i=0; i<values.length; i++)
+        {
+            values[i] = strings.get(arguments[argumentStarts[index]+i]);
+        }
+        return templates[index]==NO_TEMPLATE ? (String) values[0] : MessageTemplate.get(templates[index]).format(values);
+    }
+
+    /**
+     * Counts the findings of each issue
+     * @return the number of findings by issue ID
+     */
+    public Map<String, Integer> countByIssue()
+    {
+        return countBy(issues);
+    }
+
+    /**
+     * Counts the findings in each package
+     * @return the number of findings by package
+     */
+    public Map<String, Integer> countByPackage()
+    {
+        return countBy(packages);
+    }
+
+    /**
+     * Counts the findings in each method (e.g. the lifecycle callbacks)
+     * @return the number of findings by method name
+     */
+    public Map<String, Integer> countByMethod()
+    {
+        return countBy(methods);
+    }
+
+    /**
+     * Counts the distinct messages (same template and arguments)
+     * @return the number of distinct messages
+     */
+    public int countDistinctMessages()
+    {
+        Map<String, Boolean> seen = new HashMap<>();
+        for(int i=0; i<size; i++)
+        {
+            StringBuilder key = new StringBuilder().append(templates[i]);
+            for(int j=argumentStarts[i]; j<argumentStarts[i+1]; j++)
+            {
+                key.append(',').append(arguments[j]);
+            }
+            seen.put(key.toString(), true);
+        }
+        return seen.size();
+    }
+
+    /**
+     * Helper to count the findings by the value of a column
+     * @param column the column of interned strings
+     * @return the number of findings by value
+     */
+    private Map<String, Integer> countBy(int[] column)
+    {
+        int[] counts = new int[strings.size()];
+        for(int i=0; i<size; i++)
+        {
+            counts[column[i]]++;
+        }
+        Map<String, Integer> result = new TreeMap<>();
+        for(int id=0; id<counts.length; id++)
+        {
+            if(counts[id]>0) result.put(strings.get(id), counts[id]);
+        }
+        return result;
+    }
+
+    /**
+     * Helper to get the ID of a string, adding it if needed
+     * @param string the string
+     * @return the ID
+     */
+    private int intern(String string)
+    {
+        Integer id = stringIds.get(string);
+        if(id==null)
+        {
+            id = strings.size();
+            stringIds.put(string, id);
+            strings.add(string);
+        }
+        return id;
+    }
+
+    /**
+     * Helper to double the capacity of the columns
+     */
+    private void grow()
+    {
+        int capacity = issues.length*2;
+        issues = Arrays.copyOf(issues, capacity);
+        files = Arrays.copyOf(files, capacity);
+        packages = Arrays.copyOf(packages, capacity);
+        methods = Arrays.copyOf(methods, capacity);
+        lines = Arrays.copyOf(lines, capacity);
+        offsets = Arrays.copyOf(offsets, capacity);
+        costs = Arrays.copyOf(costs, capacity);
+        templates = Arrays.copyOf(templates, capacity);
+        argumentStarts = Arrays.copyOf(argumentStarts, capacity+1);
+    }
+}
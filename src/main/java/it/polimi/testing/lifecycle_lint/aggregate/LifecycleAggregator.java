@@ -0,0 +1,274 @@
+package it.polimi.testing.lifecycle_lint.aggregate;
+
+import com.android.tools.lint.LintCliClient;
+import com.android.tools.lint.LintCliFlags;
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Position;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.FrameworkTypeIndex;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.registry.LifecycleIssuesRegistry;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.Node;
+import lombok.ast.PackageDeclaration;
+
+/**
+ * Batch runner that checks many projects and aggregates the lifecycle findings in a FindingStore, printing the
+ * counts per issue, per package and per method instead of the single findings. Projects are checked one after the
+ * other in the same JVM, so they share the framework classes learned by FrameworkTypeIndex (lint keeps static state,
+ * e.g. in its parsers and caches, that is not safe to share between clients running at the same time). Each finding carries its estimated cost (see LeakCost), and the most costly ones are
+ * printed first (-Dlifecycle.lint.costly, by default 20), to triage them.
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.aggregate.LifecycleAggregator project_dir...
+ */
+public class LifecycleAggregator
+{
+    // Configuration
+    public static final String COSTLY_FINDINGS_PROPERTY = "lifecycle.lint.costly";
+    private static final int DEFAULT_COSTLY_FINDINGS = 20;
+
+    private final IssueRegistry registry = new LifecycleIssuesRegistry();
+    private final Set<String> issueIds = new HashSet<>();
+    private final FindingStore store = new FindingStore();
+
+    /**
+     * Constructor
+     */
+    public LifecycleAggregator()
+    {
+        for(Issue issue: registry.getIssues())
+        {
+            issueIds.add(issue.getId());
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args the project directories
+     * @throws IOException if a project cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length==0)
+        {
+            System.err.println("Usage: LifecycleAggregator <project directory>...");
+            System.exit(1);
+        }
+
+        List<File> projectDirs = new ArrayList<>();
+        for(String arg: args)
+        {
+            projectDirs.add(new File(arg).getAbsoluteFile());
+        }
+
+        LifecycleAggregator aggregator = new LifecycleAggregator();
+        long start = System.nanoTime();
+        aggregator.analyze(projectDirs);
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+        aggregator.print();
+        System.out.println(projectDirs.size()+" project(s) checked in "+elapsedMs+" ms, "+FrameworkTypeIndex.getLearnedCount()+" shared library classes learned");
+    }
+
+    /**
+     * Runs the checks on a list of projects, one after the other, adding their findings to the store
+     * @param projectDirs the root directories of the projects
+     * @throws IOException if a project cannot be read
+     */
+    public void analyze(List<File> projectDirs) throws IOException
+    {
+        for(File projectDir: projectDirs)
+        {
+            analyze(projectDir);
+        }
+    }
+
+    /**
+     * Runs the checks on a project, adding its findings to the store
+     * @param projectDir the root directory of the project
+     * @throws IOException if the project cannot be read
+     */
+    public void analyze(File projectDir) throws IOException
+    {
+        // The detectors run in this thread, that records the templates and the arguments of the reported messages
+        MessageTemplate.startRecording();
+        try
+        {
+            new AggregatingClient().run(registry, Collections.singletonList(projectDir));
+        }
+        finally
+        {
+            MessageTemplate.stopRecording();
+        }
+    }
+
+    /**
+     * Getter
+     * @return the findings collected so far
+     */
+    public FindingStore getStore()
+    {
+        return store;
+    }
+
+    /**
+     * Prints the aggregated counts
+     */
+    public void print()
+    {
+        System.out.println("Findings: "+store.size()+" ("+store.countDistinctMessages()+" distinct messages, "+store.getInternedStrings()+" interned strings)");
+        print("By issue", store.countByIssue());
+        print("By package", store.countByPackage());
+        print("By method", store.countByMethod());
+        print("Estimated cost by issue", store.sumCostByIssue());
+
+        int[] costly = store.getMostCostly(Integer.getInteger(COSTLY_FINDINGS_PROPERTY, DEFAULT_COSTLY_FINDINGS));
+        System.out.println("Most costly findings:");
+        for(int index: costly)
+        {
+            System.out.println("    ["+store.getCost(index)+"] "+store.getLocation(index)+": "+store.getMessage(index)+" ["+store.getIssueId(index)+"]");
+        }
+    }
+
+    /**
+     * Helper to print a group of counts
+     * @param title the title of the group
+     * @param counts the counts by key
+     */
+    private static void print(String title, Map<String, Integer> counts)
+    {
+        System.out.println(title+":");
+        for(Map.Entry<String, Integer> entry: counts.entrySet())
+        {
+            System.out.println("    "+(entry.getKey().isEmpty() ? "(none)" : entry.getKey())+": "+entry.getValue());
+        }
+    }
+
+    /**
+     * Lint client that adds the findings of the lifecycle issues to the store instead of printing a report
+     */
+    private class AggregatingClient extends LintCliClient
+    {
+        private Node lastCompilationUnit;
+        private String lastPackage;
+        private List<MethodDeclaration> lastMethods;
+
+        /**
+         * Constructor
+         */
+        private AggregatingClient()
+        {
+            super(createFlags());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void report(Context context, Issue issue, Severity severity, Location location, String message, TextFormat format)
+        {
+            // The detectors append the estimated cost to the message they format (see LeakCost)
+            int cost = LeakCost.getReportedCost(message);
+            String detectorMessage = LeakCost.removeReportedCost(message);
+            MessageTemplate.Formatted formatted = MessageTemplate.take(detectorMessage);
+            if(severity==Severity.IGNORE || !issueIds.contains(issue.getId())) return;
+
+            File file = location!=null ? location.getFile() : context.file;
+            Position start = location!=null ? location.getStart() : null;
+            int offset = start!=null ? start.getOffset() : -1;
+
+            String packageName = "";
+            String method = "";
+            if(context instanceof JavaContext && ((JavaContext) context).getCompilationUnit()!=null)
+            {
+                scan(((JavaContext) context).getCompilationUnit());
+                packageName = lastPackage;
+                method = getEnclosingMethod(offset);
+            }
+            else if(context instanceof ClassContext)
+            {
+                String className = ((ClassContext) context).getClassNode().name;
+                packageName = className.lastIndexOf('/')<0 ? "" : className.substring(0, className.lastIndexOf('/')).replace('/', '.');
+            }
+
+            store.add(issue.getId(), file.getPath(), packageName, method, start!=null ? start.getLine() : -1, offset, detectorMessage, formatted, cost);
+        }
+
+        /**
+         * Helper to collect the package and the methods of a compilation unit (once per file)
+         * @param compilationUnit the compilation unit
+         */
+        private void scan(Node compilationUnit)
+        {
+            if(compilationUnit==lastCompilationUnit) return;
+
+            lastCompilationUnit = compilationUnit;
+            lastPackage = "";
+            lastMethods = new ArrayList<>();
+            compilationUnit.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitPackageDeclaration(PackageDeclaration node)
+                {
+                    lastPackage = node.getPackageName();
+                    return true;
+                }
+
+                @Override
+                public boolean visitMethodDeclaration(MethodDeclaration node)
+                {
+                    if(node.getPosition()!=null) lastMethods.add(node);
+                    return super.visitMethodDeclaration(node);
+                }
+            });
+        }
+
+        /**
+         * Helper to get the innermost method of the last scanned file that contains an offset
+         * @param offset the offset
+         * @return the method name, "" if the offset is outside all methods
+         */
+        private String getEnclosingMethod(int offset)
+        {
+            MethodDeclaration result = null;
+            for(MethodDeclaration method: lastMethods)
+            {
+                if(method.getPosition().getStart()<=offset && offset<method.getPosition().getEnd() &&
+                   (result==null || method.getPosition().getStart()>=result.getPosition().getStart()))
+                {
+                    result = method;
+                }
+            }
+            return result==null ? "" : result.astMethodName().astValue();
+        }
+    }
+
+    /**
+     * Helper to create the lint flags: only the lifecycle issues, no reports, no progress output
+     * @return the flags
+     */
+    private LintCliFlags createFlags()
+    {
+        LintCliFlags flags = new LintCliFlags();
+        flags.setExactCheckedIds(issueIds);
+        flags.setQuiet(true);
+        return flags;
+    }
+}
@@ -0,0 +1,148 @@
+package it.polimi.testing.lifecycle_lint.benchmark;
+
+import com.android.tools.lint.LintCliClient;
+import com.android.tools.lint.LintCliFlags;
+import com.android.tools.lint.client.api.LintRequest;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.LintMetrics;
+
+/**
+ * Lint client for the benchmarks: it only counts the findings of the lifecycle issues and sums the counters logged by
+ * the detectors (see LintMetrics), optionally restricting the analysis to a scope (e.g. only the compiled classes)
+ */
+public class BenchmarkClient extends LintCliClient
+{
+    private final Set<String> issueIds;
+    private final EnumSet<Scope> scope;
+    private final Map<String, Long> metrics = new TreeMap<>();
+    private int findings = 0;
+
+    /**
+     * Constructor
+     * @param issueIds the IDs of the lifecycle issues
+     * @param scope the scope of the analysis, null for the one lint infers from the files
+     */
+    public BenchmarkClient(Set<String> issueIds, EnumSet<Scope> scope)
+    {
+        super(createFlags(issueIds));
+        this.issueIds = issueIds;
+        this.scope = scope;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    protected LintRequest createLintRequest(List<File> files)
+    {
+        LintRequest request = super.createLintRequest(files);
+        if(scope!=null)
+        {
+            request.setScope(scope);
+        }
+        return request;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void report(Context context, Issue issue, Severity severity, Location location, String message, TextFormat format)
+    {
+        if(severity!=Severity.IGNORE && issueIds.contains(issue.getId()))
+        {
+            findings++;
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void log(Severity severity, Throwable exception, String format, Object... args)
+    {
+        if(!LintMetrics.LOG_FORMAT.equals(format) || args.length<3 || !(args[2] instanceof Map))
+        {
+            super.log(severity, exception, format, args);
+            return;
+        }
+
+        // The detectors clear their counters right after logging them
+        for(Map.Entry<?, ?> entry: ((Map<?, ?>) args[2]).entrySet())
+        {
+            String name = String.valueOf(entry.getKey());
+            metrics.put(name, getMetric(name)+((Number) entry.getValue()).longValue());
+        }
+    }
+
+    /**
+     * Getter
+     * @return the number of findings reported
+     */
+    public int getFindings()
+    {
+        return findings;
+    }
+
+    /**
+     * Gets a counter, summed over all the detectors
+     * @param name the counter name
+     * @return the value, 0 if no detector logged it
+     */
+    public long getMetric(String name)
+    {
+        Long value = metrics.get(name);
+        return value==null ? 0 : value;
+    }
+
+    /**
+     * Describes a series of measured times
+     * @param timesNs the times, in nanoseconds
+     * @return the median, the 99th percentile and the maximum, in milliseconds
+     */
+    public static String describe(long[] timesNs)
+    {
+        long[] sorted = Arrays.copyOf(timesNs, timesNs.length);
+        Arrays.sort(sorted);
+        int p99 = Math.max(0, (int) Math.ceil(sorted.length*0.99)-1);
+        return "median "+toMs(sorted[sorted.length/2])+" ms, p99 "+toMs(sorted[p99])+" ms, max "+toMs(sorted[sorted.length-1])+" ms";
+    }
+
+    /**
+     * Helper to convert a time to milliseconds
+     * @param timeNs the time, in nanoseconds
+     * @return the time in milliseconds, with one decimal digit
+     */
+    private static String toMs(long timeNs)
+    {
+        return String.valueOf(TimeUnit.NANOSECONDS.toMicros(timeNs)/100/10.0);
+    }
+
+    /**
+     * Helper to create the lint flags: only the lifecycle issues, no reports, no progress output
+     * @param issueIds the IDs of the lifecycle issues
+     * @return the flags
+     */
+    private static LintCliFlags createFlags(Set<String> issueIds)
+    {
+        LintCliFlags flags = new LintCliFlags();
+        flags.setExactCheckedIds(issueIds);
+        flags.setQuiet(true);
+        return flags;
+    }
+}
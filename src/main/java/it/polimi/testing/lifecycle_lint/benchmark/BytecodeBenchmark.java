@@ -0,0 +1,81 @@
+package it.polimi.testing.lifecycle_lint.benchmark;
+
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Scope;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.registry.LifecycleIssuesRegistry;
+
+/**
+ * Benchmark of the analysis of the sources against the analysis of the compiled classes of the same module: the
+ * lifecycle checks run alternately on the Java files only and on the class files only (the project must be built),
+ * and the times and the number of findings of each mode are printed.
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.benchmark.BytecodeBenchmark project_dir [runs]
+ */
+public class BytecodeBenchmark
+{
+    // Runs of each mode, the first one (warm-up) is not measured
+    private static final int DEFAULT_RUNS = 10;
+
+    /**
+     * Entry point
+     * @param args the project directory and the number of runs of each mode
+     * @throws IOException if the project cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length<1 || args.length>2 || !new File(args[0]).isDirectory())
+        {
+            System.err.println("Usage: BytecodeBenchmark <project directory> [runs]");
+            System.exit(1);
+        }
+        File projectDir = new File(args[0]).getAbsoluteFile();
+        int runs = args.length>1 ? Integer.parseInt(args[1]) : DEFAULT_RUNS;
+
+        IssueRegistry registry = new LifecycleIssuesRegistry();
+        Set<String> issueIds = new HashSet<>();
+        for(Issue issue: registry.getIssues())
+        {
+            issueIds.add(issue.getId());
+        }
+
+        List<File> files = Collections.singletonList(projectDir);
+        EnumSet<Scope> sourceScope = EnumSet.of(Scope.JAVA_FILE);
+        EnumSet<Scope> classScope = EnumSet.of(Scope.CLASS_FILE);
+        long[] sourceTimes = new long[runs];
+        long[] classTimes = new long[runs];
+        int sourceFindings = 0;
+        int classFindings = 0;
+        for(int i=-1; i<runs; i++)
+        {
+            long start = System.nanoTime();
+            BenchmarkClient client = new BenchmarkClient(issueIds, sourceScope);
+            client.run(registry, files);
+            long sourceTime = System.nanoTime()-start;
+            sourceFindings = client.getFindings();
+
+            start = System.nanoTime();
+            client = new BenchmarkClient(issueIds, classScope);
+            client.run(registry, files);
+            long classTime = System.nanoTime()-start;
+            classFindings = client.getFindings();
+
+            if(i>=0)
+            {
+                sourceTimes[i] = sourceTime;
+                classTimes[i] = classTime;
+            }
+        }
+
+        System.out.println("Sources:  "+BenchmarkClient.describe(sourceTimes)+", "+sourceFindings+" finding(s)");
+        System.out.println("Bytecode: "+BenchmarkClient.describe(classTimes)+", "+classFindings+" finding(s)");
+    }
+}
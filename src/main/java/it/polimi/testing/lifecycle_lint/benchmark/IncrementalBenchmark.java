@@ -0,0 +1,76 @@
+package it.polimi.testing.lifecycle_lint.benchmark;
+
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.Issue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.LintMetrics;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.registry.LifecycleIssuesRegistry;
+
+/**
+ * Benchmark of the re-checks of a single file in the same JVM, as in watch mode: the lifecycle checks run repeatedly
+ * on the file first without and then with the method summaries (see MethodSummaryCache), printing the times of each
+ * series and how many invocations were classified from the cache. The file is not modified, so every method of the
+ * runs after the first one with the cache is a hit (the best case of an edit that changes a single method body).
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.benchmark.IncrementalBenchmark project_dir java_file [runs]
+ */
+public class IncrementalBenchmark
+{
+    // Runs of each series, the first one (warm-up, or filling the cache) is not measured
+    private static final int DEFAULT_RUNS = 50;
+
+    /**
+     * Entry point
+     * @param args the project directory, the Java file and the number of runs of each series
+     * @throws IOException if the file cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        if(args.length<2 || args.length>3 || !new File(args[0]).isDirectory() || !new File(args[1]).isFile())
+        {
+            System.err.println("Usage: IncrementalBenchmark <project directory> <Java file> [runs]");
+            System.exit(1);
+        }
+        File file = new File(args[1]).getAbsoluteFile();
+        int runs = args.length>2 ? Integer.parseInt(args[2]) : DEFAULT_RUNS;
+
+        IssueRegistry registry = new LifecycleIssuesRegistry();
+        Set<String> issueIds = new HashSet<>();
+        for(Issue issue: registry.getIssues())
+        {
+            issueIds.add(issue.getId());
+        }
+
+        // The counters of the detectors tell the cache hits
+        System.setProperty(LintMetrics.METRICS_PROPERTY, Boolean.TRUE.toString());
+        List<File> files = Collections.singletonList(file);
+        for(boolean incremental: new boolean[]{false, true})
+        {
+            System.setProperty(MethodSummaryCache.INCREMENTAL_PROPERTY, Boolean.toString(incremental));
+            long[] times = new long[runs];
+            long hits = 0;
+            int findings = 0;
+            for(int i=-1; i<runs; i++)
+            {
+                long start = System.nanoTime();
+                BenchmarkClient client = new BenchmarkClient(issueIds, null);
+                client.run(registry, files);
+                long time = System.nanoTime()-start;
+                if(i>=0)
+                {
+                    times[i] = time;
+                    hits += client.getMetric(MethodSummaryCache.METRIC_HITS);
+                }
+                findings = client.getFindings();
+            }
+            System.out.println((incremental ? "With summaries:    " : "Without summaries: ")+BenchmarkClient.describe(times)+", "+findings+" finding(s), "+hits/runs+" cache hit(s) per run");
+        }
+    }
+}
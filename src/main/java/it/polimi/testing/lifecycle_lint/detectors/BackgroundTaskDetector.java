@@ -0,0 +1,880 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.ControlFlowUtils;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.RegistrationTracker;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.ClassDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.Select;
+import lombok.ast.This;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedClass;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class BackgroundTaskDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = BackgroundTaskDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "BackgroundTaskLifecycle";
+    private static final String ISSUE_DESCRIPTION = "`AsyncTask`, `Thread` or executor task that outlives the component";
+    private static final String ISSUE_EXPLANATION = "A background task keeps running after the user leaves the Activity or Fragment that started it, "+
+                                                    "wasting CPU and battery on a result nobody will see. Keep a reference to every task and stop "+
+                                                    "it in onStop() or onDestroy(): `cancel()` an `AsyncTask` or a `Future`, `interrupt()` a "+
+                                                    "`Thread`, `shutdownNow()` an `ExecutorService`. Anonymous and non-static inner classes also "+
+                                                    "keep an implicit reference to the enclosing component, so it cannot be garbage collected "+
+                                                    "until the task ends: declare the task as a static class and reach the component through a "+
+                                                    "`WeakReference`.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/reference/android/os/AsyncTask.html#cancelling-a-task";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 6;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue (the first stop method of each kind is suggested in the messages)
+    private static final List<TaskKind> TASK_KINDS = Arrays.asList(
+        new TaskKind("android.os.AsyncTask", Arrays.asList("execute", "executeOnExecutor"), Arrays.asList("cancel")),
+        new TaskKind("android.os.HandlerThread", Arrays.asList("start"), Arrays.asList("quitSafely", "quit")),
+        new TaskKind("java.lang.Thread", Arrays.asList("start"), Arrays.asList("interrupt")),
+        new TaskKind("java.util.concurrent.ExecutorService", Arrays.asList("submit"), Arrays.asList("shutdownNow", "shutdown")),
+        new TaskKind("java.util.concurrent.Future", Arrays.<String>asList(), Arrays.asList("cancel"))
+    );
+
+    // Prefix of the names of the tasks started without a reference (e.g. new MyTask().execute()), unique per call
+    private static final String UNTRACKED_TASK_PREFIX = "new@";
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_STOP = new MessageTemplate("This `%1$s` task is started in `%2$s()` but there are no `%3$s()` calls on the same object in the teardown callbacks of the %4$s: call it in `%5$s()`, so that the task does not outlive the component");
+    private static final MessageTemplate MESSAGE_NOT_STOPPABLE = new MessageTemplate("This `%1$s` task is started without keeping a reference to it, so it can never be stopped: store it in a field and call `%2$s()` in `%3$s()`");
+    private static final MessageTemplate MESSAGE_IMPLICIT_CAPTURE = new MessageTemplate("The task started here is %1$s declared in `%2$s`, so it keeps the `%2$s` alive until it finishes: make it a static class that holds a `WeakReference` to it");
+
+    // Packages that cannot contain the task classes
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("android.content.", "android.view.", "android.widget.", "java.io.");
+
+    // Data used during the search (per detector instance)
+    private final RegistrationTracker tasks = new RegistrationTracker();
+    private final Map<MethodInvocation, TaskKind> startedTasks = new IdentityHashMap<>();
+    private final Map<MethodInvocation, String> storedTasks = new IdentityHashMap<>();
+
+    // Data used during the bytecode search
+    private final Map<String, ClassCall> classStarts = new LinkedHashMap<>();
+    private final Map<ClassCall, String> classStoredTasks = new IdentityHashMap<>();
+    private final Map<String, List<ClassCall>> classStops = new LinkedHashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations (the kind is stored as its index plus one, then the id of the owner that starts
+    // the task), cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_START = 1;
+    private static final int SUMMARY_STOP = 1<<1;
+    private static final int SUMMARY_KIND_SHIFT = 4;
+    private static final int SUMMARY_KIND_MASK = 0xF;
+    private static final int SUMMARY_OWNER_SHIFT = 8;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public BackgroundTaskDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Arrays.<Class<? extends Node>>asList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that each task started by a component is stopped in one of its teardown callbacks
+     * (e.g. onStop() or onDestroy() of an activity), through the started object or the one stored from the start call
+     * (e.g. the Future returned by submit()): a stop in another method (e.g. a click handler) may never run
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Not if the file was only partially analyzed, since the stop may be in the part we skipped
+        if(!budget.wasExceeded())
+        {
+            for(Map.Entry<String, MethodInvocation> entry: tasks.getRegistrations().entrySet())
+            {
+                MethodInvocation startNode = entry.getValue();
+                LifecycleOwner owner = tasks.getOwner(startNode);
+                String storedTask = storedTasks.get(startNode);
+                List<String> stopMethods = tasks.getUnregistrationMethods(entry.getKey());
+                if(storedTask!=null)
+                {
+                    stopMethods.addAll(tasks.getUnregistrationMethods(storedTask));
+                }
+                if(isStoppedInTeardown(owner, stopMethods))
+                {
+                    continue;
+                }
+
+                TaskKind kind = startedTasks.get(startNode);
+                String startMethod = Utils.getCallerMethodName(startNode);
+                if(entry.getKey().startsWith(UNTRACKED_TASK_PREFIX) && storedTask==null)
+                {
+                    report(context, ISSUE, startNode, context.getLocation(startNode.astName()), MESSAGE_NOT_STOPPABLE.format(kind.getSimpleName(), kind.stopMethods.get(0), getStopCallback(owner, startMethod)));
+                }
+                else
+                {
+                    report(context, ISSUE, startNode, context.getLocation(startNode.astName()), MESSAGE_NO_STOP.format(kind.getSimpleName(), startMethod, kind.stopMethods.get(0), owner.getName(), getStopCallback(owner, startMethod)));
+                }
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        tasks.clear();
+        startedTasks.clear();
+        storedTasks.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        LifecycleOwner owner = classStarts.isEmpty() ? null : LifecycleOwner.getOwner(context, context.getClassNode().name);
+        for(Map.Entry<String, ClassCall> entry: classStarts.entrySet())
+        {
+            ClassCall call = entry.getValue();
+            String storedTask = classStoredTasks.get(call);
+            List<String> stopMethods = getStopMethods(entry.getKey());
+            if(storedTask!=null)
+            {
+                stopMethods.addAll(getStopMethods(storedTask));
+            }
+            if(isStoppedInTeardown(owner, stopMethods))
+            {
+                continue;
+            }
+
+            TaskKind kind = getTaskKind(context, call.getCall());
+            String startMethod = call.getMethod().name;
+            if(entry.getKey().startsWith(UNTRACKED_TASK_PREFIX) && storedTask==null)
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NOT_STOPPABLE.format(kind.getSimpleName(), kind.stopMethods.get(0), getStopCallback(owner, startMethod)));
+            }
+            else
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_STOP.format(kind.getSimpleName(), startMethod, kind.stopMethods.get(0), owner.getName(), getStopCallback(owner, startMethod)));
+            }
+        }
+
+        // Reset variables for next classes
+        classStarts.clear();
+        classStoredTasks.clear();
+        classStops.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * Helper to get the methods in which a task is stopped in the bytecode
+     * @param task the name of the task
+     * @return the names of the methods
+     */
+    private List<String> getStopMethods(String task)
+    {
+        List<String> methods = new ArrayList<>();
+        List<ClassCall> stops = classStops.get(task);
+        if(stops!=null)
+        {
+            for(ClassCall stop: stops)
+            {
+                methods.add(stop.getMethod().name);
+            }
+        }
+        return methods;
+    }
+
+    /**
+     * Helper to check if a task is stopped in one of the teardown callbacks of its owner
+     * @param owner the lifecycle owner of the class that starts the task
+     * @param stopMethods the names of the methods that stop the task
+     * @return true if one of the methods is a release callback of the owner
+     */
+    private static boolean isStoppedInTeardown(LifecycleOwner owner, List<String> stopMethods)
+    {
+        for(String stopMethod: stopMethods)
+        {
+            if(owner.getReleaseOrder(stopMethod)>=0)
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to get the teardown callback in which a task should be stopped, for the messages
+     * @param owner the lifecycle owner of the class that starts the task
+     * @param startMethod the name of the method that starts the task
+     * @return the release callback paired with the start method, the last release callback if there is none
+     */
+    private static String getStopCallback(LifecycleOwner owner, String startMethod)
+    {
+        String pairedMethod = owner.getPairedReleaseCallback(startMethod);
+        return pairedMethod!=null ? pairedMethod : owner.getLastReleaseCallback();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new BackgroundTaskVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        List<String> names = new ArrayList<>();
+        for(TaskKind kind: TASK_KINDS)
+        {
+            names.addAll(kind.startMethods);
+            names.addAll(kind.stopMethods);
+        }
+        return names;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the task is identified by the field or variable the call is invoked on, or by
+     * the field the result of the call is stored in
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the call
+        TaskKind kind = getTaskKind(context, call);
+        if(kind==null)
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+
+        String task = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+        if(kind.stopMethods.contains(call.name))
+        {
+            List<ClassCall> list = classStops.get(task);
+            if(list==null)
+            {
+                list = new ArrayList<>();
+                classStops.put(task, list);
+            }
+            list.add(new ClassCall(method, call));
+            return;
+        }
+
+        // Only tasks started by components with a lifecycle that ends (the application lives as long as the process)
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, classNode.name);
+        if(owner==null || owner.isLongLived())
+        {
+            return;
+        }
+
+        ClassCall classCall = new ClassCall(method, call);
+        if(task.isEmpty())
+        {
+            task = UNTRACKED_TASK_PREFIX+method.name+"@"+method.instructions.indexOf(call);
+        }
+        classStarts.put(task, classCall);
+        AbstractInsnNode next = call.getNext();
+        while(next!=null && next.getOpcode()<0)
+        {
+            next = next.getNext();
+        }
+        if(next instanceof FieldInsnNode && next.getOpcode()==Opcodes.PUTFIELD)
+        {
+            classStoredTasks.put(classCall, ((FieldInsnNode) next).name);
+        }
+
+        // Anonymous and inner classes keep the enclosing instance (passed as first argument of their constructors)
+        if((method.access & Opcodes.ACC_STATIC)==0 && lastFrames!=null)
+        {
+            int consumed = Type.getArgumentTypes(call.desc).length+1;
+            for(int depth=1; depth<=consumed; depth++)
+            {
+                String captured = getCapturingClass(method, lastFrames, call, depth, classNode.name, true);
+                if(captured!=null)
+                {
+                    String innerName = captured.substring(captured.lastIndexOf('$')+1);
+                    String holder = innerName.matches("[0-9]+") ? "an anonymous class" : "`"+innerName+"`, a non-static inner class";
+                    String outerName = ClassContext.getFqcn(classNode.name);
+                    report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_IMPLICIT_CAPTURE.format(holder, outerName.substring(outerName.lastIndexOf('.')+1)));
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Helper to get the kind of task started or stopped by a call in the bytecode
+     * @param context the context of the lint request
+     * @param call the call
+     * @return the kind, null if the call neither starts nor stops a task
+     */
+    private static TaskKind getTaskKind(ClassContext context, MethodInsnNode call)
+    {
+        for(TaskKind kind: TASK_KINDS)
+        {
+            if((kind.startMethods.contains(call.name) || kind.stopMethods.contains(call.name)) && BytecodeUtils.isSubclassOf(context, call.owner, kind.className))
+            {
+                return kind;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper to find an inner class instance, created in the method, that keeps the enclosing instance: the value
+     * consumed by an instruction (followed through the fields assigned in the method) or, one level down, an argument
+     * of its constructor (e.g. the Runnable of a new Thread)
+     * @param method the method
+     * @param frames the frames of the method, see BytecodeUtils.analyze()
+     * @param instruction the instruction that consumes the value
+     * @param depth the position of the value from the top of the stack when the instruction is executed (1 is the top)
+     * @param outer the VM name of the enclosing class
+     * @param followArguments true to check also the arguments of the constructor of the value
+     * @return the VM name of the inner class, null if the value does not capture the enclosing instance
+     */
+    private static String getCapturingClass(MethodNode method, Frame[] frames, AbstractInsnNode instruction, int depth, String outer, boolean followArguments)
+    {
+        Frame frame = frames[method.instructions.indexOf(instruction)];
+        if(frame==null || frame.getStackSize()<depth) return null;
+        SourceValue value = (SourceValue) frame.getStack(frame.getStackSize()-depth);
+        if(value==null || value.insns.size()!=1) return null;
+        AbstractInsnNode source = (AbstractInsnNode) value.insns.iterator().next();
+
+        // A field of the class assigned in the method
+        if(source instanceof FieldInsnNode && source.getOpcode()==Opcodes.GETFIELD && ((FieldInsnNode) source).owner.equals(outer))
+        {
+            for(AbstractInsnNode store = method.instructions.getFirst(); store!=null; store = store.getNext())
+            {
+                if(store instanceof FieldInsnNode && store.getOpcode()==Opcodes.PUTFIELD && ((FieldInsnNode) store).owner.equals(outer) &&
+                        ((FieldInsnNode) store).name.equals(((FieldInsnNode) source).name))
+                {
+                    String captured = getCapturingClass(method, frames, store, 1, outer, followArguments);
+                    if(captured!=null) return captured;
+                }
+            }
+            return null;
+        }
+        if(!(source instanceof TypeInsnNode) || source.getOpcode()!=Opcodes.NEW) return null;
+
+        // The constructor of the new instance
+        String type = ((TypeInsnNode) source).desc;
+        for(AbstractInsnNode next = source.getNext(); next!=null && next!=instruction; next = next.getNext())
+        {
+            if(next instanceof MethodInsnNode && next.getOpcode()==Opcodes.INVOKESPECIAL && ((MethodInsnNode) next).owner.equals(type) &&
+                    "<init>".equals(((MethodInsnNode) next).name))
+            {
+                MethodInsnNode constructor = (MethodInsnNode) next;
+                if(constructor.desc.startsWith("(L"+outer+";"))
+                {
+                    return type;
+                }
+                if(!followArguments) return null;
+
+                int arguments = Type.getArgumentTypes(constructor.desc).length;
+                for(int i=1; i<=arguments; i++)
+                {
+                    String captured = getCapturingClass(method, frames, constructor, i, outer, false);
+                    if(captured!=null) return captured;
+                }
+                return null;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A kind of background task and the methods that start and stop it
+     */
+    private static class TaskKind
+    {
+        private final String className;
+        private final List<String> startMethods;
+        private final List<String> stopMethods;
+
+        /**
+         * Constructor
+         * @param className the class that declares the methods
+         * @param startMethods the methods that start a task
+         * @param stopMethods the methods that stop it
+         */
+        public TaskKind(String className, List<String> startMethods, List<String> stopMethods)
+        {
+            this.className = className;
+            this.startMethods = startMethods;
+            this.stopMethods = stopMethods;
+        }
+
+        /**
+         * Getter
+         * @return the simple name of the class, for the messages
+         */
+        public String getSimpleName()
+        {
+            return className.substring(className.lastIndexOf('.')+1);
+        }
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class BackgroundTaskVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public BackgroundTaskVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            if(!isApplicableName(methodInvocation.astName().astValue()))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+
+            // Starts are paired with the stops of the same object
+            Expression operand = methodInvocation.astOperand();
+            if((summary & SUMMARY_STOP)!=0)
+            {
+                tasks.unregister(aliases.getCanonicalName(operand), methodInvocation, true, null);
+            }
+            else if((summary & SUMMARY_START)!=0 && (summary>>>SUMMARY_OWNER_SHIFT)!=LifecycleOwner.NO_OWNER)
+            {
+                // Tasks created in place can be stopped only through the result of the call (AsyncTask.execute()
+                // returns the task itself, submit() a Future)
+                String task = isReference(operand) ? aliases.getCanonicalName(operand) : UNTRACKED_TASK_PREFIX+methodInvocation.getPosition().getStart();
+                tasks.register(task, methodInvocation, LifecycleOwner.getOwnerById(summary>>>SUMMARY_OWNER_SHIFT));
+                startedTasks.put(methodInvocation, TASK_KINDS.get(((summary>>>SUMMARY_KIND_SHIFT) & SUMMARY_KIND_MASK)-1));
+                String storedTask = getStoredName(methodInvocation);
+                if(storedTask!=null)
+                {
+                    storedTasks.put(methodInvocation, storedTask);
+                }
+
+                // Anonymous and inner classes keep the enclosing instance
+                String capture = getCaptureDescription(methodInvocation);
+                if(capture!=null)
+                {
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_IMPLICIT_CAPTURE.format(capture, getEnclosingClassName(methodInvocation)));
+                }
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Helper to check if a method name may start or stop a task
+         * @param name the name of the method
+         * @return true if one of the kinds of task has a method with that name
+         */
+        private boolean isApplicableName(String name)
+        {
+            for(TaskKind kind: TASK_KINDS)
+            {
+                if(kind.startMethods.contains(name) || kind.stopMethods.contains(name))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Helper to check if an expression refers to an object that can be reached again: a field, a variable or a
+         * getter of the class
+         * @param expression the expression
+         * @return false for new instances and the results of other calls
+         */
+        private boolean isReference(Expression expression)
+        {
+            if(expression instanceof VariableReference || (expression instanceof Select && ((Select) expression).astOperand() instanceof This))
+            {
+                return true;
+            }
+            return expression instanceof MethodInvocation && ((MethodInvocation) expression).astOperand()==null && ((MethodInvocation) expression).astArguments().isEmpty();
+        }
+
+        /**
+         * Helper to get the variable in which the result of a start call is stored
+         * @param methodInvocation the start call
+         * @return the canonical name of the variable, null if the result is not stored
+         */
+        private String getStoredName(MethodInvocation methodInvocation)
+        {
+            Node parent = methodInvocation.getParent();
+            if(parent instanceof BinaryExpression && ((BinaryExpression) parent).astOperator()==BinaryOperator.ASSIGN && ((BinaryExpression) parent).astRight()==methodInvocation)
+            {
+                return aliases.getCanonicalName(((BinaryExpression) parent).astLeft());
+            }
+            if(parent instanceof VariableDefinitionEntry && ((VariableDefinitionEntry) parent).astInitializer()==methodInvocation)
+            {
+                // The local variable is named through one of its references in the method
+                final String name = ((VariableDefinitionEntry) parent).astName().astValue();
+                final VariableReference[] reference = {null};
+                Node method = ControlFlowUtils.getEnclosingMethod(methodInvocation);
+                if(method!=null)
+                {
+                    method.accept(new ForwardingAstVisitor()
+                    {
+                        @Override
+                        public boolean visitVariableReference(VariableReference node)
+                        {
+                            if(reference[0]==null && name.equals(node.astIdentifier().astValue()))
+                            {
+                                reference[0] = node;
+                            }
+                            return false;
+                        }
+                    });
+                }
+                return reference[0]!=null ? aliases.getCanonicalName(reference[0]) : null;
+            }
+            return null;
+        }
+
+        /**
+         * Helper to describe the anonymous or inner class instance that keeps the enclosing instance alive while the
+         * task runs: the started object or, one level down, an argument of its constructor (e.g. the Runnable of a
+         * new Thread), or an argument of the start call (e.g. the Runnable passed to submit()). A started object kept
+         * in a field or variable is followed to its creation in the class
+         * @param methodInvocation the start call
+         * @return the description for the messages, null if the task does not capture the enclosing instance
+         */
+        private String getCaptureDescription(MethodInvocation methodInvocation)
+        {
+            List<Expression> values = new ArrayList<>();
+            for(Expression argument: methodInvocation.astArguments())
+            {
+                values.add(argument);
+            }
+            Expression operand = methodInvocation.astOperand();
+            ConstructorInvocation creation = operand instanceof ConstructorInvocation ? (ConstructorInvocation) operand : getCreation(methodInvocation, operand);
+            if(creation!=null)
+            {
+                values.add(creation);
+                for(Expression argument: creation.astArguments())
+                {
+                    values.add(argument);
+                }
+            }
+
+            for(Expression value: values)
+            {
+                String description = getCaptureDescription(value);
+                if(description!=null)
+                {
+                    return description;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Helper to find where the object in a field or variable is created: an initializer or an assignment of a new
+         * instance with the same name in the class that contains a call
+         * @param methodInvocation the call
+         * @param reference the field or variable
+         * @return the creation, null if the object is not created in the class with a single constructor invocation
+         */
+        private ConstructorInvocation getCreation(MethodInvocation methodInvocation, Expression reference)
+        {
+            final String name = getReferenceName(reference);
+            ClassDeclaration classDeclaration = JavaContext.getParentOfType(methodInvocation, ClassDeclaration.class);
+            if(name==null || classDeclaration==null) return null;
+
+            final List<ConstructorInvocation> creations = new ArrayList<>();
+            classDeclaration.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node)
+                {
+                    if(name.equals(node.astName().astValue()) && node.astInitializer() instanceof ConstructorInvocation)
+                    {
+                        creations.add((ConstructorInvocation) node.astInitializer());
+                    }
+                    return false;
+                }
+
+                @Override
+                public boolean visitBinaryExpression(BinaryExpression node)
+                {
+                    if(node.astOperator()==BinaryOperator.ASSIGN && node.astRight() instanceof ConstructorInvocation && name.equals(getReferenceName(node.astLeft())))
+                    {
+                        creations.add((ConstructorInvocation) node.astRight());
+                    }
+                    return false;
+                }
+            });
+            return creations.size()==1 ? creations.get(0) : null;
+        }
+
+        /**
+         * Helper to get the name of a field or variable
+         * @param expression the expression
+         * @return the name for "name" and "this.name", null otherwise
+         */
+        private String getReferenceName(Expression expression)
+        {
+            if(expression instanceof VariableReference)
+            {
+                return ((VariableReference) expression).astIdentifier().astValue();
+            }
+            if(expression instanceof Select && ((Select) expression).astOperand() instanceof This)
+            {
+                return ((Select) expression).astIdentifier().astValue();
+            }
+            return null;
+        }
+
+        /**
+         * Helper to describe a value that keeps the enclosing instance alive
+         * @param value the value
+         * @return the description for the messages, null if the value does not capture the enclosing instance
+         */
+        private String getCaptureDescription(Expression value)
+        {
+            if(value==null || Utils.getCapturedOuterClass(value)==null)
+            {
+                return null;
+            }
+
+            // Anonymous classes
+            if(value instanceof ConstructorInvocation && ((ConstructorInvocation) value).astAnonymousClassBody()!=null)
+            {
+                return "an anonymous class";
+            }
+
+            // Non-static member classes, created directly or stored in a field or variable
+            JavaParser.TypeDescriptor type = value instanceof ConstructorInvocation || value instanceof VariableReference ? context.getType(value) : null;
+            ResolvedClass typeClass = type!=null ? type.getTypeClass() : null;
+            if(typeClass!=null && typeClass.getContainingClass()!=null && (typeClass.getModifiers() & Modifier.STATIC)==0)
+            {
+                String simpleName = typeClass.getSimpleName();
+                return "`"+simpleName.substring(simpleName.lastIndexOf('.')+1)+"`, a non-static inner class";
+            }
+            return null;
+        }
+
+        /**
+         * Helper to get the name of the class that contains a call
+         * @param methodInvocation the call
+         * @return the simple name of the class
+         */
+        private String getEnclosingClassName(MethodInvocation methodInvocation)
+        {
+            ClassDeclaration classDeclaration = JavaContext.getParentOfType(methodInvocation, ClassDeclaration.class);
+            return classDeclaration!=null ? classDeclaration.astName().astValue() : "";
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve the type of the receiver, which tells the kind of task even if the method is inherited (e.g.
+            // start() of a HandlerThread is declared in Thread), or the class of the method for calls on this
+            ResolvedClass resolvedClass = null;
+            if(methodInvocation.astOperand()!=null)
+            {
+                JavaParser.TypeDescriptor type = context.getType(methodInvocation.astOperand());
+                resolvedClass = type!=null ? type.getTypeClass() : null;
+            }
+            if(resolvedClass==null)
+            {
+                ResolvedNode resolved = context.resolve(methodInvocation);
+                if(resolved instanceof ResolvedMethod)
+                {
+                    resolvedClass = ((ResolvedMethod) resolved).getContainingClass();
+                }
+            }
+            if(resolvedClass==null)
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            String name = methodInvocation.astName().astValue();
+            for(int i=0; i<TASK_KINDS.size(); i++)
+            {
+                TaskKind kind = TASK_KINDS.get(i);
+                boolean isStart = kind.startMethods.contains(name);
+                if((isStart || kind.stopMethods.contains(name)) && Utils.isSubclassOf(resolvedClass, kind.className))
+                {
+                    int summary = (isStart ? SUMMARY_START : SUMMARY_STOP) | (i+1)<<SUMMARY_KIND_SHIFT;
+
+                    // Only the tasks started by components with a lifecycle that ends (skipped if we are over the time budget)
+                    LifecycleOwner owner = isStart && !budget.isExceeded() ? Utils.getLifecycleOwner(context, methodInvocation) : null;
+                    if(owner!=null && !owner.isLongLived())
+                    {
+                        summary |= LifecycleOwner.getId(owner)<<SUMMARY_OWNER_SHIFT;
+                    }
+                    return summary;
+                }
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+    }
+}
@@ -1,8 +1,8 @@
 package it.polimi.testing.lifecycle_lint.detectors;
 
 import com.android.annotations.NonNull;
-import com.android.tools.lint.client.api.JavaParser;
 import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
 import com.android.tools.lint.detector.api.Context;
 import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Implementation;
@@ -11,37 +11,44 @@ import com.android.tools.lint.detector.api.JavaContext;
 import com.android.tools.lint.detector.api.Scope;
 import com.android.tools.lint.detector.api.Severity;
 
-import java.io.File;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
-import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.RegistrationTracker;
 import it.polimi.testing.lifecycle_lint.Utils;
 import lombok.ast.AstVisitor;
-import lombok.ast.Catch;
+import lombok.ast.Expression;
 import lombok.ast.ForwardingAstVisitor;
 import lombok.ast.MethodInvocation;
 import lombok.ast.Node;
-import lombok.ast.Try;
-import lombok.ast.TypeReference;
 
 import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
 import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
-import static com.android.tools.lint.detector.api.JavaContext.getParentOfType;
 
-public class BroadcastReceiverDetector extends Detector implements Detector.JavaScanner
+public class BroadcastReceiverDetector extends LifecycleDetector
 {
-    // Issue implementation
+    // Issue implementation (sources or, when they are not available, compiled classes and libraries)
     private static final Class<? extends Detector> DETECTOR_CLASS = BroadcastReceiverDetector.class;
-    private static final EnumSet<Scope> DETECTOR_SCOPE = Scope.JAVA_FILE_SCOPE;
-    private static final Implementation IMPLEMENTATION = new Implementation(
-        DETECTOR_CLASS,
-        DETECTOR_SCOPE
-    );
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE, Scope.JAVA_LIBRARIES);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
 
     // Issue description
     private static final String ISSUE_ID = "BroadcastReceiverLifecycle";
@@ -68,31 +75,54 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
         IMPLEMENTATION
     ).addMoreInfo(MORE_INFO_URL);
 
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
     // Methods and classes related to the issue
     public static final String LOCAL_BROADCAST_MANAGER = "android.support.v4.content.LocalBroadcastManager";
     private static final String REGISTER_METHOD = "registerReceiver";
     private static final String UNREGISTER_METHOD = "unregisterReceiver";
-
-    // Data used during the search
-    private static Map<String, MethodInvocation> registrations = new HashMap<>();
-    private static Map<String, List<MethodInvocation>> unregistrations = new HashMap<>();
+    private static final String[] UNREGISTER_EXCEPTIONS = {
+        "java.lang.IllegalArgumentException",
+        "java.lang.RuntimeException",
+        "java.lang.Exception",
+        "java.lang.Throwable"
+    };
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_UNREGISTER = new MessageTemplate("Found a `BroadcastReceiver` `"+REGISTER_METHOD+"()` but no `"+UNREGISTER_METHOD+"()` calls in the class");
+    private static final MessageTemplate MESSAGE_MULTIPLE_UNREGISTER = new MessageTemplate("Multiple `"+UNREGISTER_METHOD+"()` detected: it is advisable to catch `IllegalArgumentException` in each of them, otherwise if they are called in sequence the application will crash");
+    private static final MessageTemplate MESSAGE_WRONG_METHOD = new MessageTemplate("You should not call `%1$s()` during `%2$s()` because it won't be called if the user moves back in the history stack");
+
+    // Packages that cannot contain ContextWrapper or LocalBroadcastManager subclasses
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.");
+
+    // Data used during the search (per detector instance)
+    private final RegistrationTracker receivers = new RegistrationTracker();
+
+    // Data used during the bytecode search
+    private final Map<String, ClassCall> classRegistrations = new LinkedHashMap<>();
+    private final Map<String, List<ClassCall>> classUnregistrations = new LinkedHashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_REGISTER = 1;
+    private static final int SUMMARY_UNREGISTER = 1<<1;
+    private static final int SUMMARY_IN_TRY_CATCH = 1<<2;
+    private static final int SUMMARY_OWNER_SHIFT = 8;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
 
     /**
-     * {@inheritDoc}
+     * Constructor
      */
-    @Override
-    public boolean appliesTo(@NonNull Context context, @NonNull File file)
+    public BroadcastReceiverDetector()
     {
-        return true;
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public EnumSet<Scope> getApplicableFiles()
-    {
-        return Scope.JAVA_FILE_SCOPE;
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
     }
 
     /**
@@ -114,38 +144,74 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
     @Override
     public void afterCheckFile(@NonNull Context c)
     {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
         if(!(c instanceof JavaContext)) return;
         JavaContext context = (JavaContext) c;
 
-        // Create issue if we found a register but no unregister for a given variable
-        for(Map.Entry<String, MethodInvocation> entry: registrations.entrySet())
+        // Create issue if we found a register but no unregister for a given variable (not if the file was only
+        // partially analyzed, since the unregister may be in the part we skipped)
+        if(!budget.wasExceeded())
         {
-            if(!unregistrations.keySet().contains(entry.getKey()))
+            for(MethodInvocation methodInvocation: receivers.getUnmatchedRegistrations())
             {
-                context.report(ISSUE, entry.getValue(), context.getLocation(entry.getValue().astName()), "Found a `BroadcastReceiver` `"+REGISTER_METHOD+"()` but no `"+UNREGISTER_METHOD+"()` calls in the class");
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_NO_UNREGISTER.format());
             }
         }
 
-        // For each variable unregistered...
-        for(Map.Entry<String, List<MethodInvocation>> entry: unregistrations.entrySet())
+        // Issue for the unregisters that are not inside a try/catch and can actually run after another unregister
+        for(MethodInvocation methodInvocation: receivers.getUnsafeUnregistrations())
+        {
+            report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_MULTIPLE_UNREGISTER.format());
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        receivers.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes: we check that registrations and unregistrations are consistent
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        // Create issue if we found a register but no unregister for a given variable (not in owners that live as long
+        // as the process)
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, context.getClassNode().name);
+        for(Map.Entry<String, ClassCall> entry: classRegistrations.entrySet())
         {
-            // If we found more than one unregister...
-            if(entry.getValue()!=null && entry.getValue().size()>1)
+            if(!classUnregistrations.keySet().contains(entry.getKey()) && (owner==null || !owner.isLongLived()))
             {
-                // Issue for those that are not inside a try/catch
-                for(MethodInvocation methodInvocation: entry.getValue())
+                ClassCall call = entry.getValue();
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_UNREGISTER.format());
+            }
+        }
+
+        // Issue for each unregister that is not inside a try/catch, if we found more than one for the same variable
+        for(Map.Entry<String, List<ClassCall>> entry: classUnregistrations.entrySet())
+        {
+            if(entry.getValue().size()>1)
+            {
+                for(ClassCall call: entry.getValue())
                 {
-                    if(methodInvocation!=null)
+                    if(call!=null)
                     {
-                        context.report(ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), "Multiple `"+UNREGISTER_METHOD+"()` detected: it is advisable to catch `IllegalArgumentException` in each of them, otherwise if they are called in sequence the application will crash");
+                        report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_MULTIPLE_UNREGISTER.format());
                     }
                 }
             }
         }
 
-        // Reset variables for next files
-        registrations.clear();
-        unregistrations.clear();
+        // Reset variables for next classes
+        classRegistrations.clear();
+        classUnregistrations.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
     }
 
     /**
@@ -157,12 +223,76 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
         return new BroadcastReceiverVisitor(context);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return Arrays.asList(REGISTER_METHOD, UNREGISTER_METHOD);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the receiver is identified by the field or variable loaded as first argument
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the class that contains this method
+        if(!BytecodeUtils.isSubclassOf(context, call.owner, Utils.CONTEXT_WRAPPER) &&
+                !BytecodeUtils.isSubclassOf(context, call.owner, LOCAL_BROADCAST_MANAGER) &&
+                !(ClassContext.getInternalName(Utils.CONTEXT).equals(call.owner) && LifecycleOwner.getOwner(context, classNode.name)!=null))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+
+        String broadcastReceiverVariable = BytecodeUtils.getCallArgumentName(method, lastFrames, call, 0);
+        if(REGISTER_METHOD.equals(call.name))
+        {
+            classRegistrations.put(broadcastReceiverVariable, new ClassCall(method, call));
+        }
+        else if(UNREGISTER_METHOD.equals(call.name))
+        {
+            // Save unregistration (need call handle only if it's not in a try/catch)
+            List<ClassCall> list = classUnregistrations.get(broadcastReceiverVariable);
+            if(list==null)
+            {
+                list = new ArrayList<>();
+                classUnregistrations.put(broadcastReceiverVariable, list);
+            }
+            list.add(BytecodeUtils.isInTryCatch(method, call, UNREGISTER_EXCEPTIONS) ? null : new ClassCall(method, call));
+
+            // Issue if this is called during onSaveInstanceState
+            if(Utils.ON_SAVE_INSTANCE_STATE_METHOD.equals(method.name))
+            {
+                report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_WRONG_METHOD.format(UNREGISTER_METHOD, Utils.ON_SAVE_INSTANCE_STATE_METHOD));
+            }
+        }
+    }
+
     /**
      * Custom AST Visitor that receives method invocation calls
      */
-    private static class BroadcastReceiverVisitor extends ForwardingAstVisitor
+    private class BroadcastReceiverVisitor extends ForwardingAstVisitor
     {
         private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
 
         /**
          * Constructor
@@ -171,6 +301,8 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
         public BroadcastReceiverVisitor(JavaContext context)
         {
             this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
         }
 
         /**
@@ -200,86 +332,93 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
                 return false;
             }
 
-            // Resolve node
-            ResolvedNode resolved = context.resolve(methodInvocation);
-            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
             {
                 return false;
             }
 
-            // Check if we are interested in the class that contains this method
-            ResolvedMethod method = (ResolvedMethod) resolved;
-            if(!isContainingClassValid(method))
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
             {
                 return false;
             }
 
             // Set flag and save some data if it's the register method
-            String name = method.getName();
-            if(REGISTER_METHOD.equals(name))
+            LifecycleOwner owner = LifecycleOwner.getOwnerById(summary>>>SUMMARY_OWNER_SHIFT);
+            if((summary & SUMMARY_REGISTER)!=0)
             {
-                registrations.put(Utils.getMethodInvocationArgumentName(methodInvocation, 0), methodInvocation);
+                String broadcastReceiverVariable = aliases.getCanonicalName(Utils.getMethodInvocationArgument(methodInvocation, 0));
+                receivers.register(broadcastReceiverVariable, methodInvocation, owner);
             }
 
             // If it's the unregister method...
-            else if(UNREGISTER_METHOD.equals(name))
+            else if((summary & SUMMARY_UNREGISTER)!=0)
             {
-                String broadcastReceiverVariable = Utils.getMethodInvocationArgumentName(methodInvocation, 0);
-
-                // Check if the unregistration is inside a try/catch block
-                boolean isInTryCatch;
-                Node parent = methodInvocation;
-                whileLoop: while(true)
-                {
-                    Try tryCatch = getParentOfType(parent, Try.class);
-                    if(tryCatch==null)
-                    {
-                        isInTryCatch = false;
-                        break;
-                    }
-                    else
-                    {
-                        for(Catch aCatch: tryCatch.astCatches())
-                        {
-                            TypeReference typeReference = aCatch.astExceptionDeclaration().astTypeReference();
-                            JavaParser.TypeDescriptor typeDescriptor = context.getType(typeReference);
-                            if(typeDescriptor!=null &&
-                                    (typeDescriptor.matchesSignature("java.lang.IllegalArgumentException") ||
-                                    typeDescriptor.matchesSignature("java.lang.RuntimeException") ||
-                                    typeDescriptor.matchesSignature("java.lang.Exception") ||
-                                    typeDescriptor.matchesSignature("java.lang.Throwable")))
-                            {
-                                isInTryCatch = true;
-                                break whileLoop;
-                            }
-                        }
-                        parent = tryCatch;
-                    }
-                }
-
-                // Save unregistration in global field (need node handle only if it's not in a try/catch)
-                List<MethodInvocation> list = null;
-                if(unregistrations.containsKey(broadcastReceiverVariable))
-                {
-                    list = unregistrations.get(broadcastReceiverVariable);
-                }
-                if(list==null)
-                {
-                    list = new ArrayList<>();
-                    unregistrations.put(broadcastReceiverVariable, list);
-                }
-                list.add(isInTryCatch ? null : methodInvocation);
+                // Aliases pair the unregistration with the registration, the variable itself finds the repeated ones
+                Expression broadcastReceiver = Utils.getMethodInvocationArgument(methodInvocation, 0);
+                receivers.unregister(aliases.getCanonicalName(broadcastReceiver), aliases.getVariableName(broadcastReceiver), methodInvocation, (summary & SUMMARY_IN_TRY_CATCH)!=0, owner);
 
                 // Issue if this is called during onSaveInstanceState
                 if(isCalledDuringOnSaveInstanceState(methodInvocation))
                 {
-                    context.report(ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), "You should not call `"+UNREGISTER_METHOD+"()` during `"+Utils.ON_SAVE_INSTANCE_STATE_METHOD+"()` because it won't be called if the user moves back in the history stack");
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_WRONG_METHOD.format(UNREGISTER_METHOD, Utils.ON_SAVE_INSTANCE_STATE_METHOD));
                 }
             }
 
             return super.visitMethodInvocation(methodInvocation);
         }
 
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            LifecycleOwner owner = budget.isExceeded() ? null : Utils.getLifecycleOwner(context, methodInvocation);
+            if(!isContainingClassValid(method, owner))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // The owner of the call decides which callbacks pair with each other
+            int ownerFlags = LifecycleOwner.getId(owner)<<SUMMARY_OWNER_SHIFT;
+            String name = method.getName();
+            if(REGISTER_METHOD.equals(name))
+            {
+                return SUMMARY_REGISTER | ownerFlags;
+            }
+            else if(UNREGISTER_METHOD.equals(name))
+            {
+                // Check if the unregistration is inside a try/catch block (if we are over the time budget we
+                // cannot classify it, so we consider it protected to avoid false positives)
+                return budget.isExceeded() || Utils.isInTryCatch(context, methodInvocation, UNREGISTER_EXCEPTIONS) ? SUMMARY_UNREGISTER | SUMMARY_IN_TRY_CATCH | ownerFlags : SUMMARY_UNREGISTER | ownerFlags;
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+
         /**
          * Checks if we are analyzing the "onSaveInstance" method
          * @param methodInvocation the method invocation we are interested in
@@ -293,15 +432,18 @@ public class BroadcastReceiverDetector extends Detector implements Detector.Java
         /**
          * Checks if we are interested in the containing class of the method
          * @param method the method to check
+         * @param owner the lifecycle owner of the class that contains the call, null if unknown
          * @return true if we are interested in the containing class of the method
          */
-        private boolean isContainingClassValid(ResolvedMethod method)
+        private boolean isContainingClassValid(ResolvedMethod method, LifecycleOwner owner)
         {
             return
             /* Global BroadcastReceiver (method of ContextWrapper, e.g. Activity) */
             Utils.isMethodContainedInSubclassOf(method, Utils.CONTEXT_WRAPPER) ||
             /* Local BroadcastReceiver (method of LocalBroadcastManager) */
-            Utils.isMethodContainedInSubclassOf(method, LOCAL_BROADCAST_MANAGER);
+            Utils.isMethodContainedInSubclassOf(method, LOCAL_BROADCAST_MANAGER) ||
+            /* Global BroadcastReceiver registered through a Context by a lifecycle owner (e.g. getContext() of a View) */
+            (owner!=null && Utils.CONTEXT.equals(method.getContainingClass().getName()));
         }
     }
 }
@@ -2,6 +2,7 @@ package it.polimi.testing.lifecycle_lint.detectors;
 
 import com.android.annotations.NonNull;
 import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
 import com.android.tools.lint.detector.api.Context;
 import com.android.tools.lint.detector.api.Detector;
 import com.android.tools.lint.detector.api.Implementation;
@@ -10,12 +11,24 @@ import com.android.tools.lint.detector.api.JavaContext;
 import com.android.tools.lint.detector.api.Scope;
 import com.android.tools.lint.detector.api.Severity;
 
-import java.io.File;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.ResourceTable;
 import it.polimi.testing.lifecycle_lint.Utils;
 import lombok.ast.AstVisitor;
 import lombok.ast.ForwardingAstVisitor;
@@ -25,15 +38,12 @@ import lombok.ast.Node;
 import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
 import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
 
-public class GoogleApiClientDetector extends Detector implements Detector.JavaScanner
+public class GoogleApiClientDetector extends LifecycleDetector
 {
-    // Issue implementation
+    // Issue implementation (sources or, when they are not available, compiled classes and libraries)
     private static final Class<? extends Detector> DETECTOR_CLASS = GoogleApiClientDetector.class;
-    private static final EnumSet<Scope> DETECTOR_SCOPE = Scope.JAVA_FILE_SCOPE;
-    private static final Implementation IMPLEMENTATION = new Implementation(
-        DETECTOR_CLASS,
-        DETECTOR_SCOPE
-    );
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE, Scope.JAVA_LIBRARIES);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
 
     // Issue description
     private static final String ISSUE_ID = "GoogleApiClientLifecycle";
@@ -60,33 +70,46 @@ public class GoogleApiClientDetector extends Detector implements Detector.JavaSc
         IMPLEMENTATION
     ).addMoreInfo(MORE_INFO_URL);
 
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
     // Methods and classes related to the issue
     private static final String GOOGLE_API_CLIENT = "com.google.android.gms.common.api.GoogleApiClient";
     private static final String CONNECT_METHOD = "connect";
     private static final String DISCONNECT_METHOD = "disconnect";
     private static final String ON_CONNECTION_FAILED_METHOD = "onConnectionFailed";
 
-    // Flags and data used in the search
-    private static boolean foundConnect = false;
-    private static MethodInvocation connectNode;
-    private static boolean foundDisconnect = false;
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_DISCONNECT = new MessageTemplate("Found a `GoogleApiClient` `"+CONNECT_METHOD+"()` but no `"+DISCONNECT_METHOD+"()` calls on the same client in the class");
+    private static final MessageTemplate MESSAGE_WRONG_METHOD = new MessageTemplate("The best practice is to call the `GoogleApiClient` `%1$s()` during `%2$s()`");
 
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean appliesTo(@NonNull Context context, @NonNull File file)
-    {
-        return true;
-    }
+    // Packages that cannot contain GoogleApiClient subclasses (JDK and Android platform)
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.", "android.", "org.json.", "org.w3c.", "org.xml.", "org.xmlpull.");
+
+    // Connections and disconnections of each client instance (per detector instance)
+    private final ResourceTable<MethodInvocation> clients = new ResourceTable<>();
+
+    // Data used in the bytecode search
+    private final ResourceTable<ClassCall> classClients = new ResourceTable<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_CONNECT = 1;
+    private static final int SUMMARY_DISCONNECT = 1<<1;
+    private static final int SUMMARY_IN_ACTIVITY_OR_FRAGMENT = 1<<2;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
 
     /**
-     * {@inheritDoc}
+     * Constructor
      */
-    @Override
-    public EnumSet<Scope> getApplicableFiles()
+    public GoogleApiClientDetector()
     {
-        return Scope.JAVA_FILE_SCOPE;
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
     }
 
     /**
@@ -108,19 +131,46 @@ public class GoogleApiClientDetector extends Detector implements Detector.JavaSc
     @Override
     public void afterCheckFile(@NonNull Context c)
     {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
         if(!(c instanceof JavaContext)) return;
         JavaContext context = (JavaContext) c;
 
-        // Create issue if we found a connection but no disconnection
-        if(foundConnect && !foundDisconnect)
+        // Create issue for each client we found connected but never disconnected (not if the file was only
+        // partially analyzed, since the disconnection may be in the part we skipped)
+        if(!budget.wasExceeded())
         {
-            context.report(ISSUE, connectNode, context.getLocation(connectNode.astName()), "Found a `GoogleApiClient` `"+CONNECT_METHOD+"()` but no `"+DISCONNECT_METHOD+"()` calls in the class");
+            for(MethodInvocation connectNode: clients.getUnreleased())
+            {
+                report(context, ISSUE, connectNode, context.getLocation(connectNode.astName()), MESSAGE_NO_DISCONNECT.format());
+            }
         }
 
+        finishFile(context);
+
         // Reset variables for next files
-        foundConnect = false;
-        foundDisconnect = false;
-        connectNode = null;
+        clients.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes: we check that connections and disconnections are consistent
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        // Create issue for each client we found connected but never disconnected
+        for(ClassCall call: classClients.getUnreleased())
+        {
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_DISCONNECT.format());
+        }
+
+        // Reset variables for next classes
+        classClients.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
     }
 
     /**
@@ -132,12 +182,77 @@ public class GoogleApiClientDetector extends Detector implements Detector.JavaSc
         return new GoogleApiClientVisitor(context);
     }
 
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return Arrays.asList(CONNECT_METHOD, DISCONNECT_METHOD);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the client is identified by the field or variable the call is invoked on
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the class that contains this method
+        if(!BytecodeUtils.isSubclassOf(context, call.owner, GOOGLE_API_CLIENT))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+        String client = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+
+        // If it's the connection method...
+        if(CONNECT_METHOD.equals(call.name))
+        {
+            classClients.acquire(client, new ClassCall(method, call));
+
+            // Issue if we are in an activity or fragment and this is not called during onStart
+            if(BytecodeUtils.isActivityOrFragment(context, classNode) &&
+                    !Utils.ON_START_METHOD.equals(method.name) && !ON_CONNECTION_FAILED_METHOD.equals(method.name))
+            {
+                report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_WRONG_METHOD.format(CONNECT_METHOD, Utils.ON_START_METHOD));
+            }
+        }
+
+        // If it's the disconnect method...
+        else if(DISCONNECT_METHOD.equals(call.name))
+        {
+            classClients.release(client);
+
+            // Issue if we are in an activity or a fragment and this is not called during onStop
+            if(BytecodeUtils.isActivityOrFragment(context, classNode) && !Utils.ON_STOP_METHOD.equals(method.name))
+            {
+                report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_WRONG_METHOD.format(DISCONNECT_METHOD, Utils.ON_STOP_METHOD));
+            }
+        }
+    }
+
     /**
      * Custom AST Visitor that receives method invocation calls
      */
-    private static class GoogleApiClientVisitor extends ForwardingAstVisitor
+    private class GoogleApiClientVisitor extends ForwardingAstVisitor
     {
         private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
 
         /**
          * Constructor
@@ -146,6 +261,8 @@ public class GoogleApiClientDetector extends Detector implements Detector.JavaSc
         public GoogleApiClientVisitor(JavaContext context)
         {
             this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
         }
 
         /**
@@ -175,52 +292,93 @@ public class GoogleApiClientDetector extends Detector implements Detector.JavaSc
                 return false;
             }
 
-            // Resolve node
-            ResolvedNode resolved = context.resolve(methodInvocation);
-            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
             {
                 return false;
             }
 
-            // Check if we are interested in the class that contains this method
-            ResolvedMethod method = (ResolvedMethod) resolved;
-            if(!Utils.isMethodContainedInSubclassOf(method, GOOGLE_API_CLIENT))
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
             {
                 return false;
             }
+            boolean isInActivityOrFragment = (summary & SUMMARY_IN_ACTIVITY_OR_FRAGMENT)!=0;
 
             // If it's the connection method...
-            String name = method.getName();
-            if(CONNECT_METHOD.equals(name))
+            if((summary & SUMMARY_CONNECT)!=0)
             {
-                foundConnect = true;
-                connectNode = methodInvocation;
+                clients.acquire(aliases.getCanonicalName(methodInvocation.astOperand()), methodInvocation);
 
                 // Issue if we are in an activity or fragment and this is not called during onStart
-                if(Utils.isCalledInActivityOrFragment(context, methodInvocation))
+                if(isInActivityOrFragment)
                 {
                     String callerMethod = Utils.getCallerMethodName(methodInvocation);
 
                     if(!Utils.ON_START_METHOD.equals(callerMethod) && !ON_CONNECTION_FAILED_METHOD.equals(callerMethod))
                     {
-                        context.report(ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), "The best practice is to call the `GoogleApiClient` `"+CONNECT_METHOD+"()` during `"+Utils.ON_START_METHOD+"()`");
+                        report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_WRONG_METHOD.format(CONNECT_METHOD, Utils.ON_START_METHOD));
                     }
                 }
             }
 
             // If it's the disconnect method...
-            else if(DISCONNECT_METHOD.equals(name))
+            else if((summary & SUMMARY_DISCONNECT)!=0)
             {
-                foundDisconnect = true;
+                clients.release(aliases.getCanonicalName(methodInvocation.astOperand()));
 
-                // Issue if we are in an activity or a fragment and this is not called during onStart
-                if(Utils.isCalledInActivityOrFragment(context, methodInvocation) && !Utils.ON_STOP_METHOD.equals(Utils.getCallerMethodName(methodInvocation)))
+                // Issue if we are in an activity or a fragment and this is not called during onStop
+                if(isInActivityOrFragment && !Utils.ON_STOP_METHOD.equals(Utils.getCallerMethodName(methodInvocation)))
                 {
-                    context.report(ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), "The best practice is to call the `GoogleApiClient` `"+DISCONNECT_METHOD+"()` during `"+Utils.ON_STOP_METHOD+"()`");
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_WRONG_METHOD.format(DISCONNECT_METHOD, Utils.ON_STOP_METHOD));
                 }
             }
 
             return super.visitMethodInvocation(methodInvocation);
         }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            if(!Utils.isMethodContainedInSubclassOf(method, GOOGLE_API_CLIENT))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            String name = method.getName();
+            int summary = CONNECT_METHOD.equals(name) ? SUMMARY_CONNECT : DISCONNECT_METHOD.equals(name) ? SUMMARY_DISCONNECT : SUMMARY_IRRELEVANT;
+
+            // Caller and hierarchy checks (skipped if we are over the time budget)
+            if(summary!=SUMMARY_IRRELEVANT && !budget.isExceeded() && Utils.isCalledInActivityOrFragment(context, methodInvocation))
+            {
+                summary |= SUMMARY_IN_ACTIVITY_OR_FRAGMENT;
+            }
+            return summary;
+        }
     }
 }
@@ -0,0 +1,437 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.List;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.FrameworkTypeIndex;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.ResourceTable;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.ClassDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class HandlerDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = HandlerDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "HandlerLifecycle";
+    private static final String ISSUE_DESCRIPTION = "Delayed `Handler` work that outlives the activity or fragment";
+    private static final String ISSUE_EXPLANATION = "Runnables and messages posted with a delay keep their `Handler` (and everything it references) "+
+                                                    "alive until they are executed, even after the activity or fragment is destroyed. You should "+
+                                                    "remove them with `removeCallbacks()` or `removeCallbacksAndMessages()` during onPause(), "+
+                                                    "onStop() or onDestroy(). For the same reason `Handler` subclasses should be static, since "+
+                                                    "an inner class keeps a reference to its enclosing activity or fragment.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/reference/android/os/Handler.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 5;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue
+    private static final String HANDLER = "android.os.Handler";
+    private static final List<String> POST_METHODS = Arrays.asList(
+        "postDelayed",
+        "postAtTime",
+        "sendMessageDelayed",
+        "sendMessageAtTime",
+        "sendEmptyMessageDelayed",
+        "sendEmptyMessageAtTime"
+    );
+    private static final List<String> REMOVE_METHODS = Arrays.asList(
+        "removeCallbacks",
+        "removeCallbacksAndMessages",
+        "removeMessages"
+    );
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_REMOVE = new MessageTemplate("Found a `Handler` `%1$s()` but no `removeCallbacks()` or `removeCallbacksAndMessages()` calls on the same handler in `onPause()`, `onStop()` or `onDestroy()`");
+    private static final MessageTemplate MESSAGE_NON_STATIC_HANDLER = new MessageTemplate("This `Handler` class should be static, otherwise it keeps the enclosing `%1$s` alive while its messages are pending");
+
+    // Packages that cannot contain Handler subclasses
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.");
+
+    // Delayed posts and removals of each handler instance (per detector instance)
+    private final ResourceTable<MethodInvocation> handlers = new ResourceTable<>();
+
+    // Data used in the bytecode search
+    private final ResourceTable<ClassCall> classHandlers = new ResourceTable<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_POST = 1;
+    private static final int SUMMARY_REMOVE = 1<<1;
+    private static final int SUMMARY_IN_ACTIVITY_OR_FRAGMENT = 1<<2;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public HandlerDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Arrays.<Class<? extends Node>>asList(
+            MethodInvocation.class,
+            ClassDeclaration.class,
+            ConstructorInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that the delayed work posted to each handler is removed
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Create issue for each handler with delayed work that is never removed (not if the file was only partially
+        // analyzed, since the removal may be in the part we skipped)
+        if(!budget.wasExceeded())
+        {
+            for(MethodInvocation postNode: handlers.getUnreleased())
+            {
+                report(context, ISSUE, postNode, context.getLocation(postNode.astName()), MESSAGE_NO_REMOVE.format(postNode.astName().astValue()));
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        handlers.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes: we check that the delayed work is removed and that the class
+     * is not an inner Handler of an activity or fragment
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        // Create issue for each handler with delayed work that is never removed
+        for(ClassCall call: classHandlers.getUnreleased())
+        {
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_REMOVE.format(call.getCall().name));
+        }
+
+        // Inner Handler subclasses keep a reference (this$0) to their enclosing class
+        ClassNode classNode = context.getClassNode();
+        if(classNode!=null && isAnalyzedClass(context) && classNode.superName!=null &&
+                BytecodeUtils.isSubclassOf(context, classNode.superName, HANDLER))
+        {
+            String outerClass = BytecodeUtils.getCapturedOuterClass(classNode);
+            if(outerClass!=null && BytecodeUtils.isActivityOrFragment(context, outerClass))
+            {
+                report(context, ISSUE, context.getLocation(classNode), MESSAGE_NON_STATIC_HANDLER.format(ClassContext.getFqcn(outerClass)));
+            }
+        }
+
+        // Reset variables for next classes
+        classHandlers.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new HandlerVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        List<String> names = new ArrayList<>(POST_METHODS);
+        names.addAll(REMOVE_METHODS);
+        return names;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the handler is identified by the field or variable the call is invoked on
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the class that contains this method
+        if(!BytecodeUtils.isSubclassOf(context, call.owner, HANDLER) || !BytecodeUtils.isActivityOrFragment(context, classNode))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+        String handler = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+
+        if(POST_METHODS.contains(call.name))
+        {
+            classHandlers.acquire(handler, new ClassCall(method, call));
+        }
+        else if(REMOVE_METHODS.contains(call.name) && isRemovalCallback(method.name))
+        {
+            classHandlers.release(handler);
+        }
+    }
+
+    /**
+     * Helper to check if removing the delayed work in a method is enough: the teardown callbacks always run before the
+     * activity or fragment is destroyed
+     * @param methodName the name of the method that removes the work
+     * @return true if the method is onPause(), onStop() or onDestroy()
+     */
+    private static boolean isRemovalCallback(String methodName)
+    {
+        return Utils.getTeardownOrder(methodName)>=0;
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocations and class declarations
+     */
+    private class HandlerVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public HandlerVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            String name = methodInvocation.astName().astValue();
+            if(!POST_METHODS.contains(name) && !REMOVE_METHODS.contains(name))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if((summary & SUMMARY_IN_ACTIVITY_OR_FRAGMENT)==0)
+            {
+                return false;
+            }
+
+            // Delayed work is paired with the removals of the same handler in the teardown callbacks
+            String handler = aliases.getCanonicalName(methodInvocation.astOperand());
+            if((summary & SUMMARY_POST)!=0)
+            {
+                handlers.acquire(handler, methodInvocation);
+            }
+            else if((summary & SUMMARY_REMOVE)!=0 && isRemovalCallback(Utils.getCallerMethodName(methodInvocation)))
+            {
+                handlers.release(handler);
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitClassDeclaration(ClassDeclaration classDeclaration)
+        {
+            if(context.getProject().getReportIssues() && !budget.isExceeded())
+            {
+                checkInnerHandler(classDeclaration, context.resolve(classDeclaration), classDeclaration.astName());
+            }
+            return super.visitClassDeclaration(classDeclaration);
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitConstructorInvocation(ConstructorInvocation constructorInvocation)
+        {
+            if(constructorInvocation.astAnonymousClassBody()!=null && context.getProject().getReportIssues() && !budget.isExceeded())
+            {
+                ResolvedNode resolved = context.resolve(constructorInvocation.astTypeReference());
+                checkInnerHandler(constructorInvocation.astAnonymousClassBody(), resolved, constructorInvocation.astTypeReference());
+            }
+            return super.visitConstructorInvocation(constructorInvocation);
+        }
+
+        /**
+         * Helper to report a Handler subclass that keeps a reference to an activity or fragment
+         * @param declaration the class declaration or the body of the anonymous class
+         * @param resolved the resolved class
+         * @param locationNode the node to highlight
+         */
+        private void checkInnerHandler(Node declaration, ResolvedNode resolved, Node locationNode)
+        {
+            if(!(resolved instanceof JavaParser.ResolvedClass)) return;
+
+            // Only classes that extend Handler (the anonymous class body resolves to its superclass)
+            JavaParser.ResolvedClass handlerClass = (JavaParser.ResolvedClass) resolved;
+            if(declaration instanceof ClassDeclaration) handlerClass = handlerClass.getSuperClass();
+            if(handlerClass==null || (FrameworkTypeIndex.getKinds(handlerClass) & FrameworkTypeIndex.HANDLER)==0) return;
+
+            // Only inner classes of activities and fragments
+            ClassDeclaration outerClass = Utils.getCapturedOuterClass(declaration);
+            ResolvedNode resolvedOuter = outerClass!=null ? context.resolve(outerClass) : null;
+            if(!(resolvedOuter instanceof JavaParser.ResolvedClass)) return;
+            int kinds = FrameworkTypeIndex.getKinds((JavaParser.ResolvedClass) resolvedOuter);
+            if((kinds & (FrameworkTypeIndex.CONTEXT_WRAPPER | FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT))!=0)
+            {
+                report(context, ISSUE, declaration, context.getLocation(locationNode), MESSAGE_NON_STATIC_HANDLER.format(outerClass.astName().astValue()));
+            }
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method (not View.postDelayed())
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            if(!Utils.isMethodContainedInSubclassOf(method, FrameworkTypeIndex.HANDLER))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            String name = method.getName();
+            int summary = POST_METHODS.contains(name) ? SUMMARY_POST : REMOVE_METHODS.contains(name) ? SUMMARY_REMOVE : SUMMARY_IRRELEVANT;
+
+            // Only activities and fragments have a lifecycle to compare with (skipped if we are over the time budget)
+            if(summary!=SUMMARY_IRRELEVANT && !budget.isExceeded() && Utils.isCalledInActivityOrFragment(context, methodInvocation))
+            {
+                summary |= SUMMARY_IN_ACTIVITY_OR_FRAGMENT;
+            }
+            return summary;
+        }
+    }
+}
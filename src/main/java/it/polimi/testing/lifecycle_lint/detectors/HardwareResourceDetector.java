@@ -0,0 +1,665 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.ControlFlowUtils;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.RegistrationTracker;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.Select;
+import lombok.ast.This;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class HardwareResourceDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = HardwareResourceDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "HardwareLifecycle";
+    private static final String ISSUE_DESCRIPTION = "`Camera`, `MediaPlayer` or `AudioRecord` held while the component is in the background";
+    private static final String ISSUE_EXPLANATION = "The camera, the media codecs and the microphone are shared by all the apps: while an Activity "+
+                                                    "holds them, other apps cannot use them and the device keeps the hardware powered. A `Camera` "+
+                                                    "opened with `Camera.open()`, a `MediaPlayer` created with `MediaPlayer.create()` and an "+
+                                                    "`AudioRecord` started with `startRecording()` should be released in the teardown callback paired "+
+                                                    "with the one that acquires them (onPause() for onResume(), onStop() for onStart() and onCreate()), "+
+                                                    "and never later than onStop(), when the Activity is no longer visible.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/guide/topics/media/camera.html#release-camera";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 6;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_OBJECT | LeakCost.KEEPS_HARDWARE_AWAKE);
+    }
+
+    // Methods and classes related to the issue
+    private static final String RELEASE_METHOD = "release";
+    private static final String STOP_METHOD = "stop";
+    private static final List<HardwareResource> RESOURCES = Arrays.asList(
+        new HardwareResource("android.hardware.Camera", "open", true, RELEASE_METHOD),
+        new HardwareResource("android.media.MediaPlayer", "create", true, RELEASE_METHOD),
+        new HardwareResource("android.media.AudioRecord", "startRecording", false, STOP_METHOD, RELEASE_METHOD)
+    );
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_RELEASE = new MessageTemplate("This `%1$s` is acquired with `%2$s()` but there are no `%3$s()` calls on the same object in the class: release it in `%4$s()`, so that other apps can use it");
+    private static final MessageTemplate MESSAGE_LATE_RELEASE = new MessageTemplate("This `%1$s` is acquired in `%2$s()` but released only after `%3$s()`, so it is held while the component is in the background");
+
+    // Packages that cannot contain the hardware classes
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.", "android.content.", "android.view.", "android.widget.");
+
+    // Data used during the search (per detector instance)
+    private final RegistrationTracker resources = new RegistrationTracker();
+    private final Map<MethodInvocation, HardwareResource> acquiredResources = new LinkedHashMap<>();
+
+    // Data used during the bytecode search
+    private final Map<String, ClassCall> classAcquisitions = new LinkedHashMap<>();
+    private final Map<String, List<ClassCall>> classReleases = new LinkedHashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations (the resource is stored as its index plus one), cached per method between
+    // runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_ACQUIRE = 1;
+    private static final int SUMMARY_RELEASE = 1<<1;
+    private static final int SUMMARY_RESOURCE_SHIFT = 4;
+    private static final int SUMMARY_RESOURCE_MASK = 0xF;
+    private static final int SUMMARY_OWNER_SHIFT = 8;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public HardwareResourceDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Arrays.<Class<? extends Node>>asList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that each resource is released, by the teardown callback paired with the one that
+     * acquires it
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Resources never released or released too late (not if the file was only partially analyzed, since the
+        // release may be in the part we skipped)
+        if(!budget.wasExceeded())
+        {
+            for(MethodInvocation methodInvocation: resources.getUnmatchedRegistrations())
+            {
+                HardwareResource resource = acquiredResources.get(methodInvocation);
+                String teardownMethod = getTeardownCallback(resources.getOwner(methodInvocation), Utils.getCallerMethodName(methodInvocation));
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()),
+                        MESSAGE_NO_RELEASE.format(resource.getSimpleName(), resource.acquireMethod, resource.releaseMethods.get(0), teardownMethod));
+            }
+
+            for(Map.Entry<String, MethodInvocation> entry: resources.getRegistrations().entrySet())
+            {
+                MethodInvocation methodInvocation = entry.getValue();
+                LifecycleOwner owner = resources.getOwner(methodInvocation);
+                String acquireMethod = Utils.getCallerMethodName(methodInvocation);
+                String teardownMethod = getTeardownCallback(owner, acquireMethod);
+                if(owner.isReleasedAfter(teardownMethod, resources.getUnregistrationMethods(entry.getKey())))
+                {
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()),
+                            MESSAGE_LATE_RELEASE.format(acquiredResources.get(methodInvocation).getSimpleName(), acquireMethod, teardownMethod));
+                }
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        resources.clear();
+        acquiredResources.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, context.getClassNode().name);
+        if(owner==null) owner = LifecycleOwner.ACTIVITY;
+        for(Map.Entry<String, ClassCall> entry: classAcquisitions.entrySet())
+        {
+            ClassCall call = entry.getValue();
+            HardwareResource resource = getResource(context, call.getCall());
+            String acquireMethod = call.getMethod().name;
+            String teardownMethod = getTeardownCallback(owner, acquireMethod);
+            List<ClassCall> releases = classReleases.get(entry.getKey());
+
+            // Resources never released
+            if(releases==null)
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()),
+                        MESSAGE_NO_RELEASE.format(resource.getSimpleName(), resource.acquireMethod, resource.releaseMethods.get(0), teardownMethod));
+                continue;
+            }
+
+            // Or released too late
+            List<String> releaseMethods = new ArrayList<>();
+            for(ClassCall release: releases)
+            {
+                releaseMethods.add(release.getMethod().name);
+            }
+            if(owner.isReleasedAfter(teardownMethod, releaseMethods))
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()),
+                        MESSAGE_LATE_RELEASE.format(resource.getSimpleName(), acquireMethod, teardownMethod));
+            }
+        }
+
+        // Reset variables for next classes
+        classAcquisitions.clear();
+        classReleases.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * Helper to get the teardown callback in which a resource must be released at the latest: the one paired with
+     * the callback that acquires it, but never after onStop(), since the hardware is not needed while the component is
+     * not visible
+     * @param owner the lifecycle owner of the class that acquires the resource
+     * @param acquireMethod the name of the method that acquires the resource
+     * @return the name of the teardown callback
+     */
+    private static String getTeardownCallback(LifecycleOwner owner, String acquireMethod)
+    {
+        String pairedMethod = owner.getPairedReleaseCallback(acquireMethod);
+        if(pairedMethod==null || owner.getReleaseOrder(pairedMethod)>owner.getReleaseOrder(Utils.ON_STOP_METHOD))
+        {
+            return Utils.ON_STOP_METHOD;
+        }
+        return pairedMethod;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new HardwareResourceVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        List<String> names = new ArrayList<>();
+        for(HardwareResource resource: RESOURCES)
+        {
+            names.add(resource.acquireMethod);
+        }
+        names.add(RELEASE_METHOD);
+        names.add(STOP_METHOD);
+        return names;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the resource is identified by the field it is stored in (the factories) or by
+     * the field or variable the call is invoked on
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the call, made by an activity or a fragment
+        HardwareResource resource = getResource(context, call);
+        if(resource==null || !BytecodeUtils.isActivityOrFragment(context, classNode))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+
+        if(resource.acquireMethod.equals(call.name))
+        {
+            String name = resource.isFactory ? getStoredFieldName(method, call) : BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+            if(name!=null && !name.isEmpty())
+            {
+                classAcquisitions.put(name, new ClassCall(method, call));
+            }
+        }
+        else
+        {
+            String name = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+            List<ClassCall> list = classReleases.get(name);
+            if(list==null)
+            {
+                list = new ArrayList<>();
+                classReleases.put(name, list);
+            }
+            list.add(new ClassCall(method, call));
+        }
+    }
+
+    /**
+     * Helper to get the resource acquired or released by a call in the bytecode
+     * @param context the context of the lint request
+     * @param call the call
+     * @return the resource, null if the call neither acquires nor releases one
+     */
+    private static HardwareResource getResource(ClassContext context, MethodInsnNode call)
+    {
+        for(HardwareResource resource: RESOURCES)
+        {
+            if((resource.acquireMethod.equals(call.name) || resource.releaseMethods.contains(call.name)) && BytecodeUtils.isSubclassOf(context, call.owner, resource.className))
+            {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper to get the field in which the result of a factory call is stored, directly or through a local variable
+     * @param method the method that contains the call
+     * @param call the call
+     * @return the name of the field, null if the result stays in the method
+     */
+    private static String getStoredFieldName(MethodNode method, MethodInsnNode call)
+    {
+        AbstractInsnNode next = getNextInstruction(call);
+        if(next instanceof FieldInsnNode && (next.getOpcode()==Opcodes.PUTFIELD || next.getOpcode()==Opcodes.PUTSTATIC))
+        {
+            return ((FieldInsnNode) next).name;
+        }
+        if(next==null || next.getOpcode()!=Opcodes.ASTORE)
+        {
+            return null;
+        }
+
+        // A copy of the local variable to a field
+        int var = ((VarInsnNode) next).var;
+        for(AbstractInsnNode instruction = next.getNext(); instruction!=null; instruction = instruction.getNext())
+        {
+            AbstractInsnNode store = getNextInstruction(instruction);
+            if(instruction.getOpcode()==Opcodes.ALOAD && ((VarInsnNode) instruction).var==var && store instanceof FieldInsnNode &&
+                    (store.getOpcode()==Opcodes.PUTFIELD || store.getOpcode()==Opcodes.PUTSTATIC))
+            {
+                return ((FieldInsnNode) store).name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper to get the next real instruction, skipping labels, line numbers and frames
+     * @param instruction the instruction
+     * @return the next instruction, null if there is none
+     */
+    private static AbstractInsnNode getNextInstruction(AbstractInsnNode instruction)
+    {
+        AbstractInsnNode next = instruction.getNext();
+        while(next!=null && next.getOpcode()<0)
+        {
+            next = next.getNext();
+        }
+        return next;
+    }
+
+    /**
+     * A hardware resource and the methods that acquire and release it
+     */
+    private static class HardwareResource
+    {
+        private final String className;
+        private final String acquireMethod;
+        private final boolean isFactory;
+        private final List<String> releaseMethods;
+
+        /**
+         * Constructor
+         * @param className the class of the resource
+         * @param acquireMethod the method that acquires the resource
+         * @param isFactory true if the acquire method is a static factory that returns the resource, false if it is
+         *                  invoked on the resource
+         * @param releaseMethods the methods that release the resource (the first one is suggested in the messages)
+         */
+        public HardwareResource(String className, String acquireMethod, boolean isFactory, String... releaseMethods)
+        {
+            this.className = className;
+            this.acquireMethod = acquireMethod;
+            this.isFactory = isFactory;
+            this.releaseMethods = Arrays.asList(releaseMethods);
+        }
+
+        /**
+         * Getter
+         * @return the simple name of the class of the resource, for the messages
+         */
+        public String getSimpleName()
+        {
+            return className.substring(className.lastIndexOf('.')+1);
+        }
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class HardwareResourceVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public HardwareResourceVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            if(!isApplicableName(methodInvocation.astName().astValue()))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+
+            // Acquisitions are paired with the releases of the same object
+            HardwareResource resource = RESOURCES.get(((summary>>>SUMMARY_RESOURCE_SHIFT) & SUMMARY_RESOURCE_MASK)-1);
+            LifecycleOwner owner = LifecycleOwner.getOwnerById(summary>>>SUMMARY_OWNER_SHIFT);
+            if((summary & SUMMARY_ACQUIRE)!=0)
+            {
+                // Only the activities and fragments hold the hardware across their callbacks
+                Expression field = resource.isFactory ? getStoringField(methodInvocation) : methodInvocation.astOperand();
+                if(field!=null && isField(field) && (owner==LifecycleOwner.ACTIVITY || owner==LifecycleOwner.FRAGMENT))
+                {
+                    resources.register(aliases.getCanonicalName(field), methodInvocation, owner);
+                    acquiredResources.put(methodInvocation, resource);
+                }
+            }
+            else if((summary & SUMMARY_RELEASE)!=0)
+            {
+                resources.unregister(aliases.getCanonicalName(methodInvocation.astOperand()), methodInvocation, true, owner);
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Helper to check if a method name may acquire or release a resource
+         * @param name the name of the method
+         * @return true if one of the resources has a method with that name
+         */
+        private boolean isApplicableName(String name)
+        {
+            for(HardwareResource resource: RESOURCES)
+            {
+                if(resource.acquireMethod.equals(name) || resource.releaseMethods.contains(name))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Helper to get the field in which the result of a factory is stored, directly or through a local variable
+         * that is copied to the field in the same method
+         * @param methodInvocation the factory invocation
+         * @return the field expression, null if the result stays in the method
+         */
+        private Expression getStoringField(MethodInvocation methodInvocation)
+        {
+            Node parent = methodInvocation.getParent();
+            if(parent instanceof BinaryExpression && ((BinaryExpression) parent).astOperator()==BinaryOperator.ASSIGN && ((BinaryExpression) parent).astRight()==methodInvocation)
+            {
+                Expression left = ((BinaryExpression) parent).astLeft();
+                if(isField(left))
+                {
+                    return left;
+                }
+                if(left instanceof VariableReference)
+                {
+                    return getCopyingField(methodInvocation, ((VariableReference) left).astIdentifier().astValue());
+                }
+            }
+            else if(parent instanceof VariableDefinitionEntry && ((VariableDefinitionEntry) parent).astInitializer()==methodInvocation)
+            {
+                return getCopyingField(methodInvocation, ((VariableDefinitionEntry) parent).astName().astValue());
+            }
+            return null;
+        }
+
+        /**
+         * Helper to find the field a local variable is copied to in its method
+         * @param node a node in the method
+         * @param variable the name of the local variable
+         * @return the field expression, null if the variable is never copied to a field
+         */
+        private Expression getCopyingField(Node node, final String variable)
+        {
+            Node method = ControlFlowUtils.getEnclosingMethod(node);
+            if(method==null) return null;
+
+            final Expression[] field = {null};
+            method.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitBinaryExpression(BinaryExpression node)
+                {
+                    if(field[0]==null && node.astOperator()==BinaryOperator.ASSIGN && node.astRight() instanceof VariableReference &&
+                            variable.equals(((VariableReference) node.astRight()).astIdentifier().astValue()) && isField(node.astLeft()))
+                    {
+                        field[0] = node.astLeft();
+                    }
+                    return false;
+                }
+            });
+            return field[0];
+        }
+
+        /**
+         * Helper to check if an expression refers to a field of the class, i.e. to a resource that may outlive the
+         * method that acquires it
+         * @param expression the expression
+         * @return true for this.name and for names that are not local variables or parameters of the enclosing methods
+         */
+        private boolean isField(Expression expression)
+        {
+            if(expression instanceof Select)
+            {
+                return ((Select) expression).astOperand() instanceof This;
+            }
+            if(!(expression instanceof VariableReference))
+            {
+                return false;
+            }
+
+            final String name = ((VariableReference) expression).astIdentifier().astValue();
+            final boolean[] isLocal = {false};
+            for(Node method = ControlFlowUtils.getEnclosingMethod(expression); method!=null && !isLocal[0]; method = ControlFlowUtils.getEnclosingMethod(method))
+            {
+                method.accept(new ForwardingAstVisitor()
+                {
+                    @Override
+                    public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node)
+                    {
+                        if(name.equals(node.astName().astValue()))
+                        {
+                            isLocal[0] = true;
+                        }
+                        return isLocal[0];
+                    }
+                });
+            }
+            return !isLocal[0];
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            String name = method.getName();
+            for(int i=0; i<RESOURCES.size(); i++)
+            {
+                HardwareResource resource = RESOURCES.get(i);
+                boolean isAcquire = resource.acquireMethod.equals(name);
+                if((isAcquire || resource.releaseMethods.contains(name)) && Utils.isMethodContainedInSubclassOf(method, resource.className))
+                {
+                    // The owner of the call decides which callbacks pair with each other
+                    LifecycleOwner owner = budget.isExceeded() ? null : Utils.getLifecycleOwner(context, methodInvocation);
+                    int flags = (i+1)<<SUMMARY_RESOURCE_SHIFT | LifecycleOwner.getId(owner)<<SUMMARY_OWNER_SHIFT;
+                    return (isAcquire ? SUMMARY_ACQUIRE : SUMMARY_RELEASE) | flags;
+                }
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+    }
+}
@@ -0,0 +1,277 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Scope;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.File;
+import java.util.EnumSet;
+import java.util.List;
+
+import it.polimi.testing.lifecycle_lint.AnalysisBudget;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.FrameworkTypeIndex;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LintMetrics;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import lombok.ast.ClassDeclaration;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+
+/**
+ * Common part of the lifecycle detectors, that analyze the sources with a Java visitor and the compiled classes only
+ * when the sources are not available: the time budget of each file, the counters of the run, the cached
+ * classification of the invocations (see MethodSummaryCache), the choice of the compiled classes to analyze and the
+ * reports, whose messages end with the estimated cost of the finding (see LeakCost).
+ * Library jars are analyzed only by the detectors whose scope includes Scope.JAVA_LIBRARIES
+ */
+public abstract class LifecycleDetector extends Detector implements Detector.JavaScanner, Detector.ClassScanner
+{
+    // Time budget for each file and counters for the whole run
+    protected final AnalysisBudget budget = new AnalysisBudget();
+    protected final LintMetrics metrics;
+
+    private final String issueId;
+    private final EnumSet<Scope> scope;
+    private final MethodSummaryCache summaryCache;
+    private MethodSummaryCache.Session summaries;
+
+    /**
+     * Constructor
+     * @param issueId the ID of the issue of the detector, for the metrics and the budget notices
+     * @param scope the scope of the detector
+     * @param summaryCache the cache of the classification of the invocations, kept by the subclass between runs
+     *                     (null if the detector does not cache it)
+     */
+    protected LifecycleDetector(String issueId, EnumSet<Scope> scope, MethodSummaryCache summaryCache)
+    {
+        this.issueId = issueId;
+        this.scope = scope;
+        this.summaryCache = summaryCache;
+        this.metrics = new LintMetrics(issueId);
+    }
+
+    /**
+     * Creates the implementation of an issue, analyzed on the sources or, when they are not available, on the compiled
+     * classes
+     * @param detectorClass the class of the detector
+     * @param scope the scope of the detector
+     * @return the implementation
+     */
+    // The analysis scopes are passed to a varargs of EnumSet<Scope>, whose array can only be created unchecked: it is
+    // safe since Implementation only reads it
+    @SuppressWarnings("unchecked")
+    protected static Implementation createImplementation(Class<? extends Detector> detectorClass, EnumSet<Scope> scope)
+    {
+        return new Implementation(detectorClass, scope, Scope.JAVA_FILE_SCOPE, Scope.CLASS_FILE_SCOPE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean appliesTo(@NonNull Context context, @NonNull File file)
+    {
+        return true;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public EnumSet<Scope> getApplicableFiles()
+    {
+        return scope;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void beforeCheckFile(@NonNull Context context)
+    {
+        budget.start();
+        if(summaryCache!=null && context instanceof JavaContext)
+        {
+            summaries = summaryCache.startFile((JavaContext) context);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCheckProject(@NonNull Context context)
+    {
+        metrics.log(context);
+    }
+
+    /**
+     * Ends the analysis of a source file: reports it if it was only partially analyzed and saves the summaries of its
+     * methods for the next run
+     * @param context the context of the lint request
+     */
+    protected void finishFile(JavaContext context)
+    {
+        budget.finish(context, metrics, issueId);
+        if(summaries!=null)
+        {
+            summaries.finish();
+            summaries = null;
+        }
+    }
+
+    /**
+     * Checks if a compiled class must be analyzed: classes compiled from sources are already analyzed by the Java
+     * visitor, and library projects are analyzed only if they are being reported. Library jars reach the detectors
+     * only if their scope includes them
+     * @param context the context of the lint request
+     * @return true if the bytecode of the class must be analyzed
+     */
+    protected static boolean isAnalyzedClass(ClassContext context)
+    {
+        if(context.isFromClassLibrary())
+        {
+            return true;
+        }
+        return context.getProject().getReportIssues() && !context.getScope().contains(Scope.JAVA_FILE);
+    }
+
+    /**
+     * Checks if the receiver of an invocation is obviously not of one of the classes we are looking for, using only
+     * the declarations in the file (cheaper than resolving), and counts the invocations that must be resolved
+     * @param filter the filter of the file
+     * @param methodInvocation the invocation
+     * @param excludedPackages the packages that cannot contain the classes we are looking for
+     * @return true if the invocation can be skipped
+     */
+    protected boolean isExcludedReceiver(ReceiverTypeFilter filter, MethodInvocation methodInvocation, List<String> excludedPackages)
+    {
+        if(filter.isExcluded(methodInvocation, excludedPackages))
+        {
+            metrics.increment(ReceiverTypeFilter.METRIC_SKIPPED);
+            return true;
+        }
+        metrics.increment(ReceiverTypeFilter.METRIC_RESOLVED);
+        return false;
+    }
+
+    /**
+     * Gets the classification of an invocation saved by a previous run, if its method did not change
+     * @param node the invocation
+     * @return the classification flags, null if the invocation must be classified
+     */
+    protected Integer getCachedSummary(Node node)
+    {
+        Integer summary = summaries!=null ? summaries.get(node) : null;
+        if(summary!=null)
+        {
+            metrics.increment(MethodSummaryCache.METRIC_HITS);
+        }
+        return summary;
+    }
+
+    /**
+     * Saves the classification of an invocation for the next runs, unless it was cut short by the time budget
+     * @param node the invocation
+     * @param summary the classification flags
+     */
+    protected void cacheSummary(Node node, int summary)
+    {
+        if(summaries!=null && !budget.wasExceeded())
+        {
+            summaries.put(node, summary);
+        }
+    }
+
+    /**
+     * Reports a finding in a source file, appending its estimated cost to the message
+     * @param context the context of the lint request
+     * @param issue the issue
+     * @param scope the node of the finding, for the suppressions
+     * @param location the location
+     * @param message the message
+     */
+    protected static void report(JavaContext context, Issue issue, Node scope, Location location, String message)
+    {
+        int kinds = FrameworkTypeIndex.NONE;
+        ClassDeclaration declaration = scope!=null ? JavaContext.findSurroundingClass(scope) : null;
+        if(declaration!=null)
+        {
+            JavaParser.ResolvedNode resolved = context.resolve(declaration);
+            if(resolved instanceof JavaParser.ResolvedClass)
+            {
+                kinds = FrameworkTypeIndex.getKinds((JavaParser.ResolvedClass) resolved);
+            }
+        }
+        Node method = scope!=null ? JavaContext.findSurroundingMethod(scope) : null;
+        String methodName = method instanceof MethodDeclaration ? ((MethodDeclaration) method).astMethodName().astValue() : "";
+        context.report(issue, scope, location, LeakCost.appendTo(message, LeakCost.estimate(issue.getId(), kinds, methodName)));
+    }
+
+    /**
+     * Reports a finding in a method of a compiled class, appending its estimated cost to the message
+     * @param context the context of the lint request
+     * @param issue the issue
+     * @param method the method of the finding
+     * @param instruction the instruction of the finding, for the suppressions
+     * @param location the location
+     * @param message the message
+     */
+    protected static void report(ClassContext context, Issue issue, MethodNode method, AbstractInsnNode instruction, Location location, String message)
+    {
+        context.report(issue, method, instruction, location, LeakCost.appendTo(message, estimate(context, issue, method.name)));
+    }
+
+    /**
+     * Reports a finding on a field of a compiled class, appending its estimated cost to the message
+     * @param context the context of the lint request
+     * @param issue the issue
+     * @param field the field of the finding, for the suppressions
+     * @param location the location
+     * @param message the message
+     */
+    protected static void report(ClassContext context, Issue issue, FieldNode field, Location location, String message)
+    {
+        context.report(issue, field, location, LeakCost.appendTo(message, estimate(context, issue, "")));
+    }
+
+    /**
+     * Reports a finding on a compiled class, appending its estimated cost to the message
+     * @param context the context of the lint request
+     * @param issue the issue
+     * @param location the location
+     * @param message the message
+     */
+    protected static void report(ClassContext context, Issue issue, Location location, String message)
+    {
+        context.report(issue, location, LeakCost.appendTo(message, estimate(context, issue, "")));
+    }
+
+    /**
+     * Helper to estimate the cost of a finding in a compiled class
+     * @param context the context of the lint request
+     * @param issue the issue
+     * @param methodName the name of the method of the finding ("" if it is not in a method)
+     * @return the estimated cost (see LeakCost)
+     */
+    private static int estimate(ClassContext context, Issue issue, String methodName)
+    {
+        // Anonymous classes belong to the class that declares them, as in the source
+        String className = context.getClassNode().name.replaceAll("(\\$[0-9]+)+$", "");
+        return LeakCost.estimate(issue.getId(), BytecodeUtils.getKinds(context, className), methodName);
+    }
+}
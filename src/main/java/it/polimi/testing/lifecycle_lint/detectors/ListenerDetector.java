@@ -0,0 +1,535 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.RegistrationTracker;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.NormalTypeBody;
+import lombok.ast.This;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class ListenerDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = ListenerDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "ListenerLifecycle";
+    private static final String ISSUE_DESCRIPTION = "Listener registered on a long-lived object and never unregistered";
+    private static final String ISSUE_EXPLANATION = "`ContentResolver`, `SharedPreferences` and `ViewTreeObserver` outlive the activities, fragments, "+
+                                                    "services and views that register listeners on them, and keep every registered listener (and "+
+                                                    "what it references) alive. Each registration should be paired with an unregistration of the "+
+                                                    "same listener in the matching callback (e.g. onPause() for onResume(), onDetachedFromWindow() "+
+                                                    "for onAttachedToWindow()).";
+    private static final String MORE_INFO_URL = "https://developer.android.com/reference/android/view/ViewTreeObserver.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 5;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue
+    private static final String CONTENT_RESOLVER = "android.content.ContentResolver";
+    private static final String SHARED_PREFERENCES = "android.content.SharedPreferences";
+    private static final String VIEW_TREE_OBSERVER = "android.view.ViewTreeObserver";
+    private static final List<ListenerPair> PAIRS = Arrays.asList(
+        new ListenerPair(CONTENT_RESOLVER, "registerContentObserver", 2, "unregisterContentObserver"),
+        new ListenerPair(SHARED_PREFERENCES, "registerOnSharedPreferenceChangeListener", 0, "unregisterOnSharedPreferenceChangeListener"),
+        new ListenerPair(VIEW_TREE_OBSERVER, "addOnGlobalLayoutListener", 0, "removeOnGlobalLayoutListener", "removeGlobalOnLayoutListener"),
+        new ListenerPair(VIEW_TREE_OBSERVER, "addOnPreDrawListener", 0, "removeOnPreDrawListener"),
+        new ListenerPair(VIEW_TREE_OBSERVER, "addOnScrollChangedListener", 0, "removeOnScrollChangedListener"),
+        new ListenerPair(VIEW_TREE_OBSERVER, "addOnGlobalFocusChangeListener", 0, "removeOnGlobalFocusChangeListener")
+    );
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_UNREGISTER = new MessageTemplate("Found a `%1$s()` but no `%2$s()` calls with the same listener in the class");
+    private static final MessageTemplate MESSAGE_LATE_UNREGISTER = new MessageTemplate("This listener is registered in `%1$s()` but unregistered only after `%2$s()`, so it is notified while the component is in the background");
+
+    // Packages that cannot contain the classes of the listeners
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.");
+
+    // Names of all the methods, to filter the invocations before resolving them
+    private static final Set<String> METHOD_NAMES = new HashSet<>();
+    static
+    {
+        for(ListenerPair pair: PAIRS)
+        {
+            METHOD_NAMES.add(pair.registerMethod);
+            METHOD_NAMES.addAll(pair.unregisterMethods);
+        }
+    }
+
+    // Prefix of the names given to anonymous listeners, that are identified by their position
+    private static final String ANONYMOUS_LISTENER = "new@";
+
+    // Data used during the search (per detector instance, listeners identified by pair and name)
+    private final RegistrationTracker listeners = new RegistrationTracker();
+    private final Map<MethodInvocation, ListenerPair> registeredPairs = new IdentityHashMap<>();
+
+    // Data used during the bytecode search
+    private final Map<String, ClassCall> classRegistrations = new LinkedHashMap<>();
+    private final Map<String, List<String>> classUnregistrationMethods = new HashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations (kind of call, index of the pair and id of the lifecycle owner), cached per
+    // method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_REGISTER = 1;
+    private static final int SUMMARY_UNREGISTER = 1<<1;
+    private static final int SUMMARY_PAIR_SHIFT = 4;
+    private static final int SUMMARY_PAIR_MASK = 0xF;
+    private static final int SUMMARY_OWNER_SHIFT = 8;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public ListenerDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Collections.<Class<? extends Node>>singletonList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that each listener is unregistered in the callback paired with its registration
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Not if the file was only partially analyzed, since the unregistration may be in the part we skipped
+        if(!budget.wasExceeded())
+        {
+            // Listeners never unregistered
+            for(MethodInvocation methodInvocation: listeners.getUnmatchedRegistrations())
+            {
+                ListenerPair pair = registeredPairs.get(methodInvocation);
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_NO_UNREGISTER.format(pair.registerMethod, pair.unregisterMethods.get(0)));
+            }
+
+            // Listeners unregistered too late for their owner
+            for(Map.Entry<String, MethodInvocation> entry: listeners.getRegistrations().entrySet())
+            {
+                LifecycleOwner owner = listeners.getOwner(entry.getValue());
+                String registerMethod = Utils.getCallerMethodName(entry.getValue());
+                if(owner.isReleasedLate(registerMethod, listeners.getUnregistrationMethods(entry.getKey())))
+                {
+                    report(context, ISSUE, entry.getValue(), context.getLocation(entry.getValue().astName()), MESSAGE_LATE_UNREGISTER.format(registerMethod, owner.getPairedReleaseCallback(registerMethod)));
+                }
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        listeners.clear();
+        registeredPairs.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        ClassNode classNode = context.getClassNode();
+        LifecycleOwner owner = classNode!=null ? LifecycleOwner.getOwner(context, classNode.name) : null;
+        if(owner!=null && !owner.isLongLived())
+        {
+            for(Map.Entry<String, ClassCall> entry: classRegistrations.entrySet())
+            {
+                ClassCall call = entry.getValue();
+                ListenerPair pair = getPair(context, call.getCall());
+                List<String> unregistrationMethods = classUnregistrationMethods.get(entry.getKey());
+
+                // Listeners never unregistered (an unregistration of an unknown listener may be any of them)
+                if(unregistrationMethods==null)
+                {
+                    if(pair!=null && !classUnregistrationMethods.containsKey(getListenerKey(pair, "")))
+                    {
+                        report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_UNREGISTER.format(pair.registerMethod, pair.unregisterMethods.get(0)));
+                    }
+                }
+
+                // Listeners unregistered too late for their owner
+                else if(owner.isReleasedLate(call.getMethod().name, unregistrationMethods))
+                {
+                    report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_LATE_UNREGISTER.format(call.getMethod().name, owner.getPairedReleaseCallback(call.getMethod().name)));
+                }
+            }
+        }
+
+        // Reset variables for next classes
+        classRegistrations.clear();
+        classUnregistrationMethods.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new ListenerVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return new ArrayList<>(METHOD_NAMES);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the listener is identified by the field or variable loaded as argument
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the call and in the class that contains it
+        ListenerPair pair = getPair(context, call);
+        if(pair==null || LifecycleOwner.getOwner(context, classNode.name)==null)
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+
+        if(pair.registerMethod.equals(call.name))
+        {
+            // Anonymous listeners created in the call cannot be paired (they usually remove themselves)
+            String listener = BytecodeUtils.getCallArgumentName(method, lastFrames, call, pair.registerArgument);
+            if(!listener.isEmpty())
+            {
+                classRegistrations.put(getListenerKey(pair, listener), new ClassCall(method, call));
+            }
+        }
+        else
+        {
+            String listener = BytecodeUtils.getCallArgumentName(method, lastFrames, call, 0);
+            String key = getListenerKey(pair, listener);
+            List<String> methods = classUnregistrationMethods.get(key);
+            if(methods==null)
+            {
+                methods = new ArrayList<>();
+                classUnregistrationMethods.put(key, methods);
+            }
+            methods.add(method.name);
+        }
+    }
+
+    /**
+     * Helper to find the pair of a call in the bytecode
+     * @param context the context of the lint request
+     * @param call the call
+     * @return the pair of the register or unregister method called, null if it is not one of them
+     */
+    private static ListenerPair getPair(ClassContext context, MethodInsnNode call)
+    {
+        for(ListenerPair pair: PAIRS)
+        {
+            if((pair.registerMethod.equals(call.name) || pair.unregisterMethods.contains(call.name)) &&
+                    BytecodeUtils.isSubclassOf(context, call.owner, pair.className))
+            {
+                return pair;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Helper to build the identity of a listener: the same name may be registered on different objects
+     * @param pair the pair of the calls
+     * @param listener the name of the listener
+     * @return the key of the listener
+     */
+    private static String getListenerKey(ListenerPair pair, String listener)
+    {
+        return PAIRS.indexOf(pair)+":"+listener;
+    }
+
+    /**
+     * A register method and the unregister methods that undo it
+     */
+    private static class ListenerPair
+    {
+        private final String className;
+        private final String registerMethod;
+        private final int registerArgument;
+        private final List<String> unregisterMethods;
+
+        /**
+         * Constructor
+         * @param className the class that declares the methods
+         * @param registerMethod the register method
+         * @param registerArgument the position of the listener in the arguments of the register method (it is always
+         *                         the first one for the unregister methods)
+         * @param unregisterMethods the unregister methods
+         */
+        public ListenerPair(String className, String registerMethod, int registerArgument, String... unregisterMethods)
+        {
+            this.className = className;
+            this.registerMethod = registerMethod;
+            this.registerArgument = registerArgument;
+            this.unregisterMethods = Arrays.asList(unregisterMethods);
+        }
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class ListenerVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public ListenerVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            if(!METHOD_NAMES.contains(methodInvocation.astName().astValue()))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+
+            // Registrations and unregistrations are paired by listener, on the same kind of object
+            ListenerPair pair = PAIRS.get((summary>>>SUMMARY_PAIR_SHIFT) & SUMMARY_PAIR_MASK);
+            LifecycleOwner owner = LifecycleOwner.getOwnerById(summary>>>SUMMARY_OWNER_SHIFT);
+            if((summary & SUMMARY_REGISTER)!=0)
+            {
+                String listener = getListenerName(Utils.getMethodInvocationArgument(methodInvocation, pair.registerArgument));
+                listeners.register(getListenerKey(pair, listener), methodInvocation, owner);
+                registeredPairs.put(methodInvocation, pair);
+            }
+            else if((summary & SUMMARY_UNREGISTER)!=0)
+            {
+                String listener = getListenerName(Utils.getMethodInvocationArgument(methodInvocation, 0));
+                listeners.unregister(getListenerKey(pair, listener), methodInvocation, true, owner);
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Helper to get the name of a listener: anonymous listeners are named after their position, so that a
+         * listener that removes itself (passing this) is paired with its registration
+         * @param expression the argument of the call
+         * @return the canonical name of the listener
+         */
+        private String getListenerName(Expression expression)
+        {
+            if(expression instanceof ConstructorInvocation && ((ConstructorInvocation) expression).astAnonymousClassBody()!=null)
+            {
+                return getAnonymousListenerName(expression);
+            }
+            if(expression instanceof This && ((This) expression).astQualifier()==null)
+            {
+                // The innermost class is an anonymous class created with new
+                for(Node parent = expression.getParent(); parent!=null; parent = parent.getParent())
+                {
+                    if(parent instanceof NormalTypeBody)
+                    {
+                        if(parent.getParent() instanceof ConstructorInvocation)
+                        {
+                            return getAnonymousListenerName(parent.getParent());
+                        }
+                        break;
+                    }
+                }
+            }
+            return aliases.getCanonicalName(expression);
+        }
+
+        /**
+         * Helper to name an anonymous listener
+         * @param constructorInvocation the creation of the listener
+         * @return the name, based on its position in the file
+         */
+        private String getAnonymousListenerName(Node constructorInvocation)
+        {
+            return ANONYMOUS_LISTENER+(constructorInvocation.getPosition()!=null ? constructorInvocation.getPosition().getStart() : -1);
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Find the pair of the method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            String name = method.getName();
+            JavaParser.ResolvedClass containingClass = method.getContainingClass();
+            for(int i=0; i<PAIRS.size(); i++)
+            {
+                ListenerPair pair = PAIRS.get(i);
+                boolean isRegister = pair.registerMethod.equals(name);
+                if(!isRegister && !pair.unregisterMethods.contains(name)) continue;
+                if(!containingClass.getName().equals(pair.className) && !containingClass.isSubclassOf(pair.className, false)) continue;
+
+                // Only registrations in a lifecycle owner (skipped if we are over the time budget); unregistrations may
+                // also be in other classes of the file, like a listener that removes itself
+                LifecycleOwner owner = budget.isExceeded() ? null : Utils.getLifecycleOwner(context, methodInvocation);
+                if(owner==null && (isRegister || budget.isExceeded()))
+                {
+                    return SUMMARY_IRRELEVANT;
+                }
+                return (isRegister ? SUMMARY_REGISTER : SUMMARY_UNREGISTER) | i<<SUMMARY_PAIR_SHIFT | LifecycleOwner.getId(owner)<<SUMMARY_OWNER_SHIFT;
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+    }
+}
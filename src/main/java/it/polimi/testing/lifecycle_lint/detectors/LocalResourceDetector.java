@@ -0,0 +1,633 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ControlFlowUtils;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.Catch;
+import lombok.ast.ConstructorDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.Expression;
+import lombok.ast.ExpressionStatement;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.Return;
+import lombok.ast.Try;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class LocalResourceDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = LocalResourceDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "LocalResourceRelease";
+    private static final String ISSUE_DESCRIPTION = "`Cursor`, `TypedArray` or stream not released";
+    private static final String ISSUE_EXPLANATION = "Cursors keep a window of the query results in native memory until they are closed, TypedArrays "+
+                                                    "are pooled and must be recycled to be reused, and streams opened through the `ContentResolver` "+
+                                                    "keep a file descriptor open. A resource that is only used in a method must be released before "+
+                                                    "the method returns, in a finally block or with try-with-resources so that it is also released "+
+                                                    "when an exception is thrown.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/reference/android/database/Cursor.html#close()";
+
+    // Issue category (an error: only resources that surely never leave the method are reported)
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 7;
+    private static final Severity ISSUE_SEVERITY = Severity.ERROR;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_OBJECT);
+    }
+
+    // Methods and classes related to the issue
+    private static final String CLOSE_METHOD = "close";
+    private static final String RECYCLE_METHOD = "recycle";
+    private static final List<LocalResource> RESOURCES = Arrays.asList(
+        new LocalResource("Cursor", CLOSE_METHOD, "android.content.ContentResolver", "query"),
+        new LocalResource("Cursor", CLOSE_METHOD, "android.content.ContentProviderClient", "query"),
+        new LocalResource("Cursor", CLOSE_METHOD, "android.database.sqlite.SQLiteDatabase", "query", "queryWithFactory", "rawQuery", "rawQueryWithFactory"),
+        new LocalResource("TypedArray", RECYCLE_METHOD, Utils.CONTEXT, "obtainStyledAttributes"),
+        new LocalResource("TypedArray", RECYCLE_METHOD, "android.content.res.Resources.Theme", "obtainStyledAttributes"),
+        new LocalResource("TypedArray", RECYCLE_METHOD, "android.content.res.Resources", "obtainAttributes", "obtainTypedArray"),
+        new LocalResource("InputStream", CLOSE_METHOD, "android.content.ContentResolver", "openInputStream"),
+        new LocalResource("OutputStream", CLOSE_METHOD, "android.content.ContentResolver", "openOutputStream")
+    );
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NOT_RELEASED = new MessageTemplate("This `%1$s` is never released: call `%2$s()` in a finally block (or use try-with-resources) before the method returns");
+    private static final MessageTemplate MESSAGE_DISCARDED = new MessageTemplate("The `%1$s` returned by `%2$s()` is discarded without calling `%3$s()`");
+    private static final MessageTemplate MESSAGE_RELEASED_ONLY_IN_CATCH = new MessageTemplate("This `%1$s` is released only when an exception is thrown: move `%2$s()` to a finally block");
+
+    // Names of all the acquisition methods, to filter the invocations before resolving them
+    private static final Set<String> METHOD_NAMES = new HashSet<>();
+    static
+    {
+        for(LocalResource resource: RESOURCES)
+        {
+            METHOD_NAMES.addAll(resource.methods);
+        }
+    }
+
+    // Packages that cannot contain the classes of the acquisition methods
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.", "android.view.", "android.widget.");
+
+    // Classification of the invocations (index of the resource plus one, 0 if irrelevant), cached per method between
+    // runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public LocalResourceDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Collections.<Class<? extends Node>>singletonList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context context)
+    {
+        if(!(context instanceof JavaContext)) return;
+        finishFile((JavaContext) context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new LocalResourceVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return new ArrayList<>(METHOD_NAMES);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the resource is followed through the local variable it is stored in (the
+     * compiler turns try-with-resources into explicit close() calls)
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the call
+        LocalResource resource = null;
+        for(LocalResource candidate: RESOURCES)
+        {
+            if(candidate.methods.contains(call.name) && BytecodeUtils.isSubclassOf(context, call.owner, candidate.className))
+            {
+                resource = candidate;
+                break;
+            }
+        }
+        if(resource==null)
+        {
+            return;
+        }
+
+        // Discarded resources, and resources stored in a local variable
+        AbstractInsnNode next = call.getNext();
+        while(next!=null && next.getOpcode()<0)
+        {
+            next = next.getNext();
+        }
+        if(next!=null && next.getOpcode()==Opcodes.POP)
+        {
+            report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_DISCARDED.format(resource.type, call.name, resource.releaseMethod));
+            return;
+        }
+        if(next==null || next.getOpcode()!=Opcodes.ASTORE)
+        {
+            return;
+        }
+
+        // Every use of the variable: it must be released, or leave the method (any other use, e.g. passed to a method,
+        // returned or copied, is considered an escape)
+        Frame[] frames = BytecodeUtils.analyze(classNode, method);
+        if(frames==null) return;
+        int var = ((VarInsnNode) next).var;
+        for(AbstractInsnNode instruction = next.getNext(); instruction!=null; instruction = instruction.getNext())
+        {
+            Frame frame = frames[method.instructions.indexOf(instruction)];
+            if(frame==null) continue;
+
+            int consumed = getConsumedValues(instruction);
+            for(int depth=1; depth<=consumed && depth<=frame.getStackSize(); depth++)
+            {
+                SourceValue value = (SourceValue) frame.getStack(frame.getStackSize()-depth);
+                if(!isLoadOf(value, var)) continue;
+
+                // The receiver of a call is the deepest consumed value
+                boolean isReceiver = instruction instanceof MethodInsnNode && instruction.getOpcode()!=Opcodes.INVOKESTATIC && depth==consumed;
+                if(isReceiver && resource.releaseMethod.equals(((MethodInsnNode) instruction).name))
+                {
+                    return;
+                }
+                if(!isReceiver && instruction.getOpcode()!=Opcodes.IFNULL && instruction.getOpcode()!=Opcodes.IFNONNULL)
+                {
+                    return;
+                }
+            }
+        }
+        report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_NOT_RELEASED.format(resource.type, resource.releaseMethod));
+    }
+
+    /**
+     * Helper to get the number of stack values consumed by an instruction that may use a reference
+     * @param instruction the instruction
+     * @return the number of values (receiver included for calls), 0 if the instruction cannot use a reference
+     */
+    private static int getConsumedValues(AbstractInsnNode instruction)
+    {
+        if(instruction instanceof MethodInsnNode)
+        {
+            int arguments = Type.getArgumentTypes(((MethodInsnNode) instruction).desc).length;
+            return instruction.getOpcode()==Opcodes.INVOKESTATIC ? arguments : arguments+1;
+        }
+        switch(instruction.getOpcode())
+        {
+            case Opcodes.ARETURN:
+            case Opcodes.ASTORE:
+            case Opcodes.PUTSTATIC:
+            case Opcodes.ATHROW:
+            case Opcodes.IFNULL:
+            case Opcodes.IFNONNULL:
+            case Opcodes.CHECKCAST:
+                return 1;
+            case Opcodes.PUTFIELD:
+            case Opcodes.IF_ACMPEQ:
+            case Opcodes.IF_ACMPNE:
+                return 2;
+            case Opcodes.AASTORE:
+                return 3;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Helper to check if a stack value is only a load of a local variable
+     * @param value the value
+     * @param var the index of the variable
+     * @return true if all the instructions that produced the value load the variable
+     */
+    private static boolean isLoadOf(SourceValue value, int var)
+    {
+        if(value==null || value.insns.isEmpty()) return false;
+        for(Object object: value.insns)
+        {
+            AbstractInsnNode source = (AbstractInsnNode) object;
+            if(!(source instanceof VarInsnNode) || source.getOpcode()!=Opcodes.ALOAD || ((VarInsnNode) source).var!=var)
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A kind of resource and the methods that acquire it
+     */
+    private static class LocalResource
+    {
+        private final String type;
+        private final String releaseMethod;
+        private final String className;
+        private final List<String> methods;
+
+        /**
+         * Constructor
+         * @param type the simple name of the type of the resource, for the messages
+         * @param releaseMethod the method that releases the resource
+         * @param className the class that declares the acquisition methods
+         * @param methods the acquisition methods
+         */
+        public LocalResource(String type, String releaseMethod, String className, String... methods)
+        {
+            this.type = type;
+            this.releaseMethod = releaseMethod;
+            this.className = className;
+            this.methods = Arrays.asList(methods);
+        }
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class LocalResourceVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public LocalResourceVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            if(!METHOD_NAMES.contains(methodInvocation.astName().astValue()))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+            LocalResource resource = RESOURCES.get(summary-1);
+
+            // Discarded resources, and resources stored in a local variable (anything else, like a field or an
+            // argument, leaves the method)
+            Node parent = methodInvocation.getParent();
+            String variable = null;
+            if(parent instanceof ExpressionStatement)
+            {
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_DISCARDED.format(resource.type, methodInvocation.astName().astValue(), resource.releaseMethod));
+                return false;
+            }
+            else if(parent instanceof VariableDefinitionEntry && ((VariableDefinitionEntry) parent).astInitializer()==methodInvocation)
+            {
+                variable = ((VariableDefinitionEntry) parent).astName().astValue();
+            }
+            else if(parent instanceof BinaryExpression && ((BinaryExpression) parent).astOperator()==BinaryOperator.ASSIGN &&
+                    ((BinaryExpression) parent).astRight()==methodInvocation && ((BinaryExpression) parent).astLeft() instanceof VariableReference)
+            {
+                variable = ((VariableReference) ((BinaryExpression) parent).astLeft()).astIdentifier().astValue();
+            }
+            Node method = ControlFlowUtils.getEnclosingMethod(methodInvocation);
+            if(variable==null || method==null)
+            {
+                return false;
+            }
+
+            // Fields are not method-local
+            if(!isLocalVariable(method, variable))
+            {
+                return false;
+            }
+
+            ResourceUses uses = new ResourceUses(variable, resource.releaseMethod, context.getContents());
+            method.accept(uses);
+            if(!uses.isEscaped && uses.releases==0)
+            {
+                MessageTemplate message = uses.catchReleases>0 ? MESSAGE_RELEASED_ONLY_IN_CATCH : MESSAGE_NOT_RELEASED;
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), message.format(resource.type, resource.releaseMethod));
+            }
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Helper to check if a name is a local variable or a parameter of a method
+         * @param method the method
+         * @param name the name
+         * @return true if the method declares a variable or parameter with that name
+         */
+        private boolean isLocalVariable(Node method, final String name)
+        {
+            final boolean[] found = {false};
+            method.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node)
+                {
+                    if(name.equals(node.astName().astValue()))
+                    {
+                        found[0] = true;
+                    }
+                    return found[0];
+                }
+            });
+            return found[0];
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the index of the resource plus one, SUMMARY_IRRELEVANT if it does not acquire a resource
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            for(int i=0; i<RESOURCES.size(); i++)
+            {
+                LocalResource resource = RESOURCES.get(i);
+                if(resource.methods.contains(method.getName()) && Utils.isMethodContainedInSubclassOf(method, resource.className))
+                {
+                    return i+1;
+                }
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+    }
+
+    /**
+     * Visitor that collects the uses of a local variable that holds a resource in its method: releases (in a catch
+     * block or not) and escapes, i.e. any use that may hand the resource over to someone else
+     */
+    private static class ResourceUses extends ForwardingAstVisitor
+    {
+        private final String variable;
+        private final String releaseMethod;
+        private final String contents;
+        private int releases = 0;
+        private int catchReleases = 0;
+        private boolean isEscaped = false;
+
+        /**
+         * Constructor
+         * @param variable the name of the variable
+         * @param releaseMethod the method that releases the resource
+         * @param contents the source of the file, since the AST does not contain the resources of the try statements
+         */
+        public ResourceUses(String variable, String releaseMethod, String contents)
+        {
+            this.variable = variable;
+            this.releaseMethod = releaseMethod;
+            this.contents = contents;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * The resource specification of a try-with-resources statement is dropped from the AST, so it is found in the
+         * source between the try keyword and the body: a variable mentioned there is closed by the statement
+         */
+        @Override
+        public boolean visitTry(Try node)
+        {
+            int start = node.getPosition().getStart();
+            int end = node.astBody()!=null ? node.astBody().getPosition().getStart() : -1;
+            if(contents==null || start<0 || end<start || end>contents.length())
+            {
+                return false;
+            }
+            String header = contents.substring(start, end);
+            if(header.indexOf('(')>=0 && Pattern.compile("\\b"+Pattern.quote(variable)+"\\b").matcher(header).find())
+            {
+                releases++;
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation node)
+        {
+            if(isVariable(node.astOperand()) && releaseMethod.equals(node.astName().astValue()))
+            {
+                if(isOnlyInCatch(node)) catchReleases++;
+                else releases++;
+            }
+            for(Expression argument: node.astArguments())
+            {
+                if(isVariable(argument)) isEscaped = true;
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitConstructorInvocation(ConstructorInvocation node)
+        {
+            for(Expression argument: node.astArguments())
+            {
+                if(isVariable(argument)) isEscaped = true;
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitReturn(Return node)
+        {
+            if(isVariable(node.astValue())) isEscaped = true;
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitBinaryExpression(BinaryExpression node)
+        {
+            if(node.astOperator()==BinaryOperator.ASSIGN && isVariable(node.astRight())) isEscaped = true;
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitVariableDefinitionEntry(VariableDefinitionEntry node)
+        {
+            if(isVariable(node.astInitializer())) isEscaped = true;
+            return false;
+        }
+
+        /**
+         * Helper to check if an expression is the variable
+         * @param expression the expression
+         * @return true if it is a reference to the variable
+         */
+        private boolean isVariable(Expression expression)
+        {
+            return expression instanceof VariableReference && variable.equals(((VariableReference) expression).astIdentifier().astValue());
+        }
+
+        /**
+         * Helper to check if a release is in a catch block, i.e. it is not executed when no exception is thrown
+         * @param node the release
+         * @return true if one of the enclosing blocks of the method is a catch block
+         */
+        private boolean isOnlyInCatch(Node node)
+        {
+            for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+            {
+                if(parent instanceof Catch)
+                {
+                    return !ControlFlowUtils.isInFinally(parent);
+                }
+                if(parent instanceof MethodDeclaration || parent instanceof ConstructorDeclaration)
+                {
+                    return false;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.BlockingApiCatalog;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.FrameworkTypeIndex;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.ClassDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.NormalTypeBody;
+import lombok.ast.This;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class MainThreadBlockingDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = MainThreadBlockingDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "MainThreadBlockingLifecycle";
+    private static final String ISSUE_DESCRIPTION = "Blocking call in a startup lifecycle callback";
+    private static final String ISSUE_EXPLANATION = "onCreate(), onStart() and onResume() run on the main thread while the activity or fragment "+
+                                                    "is being shown: disk, database and network calls made there (directly or through helper "+
+                                                    "methods) slow down the start and may cause ANRs. Move them to a background thread. The "+
+                                                    "blocking APIs can be extended with the `lifecycle.lint.blockingApis` system property.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/training/articles/perf-anr.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 5;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Companion issue for the broadcast receivers
+    private static final String RECEIVER_ISSUE_ID = "BroadcastReceiverBlocking";
+    private static final String RECEIVER_ISSUE_DESCRIPTION = "Blocking call in `BroadcastReceiver.onReceive()`";
+    private static final String RECEIVER_ISSUE_EXPLANATION = "onReceive() runs on the main thread and must complete within a few seconds, otherwise the "+
+                                                             "receiver is considered blocked and the application may be killed. Blocking I/O, thread "+
+                                                             "joins and synchronous network calls (directly or through helper methods) should be handed "+
+                                                             "off to a background job, or the receiver should call `goAsync()` and finish the work on "+
+                                                             "another thread.";
+    private static final String RECEIVER_MORE_INFO_URL = "https://developer.android.com/reference/android/content/BroadcastReceiver.html#goAsync()";
+
+    // Companion issue
+    public static final Issue RECEIVER_ISSUE = Issue.create
+    (
+        RECEIVER_ISSUE_ID,
+        RECEIVER_ISSUE_DESCRIPTION,
+        RECEIVER_ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(RECEIVER_MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_OBJECT);
+        LeakCost.register(RECEIVER_ISSUE, LeakCost.RETAINS_OBJECT);
+    }
+
+    // Callbacks that run on the main thread: while the activity or fragment is being shown, and when a broadcast is received
+    private static final List<String> STARTUP_CALLBACKS = Arrays.asList(Utils.ON_CREATE_METHOD, Utils.ON_START_METHOD, Utils.ON_RESUME_METHOD);
+    private static final List<String> RECEIVER_CALLBACKS = Collections.singletonList("onReceive");
+    private static final int ACTIVITY_OR_FRAGMENT = FrameworkTypeIndex.ACTIVITY | FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT;
+
+    // Configuration (levels of helper methods followed from the callbacks)
+    public static final String DEPTH_PROPERTY = "lifecycle.lint.blockingCallDepth";
+    private static final int DEFAULT_DEPTH = 3;
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_BLOCKING_CALL = new MessageTemplate("`%1$s()` may block the main thread during `%2$s()`: move it to a background thread");
+    private static final MessageTemplate MESSAGE_BLOCKING_CALL_THROUGH = new MessageTemplate("`%1$s()` may block the main thread during `%2$s()` (called through `%3$s()`): move it to a background thread");
+    private static final MessageTemplate MESSAGE_RECEIVER_BLOCKING_CALL = new MessageTemplate("`%1$s()` may block the main thread during `%2$s()`: call `goAsync()` and finish the work on another thread, or hand it off to a background job");
+    private static final MessageTemplate MESSAGE_RECEIVER_BLOCKING_CALL_THROUGH = new MessageTemplate("`%1$s()` may block the main thread during `%2$s()` (called through `%3$s()`): call `goAsync()` and finish the work on another thread, or hand it off to a background job");
+
+    // Classes related to the issues
+    private static final String BROADCAST_RECEIVER = "android.content.BroadcastReceiver";
+
+    // Metric names
+    private static final String METRIC_HELPERS = "helperMethodsVisited";
+
+    private final BlockingApiCatalog catalog = BlockingApiCatalog.getDefault();
+    private final int maxDepth = Integer.getInteger(DEPTH_PROPERTY, DEFAULT_DEPTH);
+
+    // Blocking calls already reported in the current file (each is reported once, from the first callback that reaches it)
+    private final Set<Node> reported = Collections.newSetFromMap(new IdentityHashMap<Node, Boolean>());
+
+    // Data used in the bytecode search: for the current class, its issue and the path from a callback to each reachable method
+    private ClassNode lastAnalyzedClass;
+    private Issue classIssue;
+    private Map<MethodNode, List<String>> classPaths;
+
+    /**
+     * Constructor
+     */
+    public MainThreadBlockingDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Collections.<Class<? extends Node>>singletonList(
+            MethodDeclaration.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            lastAnalyzedClass = null;
+            classIssue = null;
+            classPaths = null;
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+
+        finishFile((JavaContext) c);
+
+        // Reset variables for next files
+        reported.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new MainThreadBlockingVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return new ArrayList<>(catalog.getMethodNames());
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: helper methods are the methods of the same class reachable from a callback
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Only blocking calls
+        String blockingClass = catalog.getBlockingClass(context, call.owner, call.name);
+        if(blockingClass==null)
+        {
+            return;
+        }
+
+        // Issue and paths from the callbacks, computed once per class (activities, fragments and broadcast receivers)
+        if(classNode!=lastAnalyzedClass)
+        {
+            lastAnalyzedClass = classNode;
+            if((BytecodeUtils.getKinds(context, classNode.name) & ACTIVITY_OR_FRAGMENT)!=0)
+            {
+                classIssue = ISSUE;
+                classPaths = getCallbackPaths(classNode, STARTUP_CALLBACKS);
+            }
+            else if(BytecodeUtils.isSubclassOf(context, classNode.name, BROADCAST_RECEIVER))
+            {
+                classIssue = RECEIVER_ISSUE;
+                classPaths = getCallbackPaths(classNode, RECEIVER_CALLBACKS);
+            }
+            else
+            {
+                classIssue = null;
+                classPaths = Collections.emptyMap();
+            }
+        }
+
+        List<String> path = classPaths.get(method);
+        if(path!=null)
+        {
+            report(context, classIssue, method, call, context.getLocation(call), formatMessage(classIssue, blockingClass, call.name, path));
+        }
+    }
+
+    /**
+     * Helper that finds the methods of a compiled class that are reachable from the given callbacks, following the
+     * calls to the methods of the same class up to the maximum depth (breadth first, so each method gets its shortest
+     * path)
+     * @param classNode the class
+     * @param callbacks the names of the callbacks
+     * @return the path (the callback and then the helpers) for each reachable method
+     */
+    private Map<MethodNode, List<String>> getCallbackPaths(ClassNode classNode, List<String> callbacks)
+    {
+        Map<String, MethodNode> methods = new HashMap<>();
+        for(Object object: classNode.methods)
+        {
+            MethodNode method = (MethodNode) object;
+            methods.put(method.name+method.desc, method);
+        }
+
+        Map<MethodNode, List<String>> paths = new IdentityHashMap<>();
+        LinkedList<MethodNode> queue = new LinkedList<>();
+        for(MethodNode method: methods.values())
+        {
+            if(callbacks.contains(method.name))
+            {
+                paths.put(method, Collections.singletonList(method.name));
+                queue.add(method);
+            }
+        }
+
+        while(!queue.isEmpty())
+        {
+            MethodNode method = queue.removeFirst();
+            List<String> path = paths.get(method);
+            if(path.size()>maxDepth) continue;
+
+            for(AbstractInsnNode instruction = method.instructions.getFirst(); instruction!=null; instruction = instruction.getNext())
+            {
+                if(!(instruction instanceof MethodInsnNode) || !classNode.name.equals(((MethodInsnNode) instruction).owner)) continue;
+
+                MethodInsnNode call = (MethodInsnNode) instruction;
+                MethodNode helper = methods.get(call.name+call.desc);
+                if(helper!=null && !paths.containsKey(helper))
+                {
+                    List<String> helperPath = new ArrayList<>(path);
+                    helperPath.add(helper.name);
+                    paths.put(helper, helperPath);
+                    queue.add(helper);
+                }
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Helper to build the reported message
+     * @param issue the issue (startup callbacks or broadcast receivers)
+     * @param blockingClass the fully qualified name of the class of the blocking API
+     * @param methodName the name of the blocking method
+     * @param path the callback and then the helper methods that lead to the call
+     * @return the message
+     */
+    private static String formatMessage(Issue issue, String blockingClass, String methodName, List<String> path)
+    {
+        String api = getSimpleName(blockingClass)+"."+methodName;
+        if(path.size()==1)
+        {
+            return (issue==RECEIVER_ISSUE ? MESSAGE_RECEIVER_BLOCKING_CALL : MESSAGE_BLOCKING_CALL).format(api, path.get(0));
+        }
+
+        StringBuilder helpers = new StringBuilder();
+        for(int i=1; i<path.size(); i++)
+        {
+            if(i>1) helpers.append("()` -> `");
+            helpers.append(path.get(i));
+        }
+        return (issue==RECEIVER_ISSUE ? MESSAGE_RECEIVER_BLOCKING_CALL_THROUGH : MESSAGE_BLOCKING_CALL_THROUGH).format(api, path.get(0), helpers.toString());
+    }
+
+    /**
+     * Helper to get the name of a class without its package (nested classes keep their outer class)
+     * @param className the fully qualified name of the class
+     * @return the simple name, e.g. SharedPreferences.Editor
+     */
+    private static String getSimpleName(String className)
+    {
+        String[] parts = className.split("\\.");
+        int first = parts.length-1;
+        while(first>0 && !parts[first-1].isEmpty() && Character.isUpperCase(parts[first-1].charAt(0)))
+        {
+            first--;
+        }
+
+        StringBuilder name = new StringBuilder(parts[first]);
+        for(int i=first+1; i<parts.length; i++)
+        {
+            name.append('.').append(parts[i]);
+        }
+        return name.toString();
+    }
+
+    /**
+     * Custom AST Visitor that receives the method declarations and explores the callbacks that run on the main thread
+     */
+    private class MainThreadBlockingVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+
+        // Methods declared in the file, by class body and name (built the first time a callback is explored)
+        private Map<Node, Map<String, List<MethodDeclaration>>> methods;
+
+        // Catalog class of each candidate invocation, "" if it is not a blocking API (resolved once per file)
+        private final Map<MethodInvocation, String> blockingClasses = new IdentityHashMap<>();
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public MainThreadBlockingVisitor(JavaContext context)
+        {
+            this.context = context;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodDeclaration(MethodDeclaration methodDeclaration)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only the callbacks (filter before resolving, for performance)
+            String name = methodDeclaration.astMethodName().astValue();
+            boolean isStartupCallback = STARTUP_CALLBACKS.contains(name);
+            if((!isStartupCallback && !RECEIVER_CALLBACKS.contains(name)) || methodDeclaration.astBody()==null)
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Startup callbacks of activities and fragments, onReceive() of broadcast receivers (including anonymous ones)
+            ResolvedNode resolved = context.resolve(methodDeclaration);
+            if(!(resolved instanceof ResolvedMethod))
+            {
+                return false;
+            }
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            Issue issue = isStartupCallback ? ISSUE : RECEIVER_ISSUE;
+            if(!Utils.isMethodContainedInSubclassOf(method, isStartupCallback ? ACTIVITY_OR_FRAGMENT : FrameworkTypeIndex.BROADCAST_RECEIVER))
+            {
+                return false;
+            }
+
+            explore(methodDeclaration, issue);
+
+            return super.visitMethodDeclaration(methodDeclaration);
+        }
+
+        /**
+         * Helper that looks for blocking calls in a callback, following the calls to the other methods of its class up
+         * to the maximum depth (breadth first, so each method is explored once, with its shortest path)
+         * @param callback the callback
+         * @param issue the issue to report (startup callbacks or broadcast receivers)
+         */
+        private void explore(MethodDeclaration callback, Issue issue)
+        {
+            Map<MethodDeclaration, List<String>> paths = new IdentityHashMap<>();
+            LinkedList<MethodDeclaration> queue = new LinkedList<>();
+            paths.put(callback, Collections.singletonList(callback.astMethodName().astValue()));
+            queue.add(callback);
+
+            while(!queue.isEmpty() && !budget.isExceeded())
+            {
+                MethodDeclaration method = queue.removeFirst();
+                List<String> path = paths.get(method);
+                for(MethodInvocation call: exploreMethod(method, issue, path))
+                {
+                    for(MethodDeclaration helper: getHelpers(call))
+                    {
+                        if(!paths.containsKey(helper))
+                        {
+                            metrics.increment(METRIC_HELPERS);
+                            List<String> helperPath = new ArrayList<>(path);
+                            helperPath.add(helper.astMethodName().astValue());
+                            paths.put(helper, helperPath);
+                            queue.add(helper);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Helper that reports the blocking calls in the body of a method
+         * @param method the method to explore
+         * @param issue the issue to report (startup callbacks or broadcast receivers)
+         * @param path the callback and then the helper methods that lead to the method
+         * @return the calls on this object that may lead to helper methods, if the maximum depth is not reached
+         */
+        private List<MethodInvocation> exploreMethod(MethodDeclaration method, final Issue issue, final List<String> path)
+        {
+            final List<MethodInvocation> calls = new ArrayList<>();
+            method.astBody().accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+                {
+                    if(budget.isExceeded()) return true;
+
+                    String name = methodInvocation.astName().astValue();
+                    if(catalog.getMethodNames().contains(name))
+                    {
+                        String blockingClass = getBlockingClass(methodInvocation);
+                        if(!blockingClass.isEmpty() && reported.add(methodInvocation))
+                        {
+                            report(context, issue, methodInvocation, context.getLocation(methodInvocation.astName()), formatMessage(issue, blockingClass, name, path));
+                        }
+                    }
+                    else if(path.size()<=maxDepth && (methodInvocation.astOperand()==null || methodInvocation.astOperand() instanceof This))
+                    {
+                        calls.add(methodInvocation);
+                    }
+                    return super.visitMethodInvocation(methodInvocation);
+                }
+
+                @Override
+                public boolean visitConstructorInvocation(ConstructorInvocation constructorInvocation)
+                {
+                    // Anonymous classes (e.g. a Runnable) don't run now: only the arguments are executed
+                    if(constructorInvocation.astAnonymousClassBody()!=null)
+                    {
+                        for(Node argument: constructorInvocation.astArguments())
+                        {
+                            argument.accept(this);
+                        }
+                        return true;
+                    }
+                    return super.visitConstructorInvocation(constructorInvocation);
+                }
+
+                @Override
+                public boolean visitClassDeclaration(ClassDeclaration classDeclaration)
+                {
+                    // Same for local classes
+                    return true;
+                }
+            });
+            return calls;
+        }
+
+        /**
+         * Helper to resolve a candidate invocation and check it against the catalog
+         * @param methodInvocation the invocation
+         * @return the fully qualified name of the class in the catalog, "" if it is not a blocking API
+         */
+        private String getBlockingClass(MethodInvocation methodInvocation)
+        {
+            String blockingClass = blockingClasses.get(methodInvocation);
+            if(blockingClass==null)
+            {
+                ResolvedNode resolved = context.resolve(methodInvocation);
+                blockingClass = resolved instanceof ResolvedMethod ? catalog.getBlockingClass((ResolvedMethod) resolved) : null;
+                if(blockingClass==null) blockingClass = "";
+                blockingClasses.put(methodInvocation, blockingClass);
+            }
+            return blockingClass;
+        }
+
+        /**
+         * Helper to get the methods an invocation on this object may call (same name and number of parameters): the
+         * methods of the class that contains it or, if it declares none with that name, of the enclosing classes
+         * @param methodInvocation the invocation on this object
+         * @return the candidate methods with a body
+         */
+        private List<MethodDeclaration> getHelpers(MethodInvocation methodInvocation)
+        {
+            if(methods==null)
+            {
+                methods = new IdentityHashMap<>();
+                context.getCompilationUnit().accept(new ForwardingAstVisitor()
+                {
+                    @Override
+                    public boolean visitMethodDeclaration(MethodDeclaration node)
+                    {
+                        Node body = getClassBody(node);
+                        Map<String, List<MethodDeclaration>> bodyMethods = methods.get(body);
+                        if(bodyMethods==null)
+                        {
+                            bodyMethods = new HashMap<>();
+                            methods.put(body, bodyMethods);
+                        }
+                        List<MethodDeclaration> list = bodyMethods.get(node.astMethodName().astValue());
+                        if(list==null)
+                        {
+                            list = new ArrayList<>();
+                            bodyMethods.put(node.astMethodName().astValue(), list);
+                        }
+                        list.add(node);
+                        return super.visitMethodDeclaration(node);
+                    }
+                });
+            }
+
+            // An explicit this refers only to the class that contains the invocation
+            boolean followOuterClasses = methodInvocation.astOperand()==null;
+            List<MethodDeclaration> helpers = new ArrayList<>();
+            for(Node body = getClassBody(methodInvocation); body!=null; body = followOuterClasses ? getClassBody(body) : null)
+            {
+                Map<String, List<MethodDeclaration>> bodyMethods = methods.get(body);
+                List<MethodDeclaration> candidates = bodyMethods!=null ? bodyMethods.get(methodInvocation.astName().astValue()) : null;
+                if(candidates==null)
+                {
+                    continue;
+                }
+
+                for(MethodDeclaration candidate: candidates)
+                {
+                    if(candidate.astBody()!=null && candidate.astParameters().size()==methodInvocation.astArguments().size())
+                    {
+                        helpers.add(candidate);
+                    }
+                }
+                break;
+            }
+            return helpers;
+        }
+
+        /**
+         * Helper to get the body of the class (named or anonymous) that contains a node
+         * @param node the node
+         * @return the body of the innermost class, null if there is none
+         */
+        private Node getClassBody(Node node)
+        {
+            for(Node parent = node.getParent(); parent!=null; parent = parent.getParent())
+            {
+                if(parent instanceof NormalTypeBody)
+                {
+                    return parent;
+                }
+            }
+            return null;
+        }
+    }
+}
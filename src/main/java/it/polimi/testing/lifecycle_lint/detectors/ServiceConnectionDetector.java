@@ -0,0 +1,446 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.RegistrationTracker;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class ServiceConnectionDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = ServiceConnectionDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "ServiceConnectionLifecycle";
+    private static final String ISSUE_DESCRIPTION = "Incorrect bound service lifecycle handling";
+    private static final String ISSUE_EXPLANATION = "A service bound with `bindService()` stays alive, together with the `ServiceConnection` and the "+
+                                                    "component that created it, until `unbindService()` is called with the same connection. You "+
+                                                    "should bind in onStart() and unbind in onStop() (not in onResume() and onPause(), that run at "+
+                                                    "every transition), and avoid unbinding twice, since it throws an `IllegalArgumentException`.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/guide/components/bound-services.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 5;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue
+    private static final String BIND_METHOD = "bindService";
+    private static final String UNBIND_METHOD = "unbindService";
+    private static final int BIND_CONNECTION_ARGUMENT = 1;
+    private static final int UNBIND_CONNECTION_ARGUMENT = 0;
+    private static final String[] UNBIND_EXCEPTIONS = {
+        "java.lang.IllegalArgumentException",
+        "java.lang.RuntimeException",
+        "java.lang.Exception",
+        "java.lang.Throwable"
+    };
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_UNBIND = new MessageTemplate("Found a `"+BIND_METHOD+"()` but no `"+UNBIND_METHOD+"()` calls with the same `ServiceConnection` in the class");
+    private static final MessageTemplate MESSAGE_MULTIPLE_UNBIND = new MessageTemplate("Multiple `"+UNBIND_METHOD+"()` detected: it is advisable to catch `IllegalArgumentException` in each of them, otherwise if they are called in sequence the application will crash");
+    private static final MessageTemplate MESSAGE_WRONG_METHOD = new MessageTemplate("You should not call `%1$s()` during `%2$s()` because it runs at every transition, bind in `onStart()` and unbind in `onStop()`");
+    private static final MessageTemplate MESSAGE_LATE_UNBIND = new MessageTemplate("The service is bound in `%1$s()` but unbound only after `%2$s()`, so the binding keeps it alive while the component is in the background");
+
+    // Callbacks in which binding or unbinding is too frequent
+    private static final List<String> FREQUENT_CALLBACKS = Arrays.asList(Utils.ON_RESUME_METHOD, Utils.ON_PAUSE_METHOD);
+
+    // Packages that cannot contain ContextWrapper subclasses
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.");
+
+    // Data used during the search (per detector instance)
+    private final RegistrationTracker connections = new RegistrationTracker();
+
+    // Data used during the bytecode search
+    private final Map<String, ClassCall> classBindings = new LinkedHashMap<>();
+    private final Map<String, List<ClassCall>> classUnbindings = new LinkedHashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_BIND = 1;
+    private static final int SUMMARY_UNBIND = 1<<1;
+    private static final int SUMMARY_IN_TRY_CATCH = 1<<2;
+    private static final int SUMMARY_OWNER_SHIFT = 8;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public ServiceConnectionDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Collections.singletonList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that bindings and unbindings of each connection are consistent
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Connections never unbound or unbound too late (not if the file was only partially analyzed, since the
+        // unbind may be in the part we skipped)
+        if(!budget.wasExceeded())
+        {
+            for(MethodInvocation methodInvocation: connections.getUnmatchedRegistrations())
+            {
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_NO_UNBIND.format());
+            }
+
+            for(Map.Entry<String, MethodInvocation> entry: connections.getRegistrations().entrySet())
+            {
+                LifecycleOwner owner = connections.getOwner(entry.getValue());
+                String bindMethod = Utils.getCallerMethodName(entry.getValue());
+                if(owner.isReleasedLate(bindMethod, connections.getUnregistrationMethods(entry.getKey())))
+                {
+                    report(context, ISSUE, entry.getValue(), context.getLocation(entry.getValue().astName()), MESSAGE_LATE_UNBIND.format(bindMethod, owner.getPairedReleaseCallback(bindMethod)));
+                }
+            }
+        }
+
+        // Issue for the unbinds that are not inside a try/catch and can actually run after another unbind
+        for(MethodInvocation methodInvocation: connections.getUnsafeUnregistrations())
+        {
+            report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_MULTIPLE_UNBIND.format());
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        connections.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes: we check that bindings and unbindings are consistent
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, context.getClassNode().name);
+        if(owner==null) owner = LifecycleOwner.ACTIVITY;
+        for(Map.Entry<String, ClassCall> entry: classBindings.entrySet())
+        {
+            ClassCall call = entry.getValue();
+            List<ClassCall> unbindings = classUnbindings.get(entry.getKey());
+
+            // Create issue if we found a bind but no unbind for a given connection
+            if(unbindings==null)
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_UNBIND.format());
+                continue;
+            }
+
+            // Or if it is unbound too late
+            List<String> unbindMethods = new ArrayList<>();
+            for(ClassCall unbinding: unbindings)
+            {
+                unbindMethods.add(unbinding.getMethod().name);
+            }
+            String bindMethod = call.getMethod().name;
+            if(owner.isReleasedLate(bindMethod, unbindMethods))
+            {
+                report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_LATE_UNBIND.format(bindMethod, owner.getPairedReleaseCallback(bindMethod)));
+            }
+        }
+
+        // Issue for each unbind that is not inside a try/catch, if we found more than one for the same connection
+        for(Map.Entry<String, List<ClassCall>> entry: classUnbindings.entrySet())
+        {
+            if(entry.getValue().size()>1)
+            {
+                for(ClassCall call: entry.getValue())
+                {
+                    if(!BytecodeUtils.isInTryCatch(call.getMethod(), call.getCall(), UNBIND_EXCEPTIONS))
+                    {
+                        report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_MULTIPLE_UNBIND.format());
+                    }
+                }
+            }
+        }
+
+        // Reset variables for next classes
+        classBindings.clear();
+        classUnbindings.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new ServiceConnectionVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return Arrays.asList(BIND_METHOD, UNBIND_METHOD);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the connection is identified by the field or variable loaded as argument
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the class that contains this method
+        if(!BytecodeUtils.isSubclassOf(context, call.owner, Utils.CONTEXT_WRAPPER))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+
+        if(BIND_METHOD.equals(call.name))
+        {
+            String connection = BytecodeUtils.getCallArgumentName(method, lastFrames, call, BIND_CONNECTION_ARGUMENT);
+            classBindings.put(connection, new ClassCall(method, call));
+        }
+        else if(UNBIND_METHOD.equals(call.name))
+        {
+            String connection = BytecodeUtils.getCallArgumentName(method, lastFrames, call, UNBIND_CONNECTION_ARGUMENT);
+            List<ClassCall> list = classUnbindings.get(connection);
+            if(list==null)
+            {
+                list = new ArrayList<>();
+                classUnbindings.put(connection, list);
+            }
+            list.add(new ClassCall(method, call));
+        }
+        else
+        {
+            return;
+        }
+
+        // Issue if this is called during onResume() or onPause()
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, classNode.name);
+        if(FREQUENT_CALLBACKS.contains(method.name) && (owner==LifecycleOwner.ACTIVITY || owner==LifecycleOwner.FRAGMENT))
+        {
+            report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_WRONG_METHOD.format(call.name, method.name));
+        }
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class ServiceConnectionVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public ServiceConnectionVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            String name = methodInvocation.astName().astValue();
+            if(!BIND_METHOD.equals(name) && !UNBIND_METHOD.equals(name))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+
+            // Bindings and unbindings are paired by ServiceConnection
+            LifecycleOwner owner = LifecycleOwner.getOwnerById(summary>>>SUMMARY_OWNER_SHIFT);
+            if((summary & SUMMARY_BIND)!=0)
+            {
+                String connection = aliases.getCanonicalName(Utils.getMethodInvocationArgument(methodInvocation, BIND_CONNECTION_ARGUMENT));
+                connections.register(connection, methodInvocation, owner);
+            }
+            else if((summary & SUMMARY_UNBIND)!=0)
+            {
+                Expression argument = Utils.getMethodInvocationArgument(methodInvocation, UNBIND_CONNECTION_ARGUMENT);
+                connections.unregister(aliases.getCanonicalName(argument), aliases.getVariableName(argument), methodInvocation, (summary & SUMMARY_IN_TRY_CATCH)!=0, owner);
+            }
+
+            // Issue if this is called during onResume() or onPause()
+            String methodName = Utils.getCallerMethodName(methodInvocation);
+            if(FREQUENT_CALLBACKS.contains(methodName) && (owner==LifecycleOwner.ACTIVITY || owner==LifecycleOwner.FRAGMENT))
+            {
+                report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_WRONG_METHOD.format(name, methodName));
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            if(!Utils.isMethodContainedInSubclassOf(method, Utils.CONTEXT_WRAPPER))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // The owner of the call decides which callbacks pair with each other
+            LifecycleOwner owner = budget.isExceeded() ? null : Utils.getLifecycleOwner(context, methodInvocation);
+            int ownerFlags = LifecycleOwner.getId(owner)<<SUMMARY_OWNER_SHIFT;
+            String name = method.getName();
+            if(BIND_METHOD.equals(name))
+            {
+                return SUMMARY_BIND | ownerFlags;
+            }
+            else if(UNBIND_METHOD.equals(name))
+            {
+                // Check if the unbinding is inside a try/catch block (if we are over the time budget we cannot
+                // classify it, so we consider it protected to avoid false positives)
+                return budget.isExceeded() || Utils.isInTryCatch(context, methodInvocation, UNBIND_EXCEPTIONS) ? SUMMARY_UNBIND | SUMMARY_IN_TRY_CATCH | ownerFlags : SUMMARY_UNBIND | ownerFlags;
+            }
+            return SUMMARY_IRRELEVANT;
+        }
+    }
+}
@@ -0,0 +1,654 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.client.api.JavaParser;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TypeInsnNode;
+import org.objectweb.asm.tree.VarInsnNode;
+import org.objectweb.asm.tree.analysis.Frame;
+import org.objectweb.asm.tree.analysis.SourceValue;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.FrameworkTypeIndex;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.ClassDeclaration;
+import lombok.ast.ConstructorInvocation;
+import lombok.ast.Expression;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.Select;
+import lombok.ast.TypeBody;
+import lombok.ast.VariableDeclaration;
+import lombok.ast.VariableDefinition;
+import lombok.ast.VariableDefinitionEntry;
+import lombok.ast.VariableReference;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedClass;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedField;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class StaticReferenceDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = StaticReferenceDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "StaticLifecycleReference";
+    private static final String ISSUE_DESCRIPTION = "Static reference to an object with a lifecycle";
+    private static final String ISSUE_EXPLANATION = "Static fields live as long as the process: an activity, service, view, fragment or drawable "+
+                                                    "stored in one of them (directly, in a static collection or through an inner class that keeps "+
+                                                    "a reference to its enclosing instance) cannot be garbage collected after it is destroyed, "+
+                                                    "together with everything it references (e.g. the whole view hierarchy). Keep the application "+
+                                                    "context instead, or a static nested class with a WeakReference.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/topic/performance/memory.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 6;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue
+    private static final String DRAWABLE = "android.graphics.drawable.Drawable";
+    private static final int LIFECYCLE_KINDS = FrameworkTypeIndex.CONTEXT_WRAPPER | FrameworkTypeIndex.VIEW | FrameworkTypeIndex.FRAGMENT_APP | FrameworkTypeIndex.FRAGMENT_SUPPORT;
+    private static final List<String> REGISTRY_METHOD_PREFIXES = Arrays.asList("add", "put", "register", "set", "offer", "push");
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_STATIC_FIELD = new MessageTemplate("Do not keep `%1$s` objects in static fields: `%2$s` keeps them alive after they are destroyed (a memory leak)");
+    private static final MessageTemplate MESSAGE_STATIC_ASSIGNMENT = new MessageTemplate("The static field `%2$s` keeps %1$s alive after it is destroyed (a memory leak)");
+    private static final MessageTemplate MESSAGE_STATIC_REGISTRY = new MessageTemplate("The static `%2$s` keeps %1$s alive after it is destroyed (a memory leak)");
+
+    /**
+     * Constructor
+     */
+    public StaticReferenceDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, null);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Arrays.<Class<? extends Node>>asList(
+            VariableDeclaration.class,
+            BinaryExpression.class,
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context context)
+    {
+        if(context instanceof JavaContext)
+        {
+            finishFile((JavaContext) context);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Same as the Java visitor but for compiled classes: we check the types of the static fields and the values
+     * stored in static fields or passed to methods of objects loaded from them
+     */
+    @Override
+    public void checkClass(@NonNull ClassContext context, @NonNull ClassNode classNode)
+    {
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Static fields of a type with a lifecycle
+        if(classNode.fields!=null)
+        {
+            for(Object object: classNode.fields)
+            {
+                FieldNode field = (FieldNode) object;
+                if((field.access & Opcodes.ACC_STATIC)!=0 && field.desc.startsWith("L") &&
+                        isLifecycleClass(context, Type.getType(field.desc).getInternalName()))
+                {
+                    String type = Type.getType(field.desc).getClassName();
+                    report(context, ISSUE, field, context.getLocation(classNode), MESSAGE_STATIC_FIELD.format(type.substring(type.lastIndexOf('.')+1), field.name));
+                }
+            }
+        }
+
+        // Values stored in static fields or static registries
+        for(Object object: classNode.methods)
+        {
+            MethodNode method = (MethodNode) object;
+            Frame[] frames = null;
+            for(AbstractInsnNode instruction = method.instructions.getFirst(); instruction!=null; instruction = instruction.getNext())
+            {
+                if(instruction.getOpcode()==Opcodes.PUTSTATIC)
+                {
+                    // Fields of a type with a lifecycle are already reported with the declaration
+                    FieldInsnNode field = (FieldInsnNode) instruction;
+                    if(!field.desc.startsWith("L") || isLifecycleClass(context, Type.getType(field.desc).getInternalName())) continue;
+
+                    if(frames==null) frames = BytecodeUtils.analyze(classNode, method);
+                    String value = getStoredValueDescription(context, classNode, method, frames, instruction, 1);
+                    if(value!=null)
+                    {
+                        report(context, ISSUE, method, instruction, context.getLocation(instruction), MESSAGE_STATIC_ASSIGNMENT.format(value, field.name));
+                    }
+                }
+                else if(instruction instanceof MethodInsnNode && instruction.getOpcode()!=Opcodes.INVOKESTATIC && isRegistryMethod(((MethodInsnNode) instruction).name))
+                {
+                    MethodInsnNode call = (MethodInsnNode) instruction;
+                    int argumentCount = Type.getArgumentTypes(call.desc).length;
+                    if(argumentCount==0) continue;
+
+                    // Only objects loaded from a static field
+                    if(frames==null) frames = BytecodeUtils.analyze(classNode, method);
+                    AbstractInsnNode receiver = getStackValueSource(method, frames, call, argumentCount+1);
+                    if(receiver==null || receiver.getOpcode()!=Opcodes.GETSTATIC) continue;
+
+                    for(int i=1; i<=argumentCount; i++)
+                    {
+                        String value = getStoredValueDescription(context, classNode, method, frames, call, i);
+                        if(value!=null)
+                        {
+                            report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_STATIC_REGISTRY.format(value, ((FieldInsnNode) receiver).name));
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new StaticReferenceVisitor(context);
+    }
+
+    /**
+     * Helper to check if a method may store its arguments in the object it is invoked on (e.g. add() or put())
+     * @param name the name of the method
+     * @return true if it starts with one of the prefixes of such methods
+     */
+    private static boolean isRegistryMethod(String name)
+    {
+        for(String prefix: REGISTRY_METHOD_PREFIXES)
+        {
+            if(name.startsWith(prefix))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Helper to check if a compiled class has a lifecycle (an activity, service, view, fragment or drawable, but not
+     * the application, that lives as long as the process)
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class
+     * @return true if the class has a lifecycle
+     */
+    private static boolean isLifecycleClass(ClassContext context, String internalName)
+    {
+        int kinds = BytecodeUtils.getKinds(context, internalName);
+        return ((kinds & LIFECYCLE_KINDS)!=0 && (kinds & FrameworkTypeIndex.APPLICATION)==0) || BytecodeUtils.isSubclassOf(context, internalName, DRAWABLE);
+    }
+
+    /**
+     * Helper to find the instruction that produced a value of the stack when an instruction is executed
+     * @param method the method that contains the instruction
+     * @param frames the frames of the method, see BytecodeUtils.analyze()
+     * @param instruction the instruction
+     * @param depth the position of the value from the top of the stack (1 is the top)
+     * @return the instruction, null if it is not unique
+     */
+    private static AbstractInsnNode getStackValueSource(MethodNode method, Frame[] frames, AbstractInsnNode instruction, int depth)
+    {
+        if(frames==null) return null;
+        Frame frame = frames[method.instructions.indexOf(instruction)];
+        if(frame==null || frame.getStackSize()<depth) return null;
+
+        SourceValue value = (SourceValue) frame.getStack(frame.getStackSize()-depth);
+        return value!=null && value.insns.size()==1 ? (AbstractInsnNode) value.insns.iterator().next() : null;
+    }
+
+    /**
+     * Helper to describe a value of the stack that keeps an object with a lifecycle alive: this (in a class with a
+     * lifecycle) or a new instance of an inner class that captures it
+     * @param context the context of the lint request
+     * @param classNode the class that contains the method
+     * @param method the method
+     * @param frames the frames of the method, see BytecodeUtils.analyze()
+     * @param instruction the instruction that consumes the value
+     * @param depth the position of the value from the top of the stack (1 is the top)
+     * @return the description of the value for the messages, null if it does not keep such an object alive
+     */
+    private static String getStoredValueDescription(ClassContext context, ClassNode classNode, MethodNode method, Frame[] frames, AbstractInsnNode instruction, int depth)
+    {
+        if((method.access & Opcodes.ACC_STATIC)!=0 || !isLifecycleClass(context, classNode.name)) return null;
+
+        AbstractInsnNode source = getStackValueSource(method, frames, instruction, depth);
+        String className = ClassContext.getFqcn(classNode.name);
+        String simpleName = className.substring(className.lastIndexOf('.')+1);
+        if(source instanceof VarInsnNode && source.getOpcode()==Opcodes.ALOAD && ((VarInsnNode) source).var==0)
+        {
+            return "a `"+simpleName+"`";
+        }
+
+        // Inner classes get the enclosing instance as first argument of their constructors
+        if(source instanceof TypeInsnNode && source.getOpcode()==Opcodes.NEW)
+        {
+            String type = ((TypeInsnNode) source).desc;
+            for(AbstractInsnNode next = source.getNext(); next!=null; next = next.getNext())
+            {
+                if(next instanceof MethodInsnNode && next.getOpcode()==Opcodes.INVOKESPECIAL && ((MethodInsnNode) next).owner.equals(type) &&
+                        "<init>".equals(((MethodInsnNode) next).name))
+                {
+                    if(((MethodInsnNode) next).desc.startsWith("(L"+classNode.name+";"))
+                    {
+                        // Anonymous classes are numbered (e.g. MainActivity$1)
+                        String innerName = type.substring(type.lastIndexOf('$')+1);
+                        String holder = innerName.matches("[0-9]+") ? "an anonymous class" : "an instance of `"+innerName+"`";
+                        return "the `"+simpleName+"` referenced by "+holder;
+                    }
+                    break;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Custom AST Visitor that receives field declarations, assignments and method invocations
+     */
+    private class StaticReferenceVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+
+        // Names of the static fields declared in the file, and initializers of the instance fields (built lazily)
+        private Set<String> staticFieldNames;
+        private Map<String, Expression> fieldInitializers;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public StaticReferenceVisitor(JavaContext context)
+        {
+            this.context = context;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Static fields declared with a type with a lifecycle
+         */
+        @Override
+        public boolean visitVariableDeclaration(VariableDeclaration variableDeclaration)
+        {
+            if(!context.getProject().getReportIssues() || budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Only fields
+            VariableDefinition definition = variableDeclaration.astDefinition();
+            if(!(variableDeclaration.getParent() instanceof TypeBody) || definition==null || !definition.astModifiers().isStatic())
+            {
+                return false;
+            }
+
+            metrics.increment(ReceiverTypeFilter.METRIC_RESOLVED);
+            JavaParser.TypeDescriptor type = context.getType(definition.astTypeReference());
+            ResolvedClass typeClass = type!=null ? type.getTypeClass() : null;
+            if(typeClass!=null && isLifecycleClass(typeClass))
+            {
+                for(VariableDefinitionEntry entry: definition.astVariables())
+                {
+                    report(context, ISSUE, variableDeclaration, context.getLocation(entry.astName()), MESSAGE_STATIC_FIELD.format(typeClass.getSimpleName(), entry.astName().astValue()));
+                }
+                return false;
+            }
+
+            // Other static fields initialized with an object with a lifecycle
+            for(VariableDefinitionEntry entry: definition.astVariables())
+            {
+                String value = getValueDescription(entry.astInitializer(), true);
+                if(value!=null)
+                {
+                    report(context, ISSUE, variableDeclaration, context.getLocation(entry.astInitializer()), MESSAGE_STATIC_ASSIGNMENT.format(value, entry.astName().astValue()));
+                }
+            }
+            return false;
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Objects with a lifecycle assigned to static fields of other types (e.g. Context or Object)
+         */
+        @Override
+        public boolean visitBinaryExpression(BinaryExpression binaryExpression)
+        {
+            if(binaryExpression.astOperator()!=BinaryOperator.ASSIGN || !context.getProject().getReportIssues() || budget.isExceeded())
+            {
+                return super.visitBinaryExpression(binaryExpression);
+            }
+
+            // Fields of a type with a lifecycle are already reported with the declaration
+            ResolvedField field = getStaticField(binaryExpression.astLeft());
+            if(field!=null && !isLifecycleType(field.getType()))
+            {
+                String value = getValueDescription(binaryExpression.astRight(), true);
+                if(value!=null)
+                {
+                    report(context, ISSUE, binaryExpression, context.getLocation(binaryExpression), MESSAGE_STATIC_ASSIGNMENT.format(value, field.getName()));
+                }
+            }
+            return super.visitBinaryExpression(binaryExpression);
+        }
+
+        /**
+         * {@inheritDoc}
+         *
+         * Objects with a lifecycle added to static collections or registries
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            if(!context.getProject().getReportIssues() || budget.isExceeded() || methodInvocation.astArguments().isEmpty() ||
+                    !isRegistryMethod(methodInvocation.astName().astValue()))
+            {
+                return super.visitMethodInvocation(methodInvocation);
+            }
+
+            ResolvedField field = getStaticField(methodInvocation.astOperand());
+            if(field!=null && !isLifecycleType(field.getType()))
+            {
+                for(Expression argument: methodInvocation.astArguments())
+                {
+                    String value = getValueDescription(argument, true);
+                    if(value!=null)
+                    {
+                        report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation), MESSAGE_STATIC_REGISTRY.format(value, field.getName()));
+                        break;
+                    }
+                }
+            }
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Helper to resolve a static field, resolving only the expressions that can be one (for performance)
+         * @param expression the expression
+         * @return the field, null if the expression is not a static field
+         */
+        private ResolvedField getStaticField(Expression expression)
+        {
+            // Static fields of this file by name, of other classes only if qualified by a type (e.g. Registry.ITEMS)
+            if(expression instanceof VariableReference)
+            {
+                if(!getStaticFieldNames().contains(((VariableReference) expression).astIdentifier().astValue())) return null;
+            }
+            else if(expression instanceof Select)
+            {
+                Expression operand = ((Select) expression).astOperand();
+                boolean isTypeName = operand instanceof VariableReference && Character.isUpperCase(((VariableReference) operand).astIdentifier().astValue().charAt(0));
+                if(!isTypeName && !getStaticFieldNames().contains(((Select) expression).astIdentifier().astValue())) return null;
+            }
+            else
+            {
+                return null;
+            }
+
+            metrics.increment(ReceiverTypeFilter.METRIC_RESOLVED);
+            ResolvedNode resolved = context.resolve(expression);
+            if(resolved instanceof ResolvedField && (resolved.getModifiers() & Modifier.STATIC)!=0)
+            {
+                return (ResolvedField) resolved;
+            }
+            return null;
+        }
+
+        /**
+         * Helper to describe a value that keeps an object with a lifecycle alive: an object of a class with a
+         * lifecycle, an instance of an inner class that captures one, or an instance field initialized with one of them
+         * @param expression the value
+         * @param followFields true to check the initializers of the instance fields
+         * @return the description of the value for the messages, null if it does not keep such an object alive
+         */
+        private String getValueDescription(Expression expression, boolean followFields)
+        {
+            if(expression==null) return null;
+
+            // Anonymous and inner classes that keep a reference to their enclosing instance
+            if(expression instanceof ConstructorInvocation)
+            {
+                return getCapturedDescription((ConstructorInvocation) expression, null);
+            }
+
+            // Instance fields initialized with one of them (e.g. an anonymous BroadcastReceiver)
+            if(followFields && (expression instanceof VariableReference || expression instanceof Select))
+            {
+                String name = expression instanceof VariableReference ? ((VariableReference) expression).astIdentifier().astValue() : ((Select) expression).astIdentifier().astValue();
+                Expression initializer = getFieldInitializers().get(name);
+                if(initializer instanceof ConstructorInvocation)
+                {
+                    String value = getCapturedDescription((ConstructorInvocation) initializer, name);
+                    if(value!=null)
+                    {
+                        return value;
+                    }
+                }
+            }
+
+            // Objects of a class with a lifecycle (e.g. this in an activity)
+            JavaParser.TypeDescriptor type = context.getType(expression);
+            if(isLifecycleType(type))
+            {
+                return "a `"+type.getTypeClass().getSimpleName()+"`";
+            }
+            return null;
+        }
+
+        /**
+         * Helper to describe the object with a lifecycle kept by a new instance: the instance itself, or the enclosing
+         * instance captured by an anonymous or inner class
+         * @param constructorInvocation the creation of the instance
+         * @param fieldName the name of the field initialized with the instance, null if it is stored directly
+         * @return the description of the object for the messages, null if the instance does not keep such an object alive
+         */
+        private String getCapturedDescription(ConstructorInvocation constructorInvocation, String fieldName)
+        {
+            ResolvedNode resolved = context.resolve(constructorInvocation.astTypeReference());
+            if(!(resolved instanceof ResolvedClass)) return null;
+            ResolvedClass resolvedClass = (ResolvedClass) resolved;
+
+            String outer = null;
+            if(constructorInvocation.astAnonymousClassBody()!=null)
+            {
+                outer = getCapturedLifecycleClass(Utils.getCapturedOuterClass(constructorInvocation.astAnonymousClassBody()));
+            }
+            else if(isLifecycleClass(resolvedClass))
+            {
+                return fieldName==null ? "a new `"+resolvedClass.getSimpleName()+"`" : "the `"+resolvedClass.getSimpleName()+"` in `"+fieldName+"`";
+            }
+            else if((resolvedClass.getModifiers() & Modifier.STATIC)==0 && resolvedClass.getContainingClass()!=null &&
+                    isLifecycleClass(resolvedClass.getContainingClass()) && !isInStaticContext(constructorInvocation))
+            {
+                outer = resolvedClass.getContainingClass().getSimpleName();
+            }
+            if(outer==null) return null;
+
+            String holder = constructorInvocation.astAnonymousClassBody()!=null ? "anonymous `"+resolvedClass.getSimpleName()+"`" : "`"+resolvedClass.getSimpleName()+"`";
+            return "the `"+outer+"` referenced by "+(fieldName==null ? "an "+holder : "the "+holder+" in `"+fieldName+"`");
+        }
+
+        /**
+         * Helper to get the name of the class with a lifecycle captured by an inner class
+         * @param outerClass the enclosing class captured by the inner class (see Utils.getCapturedOuterClass())
+         * @return the simple name of the class, null if there is no class or it does not have a lifecycle
+         */
+        private String getCapturedLifecycleClass(ClassDeclaration outerClass)
+        {
+            ResolvedNode resolvedOuter = outerClass!=null ? context.resolve(outerClass) : null;
+            if(resolvedOuter instanceof ResolvedClass && isLifecycleClass((ResolvedClass) resolvedOuter))
+            {
+                return ((ResolvedClass) resolvedOuter).getSimpleName();
+            }
+            return null;
+        }
+
+        /**
+         * Helper to check if an expression is in a static method, initializer or field, where no enclosing instance
+         * can be captured
+         * @param expression the expression
+         * @return true if it is in a static context
+         */
+        private boolean isInStaticContext(Expression expression)
+        {
+            return Utils.getCapturedOuterClass(expression)==null;
+        }
+
+        /**
+         * Helper to check if a type has a lifecycle
+         * @param type the type
+         * @return true if the type is a class with a lifecycle
+         */
+        private boolean isLifecycleType(JavaParser.TypeDescriptor type)
+        {
+            ResolvedClass typeClass = type!=null ? type.getTypeClass() : null;
+            return typeClass!=null && isLifecycleClass(typeClass);
+        }
+
+        /**
+         * Helper to check if a class has a lifecycle (an activity, service, view, fragment or drawable, but not the
+         * application, that lives as long as the process)
+         * @param resolvedClass the class
+         * @return true if the class has a lifecycle
+         */
+        private boolean isLifecycleClass(ResolvedClass resolvedClass)
+        {
+            int kinds = FrameworkTypeIndex.getKinds(resolvedClass);
+            return ((kinds & LIFECYCLE_KINDS)!=0 && (kinds & FrameworkTypeIndex.APPLICATION)==0) || resolvedClass.isSubclassOf(DRAWABLE, false);
+        }
+
+        /**
+         * Getter (the declarations are collected the first time)
+         * @return the names of the static fields declared in the file
+         */
+        private Set<String> getStaticFieldNames()
+        {
+            if(staticFieldNames==null) scanFields();
+            return staticFieldNames;
+        }
+
+        /**
+         * Getter (the declarations are collected the first time)
+         * @return the initializers of the instance fields declared in the file, by name
+         */
+        private Map<String, Expression> getFieldInitializers()
+        {
+            if(fieldInitializers==null) scanFields();
+            return fieldInitializers;
+        }
+
+        /**
+         * Helper that collects the field declarations of the file
+         */
+        private void scanFields()
+        {
+            staticFieldNames = new HashSet<>();
+            fieldInitializers = new HashMap<>();
+            Node compilationUnit = context.getCompilationUnit();
+            if(compilationUnit==null) return;
+
+            compilationUnit.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitVariableDeclaration(VariableDeclaration node)
+                {
+                    VariableDefinition definition = node.astDefinition();
+                    if(node.getParent() instanceof TypeBody && definition!=null)
+                    {
+                        boolean isStatic = definition.astModifiers().isStatic();
+                        for(VariableDefinitionEntry entry: definition.astVariables())
+                        {
+                            if(isStatic)
+                            {
+                                staticFieldNames.add(entry.astName().astValue());
+                            }
+                            else if(entry.astInitializer()!=null)
+                            {
+                                fieldInitializers.put(entry.astName().astValue(), entry.astInitializer());
+                            }
+                        }
+                    }
+                    return false;
+                }
+            });
+        }
+    }
+}
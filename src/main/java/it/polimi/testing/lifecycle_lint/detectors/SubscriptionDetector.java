@@ -0,0 +1,578 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.FieldInsnNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.List;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.LifecycleOwner;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.ResourceTable;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.BinaryExpression;
+import lombok.ast.BinaryOperator;
+import lombok.ast.Expression;
+import lombok.ast.ExpressionStatement;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+import lombok.ast.This;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+import static com.android.tools.lint.client.api.JavaParser.TypeDescriptor;
+
+public class SubscriptionDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = SubscriptionDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "SubscriptionLifecycle";
+    private static final String ISSUE_DESCRIPTION = "RxJava subscription or `LiveData` observer never disposed";
+    private static final String ISSUE_EXPLANATION = "A RxJava subscription keeps its stream running, and everything its callbacks reference alive, "+
+                                                    "until it is disposed. Add the `Disposable` returned by `subscribe()` to a `CompositeDisposable` "+
+                                                    "that is cleared when the component is destroyed (e.g. in onDestroy()). In the same way, an "+
+                                                    "observer added with `LiveData.observeForever()` is never removed automatically: call "+
+                                                    "`removeObserver()`, or use `observe()` with a `LifecycleOwner`.";
+    private static final String MORE_INFO_URL = "http://reactivex.io/RxJava/2.x/javadoc/io/reactivex/disposables/CompositeDisposable.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 5;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_COMPONENT);
+    }
+
+    // Methods and classes related to the issue
+    private static final List<String> REACTIVE_TYPES = Arrays.asList(
+        "io.reactivex.Observable",
+        "io.reactivex.Flowable",
+        "io.reactivex.Single",
+        "io.reactivex.Maybe",
+        "io.reactivex.Completable"
+    );
+    private static final String DISPOSABLE = "io.reactivex.disposables.Disposable";
+    private static final String COMPOSITE_DISPOSABLE = "io.reactivex.disposables.CompositeDisposable";
+    private static final List<String> LIVE_DATA_TYPES = Arrays.asList(
+        "android.arch.lifecycle.LiveData",
+        "androidx.lifecycle.LiveData"
+    );
+    private static final String SUBSCRIBE_METHOD = "subscribe";
+    private static final String SUBSCRIBE_WITH_METHOD = "subscribeWith";
+    private static final String ADD_METHOD = "add";
+    private static final String CLEAR_METHOD = "clear";
+    private static final String DISPOSE_METHOD = "dispose";
+    private static final String OBSERVE_FOREVER_METHOD = "observeForever";
+    private static final String REMOVE_OBSERVER_METHOD = "removeObserver";
+    private static final List<String> APPLICABLE_METHODS = Arrays.asList(
+        SUBSCRIBE_METHOD,
+        SUBSCRIBE_WITH_METHOD,
+        ADD_METHOD,
+        CLEAR_METHOD,
+        DISPOSE_METHOD,
+        OBSERVE_FOREVER_METHOD,
+        REMOVE_OBSERVER_METHOD
+    );
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_IGNORED_DISPOSABLE = new MessageTemplate("The `Disposable` returned by `%1$s()` is ignored, so the subscription can never be disposed");
+    private static final MessageTemplate MESSAGE_NO_DISPOSE = new MessageTemplate("Found a `Disposable` stored in `%1$s` but no `"+DISPOSE_METHOD+"()` calls on it in the class");
+    private static final MessageTemplate MESSAGE_NO_CLEAR = new MessageTemplate("Found a `CompositeDisposable` `"+ADD_METHOD+"()` but no `"+CLEAR_METHOD+"()` or `"+DISPOSE_METHOD+"()` calls on the same container in the class");
+    private static final MessageTemplate MESSAGE_NO_REMOVE_OBSERVER = new MessageTemplate("Found a `LiveData` `"+OBSERVE_FOREVER_METHOD+"()` but no `"+REMOVE_OBSERVER_METHOD+"()` calls with the same observer in the class");
+
+    // Packages that cannot contain the reactive classes
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.", "android.os.", "android.view.", "android.widget.", "org.json.");
+
+    // Disposables stored in fields or variables, containers they are added to and observers (per detector instance)
+    private final ResourceTable<MethodInvocation> disposables = new ResourceTable<>();
+    private final ResourceTable<MethodInvocation> containers = new ResourceTable<>();
+    private final ResourceTable<MethodInvocation> observers = new ResourceTable<>();
+
+    // Data used in the bytecode search
+    private final ResourceTable<ClassCall> classDisposables = new ResourceTable<>();
+    private final ResourceTable<ClassCall> classContainers = new ResourceTable<>();
+    private final ResourceTable<ClassCall> classObservers = new ResourceTable<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_SUBSCRIBE = 1;
+    private static final int SUMMARY_CONTAINER_ADD = 1<<1;
+    private static final int SUMMARY_CONTAINER_CLEAR = 1<<2;
+    private static final int SUMMARY_DISPOSE = 1<<3;
+    private static final int SUMMARY_OBSERVE_FOREVER = 1<<4;
+    private static final int SUMMARY_REMOVE_OBSERVER = 1<<5;
+    private static final int SUMMARY_IN_OWNER = 1<<6;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public SubscriptionDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Collections.<Class<? extends Node>>singletonList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that stored disposables, containers and observers are released
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Not if the file was only partially analyzed, since the release may be in the part we skipped
+        if(!budget.wasExceeded())
+        {
+            for(MethodInvocation subscribeNode: disposables.getUnreleased())
+            {
+                BinaryExpression assignment = (BinaryExpression) subscribeNode.getParent();
+                report(context, ISSUE, subscribeNode, context.getLocation(subscribeNode.astName()), MESSAGE_NO_DISPOSE.format(assignment.astLeft().toString()));
+            }
+            for(MethodInvocation addNode: containers.getUnreleased())
+            {
+                report(context, ISSUE, addNode, context.getLocation(addNode.astName()), MESSAGE_NO_CLEAR.format());
+            }
+            for(MethodInvocation observeNode: observers.getUnreleased())
+            {
+                report(context, ISSUE, observeNode, context.getLocation(observeNode.astName()), MESSAGE_NO_REMOVE_OBSERVER.format());
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        disposables.clear();
+        containers.clear();
+        observers.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        for(ClassCall call: classDisposables.getUnreleased())
+        {
+            FieldInsnNode field = (FieldInsnNode) getNextInstruction(call.getCall());
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_DISPOSE.format(field.name));
+        }
+        for(ClassCall call: classContainers.getUnreleased())
+        {
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_CLEAR.format());
+        }
+        for(ClassCall call: classObservers.getUnreleased())
+        {
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_REMOVE_OBSERVER.format());
+        }
+
+        // Reset variables for next classes
+        classDisposables.clear();
+        classContainers.clear();
+        classObservers.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new SubscriptionVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return APPLICABLE_METHODS;
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: containers, disposables and observers are identified by the field or variable
+     * they are loaded from, and the disposable returned by a subscription by the instruction that consumes it
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        // Only classes without sources, of projects being analyzed
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Only components with a lifecycle that ends (the application lives as long as the process)
+        LifecycleOwner owner = LifecycleOwner.getOwner(context, classNode.name);
+        if(owner==null || owner.isLongLived())
+        {
+            return;
+        }
+
+        // Subscriptions: the disposable is checked through the instruction that consumes it, the others through the
+        // data flow analysis of the method
+        if(SUBSCRIBE_METHOD.equals(call.name) || SUBSCRIBE_WITH_METHOD.equals(call.name))
+        {
+            if(!isSubclassOfAny(context, call.owner, REACTIVE_TYPES) || call.desc.endsWith(")V"))
+            {
+                return;
+            }
+
+            // Disposables dropped right away, or stored in a field
+            AbstractInsnNode next = getNextInstruction(call);
+            if(next!=null && next.getOpcode()==Opcodes.POP)
+            {
+                report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_IGNORED_DISPOSABLE.format(call.name));
+            }
+            else if(next!=null && next.getOpcode()==Opcodes.PUTFIELD)
+            {
+                classDisposables.acquire(((FieldInsnNode) next).name, new ClassCall(method, call));
+            }
+        }
+        else if(BytecodeUtils.isSubclassOf(context, call.owner, COMPOSITE_DISPOSABLE))
+        {
+            analyze(classNode, method);
+            String container = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+            if(ADD_METHOD.equals(call.name))
+            {
+                classContainers.acquire(container, new ClassCall(method, call));
+
+                // The disposable is now released with the container
+                String disposable = BytecodeUtils.getCallArgumentName(method, lastFrames, call, 0);
+                if(!disposable.isEmpty())
+                {
+                    classDisposables.release(disposable);
+                }
+            }
+            else if(CLEAR_METHOD.equals(call.name) || DISPOSE_METHOD.equals(call.name))
+            {
+                classContainers.release(container);
+            }
+        }
+        else if(DISPOSE_METHOD.equals(call.name) && BytecodeUtils.isSubclassOf(context, call.owner, DISPOSABLE))
+        {
+            analyze(classNode, method);
+            classDisposables.release(BytecodeUtils.getCallReceiverName(method, lastFrames, call));
+        }
+        else if((OBSERVE_FOREVER_METHOD.equals(call.name) || REMOVE_OBSERVER_METHOD.equals(call.name)) && isSubclassOfAny(context, call.owner, LIVE_DATA_TYPES))
+        {
+            analyze(classNode, method);
+            String observer = BytecodeUtils.getCallArgumentName(method, lastFrames, call, 0);
+            if(OBSERVE_FOREVER_METHOD.equals(call.name))
+            {
+                classObservers.acquire(observer, new ClassCall(method, call));
+            }
+            else
+            {
+                classObservers.release(observer);
+            }
+        }
+    }
+
+    /**
+     * Helper to run the data flow analysis of a method, reused for all its calls
+     * @param classNode the class that contains the method
+     * @param method the method
+     */
+    private void analyze(ClassNode classNode, MethodNode method)
+    {
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+    }
+
+    /**
+     * Helper to find the instruction executed after a call, skipping labels, line numbers and frames
+     * @param call the call
+     * @return the next instruction, null if there are none
+     */
+    private static AbstractInsnNode getNextInstruction(AbstractInsnNode call)
+    {
+        AbstractInsnNode next = call.getNext();
+        while(next!=null && next.getOpcode()<0)
+        {
+            next = next.getNext();
+        }
+        return next;
+    }
+
+    /**
+     * Helper to check if a class (given by its VM name) is a subclass of one of the given classes
+     * @param context the context of the lint request
+     * @param internalName the VM name of the class
+     * @param classNames the fully qualified names of the classes
+     * @return true if it is a subclass of one of them
+     */
+    private static boolean isSubclassOfAny(ClassContext context, String internalName, List<String> classNames)
+    {
+        for(String className: classNames)
+        {
+            if(BytecodeUtils.isSubclassOf(context, internalName, className))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocation calls
+     */
+    private class SubscriptionVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public SubscriptionVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving: operators in the chains, like map(), are never resolved)
+            if(!APPLICABLE_METHODS.contains(methodInvocation.astName().astValue()))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if(summary==SUMMARY_IRRELEVANT)
+            {
+                return false;
+            }
+            boolean isInOwner = (summary & SUMMARY_IN_OWNER)!=0;
+
+            // Subscriptions: the disposable must be kept somewhere (only the parent is checked, not the whole chain)
+            if((summary & SUMMARY_SUBSCRIBE)!=0)
+            {
+                Node parent = methodInvocation.getParent();
+                if(parent instanceof ExpressionStatement)
+                {
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_IGNORED_DISPOSABLE.format(methodInvocation.astName().astValue()));
+                }
+                else if(parent instanceof BinaryExpression && ((BinaryExpression) parent).astOperator()==BinaryOperator.ASSIGN &&
+                        ((BinaryExpression) parent).astRight()==methodInvocation)
+                {
+                    disposables.acquire(aliases.getCanonicalName(((BinaryExpression) parent).astLeft()), methodInvocation);
+                }
+            }
+
+            // Containers: acquired when a disposable is added, that is then released with them
+            else if((summary & SUMMARY_CONTAINER_ADD)!=0)
+            {
+                if(isInOwner)
+                {
+                    containers.acquire(aliases.getCanonicalName(methodInvocation.astOperand()), methodInvocation);
+                }
+                disposables.release(aliases.getCanonicalName(Utils.getMethodInvocationArgument(methodInvocation, 0)));
+            }
+            else if((summary & SUMMARY_CONTAINER_CLEAR)!=0)
+            {
+                containers.release(aliases.getCanonicalName(methodInvocation.astOperand()));
+            }
+            else if((summary & SUMMARY_DISPOSE)!=0)
+            {
+                disposables.release(aliases.getCanonicalName(methodInvocation.astOperand()));
+            }
+
+            // Observers added forever, and their removal (an observer that removes itself may be any of them)
+            else if((summary & SUMMARY_OBSERVE_FOREVER)!=0)
+            {
+                observers.acquire(aliases.getCanonicalName(Utils.getMethodInvocationArgument(methodInvocation, 0)), methodInvocation);
+            }
+            else if((summary & SUMMARY_REMOVE_OBSERVER)!=0)
+            {
+                Expression observer = Utils.getMethodInvocationArgument(methodInvocation, 0);
+                observers.release(observer instanceof This ? ResourceTable.UNKNOWN_INSTANCE : aliases.getCanonicalName(observer));
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            String name = method.getName();
+            int summary = SUMMARY_IRRELEVANT;
+            if(SUBSCRIBE_METHOD.equals(name) || SUBSCRIBE_WITH_METHOD.equals(name))
+            {
+                // subscribe(Observer) returns nothing, the observer disposes itself
+                TypeDescriptor returnType = method.getReturnType();
+                if(isMethodContainedInSubclassOfAny(method, REACTIVE_TYPES) && (returnType==null || !"void".equals(returnType.getName())))
+                {
+                    summary = SUMMARY_SUBSCRIBE;
+                }
+            }
+            else if(Utils.isMethodContainedInSubclassOf(method, COMPOSITE_DISPOSABLE))
+            {
+                summary = ADD_METHOD.equals(name) ? SUMMARY_CONTAINER_ADD :
+                          CLEAR_METHOD.equals(name) || DISPOSE_METHOD.equals(name) ? SUMMARY_CONTAINER_CLEAR : SUMMARY_IRRELEVANT;
+            }
+            else if(DISPOSE_METHOD.equals(name) && Utils.isMethodContainedInSubclassOf(method, DISPOSABLE))
+            {
+                summary = SUMMARY_DISPOSE;
+            }
+            else if(isMethodContainedInSubclassOfAny(method, LIVE_DATA_TYPES))
+            {
+                summary = OBSERVE_FOREVER_METHOD.equals(name) ? SUMMARY_OBSERVE_FOREVER :
+                          REMOVE_OBSERVER_METHOD.equals(name) ? SUMMARY_REMOVE_OBSERVER : SUMMARY_IRRELEVANT;
+            }
+
+            // Acquisitions only count in components with a lifecycle that ends (skipped if we are over the time
+            // budget), releases anywhere in the file
+            if((summary & (SUMMARY_SUBSCRIBE | SUMMARY_CONTAINER_ADD | SUMMARY_OBSERVE_FOREVER))!=0)
+            {
+                LifecycleOwner owner = budget.isExceeded() ? null : Utils.getLifecycleOwner(context, methodInvocation);
+                if(owner!=null && !owner.isLongLived())
+                {
+                    summary |= SUMMARY_IN_OWNER;
+                }
+                else if((summary & SUMMARY_CONTAINER_ADD)==0)
+                {
+                    return SUMMARY_IRRELEVANT;
+                }
+            }
+            return summary;
+        }
+
+        /**
+         * Helper to check if a method is contained in a subclass of one of the given classes
+         * @param method the method
+         * @param classNames the fully qualified names of the classes
+         * @return true if its class is a subclass of one of them
+         */
+        private boolean isMethodContainedInSubclassOfAny(ResolvedMethod method, List<String> classNames)
+        {
+            for(String className: classNames)
+            {
+                if(Utils.isMethodContainedInSubclassOf(method, className))
+                {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,492 @@
+package it.polimi.testing.lifecycle_lint.detectors;
+
+import com.android.annotations.NonNull;
+import com.android.tools.lint.detector.api.Category;
+import com.android.tools.lint.detector.api.ClassContext;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Detector;
+import com.android.tools.lint.detector.api.Implementation;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Scope;
+import com.android.tools.lint.detector.api.Severity;
+
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.analysis.Frame;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import it.polimi.testing.lifecycle_lint.AliasSets;
+import it.polimi.testing.lifecycle_lint.BytecodeUtils;
+import it.polimi.testing.lifecycle_lint.ClassCall;
+import it.polimi.testing.lifecycle_lint.ControlFlowUtils;
+import it.polimi.testing.lifecycle_lint.LeakCost;
+import it.polimi.testing.lifecycle_lint.MessageTemplate;
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.ReceiverTypeFilter;
+import it.polimi.testing.lifecycle_lint.ResourceTable;
+import it.polimi.testing.lifecycle_lint.Utils;
+import lombok.ast.AstVisitor;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodInvocation;
+import lombok.ast.Node;
+
+import static com.android.tools.lint.client.api.JavaParser.ResolvedMethod;
+import static com.android.tools.lint.client.api.JavaParser.ResolvedNode;
+
+public class WakeLockDetector extends LifecycleDetector
+{
+    // Issue implementation (sources or, when they are not available, compiled classes)
+    private static final Class<? extends Detector> DETECTOR_CLASS = WakeLockDetector.class;
+    private static final EnumSet<Scope> DETECTOR_SCOPE = EnumSet.of(Scope.JAVA_FILE, Scope.CLASS_FILE);
+    private static final Implementation IMPLEMENTATION = createImplementation(DETECTOR_CLASS, DETECTOR_SCOPE);
+
+    // Issue description
+    private static final String ISSUE_ID = "WakeLockLifecycle";
+    private static final String ISSUE_DESCRIPTION = "`WakeLock` or `WifiLock` held outside of the lifecycle of the component";
+    private static final String ISSUE_EXPLANATION = "A `WakeLock` (or `WifiLock`) keeps the device (or the Wi-Fi radio) awake until it is released, "+
+                                                    "draining the battery even when the user left the app. Every `acquire()` should be paired with "+
+                                                    "a `release()` in the matching teardown callback (onPause() for onResume(), onStop() for "+
+                                                    "onStart(), onDestroy() for onCreate()); when the lock is released in the same method, the "+
+                                                    "release should be in a `finally` block (or also in a `catch` of all the exceptions that "+
+                                                    "rethrows), so that an exception does not leave it held. "+
+                                                    "Prefer `acquire(long)`, so that the lock expires even if it is never released.";
+    private static final String MORE_INFO_URL = "https://developer.android.com/reference/android/os/PowerManager.WakeLock.html";
+
+    // Issue category
+    private static final Category ISSUE_CATEGORY = Category.PERFORMANCE;
+    private static final int ISSUE_PRIORITY = 6;
+    private static final Severity ISSUE_SEVERITY = Severity.WARNING;
+
+    // Issue
+    public static final Issue ISSUE = Issue.create
+    (
+        ISSUE_ID,
+        ISSUE_DESCRIPTION,
+        ISSUE_EXPLANATION,
+        ISSUE_CATEGORY,
+        ISSUE_PRIORITY,
+        ISSUE_SEVERITY,
+        IMPLEMENTATION
+    ).addMoreInfo(MORE_INFO_URL);
+
+    // Cost profile of the findings (see LeakCost)
+    static
+    {
+        LeakCost.register(ISSUE, LeakCost.RETAINS_OBJECT | LeakCost.KEEPS_HARDWARE_AWAKE);
+    }
+
+    // Methods and classes related to the issue
+    private static final String WAKE_LOCK = "android.os.PowerManager.WakeLock";
+    private static final String WIFI_LOCK = "android.net.wifi.WifiManager.WifiLock";
+    private static final String ACQUIRE_METHOD = "acquire";
+    private static final String RELEASE_METHOD = "release";
+    private static final String UNTIMED_ACQUIRE_DESC = "()V";
+
+    // Reported messages
+    private static final MessageTemplate MESSAGE_NO_RELEASE = new MessageTemplate("Found a `%1$s` `acquire()` but no `release()` calls on the same lock in the class");
+    private static final MessageTemplate MESSAGE_LATE_RELEASE = new MessageTemplate("This `%1$s` is acquired in `%2$s()` but released only after `%3$s()`, so it is held while the component is in the background");
+    private static final MessageTemplate MESSAGE_RELEASE_NOT_IN_FINALLY = new MessageTemplate("This `release()` is skipped if the code after `acquire()` throws, you should call it in a `finally` block (or also in a `catch` that rethrows)");
+    private static final MessageTemplate MESSAGE_UNTIMED_ACQUIRE = new MessageTemplate("`WakeLock.acquire()` without a timeout keeps the device awake until `release()` is called, you should use `acquire(long)`");
+
+    // Packages that cannot contain the lock classes
+    private static final List<String> EXCLUDED_RECEIVER_PACKAGES = Arrays.asList("java.", "javax.");
+
+    // Acquisitions and releases of each lock instance (per detector instance)
+    private final ResourceTable<MethodInvocation> locks = new ResourceTable<>();
+    private final List<MethodInvocation> acquisitions = new ArrayList<>();
+    private final List<String> acquiredLocks = new ArrayList<>();
+    private final Map<String, List<MethodInvocation>> releases = new HashMap<>();
+
+    // Data used in the bytecode search
+    private final ResourceTable<ClassCall> classLocks = new ResourceTable<>();
+    private final List<ClassCall> classAcquisitions = new ArrayList<>();
+    private final List<String> classAcquiredLocks = new ArrayList<>();
+    private final Map<String, List<ClassCall>> classReleases = new HashMap<>();
+    private MethodNode lastAnalyzedMethod;
+    private Frame[] lastFrames;
+
+    // Classification of the invocations, cached per method between runs on the same file
+    private static final int SUMMARY_IRRELEVANT = 0;
+    private static final int SUMMARY_ACQUIRE = 1;
+    private static final int SUMMARY_RELEASE = 1<<1;
+    private static final int SUMMARY_WAKE_LOCK = 0;
+    private static final int SUMMARY_WIFI_LOCK = 1<<2;
+    private static final int SUMMARY_IN_ACTIVITY_OR_FRAGMENT = 1<<3;
+    private static final MethodSummaryCache SUMMARY_CACHE = new MethodSummaryCache();
+
+    /**
+     * Constructor
+     */
+    public WakeLockDetector()
+    {
+        super(ISSUE_ID, DETECTOR_SCOPE, SUMMARY_CACHE);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<Class<? extends Node>> getApplicableNodeTypes()
+    {
+        return Arrays.<Class<? extends Node>>asList(
+            MethodInvocation.class
+        );
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Here, for every file, we check that each lock is released, in the teardown callback paired with the one that
+     * acquires it and, when it is released in the same method, in a finally block
+     */
+    @Override
+    public void afterCheckFile(@NonNull Context c)
+    {
+        if(c instanceof ClassContext)
+        {
+            afterCheckClass((ClassContext) c);
+            return;
+        }
+        if(!(c instanceof JavaContext)) return;
+        JavaContext context = (JavaContext) c;
+
+        // Create issues only if the file was fully analyzed, since the releases may be in the part we skipped
+        if(!budget.wasExceeded())
+        {
+            Set<MethodInvocation> reportedReleases = Collections.newSetFromMap(new IdentityHashMap<MethodInvocation, Boolean>());
+
+            // Locks never released
+            for(String lock: locks.getUnreleasedInstances())
+            {
+                MethodInvocation acquireNode = locks.getFirstAcquisition(lock);
+                report(context, ISSUE, acquireNode, context.getLocation(acquireNode.astName()), MESSAGE_NO_RELEASE.format(getSimpleName(locks.getType(lock))));
+            }
+
+            for(int i=0; i<acquisitions.size(); i++)
+            {
+                MethodInvocation acquireNode = acquisitions.get(i);
+                List<MethodInvocation> releaseNodes = releases.get(acquiredLocks.get(i));
+                if(releaseNodes==null) continue;
+
+                // Locks released too late
+                String acquireMethod = Utils.getCallerMethodName(acquireNode);
+                List<String> releaseMethods = new ArrayList<>();
+                for(MethodInvocation releaseNode: releaseNodes)
+                {
+                    releaseMethods.add(Utils.getCallerMethodName(releaseNode));
+                }
+                if(Utils.isReleasedLate(acquireMethod, releaseMethods))
+                {
+                    report(context, ISSUE, acquireNode, context.getLocation(acquireNode.astName()),
+                            MESSAGE_LATE_RELEASE.format(getSimpleName(locks.getType(acquiredLocks.get(i))), acquireMethod, Utils.getPairedTeardownCallback(acquireMethod)));
+                }
+
+                // Releases in the same method that an exception would skip (each reported once, even if the lock is
+                // acquired more than once before it)
+                for(MethodInvocation releaseNode: releaseNodes)
+                {
+                    if(ControlFlowUtils.getEnclosingMethod(releaseNode)==ControlFlowUtils.getEnclosingMethod(acquireNode) &&
+                            ControlFlowUtils.isBefore(acquireNode, releaseNode) && !ControlFlowUtils.isExecutedOnException(acquireNode, releaseNode, releaseNodes) &&
+                            reportedReleases.add(releaseNode))
+                    {
+                        report(context, ISSUE, releaseNode, context.getLocation(releaseNode.astName()), MESSAGE_RELEASE_NOT_IN_FINALLY.format());
+                    }
+                }
+            }
+        }
+
+        finishFile(context);
+
+        // Reset variables for next files
+        locks.clear();
+        acquisitions.clear();
+        acquiredLocks.clear();
+        releases.clear();
+    }
+
+    /**
+     * Same as afterCheckFile() but for compiled classes
+     * @param context the context of the lint request
+     */
+    private void afterCheckClass(ClassContext context)
+    {
+        Set<ClassCall> reportedReleases = Collections.newSetFromMap(new IdentityHashMap<ClassCall, Boolean>());
+
+        // Locks never released
+        for(ClassCall call: classLocks.getUnreleased())
+        {
+            report(context, ISSUE, call.getMethod(), call.getCall(), context.getLocation(call.getCall()), MESSAGE_NO_RELEASE.format(getLockName(call.getCall())));
+        }
+
+        for(int i=0; i<classAcquisitions.size(); i++)
+        {
+            ClassCall acquireCall = classAcquisitions.get(i);
+            List<ClassCall> releaseCalls = classReleases.get(classAcquiredLocks.get(i));
+            if(releaseCalls==null) continue;
+
+            // Locks released too late
+            String acquireMethod = acquireCall.getMethod().name;
+            List<String> releaseMethods = new ArrayList<>();
+            for(ClassCall releaseCall: releaseCalls)
+            {
+                releaseMethods.add(releaseCall.getMethod().name);
+            }
+            if(Utils.isReleasedLate(acquireMethod, releaseMethods))
+            {
+                report(context, ISSUE, acquireCall.getMethod(), acquireCall.getCall(), context.getLocation(acquireCall.getCall()),
+                        MESSAGE_LATE_RELEASE.format(getLockName(acquireCall.getCall()), acquireMethod, Utils.getPairedTeardownCallback(acquireMethod)));
+            }
+
+            // Releases in the same method that an exception would skip (each reported once)
+            MethodNode method = acquireCall.getMethod();
+            for(ClassCall releaseCall: releaseCalls)
+            {
+                if(releaseCall.getMethod()==method &&
+                        method.instructions.indexOf(acquireCall.getCall())<method.instructions.indexOf(releaseCall.getCall()) &&
+                        !BytecodeUtils.isExecutedOnException(method, acquireCall.getCall(), releaseCall.getCall()) &&
+                        reportedReleases.add(releaseCall))
+                {
+                    report(context, ISSUE, method, releaseCall.getCall(), context.getLocation(releaseCall.getCall()), MESSAGE_RELEASE_NOT_IN_FINALLY.format());
+                }
+            }
+        }
+
+        // Reset variables for next classes
+        classLocks.clear();
+        classAcquisitions.clear();
+        classAcquiredLocks.clear();
+        classReleases.clear();
+        lastAnalyzedMethod = null;
+        lastFrames = null;
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public AstVisitor createJavaVisitor(@NonNull JavaContext context)
+    {
+        return new WakeLockVisitor(context);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public List<String> getApplicableCallNames()
+    {
+        return Arrays.asList(ACQUIRE_METHOD, RELEASE_METHOD);
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * Bytecode version of the visitor: the lock is identified by the field or variable the call is invoked on
+     */
+    @Override
+    public void checkCall(@NonNull ClassContext context, @NonNull ClassNode classNode, @NonNull MethodNode method, @NonNull MethodInsnNode call)
+    {
+        if(!isAnalyzedClass(context))
+        {
+            return;
+        }
+
+        // Check if we are interested in the class that contains this method (the lock classes are final)
+        String owner = ClassContext.getFqcn(call.owner);
+        if((!WAKE_LOCK.equals(owner) && !WIFI_LOCK.equals(owner)) || !BytecodeUtils.isActivityOrFragment(context, classNode))
+        {
+            return;
+        }
+
+        // Data flow analysis of the method, reused for all its calls
+        if(method!=lastAnalyzedMethod)
+        {
+            lastAnalyzedMethod = method;
+            lastFrames = BytecodeUtils.analyze(classNode, method);
+        }
+        String lock = BytecodeUtils.getCallReceiverName(method, lastFrames, call);
+
+        ClassCall classCall = new ClassCall(method, call);
+        if(ACQUIRE_METHOD.equals(call.name))
+        {
+            classLocks.acquire(lock, classCall);
+            classAcquisitions.add(classCall);
+            classAcquiredLocks.add(lock);
+
+            // WifiLock.acquire() has no timeout variant
+            if(WAKE_LOCK.equals(owner) && UNTIMED_ACQUIRE_DESC.equals(call.desc))
+            {
+                report(context, ISSUE, method, call, context.getLocation(call), MESSAGE_UNTIMED_ACQUIRE.format());
+            }
+        }
+        else if(RELEASE_METHOD.equals(call.name))
+        {
+            classLocks.release(lock);
+            List<ClassCall> calls = classReleases.get(lock);
+            if(calls==null)
+            {
+                calls = new ArrayList<>();
+                classReleases.put(lock, calls);
+            }
+            calls.add(classCall);
+        }
+    }
+
+    /**
+     * Helper to get the name of the lock class for the messages
+     * @param call the acquisition in the bytecode
+     * @return WakeLock or WifiLock
+     */
+    private static String getLockName(MethodInsnNode call)
+    {
+        return getSimpleName(ClassContext.getFqcn(call.owner));
+    }
+
+    /**
+     * Helper to get the simple name of a class
+     * @param className the fully qualified name of the class
+     * @return the name after the last dot
+     */
+    private static String getSimpleName(String className)
+    {
+        return className.substring(className.lastIndexOf('.')+1);
+    }
+
+    /**
+     * Custom AST Visitor that receives method invocations
+     */
+    private class WakeLockVisitor extends ForwardingAstVisitor
+    {
+        private final JavaContext context;
+        private final ReceiverTypeFilter receiverTypeFilter;
+        private final AliasSets aliases;
+
+        /**
+         * Constructor
+         * @param context the context of the lint request
+         */
+        public WakeLockVisitor(JavaContext context)
+        {
+            this.context = context;
+            this.receiverTypeFilter = new ReceiverTypeFilter(context.getCompilationUnit());
+            this.aliases = new AliasSets(context.getCompilationUnit());
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public boolean visitMethodInvocation(MethodInvocation methodInvocation)
+        {
+            // If this is a library project not being analyzed, ignore it
+            if(!context.getProject().getReportIssues())
+            {
+                return false;
+            }
+
+            // Only applicable methods (filter before resolving, for performance)
+            String name = methodInvocation.astName().astValue();
+            if(!ACQUIRE_METHOD.equals(name) && !RELEASE_METHOD.equals(name))
+            {
+                return false;
+            }
+
+            // Skip the rest of the file if we are over the time budget
+            if(budget.isExceeded())
+            {
+                return false;
+            }
+
+            // Classify the invocation, unless its method did not change since the previous run on this file
+            Integer summary = getCachedSummary(methodInvocation);
+            if(summary==null)
+            {
+                summary = classify(methodInvocation);
+                cacheSummary(methodInvocation, summary);
+            }
+            if((summary & SUMMARY_IN_ACTIVITY_OR_FRAGMENT)==0)
+            {
+                return false;
+            }
+
+            // Acquisitions are paired with the releases of the same lock
+            String lock = aliases.getCanonicalName(methodInvocation.astOperand());
+            if((summary & SUMMARY_ACQUIRE)!=0)
+            {
+                locks.acquire(lock, methodInvocation, (summary & SUMMARY_WIFI_LOCK)!=0 ? WIFI_LOCK : WAKE_LOCK);
+                acquisitions.add(methodInvocation);
+                acquiredLocks.add(lock);
+
+                // WifiLock.acquire() has no timeout variant
+                if((summary & SUMMARY_WIFI_LOCK)==0 && methodInvocation.astArguments().isEmpty())
+                {
+                    report(context, ISSUE, methodInvocation, context.getLocation(methodInvocation.astName()), MESSAGE_UNTIMED_ACQUIRE.format());
+                }
+            }
+            else if((summary & SUMMARY_RELEASE)!=0)
+            {
+                locks.release(lock);
+                List<MethodInvocation> nodes = releases.get(lock);
+                if(nodes==null)
+                {
+                    nodes = new ArrayList<>();
+                    releases.put(lock, nodes);
+                }
+                nodes.add(methodInvocation);
+            }
+
+            return super.visitMethodInvocation(methodInvocation);
+        }
+
+        /**
+         * Classifies an invocation of one of the applicable methods (this is the expensive part of the analysis)
+         * @param methodInvocation the method invocation
+         * @return the summary flags of the invocation
+         */
+        private int classify(MethodInvocation methodInvocation)
+        {
+            // Discard receivers that are obviously of another type, using only the declarations in the file (cheaper than resolving)
+            if(isExcludedReceiver(receiverTypeFilter, methodInvocation, EXCLUDED_RECEIVER_PACKAGES))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Resolve node
+            ResolvedNode resolved = context.resolve(methodInvocation);
+            if(resolved==null || !(resolved instanceof ResolvedMethod))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+
+            // Check if we are interested in the class that contains this method
+            ResolvedMethod method = (ResolvedMethod) resolved;
+            boolean isWakeLock = Utils.isMethodContainedInSubclassOf(method, WAKE_LOCK);
+            if(!isWakeLock && !Utils.isMethodContainedInSubclassOf(method, WIFI_LOCK))
+            {
+                return SUMMARY_IRRELEVANT;
+            }
+            int summary = isWakeLock ? SUMMARY_WAKE_LOCK : SUMMARY_WIFI_LOCK;
+
+            String name = method.getName();
+            summary |= ACQUIRE_METHOD.equals(name) ? SUMMARY_ACQUIRE : SUMMARY_RELEASE;
+
+            // Only activities, services and fragments have a lifecycle to compare with (skipped if we are over the time budget)
+            if(!budget.isExceeded() && Utils.isCalledInActivityOrFragment(context, methodInvocation))
+            {
+                summary |= SUMMARY_IN_ACTIVITY_OR_FRAGMENT;
+            }
+            return summary;
+        }
+    }
+}
@@ -6,8 +6,19 @@ import com.android.tools.lint.detector.api.Issue;
 import java.util.Arrays;
 import java.util.List;
 
+import it.polimi.testing.lifecycle_lint.AnalysisBudget;
+import it.polimi.testing.lifecycle_lint.detectors.BackgroundTaskDetector;
 import it.polimi.testing.lifecycle_lint.detectors.BroadcastReceiverDetector;
 import it.polimi.testing.lifecycle_lint.detectors.GoogleApiClientDetector;
+import it.polimi.testing.lifecycle_lint.detectors.HandlerDetector;
+import it.polimi.testing.lifecycle_lint.detectors.HardwareResourceDetector;
+import it.polimi.testing.lifecycle_lint.detectors.ListenerDetector;
+import it.polimi.testing.lifecycle_lint.detectors.LocalResourceDetector;
+import it.polimi.testing.lifecycle_lint.detectors.MainThreadBlockingDetector;
+import it.polimi.testing.lifecycle_lint.detectors.ServiceConnectionDetector;
+import it.polimi.testing.lifecycle_lint.detectors.StaticReferenceDetector;
+import it.polimi.testing.lifecycle_lint.detectors.SubscriptionDetector;
+import it.polimi.testing.lifecycle_lint.detectors.WakeLockDetector;
 
 
 public class LifecycleIssuesRegistry extends IssueRegistry
@@ -15,7 +26,19 @@ public class LifecycleIssuesRegistry extends IssueRegistry
     private final static List<Issue> ISSUES = Arrays.asList
     (
         BroadcastReceiverDetector.ISSUE,
-        GoogleApiClientDetector.ISSUE
+        GoogleApiClientDetector.ISSUE,
+        HandlerDetector.ISSUE,
+        MainThreadBlockingDetector.ISSUE,
+        MainThreadBlockingDetector.RECEIVER_ISSUE,
+        WakeLockDetector.ISSUE,
+        ServiceConnectionDetector.ISSUE,
+        ListenerDetector.ISSUE,
+        SubscriptionDetector.ISSUE,
+        StaticReferenceDetector.ISSUE,
+        LocalResourceDetector.ISSUE,
+        HardwareResourceDetector.ISSUE,
+        BackgroundTaskDetector.ISSUE,
+        AnalysisBudget.ISSUE
     );
 
     @Override
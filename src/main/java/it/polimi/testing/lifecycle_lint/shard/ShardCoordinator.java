@@ -0,0 +1,390 @@
+package it.polimi.testing.lifecycle_lint.shard;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.watch.LifecycleWatcher;
+
+/**
+ * Runner for projects with many modules, that splits the modules across worker JVMs (see ShardWorker) to keep the heap
+ * of each one small: the modules are assigned to the shards by their cost in the previous runs (the time their check
+ * took, kept in a history file), or by the size of their sources the first time, the most costly first and each one
+ * to the shard with the lowest total. The findings the workers write on their pipes are merged in a sorted set, so
+ * that the output does not depend on the shards (a finding reported by more than one module, e.g. in a shared library
+ * project, is printed once). With -Dlifecycle.lint.shard.verify=true the modules are also checked in this JVM, one
+ * after the other, and the two outputs are compared.
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.shard.ShardCoordinator module_dir...
+ */
+public class ShardCoordinator
+{
+    // Configuration
+    public static final String SHARDS_PROPERTY = "lifecycle.lint.shards";
+    public static final String HISTORY_PROPERTY = "lifecycle.lint.shard.history";
+    public static final String VERIFY_PROPERTY = "lifecycle.lint.shard.verify";
+    private static final String DEFAULT_HISTORY = "lifecycle-lint-shards.properties";
+
+    // System properties passed on to the workers
+    private static final String PROPERTY_PREFIX = "lifecycle.lint.";
+
+    private final File historyFile;
+    private final Properties history = new Properties();
+
+    /**
+     * Constructor
+     * @param historyFile the file with the cost of each module in the previous runs (it may not exist yet)
+     * @throws IOException if the history cannot be read
+     */
+    public ShardCoordinator(File historyFile) throws IOException
+    {
+        this.historyFile = historyFile;
+        if(historyFile.isFile())
+        {
+            InputStream in = new FileInputStream(historyFile);
+            try
+            {
+                history.load(in);
+            }
+            finally
+            {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args the module directories
+     * @throws IOException if a module cannot be read or a worker fails
+     * @throws InterruptedException if the coordinator is interrupted while waiting for the workers
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if(args.length==0)
+        {
+            System.err.println("Usage: ShardCoordinator <module directory>...");
+            System.exit(1);
+        }
+
+        List<File> moduleDirs = new ArrayList<>();
+        for(String arg: args)
+        {
+            moduleDirs.add(new File(arg).getAbsoluteFile());
+        }
+        int shards = Math.max(1, Math.min(moduleDirs.size(), Integer.getInteger(SHARDS_PROPERTY, Runtime.getRuntime().availableProcessors())));
+        ShardCoordinator coordinator = new ShardCoordinator(new File(System.getProperty(HISTORY_PROPERTY, DEFAULT_HISTORY)));
+
+        long start = System.nanoTime();
+        Set<String> findings = coordinator.run(coordinator.plan(moduleDirs, shards));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+        for(String finding: findings)
+        {
+            List<String> fields = ShardWorker.parseFields(finding);
+            System.out.println(fields.get(1)+":"+fields.get(2)+": "+fields.get(3)+" ["+fields.get(0)+"]");
+        }
+        System.out.println(moduleDirs.size()+" module(s) checked in "+shards+" shard(s) in "+elapsedMs+" ms, "+findings.size()+" finding(s)");
+
+        if(Boolean.getBoolean(VERIFY_PROPERTY))
+        {
+            Set<String> expected = new TreeSet<>();
+            ShardWorker worker = new ShardWorker();
+            for(File moduleDir: moduleDirs)
+            {
+                expected.addAll(worker.analyze(moduleDir));
+            }
+            if(expected.equals(findings))
+            {
+                System.out.println("Single JVM run: same "+expected.size()+" finding(s)");
+                return;
+            }
+            printMissing("Only in the single JVM run:", expected, findings);
+            printMissing("Only in the shards:", findings, expected);
+            System.exit(2);
+        }
+    }
+
+    /**
+     * Splits the modules in shards with about the same cost
+     * @param moduleDirs the module directories
+     * @param shards the number of shards
+     * @return the modules of each shard
+     * @throws IOException if the sources of a module cannot be measured
+     */
+    public List<List<File>> plan(List<File> moduleDirs, int shards) throws IOException
+    {
+        final Map<File, Double> costs = estimateCosts(moduleDirs);
+        List<File> sorted = new ArrayList<>(moduleDirs);
+        Collections.sort(sorted, new Comparator<File>()
+        {
+            @Override
+            public int compare(File first, File second)
+            {
+                int result = Double.compare(costs.get(second), costs.get(first));
+                return result!=0 ? result : first.compareTo(second);
+            }
+        });
+
+        // The most costly modules first, each one to the shard with the lowest total so far
+        List<List<File>> plan = new ArrayList<>();
+        double[] totals = new double[shards];
+        for(int i=0; i<shards; i++)
+        {
+            plan.add(new ArrayList<File>());
+        }
+        for(File moduleDir: sorted)
+        {
+            int lowest = 0;
+            for(int i=1; i<shards; i++)
+            {
+                if(totals[i]<totals[lowest]) lowest = i;
+            }
+            plan.get(lowest).add(moduleDir);
+            totals[lowest] += costs.get(moduleDir);
+        }
+        return plan;
+    }
+
+    /**
+     * Runs a worker JVM for each shard and merges their findings, then saves the cost of each module in the history
+     * @param plan the modules of each shard
+     * @return the findings, as the fields of the finding lines (see ShardWorker), sorted and without duplicates
+     * @throws IOException if a worker cannot be started or fails
+     * @throws InterruptedException if the coordinator is interrupted while waiting for the workers
+     */
+    public Set<String> run(List<List<File>> plan) throws IOException, InterruptedException
+    {
+        List<Process> processes = new ArrayList<>();
+        List<WorkerOutput> outputs = new ArrayList<>();
+        try
+        {
+            for(List<File> shard: plan)
+            {
+                if(shard.isEmpty()) continue;
+
+                Process process = createWorker(shard).start();
+                processes.add(process);
+                WorkerOutput output = new WorkerOutput(process.getInputStream());
+                outputs.add(output);
+                output.start();
+            }
+
+            Set<String> findings = new TreeSet<>();
+            for(int i=0; i<processes.size(); i++)
+            {
+                int exitCode = processes.get(i).waitFor();
+                outputs.get(i).join();
+                if(exitCode!=0 || outputs.get(i).error!=null)
+                {
+                    throw new IOException("Shard "+(i+1)+" failed (exit code "+exitCode+")", outputs.get(i).error);
+                }
+                findings.addAll(outputs.get(i).findings);
+                for(Map.Entry<String, Long> cost: outputs.get(i).costs.entrySet())
+                {
+                    history.setProperty(cost.getKey(), String.valueOf(cost.getValue()));
+                }
+            }
+            saveHistory();
+            return findings;
+        }
+        finally
+        {
+            for(Process process: processes)
+            {
+                process.destroy();
+            }
+        }
+    }
+
+    /**
+     * Helper to estimate the cost of the modules: the time of their previous check, or for the new modules the size
+     * of their sources multiplied by the average time per byte of the known modules
+     * @param moduleDirs the module directories
+     * @return the cost of each module
+     * @throws IOException if the sources of a module cannot be measured
+     */
+    private Map<File, Double> estimateCosts(List<File> moduleDirs) throws IOException
+    {
+        Map<File, Double> costs = new HashMap<>();
+        Map<File, Long> sizes = new HashMap<>();
+        double knownTime = 0;
+        double knownSize = 0;
+        for(File moduleDir: moduleDirs)
+        {
+            long size = getSourceSize(moduleDir.toPath());
+            sizes.put(moduleDir, size);
+            String time = history.getProperty(moduleDir.getPath());
+            if(time!=null)
+            {
+                costs.put(moduleDir, Double.parseDouble(time));
+                knownTime += Double.parseDouble(time);
+                knownSize += size;
+            }
+        }
+
+        double timePerByte = knownTime>0 && knownSize>0 ? knownTime/knownSize : 1;
+        for(File moduleDir: moduleDirs)
+        {
+            if(!costs.containsKey(moduleDir))
+            {
+                costs.put(moduleDir, sizes.get(moduleDir)*timePerByte);
+            }
+        }
+        return costs;
+    }
+
+    /**
+     * Helper to measure the Java sources of a module (except the build outputs and hidden directories)
+     * @param root the module directory
+     * @return the total size of its Java files, in bytes
+     * @throws IOException if the module cannot be read
+     */
+    private static long getSourceSize(final Path root) throws IOException
+    {
+        final long[] size = {0};
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+            {
+                return LifecycleWatcher.isIgnoredDirectory(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs)
+            {
+                if(file.toString().endsWith(".java")) size[0] += attrs.size();
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return size[0];
+    }
+
+    /**
+     * Helper to create the command of a worker JVM, with the same classpath and lifecycle properties as this one
+     * @param shard the modules of the shard
+     * @return the process builder
+     */
+    private static ProcessBuilder createWorker(List<File> shard)
+    {
+        List<String> command = new ArrayList<>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        for(String name: System.getProperties().stringPropertyNames())
+        {
+            if(name.startsWith(PROPERTY_PREFIX))
+            {
+                command.add("-D"+name+"="+System.getProperty(name));
+            }
+        }
+        command.add(ShardWorker.class.getName());
+        for(File moduleDir: shard)
+        {
+            command.add(moduleDir.getPath());
+        }
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT);
+    }
+
+    /**
+     * Helper to save the cost of the modules for the next runs
+     * @throws IOException if the history cannot be written
+     */
+    private void saveHistory() throws IOException
+    {
+        OutputStream out = new FileOutputStream(historyFile);
+        try
+        {
+            history.store(out, "Time in ms of the lifecycle checks of each module");
+        }
+        finally
+        {
+            out.close();
+        }
+    }
+
+    /**
+     * Helper to print the findings of a run that are missing from another one
+     * @param title the title of the list
+     * @param findings the findings of the run
+     * @param others the findings of the other run
+     */
+    private static void printMissing(String title, Set<String> findings, Set<String> others)
+    {
+        System.out.println(title);
+        for(String finding: findings)
+        {
+            if(!others.contains(finding)) System.out.println("    "+finding);
+        }
+    }
+
+    /**
+     * Thread that reads the lines written by a worker: its findings and the cost of its modules
+     */
+    private static class WorkerOutput extends Thread
+    {
+        private final InputStream in;
+        private final List<String> findings = new ArrayList<>();
+        private final Map<String, Long> costs = new HashMap<>();
+        private IOException error;
+
+        /**
+         * Constructor
+         * @param in the standard output of the worker
+         */
+        private WorkerOutput(InputStream in)
+        {
+            this.in = in;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void run()
+        {
+            String findingPrefix = ShardWorker.FINDING_LINE+ShardWorker.SEPARATOR;
+            String costPrefix = ShardWorker.COST_LINE+ShardWorker.SEPARATOR;
+            try
+            {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+                for(String line = reader.readLine(); line!=null; line = reader.readLine())
+                {
+                    if(line.startsWith(findingPrefix))
+                    {
+                        findings.add(line.substring(findingPrefix.length()));
+                    }
+                    else if(line.startsWith(costPrefix))
+                    {
+                        List<String> fields = ShardWorker.parseFields(line.substring(costPrefix.length()));
+                        costs.put(fields.get(0), Long.parseLong(fields.get(1)));
+                    }
+                }
+            }
+            catch(IOException e)
+            {
+                error = e;
+            }
+        }
+    }
+}
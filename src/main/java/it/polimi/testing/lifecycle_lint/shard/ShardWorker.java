@@ -0,0 +1,183 @@
+package it.polimi.testing.lifecycle_lint.shard;
+
+import com.android.tools.lint.LintCliClient;
+import com.android.tools.lint.LintCliFlags;
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Position;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.registry.LifecycleIssuesRegistry;
+
+/**
+ * Worker of a shard (see ShardCoordinator): it runs the lifecycle checks on some modules, one after the other, and
+ * writes to the standard output one line per finding and one per module with the time it took, in the compact format
+ * read by the coordinator. Other lines (e.g. printed by lint) are ignored by the coordinator.
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.shard.ShardWorker module_dir...
+ */
+public class ShardWorker
+{
+    // Kinds of lines written by the worker, followed by tab-separated fields
+    public static final String FINDING_LINE = "F";
+    public static final String COST_LINE = "C";
+    public static final String SEPARATOR = "\t";
+
+    private final IssueRegistry registry = new LifecycleIssuesRegistry();
+    private final Set<String> issueIds = new HashSet<>();
+
+    /**
+     * Constructor
+     */
+    public ShardWorker()
+    {
+        for(Issue issue: registry.getIssues())
+        {
+            issueIds.add(issue.getId());
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args the module directories
+     * @throws IOException if a module cannot be read
+     */
+    public static void main(String[] args) throws IOException
+    {
+        ShardWorker worker = new ShardWorker();
+        PrintStream out = System.out;
+        for(String arg: args)
+        {
+            File moduleDir = new File(arg).getAbsoluteFile();
+            long start = System.nanoTime();
+            Set<String> findings = worker.analyze(moduleDir);
+            long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start);
+            for(String finding: findings)
+            {
+                out.println(FINDING_LINE+SEPARATOR+finding);
+            }
+            out.println(COST_LINE+SEPARATOR+moduleDir.getPath()+SEPARATOR+elapsedMs);
+            out.flush();
+        }
+    }
+
+    /**
+     * Runs the checks on a module
+     * @param moduleDir the root directory of the module
+     * @return its findings, as the fields of the finding lines (issue, path, line and message, tab-separated)
+     * @throws IOException if the module cannot be read
+     */
+    public Set<String> analyze(File moduleDir) throws IOException
+    {
+        Set<String> findings = new HashSet<>();
+        new CollectingClient(findings).run(registry, Collections.singletonList(moduleDir));
+        return findings;
+    }
+
+    /**
+     * Formats the fields of a finding line
+     * @param fields the fields
+     * @return the line, without its kind
+     */
+    public static String formatFields(Collection<String> fields)
+    {
+        StringBuilder builder = new StringBuilder();
+        for(String field: fields)
+        {
+            if(builder.length()>0) builder.append(SEPARATOR);
+
+            // Fields cannot contain the separator or line breaks
+            builder.append(field.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r"));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parses the fields of a finding line
+     * @param line the line, without its kind
+     * @return the fields
+     */
+    public static List<String> parseFields(String line)
+    {
+        List<String> fields = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        for(int i=0; i<line.length(); i++)
+        {
+            char c = line.charAt(i);
+            if(c=='\\' && i+1<line.length())
+            {
+                char escaped = line.charAt(++i);
+                field.append(escaped=='t' ? '\t' : escaped=='n' ? '\n' : escaped=='r' ? '\r' : escaped);
+            }
+            else if(SEPARATOR.charAt(0)==c)
+            {
+                fields.add(field.toString());
+                field.setLength(0);
+            }
+            else
+            {
+                field.append(c);
+            }
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    /**
+     * Lint client that collects the findings of the lifecycle issues instead of printing a report
+     */
+    private class CollectingClient extends LintCliClient
+    {
+        private final Set<String> findings;
+
+        /**
+         * Constructor
+         * @param findings the set where the findings are added
+         */
+        private CollectingClient(Set<String> findings)
+        {
+            super(createFlags());
+            this.findings = findings;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void report(Context context, Issue issue, Severity severity, Location location, String message, TextFormat format)
+        {
+            if(severity==Severity.IGNORE || !issueIds.contains(issue.getId())) return;
+
+            File file = location!=null ? location.getFile() : context.file;
+            Position start = location!=null ? location.getStart() : null;
+            String line = start!=null ? String.valueOf(start.getLine()+1) : "0";
+            findings.add(formatFields(Arrays.asList(issue.getId(), file.getAbsolutePath(), line, format.convertTo(message, TextFormat.TEXT))));
+        }
+    }
+
+    /**
+     * Helper to create the lint flags: only the lifecycle issues, no reports, no progress output
+     * @return the flags
+     */
+    private LintCliFlags createFlags()
+    {
+        LintCliFlags flags = new LintCliFlags();
+        flags.setExactCheckedIds(issueIds);
+        flags.setQuiet(true);
+        return flags;
+    }
+}
@@ -0,0 +1,362 @@
+package it.polimi.testing.lifecycle_lint.watch;
+
+import com.android.tools.lint.LintCliClient;
+import com.android.tools.lint.LintCliFlags;
+import com.android.tools.lint.client.api.IssueRegistry;
+import com.android.tools.lint.detector.api.Context;
+import com.android.tools.lint.detector.api.Issue;
+import com.android.tools.lint.detector.api.JavaContext;
+import com.android.tools.lint.detector.api.Location;
+import com.android.tools.lint.detector.api.Position;
+import com.android.tools.lint.detector.api.Severity;
+import com.android.tools.lint.detector.api.TextFormat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+
+import it.polimi.testing.lifecycle_lint.MethodSummaryCache;
+import it.polimi.testing.lifecycle_lint.registry.LifecycleIssuesRegistry;
+import lombok.ast.ForwardingAstVisitor;
+import lombok.ast.MethodDeclaration;
+import lombok.ast.Node;
+
+/**
+ * Standalone runner that watches an Android project and re-runs the lifecycle checks on the Java files as they are
+ * saved, printing only the findings that appeared ("+") or disappeared ("-"). The whole project is analyzed once at
+ * startup, then only the modified files and the files that declare their subclasses (see TypeDependencies): since
+ * everything runs in the same JVM, the caches of the detectors (method summaries, framework type index) stay warm
+ * between iterations.
+ * Findings are compared by issue, enclosing method and message, so the ones that only moved to another line (e.g. after
+ * an edit above them) are not printed again; the printed lines are the current ones.
+ * Usage: java -cp lint.jar:LifecycleLintChecks.jar it.polimi.testing.lifecycle_lint.watch.LifecycleWatcher project_dir
+ */
+public class LifecycleWatcher
+{
+    // Time without new file events before the checks are run (editors often write a file more than once)
+    private static final long DEBOUNCE_MS = 300;
+
+    private final File projectDir;
+    private final IssueRegistry registry = new LifecycleIssuesRegistry();
+    private final Set<String> issueIds = new HashSet<>();
+    private final Map<String, Map<String, String>> findings = new TreeMap<>();
+    private final Map<WatchKey, Path> watchedDirs = new HashMap<>();
+    private final TypeDependencies dependencies = new TypeDependencies();
+    private WatchService watchService;
+
+    /**
+     * Constructor
+     * @param projectDir the root directory of the Android project (the one with the manifest)
+     */
+    public LifecycleWatcher(File projectDir)
+    {
+        this.projectDir = projectDir;
+        for(Issue issue: registry.getIssues())
+        {
+            issueIds.add(issue.getId());
+        }
+    }
+
+    /**
+     * Entry point
+     * @param args the project directory
+     * @throws IOException if the project cannot be read
+     * @throws InterruptedException if the watcher is interrupted
+     */
+    public static void main(String[] args) throws IOException, InterruptedException
+    {
+        if(args.length!=1 || !new File(args[0]).isDirectory())
+        {
+            System.err.println("Usage: LifecycleWatcher <project directory>");
+            System.exit(1);
+        }
+
+        // The checks run again in this JVM at every save, so the method summaries are worth keeping
+        if(System.getProperty(MethodSummaryCache.INCREMENTAL_PROPERTY)==null)
+        {
+            System.setProperty(MethodSummaryCache.INCREMENTAL_PROPERTY, Boolean.TRUE.toString());
+        }
+        new LifecycleWatcher(new File(args[0]).getAbsoluteFile()).watch();
+    }
+
+    /**
+     * Analyzes the whole project, then keeps analyzing the modified files until interrupted
+     * @throws IOException if the project cannot be read
+     * @throws InterruptedException if the watcher is interrupted
+     */
+    public void watch() throws IOException, InterruptedException
+    {
+        watchService = FileSystems.getDefault().newWatchService();
+        registerAll(projectDir.toPath());
+        dependencies.addAll(projectDir.toPath());
+
+        List<File> all = new ArrayList<>();
+        all.add(projectDir);
+        update(all, new HashSet<String>());
+        System.out.println("Watching "+projectDir+" for changes...");
+
+        while(true)
+        {
+            // Wait for a change, then collect all the changes until things are quiet
+            Set<File> changed = new TreeSet<>();
+            WatchKey key = watchService.take();
+            while(key!=null)
+            {
+                collectChanges(key, changed);
+                key = watchService.poll(DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+            }
+            if(changed.isEmpty()) continue;
+
+            // Deleted files have no findings anymore, the others are analyzed again
+            long start = System.nanoTime();
+            List<File> existing = new ArrayList<>();
+            Set<String> analyzedPaths = new HashSet<>();
+            Set<String> changedTypes = new HashSet<>();
+            for(File file: changed)
+            {
+                analyzedPaths.add(file.getPath());
+                if(file.isFile()) existing.add(file);
+
+                // Both the types declared before and after the change, in case one was renamed or removed
+                changedTypes.addAll(dependencies.getDeclaredTypes(file));
+                dependencies.update(file);
+                changedTypes.addAll(dependencies.getDeclaredTypes(file));
+            }
+
+            // The subclasses are analyzed in the same run, so that they see the modified sources of their superclasses
+            Set<File> dependents = dependencies.getDependents(changedTypes, analyzedPaths);
+            for(File file: dependents)
+            {
+                analyzedPaths.add(file.getPath());
+                existing.add(file);
+            }
+            update(existing, analyzedPaths);
+            System.out.println("Checked "+existing.size()+" file(s) ("+dependents.size()+" subclass file(s)) in "+TimeUnit.NANOSECONDS.toMillis(System.nanoTime()-start)+" ms");
+        }
+    }
+
+    /**
+     * Helper to run the checks and print the difference with the previous findings of the analyzed files
+     * @param files the files (or the project directory) to analyze
+     * @param analyzedPaths the paths of the files whose previous findings are replaced (also deleted files)
+     * @throws IOException if the files cannot be read
+     */
+    private void update(List<File> files, Set<String> analyzedPaths) throws IOException
+    {
+        Map<String, Map<String, String>> current = new TreeMap<>();
+        if(!files.isEmpty())
+        {
+            new CollectingClient(current).run(registry, files);
+        }
+
+        // Files with new findings are analyzed as well (e.g. the first run on the whole project)
+        Set<String> paths = new TreeSet<>(analyzedPaths);
+        paths.addAll(current.keySet());
+        for(String path: paths)
+        {
+            Map<String, String> before = findings.containsKey(path) ? findings.get(path) : new TreeMap<String, String>();
+            Map<String, String> after = current.containsKey(path) ? current.get(path) : new TreeMap<String, String>();
+            for(Map.Entry<String, String> finding: before.entrySet())
+            {
+                if(!after.containsKey(finding.getKey())) System.out.println("- "+finding.getValue());
+            }
+            for(Map.Entry<String, String> finding: after.entrySet())
+            {
+                if(!before.containsKey(finding.getKey())) System.out.println("+ "+finding.getValue());
+            }
+            if(after.isEmpty()) findings.remove(path);
+            else findings.put(path, after);
+        }
+    }
+
+    /**
+     * Helper to get the modified Java files from a watch key (and to watch the new directories)
+     * @param key the signalled watch key
+     * @param changed the set where the modified files are added
+     * @throws IOException if a new directory cannot be watched
+     */
+    private void collectChanges(WatchKey key, Set<File> changed) throws IOException
+    {
+        Path dir = watchedDirs.get(key);
+        for(WatchEvent<?> event: key.pollEvents())
+        {
+            if(dir==null || event.kind()==StandardWatchEventKinds.OVERFLOW) continue;
+
+            Path path = dir.resolve((Path) event.context());
+            if(event.kind()==StandardWatchEventKinds.ENTRY_CREATE && Files.isDirectory(path))
+            {
+                registerAll(path);
+            }
+            else if(path.toString().endsWith(".java"))
+            {
+                changed.add(path.toFile());
+            }
+        }
+        if(!key.reset())
+        {
+            watchedDirs.remove(key);
+        }
+    }
+
+    /**
+     * Helper to watch a directory and all its subdirectories (except the build outputs and hidden directories)
+     * @param root the directory
+     * @throws IOException if a directory cannot be watched
+     */
+    private void registerAll(Path root) throws IOException
+    {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException
+            {
+                if(isIgnoredDirectory(root, dir))
+                {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                WatchKey key = dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+                watchedDirs.put(key, dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Checks if a directory of the project must not be watched: the build outputs and the hidden directories
+     * @param root the root directory being visited
+     * @param dir the directory
+     * @return true if the directory and its subdirectories must be skipped
+     */
+    public static boolean isIgnoredDirectory(Path root, Path dir)
+    {
+        String name = dir.getFileName()==null ? "" : dir.getFileName().toString();
+        return !dir.equals(root) && (name.equals("build") || name.startsWith("."));
+    }
+
+    /**
+     * Lint client that collects the findings of the lifecycle issues instead of printing a report
+     */
+    private class CollectingClient extends LintCliClient
+    {
+        private final Map<String, Map<String, String>> collected;
+        private Node lastCompilationUnit;
+        private List<MethodDeclaration> lastMethods;
+
+        /**
+         * Constructor
+         * @param collected the map where the findings are added, by file path and then by key (see report())
+         */
+        private CollectingClient(Map<String, Map<String, String>> collected)
+        {
+            super(createFlags());
+            this.collected = collected;
+        }
+
+        /**
+         * {@inheritDoc}
+         */
+        @Override
+        public void report(Context context, Issue issue, Severity severity, Location location, String message, TextFormat format)
+        {
+            if(severity==Severity.IGNORE || !issueIds.contains(issue.getId())) return;
+
+            File file = location!=null ? location.getFile() : context.file;
+            Position start = location!=null ? location.getStart() : null;
+            String path = file.getAbsolutePath();
+            String text = format.convertTo(message, TextFormat.TEXT);
+
+            String method = "";
+            if(start!=null && context instanceof JavaContext && ((JavaContext) context).getCompilationUnit()!=null)
+            {
+                scan(((JavaContext) context).getCompilationUnit());
+                method = getEnclosingMethod(start.getOffset());
+            }
+
+            Map<String, String> fileFindings = collected.get(path);
+            if(fileFindings==null)
+            {
+                fileFindings = new TreeMap<>();
+                collected.put(path, fileFindings);
+            }
+
+            // The same finding more than once in a method is told apart by its order
+            String key = issue.getId()+"|"+method+"|"+text;
+            String uniqueKey = key;
+            for(int i=2; fileFindings.containsKey(uniqueKey); i++)
+            {
+                uniqueKey = key+"|"+i;
+            }
+            fileFindings.put(uniqueKey, path+(start!=null ? ":"+(start.getLine()+1) : "")+": "+severity.getDescription()+": "+text+" ["+issue.getId()+"]");
+        }
+
+        /**
+         * Helper to collect the methods of a compilation unit (once per file)
+         * @param compilationUnit the compilation unit
+         */
+        private void scan(Node compilationUnit)
+        {
+            if(compilationUnit==lastCompilationUnit) return;
+
+            lastCompilationUnit = compilationUnit;
+            lastMethods = new ArrayList<>();
+            compilationUnit.accept(new ForwardingAstVisitor()
+            {
+                @Override
+                public boolean visitMethodDeclaration(MethodDeclaration node)
+                {
+                    if(node.getPosition()!=null) lastMethods.add(node);
+                    return super.visitMethodDeclaration(node);
+                }
+            });
+        }
+
+        /**
+         * Helper to get the innermost method of the last scanned file that contains an offset
+         * @param offset the offset
+         * @return the method name and number of parameters, "" if the offset is outside all methods
+         */
+        private String getEnclosingMethod(int offset)
+        {
+            MethodDeclaration result = null;
+            for(MethodDeclaration method: lastMethods)
+            {
+                if(method.getPosition().getStart()<=offset && offset<method.getPosition().getEnd() &&
+                   (result==null || method.getPosition().getStart()>=result.getPosition().getStart()))
+                {
+                    result = method;
+                }
+            }
+            return result==null ? "" : result.astMethodName().astValue()+"/"+result.astParameters().size();
+        }
+    }
+
+    /**
+     * Helper to create the lint flags: only the lifecycle issues, no reports, no progress output
+     * @return the flags
+     */
+    private LintCliFlags createFlags()
+    {
+        LintCliFlags flags = new LintCliFlags();
+        flags.setExactCheckedIds(issueIds);
+        flags.setQuiet(true);
+        return flags;
+    }
+}
@@ -0,0 +1,196 @@
+package it.polimi.testing.lifecycle_lint.watch;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Index of the types declared by the Java files of a project and of the types they extend or implement, to find the
+ * files that declare the subclasses (also indirect ones) of the types of a modified file. Those files must be checked
+ * again together with it: their findings depend on the superclasses (e.g. which component they are, the callbacks
+ * they inherit), and lint resolves the classes of the files that are not checked from the compiled output, that is
+ * stale until the next build, while the files checked in the same run see each other's sources.
+ * The declarations are read from the tokens of the files, without a full parse (it has to run at every save), and
+ * types are matched by simple name, so a few files that do not actually depend on the modified one can be included
+ */
+public class TypeDependencies
+{
+    // Comments, string and character literals, that are removed before reading the tokens
+    private static final Pattern COMMENTS_AND_LITERALS = Pattern.compile("//[^\\n]*|/\\*.*?\\*/|\"(?:\\\\.|[^\"\\\\])*\"|'(?:\\\\.|[^'\\\\])*'", Pattern.DOTALL);
+
+    // Tokens: (qualified) names and the symbols that delimit the declarations
+    private static final Pattern TOKEN = Pattern.compile("[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*(?:\\s*\\.\\s*[\\p{javaJavaIdentifierStart}][\\p{javaJavaIdentifierPart}]*)*|[<>{};]");
+
+    // Keywords of the declarations
+    private static final Set<String> TYPE_KEYWORDS = new HashSet<>(Arrays.asList("class", "interface", "enum"));
+    private static final Set<String> SUPERTYPE_KEYWORDS = new HashSet<>(Arrays.asList("extends", "implements"));
+
+    // Simple names of the types declared by each file, and of the types they extend or implement
+    private final Map<String, Set<String>> declaredTypes = new HashMap<>();
+    private final Map<String, Set<String>> supertypes = new HashMap<>();
+
+    /**
+     * Indexes all the Java files of a project
+     * @param root the root directory of the project
+     * @throws IOException if the project cannot be read
+     */
+    public void addAll(final Path root) throws IOException
+    {
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs)
+            {
+                return LifecycleWatcher.isIgnoredDirectory(root, dir) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException
+            {
+                if(file.toString().endsWith(".java"))
+                {
+                    update(file.toFile());
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    /**
+     * Indexes a file again after it was modified (or removes it, if it was deleted)
+     * @param file the Java file
+     * @throws IOException if the file cannot be read
+     */
+    public void update(File file) throws IOException
+    {
+        String path = file.getPath();
+        if(!file.isFile())
+        {
+            declaredTypes.remove(path);
+            supertypes.remove(path);
+            return;
+        }
+
+        String text = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+        text = COMMENTS_AND_LITERALS.matcher(text).replaceAll(" ");
+
+        // After "class", "interface" or "enum" comes a declared type, after "extends" or "implements" the supertypes
+        // (outside the type arguments) up to the body
+        Set<String> declared = new HashSet<>();
+        Set<String> extended = new HashSet<>();
+        boolean isDeclaration = false;
+        boolean isNameExpected = false;
+        boolean isSupertypeList = false;
+        int typeArgumentsDepth = 0;
+        Matcher matcher = TOKEN.matcher(text);
+        while(matcher.find())
+        {
+            String token = matcher.group();
+            if(token.equals("<"))
+            {
+                typeArgumentsDepth++;
+            }
+            else if(token.equals(">"))
+            {
+                typeArgumentsDepth = Math.max(0, typeArgumentsDepth-1);
+            }
+            else if(token.equals("{") || token.equals("}") || token.equals(";"))
+            {
+                isDeclaration = false;
+                isNameExpected = false;
+                isSupertypeList = false;
+                typeArgumentsDepth = 0;
+            }
+            else if(TYPE_KEYWORDS.contains(token))
+            {
+                isDeclaration = true;
+                isNameExpected = true;
+                isSupertypeList = false;
+            }
+            else if(isNameExpected)
+            {
+                declared.add(getSimpleName(token));
+                isNameExpected = false;
+            }
+            else if(isDeclaration && SUPERTYPE_KEYWORDS.contains(token))
+            {
+                isSupertypeList = true;
+            }
+            else if(isSupertypeList && typeArgumentsDepth==0)
+            {
+                extended.add(getSimpleName(token));
+            }
+        }
+        declaredTypes.put(path, declared);
+        supertypes.put(path, extended);
+    }
+
+    /**
+     * Gets the simple names of the types declared by a file, as last indexed
+     * @param file the Java file
+     * @return the names, empty if the file is not indexed
+     */
+    public Set<String> getDeclaredTypes(File file)
+    {
+        Set<String> declared = declaredTypes.get(file.getPath());
+        return declared!=null ? declared : Collections.<String>emptySet();
+    }
+
+    /**
+     * Gets the files that declare the subclasses (also indirect ones) of some types
+     * @param typeNames the simple names of the types
+     * @param excluded the paths of the files that must not be returned (e.g. the modified files themselves)
+     * @return the files, sorted by path
+     */
+    public Set<File> getDependents(Collection<String> typeNames, Collection<String> excluded)
+    {
+        Set<File> result = new TreeSet<>();
+        Set<String> visited = new HashSet<>(typeNames);
+        Deque<String> pending = new ArrayDeque<>(typeNames);
+        while(!pending.isEmpty())
+        {
+            String typeName = pending.poll();
+            for(Map.Entry<String, Set<String>> entry: supertypes.entrySet())
+            {
+                if(!entry.getValue().contains(typeName)) continue;
+
+                if(!excluded.contains(entry.getKey()))
+                {
+                    result.add(new File(entry.getKey()));
+                }
+                for(String declared: declaredTypes.get(entry.getKey()))
+                {
+                    if(visited.add(declared)) pending.add(declared);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Helper to get the simple name of a referenced type (e.g. BaseActivity for com.example.BaseActivity)
+     * @param name the (qualified) name
+     * @return the simple name
+     */
+    private static String getSimpleName(String name)
+    {
+        return name.substring(name.lastIndexOf('.')+1).trim();
+    }
+}
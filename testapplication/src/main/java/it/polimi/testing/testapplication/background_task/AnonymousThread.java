@@ -0,0 +1,35 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class AnonymousThread extends AppCompatActivity
+{
+    private Thread worker;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        worker = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                Log.d("background_task", "Working: "+Test.A+","+Test.B);
+            }
+        });
+        worker.start();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
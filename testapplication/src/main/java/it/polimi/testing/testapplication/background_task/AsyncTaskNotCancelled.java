@@ -0,0 +1,36 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class AsyncTaskNotCancelled extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        new LoadTask().execute();
+    }
+
+    private static class LoadTask extends AsyncTask<Void, Void, Void>
+    {
+        @Override
+        protected Void doInBackground(Void... params)
+        {
+            Log.d("background_task", "Loading: "+Test.A+","+Test.B);
+            return null;
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
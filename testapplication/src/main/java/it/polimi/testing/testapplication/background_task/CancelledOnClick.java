@@ -0,0 +1,45 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CancelledOnClick extends AppCompatActivity
+{
+    private LoadTask task;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        task = new LoadTask();
+        task.execute();
+    }
+
+    public void onCancelClick(View view)
+    {
+        task.cancel(true);
+    }
+
+    private static class LoadTask extends AsyncTask<Void, Void, Void>
+    {
+        @Override
+        protected Void doInBackground(Void... params)
+        {
+            Log.d("background_task", "Loading: "+Test.A+","+Test.B);
+            return null;
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,64 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.app.Activity;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private LoadTask task;
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        setContentView(R.layout.activity_main);
+
+        task = new LoadTask(this);
+        task.execute();
+    }
+
+    @Override
+    public void onStop()
+    {
+        super.onStop();
+
+        task.cancel(true);
+    }
+
+    private static class LoadTask extends AsyncTask<Void, Void, Void>
+    {
+        private final WeakReference<Activity> activity;
+
+        LoadTask(Activity activity)
+        {
+            this.activity = new WeakReference<>(activity);
+        }
+
+        @Override
+        protected Void doInBackground(Void... params)
+        {
+            Log.d("background_task", "Loading: "+Test.A+","+Test.B);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result)
+        {
+            Activity activity = this.activity.get();
+            if(activity!=null) activity.setTitle("Loaded");
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,47 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsageHandlerThread extends AppCompatActivity
+{
+    private HandlerThread workerThread;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        workerThread = new HandlerThread("worker");
+        workerThread.start();
+        new Handler(workerThread.getLooper()).post(new LogRunnable());
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        workerThread.quit();
+        super.onDestroy();
+    }
+
+    private static class LogRunnable implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            Log.d("background_task", "Working: "+Test.A+","+Test.B);
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
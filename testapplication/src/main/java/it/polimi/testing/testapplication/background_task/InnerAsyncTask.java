@@ -0,0 +1,53 @@
+package it.polimi.testing.testapplication.background_task;
+
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class InnerAsyncTask extends AppCompatActivity
+{
+    private LoadTask task;
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        setContentView(R.layout.activity_main);
+
+        task = new LoadTask();
+        task.execute();
+    }
+
+    @Override
+    public void onStop()
+    {
+        super.onStop();
+
+        task.cancel(true);
+    }
+
+    private class LoadTask extends AsyncTask<Void, Void, Void>
+    {
+        @Override
+        protected Void doInBackground(Void... params)
+        {
+            Log.d("background_task", "Loading: "+Test.A+","+Test.B);
+            return null;
+        }
+
+        @Override
+        protected void onPostExecute(Void result)
+        {
+            setTitle("Loaded");
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
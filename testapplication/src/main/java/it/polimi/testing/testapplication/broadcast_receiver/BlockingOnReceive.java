@@ -0,0 +1,57 @@
+package it.polimi.testing.testapplication.broadcast_receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class BlockingOnReceive extends AppCompatActivity
+{
+    private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            String message = intent.getStringExtra("message");
+            saveMessage(context, message);
+            Log.d("receiver", "Got message: "+message+", "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        registerReceiver(broadcastReceiver, new IntentFilter("my-event"));
+    }
+
+    @Override
+    protected void onPause()
+    {
+        unregisterReceiver(broadcastReceiver);
+        super.onPause();
+    }
+
+    private void saveMessage(Context context, String message)
+    {
+        context.getSharedPreferences("messages", Context.MODE_PRIVATE).edit().putString("last", message).commit();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
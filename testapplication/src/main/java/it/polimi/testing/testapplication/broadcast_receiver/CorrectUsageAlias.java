@@ -0,0 +1,79 @@
+package it.polimi.testing.testapplication.broadcast_receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.support.v4.content.LocalBroadcastManager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsageAlias extends AppCompatActivity
+{
+    private BroadcastReceiver currentReceiver;
+    private BroadcastReceiver localReceiver;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+
+        BroadcastReceiver receiver = new BroadcastReceiver()
+        {
+            @Override
+            public void onReceive(Context context, Intent intent)
+            {
+                String message = intent.getStringExtra("message");
+                Log.d("receiver", "Got message: "+message+", "+Test.A+","+Test.B);
+            }
+        };
+        registerReceiver(receiver, new IntentFilter("my-event"));
+        currentReceiver = receiver;
+
+        BroadcastReceiver local = new BroadcastReceiver()
+        {
+            @Override
+            public void onReceive(Context context, Intent intent)
+            {
+                String message = intent.getStringExtra("message");
+                Log.d("receiver", "Got local message: "+message+", "+Test.A+","+Test.B);
+            }
+        };
+        setLocalReceiver(local);
+        LocalBroadcastManager.getInstance(this).registerReceiver(local, new IntentFilter("my-local-event"));
+    }
+
+    @Override
+    protected void onPause()
+    {
+        unregisterReceiver(currentReceiver);
+        LocalBroadcastManager.getInstance(this).unregisterReceiver(getLocalReceiver());
+        super.onPause();
+    }
+
+    private void setLocalReceiver(BroadcastReceiver receiver)
+    {
+        this.localReceiver = receiver;
+    }
+
+    private BroadcastReceiver getLocalReceiver()
+    {
+        return localReceiver;
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,47 @@
+package it.polimi.testing.testapplication.broadcast_receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+
+
+public class CorrectUsageView extends View
+{
+    private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            String message = intent.getStringExtra("message");
+            Log.d("receiver", "Got message: "+message+", "+Test.A+","+Test.B);
+        }
+    };
+
+    public CorrectUsageView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        getContext().registerReceiver(broadcastReceiver, new IntentFilter("my-event"));
+    }
+
+    @Override
+    protected void onDetachedFromWindow()
+    {
+        getContext().unregisterReceiver(broadcastReceiver);
+        super.onDetachedFromWindow();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,41 @@
+package it.polimi.testing.testapplication.broadcast_receiver;
+
+import android.app.Service;
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.IBinder;
+import android.util.Log;
+
+
+public class NoUnregisterService extends Service
+{
+    private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            String message = intent.getStringExtra("message");
+            Log.d("receiver", "Got message: "+message+", "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate()
+    {
+        super.onCreate();
+        registerReceiver(broadcastReceiver, new IntentFilter("my-event"));
+    }
+
+    @Override
+    public IBinder onBind(Intent intent)
+    {
+        return null;
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
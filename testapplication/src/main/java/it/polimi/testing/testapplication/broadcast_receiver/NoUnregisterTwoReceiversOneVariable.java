@@ -0,0 +1,63 @@
+package it.polimi.testing.testapplication.broadcast_receiver;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class NoUnregisterTwoReceiversOneVariable extends AppCompatActivity
+{
+    private final BroadcastReceiver firstReceiver = new LoggingReceiver();
+    private final BroadcastReceiver secondReceiver = new LoggingReceiver();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        registerReceiver(firstReceiver, new IntentFilter("my-event"));
+        registerReceiver(secondReceiver, new IntentFilter("my-other-event"));
+        logReceivers();
+    }
+
+    @Override
+    protected void onPause()
+    {
+        unregisterReceiver(firstReceiver);
+        super.onPause();
+    }
+
+    private void logReceivers()
+    {
+        BroadcastReceiver receiver = firstReceiver;
+        Log.d("receiver", "First: "+receiver);
+        receiver = secondReceiver;
+        Log.d("receiver", "Second: "+receiver+", "+Test.A+","+Test.B);
+    }
+
+    private static class LoggingReceiver extends BroadcastReceiver
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            Log.d("receiver", "Got message: "+intent.getStringExtra("message"));
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,50 @@
+package it.polimi.testing.testapplication.google_api_client;
+
+import android.os.Bundle;
+import android.support.annotation.NonNull;
+import android.support.v7.app.AppCompatActivity;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class NoDisconnectMultiple extends AppCompatActivity implements GoogleApiClient.OnConnectionFailedListener
+{
+    GoogleApiClient mGoogleApiClient1 = new GoogleApiClient.Builder(this)
+            .enableAutoManage(this, this)
+            .build();
+
+    GoogleApiClient mGoogleApiClient2 = new GoogleApiClient.Builder(this)
+            .enableAutoManage(this, this)
+            .build();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        mGoogleApiClient1.connect();
+        mGoogleApiClient2.connect();
+    }
+
+    @Override
+    protected void onStop()
+    {
+        super.onStop();
+        mGoogleApiClient1.disconnect();
+    }
+
+    @Override
+    public void onConnectionFailed(@NonNull ConnectionResult connectionResult)
+    {
+
+    }
+}
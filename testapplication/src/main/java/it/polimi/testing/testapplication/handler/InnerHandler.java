@@ -0,0 +1,50 @@
+package it.polimi.testing.testapplication.handler;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Message;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class InnerHandler extends AppCompatActivity
+{
+    private final Handler handler = new MessageHandler();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        handler.sendEmptyMessageDelayed(0, 5000);
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        handler.removeCallbacksAndMessages(null);
+        super.onDestroy();
+    }
+
+    private class MessageHandler extends Handler
+    {
+        @Override
+        public void handleMessage(Message message)
+        {
+            Log.d("handler", "Got message: "+message.what+", "+Test.A+","+Test.B);
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
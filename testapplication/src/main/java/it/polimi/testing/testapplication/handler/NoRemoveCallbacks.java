@@ -0,0 +1,48 @@
+package it.polimi.testing.testapplication.handler;
+
+import android.os.Bundle;
+import android.os.Handler;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class NoRemoveCallbacks extends AppCompatActivity
+{
+    private final Handler handler = new Handler();
+
+    private final Runnable runnable = new Runnable()
+    {
+        @Override
+        public void run()
+        {
+            Log.d("handler", "Delayed work: "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        handler.postDelayed(runnable, 5000);
+    }
+
+    @Override
+    protected void onStop()
+    {
+        super.onStop();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
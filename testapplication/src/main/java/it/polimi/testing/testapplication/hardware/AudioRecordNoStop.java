@@ -0,0 +1,43 @@
+package it.polimi.testing.testapplication.hardware;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class AudioRecordNoStop extends AppCompatActivity
+{
+    private static final int SAMPLE_RATE = 44100;
+
+    private AudioRecord record;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        int bufferSize = AudioRecord.getMinBufferSize(SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        record = new AudioRecord(MediaRecorder.AudioSource.MIC, SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT, bufferSize);
+        Log.d("hardware", "Record created: "+Test.A);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+
+        record.startRecording();
+        Log.d("hardware", "Recording: "+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,37 @@
+package it.polimi.testing.testapplication.hardware;
+
+import android.hardware.Camera;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CameraReleasedInOnDestroy extends AppCompatActivity
+{
+    private Camera camera;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        camera = Camera.open();
+        Log.d("hardware", "Camera opened: "+Test.A+","+Test.B);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        super.onDestroy();
+
+        camera.release();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
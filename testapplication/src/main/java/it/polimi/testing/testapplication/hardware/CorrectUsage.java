@@ -0,0 +1,70 @@
+package it.polimi.testing.testapplication.hardware;
+
+import android.hardware.Camera;
+import android.media.MediaPlayer;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private Camera camera;
+    private MediaPlayer player;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+
+        player = MediaPlayer.create(this, android.provider.Settings.System.DEFAULT_NOTIFICATION_URI);
+        Log.d("hardware", "Player created: "+Test.A);
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+
+        camera = Camera.open();
+        Log.d("hardware", "Camera opened: "+Test.B);
+    }
+
+    @Override
+    public void onPause()
+    {
+        super.onPause();
+
+        if(camera!=null)
+        {
+            camera.release();
+            camera = null;
+        }
+    }
+
+    @Override
+    public void onStop()
+    {
+        super.onStop();
+
+        if(player!=null)
+        {
+            player.release();
+            player = null;
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,37 @@
+package it.polimi.testing.testapplication.listener;
+
+import android.database.ContentObserver;
+import android.os.Bundle;
+import android.os.Handler;
+import android.provider.Settings;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class ContentObserverNoUnregister extends AppCompatActivity
+{
+    private final ContentObserver contentObserver = new ContentObserver(new Handler())
+    {
+        @Override
+        public void onChange(boolean selfChange)
+        {
+            Log.d("listener", "Settings changed: "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        getContentResolver().registerContentObserver(Settings.System.CONTENT_URI, true, contentObserver);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,75 @@
+package it.polimi.testing.testapplication.listener;
+
+import android.content.SharedPreferences;
+import android.database.ContentObserver;
+import android.os.Bundle;
+import android.os.Handler;
+import android.provider.Settings;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private final ContentObserver contentObserver = new ContentObserver(new Handler())
+    {
+        @Override
+        public void onChange(boolean selfChange)
+        {
+            Log.d("listener", "Settings changed: "+Test.A);
+        }
+    };
+
+    private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener()
+    {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+        {
+            Log.d("listener", "Preference changed: "+key+", "+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        // One-shot listener that removes itself
+        final View content = findViewById(android.R.id.content);
+        content.getViewTreeObserver().addOnGlobalLayoutListener(new ViewTreeObserver.OnGlobalLayoutListener()
+        {
+            @Override
+            public void onGlobalLayout()
+            {
+                content.getViewTreeObserver().removeOnGlobalLayoutListener(this);
+                Log.d("listener", "Laid out: "+content.getWidth());
+            }
+        });
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        getContentResolver().registerContentObserver(Settings.System.CONTENT_URI, true, contentObserver);
+        getSharedPreferences("preferences", MODE_PRIVATE).registerOnSharedPreferenceChangeListener(preferenceListener);
+    }
+
+    @Override
+    public void onPause()
+    {
+        getContentResolver().unregisterContentObserver(contentObserver);
+        getSharedPreferences("preferences", MODE_PRIVATE).unregisterOnSharedPreferenceChangeListener(preferenceListener);
+        super.onPause();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,38 @@
+package it.polimi.testing.testapplication.listener;
+
+import android.content.Context;
+import android.util.AttributeSet;
+import android.util.Log;
+import android.view.View;
+import android.view.ViewTreeObserver;
+
+
+public class PreDrawListenerNoRemoveView extends View
+{
+    private final ViewTreeObserver.OnPreDrawListener preDrawListener = new ViewTreeObserver.OnPreDrawListener()
+    {
+        @Override
+        public boolean onPreDraw()
+        {
+            Log.d("listener", "Drawing: "+Test.A+","+Test.B);
+            return true;
+        }
+    };
+
+    public PreDrawListenerNoRemoveView(Context context, AttributeSet attrs)
+    {
+        super(context, attrs);
+    }
+
+    @Override
+    protected void onAttachedToWindow()
+    {
+        super.onAttachedToWindow();
+        getViewTreeObserver().addOnPreDrawListener(preDrawListener);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,47 @@
+package it.polimi.testing.testapplication.listener;
+
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class SharedPreferencesListenerLateUnregister extends AppCompatActivity
+{
+    private final SharedPreferences.OnSharedPreferenceChangeListener preferenceListener = new SharedPreferences.OnSharedPreferenceChangeListener()
+    {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key)
+        {
+            Log.d("listener", "Preference changed: "+key+", "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        getSharedPreferences("preferences", MODE_PRIVATE).registerOnSharedPreferenceChangeListener(preferenceListener);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        getSharedPreferences("preferences", MODE_PRIVATE).unregisterOnSharedPreferenceChangeListener(preferenceListener);
+        super.onDestroy();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,44 @@
+package it.polimi.testing.testapplication.local_resource;
+
+import android.content.res.TypedArray;
+import android.database.Cursor;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        Cursor cursor = getContentResolver().query(ContactsContract.Contacts.CONTENT_URI, null, null, null, null);
+        try
+        {
+            Log.d("local_resource", "Contacts: "+(cursor!=null ? cursor.getCount() : 0)+","+Test.A);
+        }
+        finally
+        {
+            if(cursor!=null)
+            {
+                cursor.close();
+            }
+        }
+
+        TypedArray attributes = obtainStyledAttributes(new int[]{android.R.attr.textColor});
+        int color = attributes.getColor(0, 0);
+        attributes.recycle();
+        Log.d("local_resource", "Color: "+color+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
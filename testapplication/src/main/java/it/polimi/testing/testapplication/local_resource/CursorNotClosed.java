@@ -0,0 +1,28 @@
+package it.polimi.testing.testapplication.local_resource;
+
+import android.database.Cursor;
+import android.os.Bundle;
+import android.provider.ContactsContract;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CursorNotClosed extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        Cursor cursor = getContentResolver().query(ContactsContract.Contacts.CONTENT_URI, null, null, null, null);
+        Log.d("local_resource", "Contacts: "+(cursor!=null ? cursor.getCount() : 0)+","+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
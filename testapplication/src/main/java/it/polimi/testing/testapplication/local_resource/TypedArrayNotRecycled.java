@@ -0,0 +1,27 @@
+package it.polimi.testing.testapplication.local_resource;
+
+import android.content.res.TypedArray;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class TypedArrayNotRecycled extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        TypedArray attributes = obtainStyledAttributes(new int[]{android.R.attr.textColor});
+        Log.d("local_resource", "Color: "+attributes.getColor(0, 0)+","+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,43 @@
+package it.polimi.testing.testapplication.main_thread_blocking;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.database.sqlite.SQLiteDatabase;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class BlockingInOnCreate extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        SharedPreferences preferences = getSharedPreferences("settings", Context.MODE_PRIVATE);
+        preferences.edit().putString("test", Test.A.name()).commit();
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        createTables();
+    }
+
+    private void createTables()
+    {
+        SQLiteDatabase database = openOrCreateDatabase("test.db", Context.MODE_PRIVATE, null);
+        database.execSQL("CREATE TABLE IF NOT EXISTS test (name TEXT)");
+        Log.d("database", "Created: "+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,29 @@
+package it.polimi.testing.testapplication.main_thread_blocking;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        SharedPreferences preferences = getSharedPreferences("settings", Context.MODE_PRIVATE);
+        preferences.edit().putString("test", Test.A.name()).apply();
+        Log.d("preferences", "Saved: "+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
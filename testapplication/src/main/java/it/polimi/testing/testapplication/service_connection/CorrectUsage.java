@@ -0,0 +1,57 @@
+package it.polimi.testing.testapplication.service_connection;
+
+import android.content.ComponentName;
+import android.content.Context;
+import android.content.Intent;
+import android.content.ServiceConnection;
+import android.os.Bundle;
+import android.os.IBinder;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private final ServiceConnection serviceConnection = new ServiceConnection()
+    {
+        @Override
+        public void onServiceConnected(ComponentName name, IBinder service)
+        {
+            Log.d("service_connection", "Connected: "+Test.A+","+Test.B);
+        }
+
+        @Override
+        public void onServiceDisconnected(ComponentName name)
+        {
+            Log.d("service_connection", "Disconnected");
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+    }
+
+    @Override
+    public void onStart()
+    {
+        super.onStart();
+        bindService(new Intent("my-service"), serviceConnection, Context.BIND_AUTO_CREATE);
+    }
+
+    @Override
+    public void onStop()
+    {
+        unbindService(serviceConnection);
+        super.onStop();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,33 @@
+package it.polimi.testing.testapplication.static_reference;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.lang.ref.WeakReference;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private static Context applicationContext;
+    private static WeakReference<CorrectUsage> instance;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        applicationContext = getApplicationContext();
+        instance = new WeakReference<>(this);
+        Log.d("static_reference", "Created: "+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,28 @@
+package it.polimi.testing.testapplication.static_reference;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class StaticActivityField extends AppCompatActivity
+{
+    private static StaticActivityField instance;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        instance = this;
+        Log.d("static_reference", "Created: "+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,43 @@
+package it.polimi.testing.testapplication.static_reference;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class StaticReceiverRegistry extends AppCompatActivity
+{
+    private static final List<BroadcastReceiver> RECEIVERS = new ArrayList<>();
+
+    private final BroadcastReceiver broadcastReceiver = new BroadcastReceiver()
+    {
+        @Override
+        public void onReceive(Context context, Intent intent)
+        {
+            String message = intent.getStringExtra("message");
+            Log.d("receiver", "Got message: "+message+", "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        RECEIVERS.add(broadcastReceiver);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
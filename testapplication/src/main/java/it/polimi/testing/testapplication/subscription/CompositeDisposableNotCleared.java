@@ -0,0 +1,39 @@
+package it.polimi.testing.testapplication.subscription;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.functions.Consumer;
+import it.polimi.testing.testapplication.R;
+
+
+public class CompositeDisposableNotCleared extends AppCompatActivity
+{
+    private final CompositeDisposable disposables = new CompositeDisposable();
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        disposables.add(Observable.interval(1, TimeUnit.SECONDS).subscribe(new Consumer<Long>()
+        {
+            @Override
+            public void accept(Long tick)
+            {
+                Log.d("subscription", "Tick "+tick+", "+Test.A+","+Test.B);
+            }
+        }));
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
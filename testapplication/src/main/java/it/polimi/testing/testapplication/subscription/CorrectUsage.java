@@ -0,0 +1,71 @@
+package it.polimi.testing.testapplication.subscription;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.disposables.CompositeDisposable;
+import io.reactivex.functions.Consumer;
+import io.reactivex.functions.Function;
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private final CompositeDisposable disposables = new CompositeDisposable();
+    private final LiveData<String> liveData = new MutableLiveData<>();
+
+    private final Observer<String> observer = new Observer<String>()
+    {
+        @Override
+        public void onChanged(String value)
+        {
+            Log.d("subscription", "Changed: "+value+", "+Test.A);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        disposables.add(Observable.interval(1, TimeUnit.SECONDS)
+            .map(new Function<Long, String>()
+            {
+                @Override
+                public String apply(Long tick)
+                {
+                    return "Tick "+tick;
+                }
+            })
+            .subscribe(new Consumer<String>()
+            {
+                @Override
+                public void accept(String message)
+                {
+                    Log.d("subscription", message+", "+Test.B);
+                }
+            }));
+        liveData.observeForever(observer);
+    }
+
+    @Override
+    public void onDestroy()
+    {
+        liveData.removeObserver(observer);
+        disposables.clear();
+        super.onDestroy();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,36 @@
+package it.polimi.testing.testapplication.subscription;
+
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import java.util.concurrent.TimeUnit;
+
+import io.reactivex.Observable;
+import io.reactivex.functions.Consumer;
+import it.polimi.testing.testapplication.R;
+
+
+public class IgnoredDisposable extends AppCompatActivity
+{
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        Observable.interval(1, TimeUnit.SECONDS).subscribe(new Consumer<Long>()
+        {
+            @Override
+            public void accept(Long tick)
+            {
+                Log.d("subscription", "Tick "+tick+", "+Test.A+","+Test.B);
+            }
+        });
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,39 @@
+package it.polimi.testing.testapplication.subscription;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class ObserveForeverNoRemove extends AppCompatActivity
+{
+    private final LiveData<String> liveData = new MutableLiveData<>();
+
+    private final Observer<String> observer = new Observer<String>()
+    {
+        @Override
+        public void onChanged(String value)
+        {
+            Log.d("subscription", "Changed: "+value+", "+Test.A+","+Test.B);
+        }
+    };
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        liveData.observeForever(observer);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
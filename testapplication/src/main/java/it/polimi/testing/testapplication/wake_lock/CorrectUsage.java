@@ -0,0 +1,57 @@
+package it.polimi.testing.testapplication.wake_lock;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.PowerManager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class CorrectUsage extends AppCompatActivity
+{
+    private PowerManager.WakeLock wakeLock;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "CorrectUsage");
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        wakeLock.acquire(60000);
+    }
+
+    @Override
+    protected void onPause()
+    {
+        wakeLock.release();
+        super.onPause();
+    }
+
+    public void doWork()
+    {
+        wakeLock.acquire(10000);
+        try
+        {
+            Log.d("wake_lock", "Work: "+Test.A+","+Test.B);
+        }
+        finally
+        {
+            wakeLock.release();
+        }
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,45 @@
+package it.polimi.testing.testapplication.wake_lock;
+
+import android.content.Context;
+import android.net.wifi.WifiManager;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class LateRelease extends AppCompatActivity
+{
+    private WifiManager.WifiLock wifiLock;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        WifiManager wifiManager = (WifiManager) getApplicationContext().getSystemService(Context.WIFI_SERVICE);
+        wifiLock = wifiManager.createWifiLock(WifiManager.WIFI_MODE_FULL, "LateRelease");
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        wifiLock.acquire();
+        Log.d("wake_lock", "Acquired: "+Test.A+","+Test.B);
+    }
+
+    @Override
+    protected void onDestroy()
+    {
+        wifiLock.release();
+        super.onDestroy();
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}
@@ -0,0 +1,38 @@
+package it.polimi.testing.testapplication.wake_lock;
+
+import android.content.Context;
+import android.os.Bundle;
+import android.os.PowerManager;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+
+import it.polimi.testing.testapplication.R;
+
+
+public class NoRelease extends AppCompatActivity
+{
+    private PowerManager.WakeLock wakeLock;
+
+    @Override
+    public void onCreate(Bundle savedInstanceState)
+    {
+        super.onCreate(savedInstanceState);
+        setContentView(R.layout.activity_main);
+
+        PowerManager powerManager = (PowerManager) getSystemService(Context.POWER_SERVICE);
+        wakeLock = powerManager.newWakeLock(PowerManager.PARTIAL_WAKE_LOCK, "NoRelease");
+    }
+
+    @Override
+    public void onResume()
+    {
+        super.onResume();
+        wakeLock.acquire();
+        Log.d("wake_lock", "Acquired: "+Test.A+","+Test.B);
+    }
+
+    private enum Test
+    {
+        A, B
+    }
+}